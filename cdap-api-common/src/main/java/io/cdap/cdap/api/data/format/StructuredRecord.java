@@ -22,6 +22,10 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.data.schema.Schema.LogicalType;
 import io.cdap.cdap.api.data.schema.SchemaCache;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -37,6 +41,7 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -48,14 +53,25 @@ import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
- * Instance of a record structured by a {@link Schema}. Fields are accessible by name.
+ * Instance of a record structured by a {@link Schema}. Fields are accessible by name or by the position of the field
+ * in the schema.
  */
 @Beta
 public class StructuredRecord implements Serializable {
   private static final SimpleDateFormat DEFAULT_FORMAT = new SimpleDateFormat("YYYY-MM-DD'T'HH:mm:ss z");
 
-  private final Schema schema;
-  private final Map<String, Object> fields;
+  // Field values are kept in an array indexed by the field position in the schema. For compatibility, the
+  // serialized form stays the same as when the values were kept in a map from field name to value.
+  private static final ObjectStreamField[] serialPersistentFields = {
+    new ObjectStreamField("schema", Schema.class),
+    new ObjectStreamField("fields", Map.class)
+  };
+
+  // Marker for fields that are not set in the builder
+  private static final Object NOT_SET = new Object();
+
+  private Schema schema;
+  private Object[] values;
 
   private static final long serialVersionUID = -6547770456592865613L;
 
@@ -63,9 +79,9 @@ public class StructuredRecord implements Serializable {
     DEFAULT_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
   }
 
-  private StructuredRecord(Schema schema, Map<String, Object> fields) {
+  private StructuredRecord(Schema schema, Object[] values) {
     this.schema = SchemaCache.intern(schema);
-    this.fields = fields;
+    this.values = values;
   }
 
   /**
@@ -87,7 +103,22 @@ public class StructuredRecord implements Serializable {
   @SuppressWarnings("unchecked")
   @Nullable
   public <T> T get(String fieldName) {
-    return (T) fields.get(fieldName);
+    return (T) getValue(fieldName);
+  }
+
+  /**
+   * Get the value of a field in the record by the position of the field in the schema. This avoids the lookup
+   * of the field by name.
+   *
+   * @param fieldIndex the position of the field in {@link Schema#getFields()}.
+   * @param <T> type of object of the field value.
+   * @return value of the field.
+   * @throws IndexOutOfBoundsException if the position is not a valid field position of the schema.
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public <T> T get(int fieldIndex) {
+    return (T) values[fieldIndex];
   }
 
   /**
@@ -101,7 +132,7 @@ public class StructuredRecord implements Serializable {
   public LocalDate getDate(String fieldName) {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.DATE));
-    Object val = fields.get(fieldName);
+    Object val = getValue(fieldName);
     try {
       Integer value = (Integer) val;
       return (value == null || logicalTypeSchema == null) ? null : LocalDate.ofEpochDay(value.longValue());
@@ -125,7 +156,7 @@ public class StructuredRecord implements Serializable {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.TIME_MILLIS,
                                                                           LogicalType.TIME_MICROS));
-    Object val = fields.get(fieldName);
+    Object val = getValue(fieldName);
     if (val == null || logicalTypeSchema == null) {
       return null;
     }
@@ -182,7 +213,7 @@ public class StructuredRecord implements Serializable {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.TIMESTAMP_MILLIS,
                                                                           LogicalType.TIMESTAMP_MICROS));
-    Object val = fields.get(fieldName);
+    Object val = getValue(fieldName);
     if (val == null || logicalTypeSchema == null) {
       return null;
     }
@@ -213,7 +244,7 @@ public class StructuredRecord implements Serializable {
   public BigDecimal getDecimal(String fieldName) {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.DECIMAL));
-    Object value = fields.get(fieldName);
+    Object value = getValue(fieldName);
     if (value == null || logicalTypeSchema == null) {
       return null;
     }
@@ -242,7 +273,7 @@ public class StructuredRecord implements Serializable {
   public LocalDateTime getDateTime(String fieldName) {
     Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getField(fieldName),
                                                                EnumSet.of(LogicalType.DATETIME));
-    Object value = fields.get(fieldName);
+    Object value = getValue(fieldName);
     if (value == null || logicalTypeSchema == null) {
       return null;
     }
@@ -272,6 +303,15 @@ public class StructuredRecord implements Serializable {
     return ZonedDateTime.ofInstant(instant, zoneId);
   }
 
+  /**
+   * Returns the value of the field with the given name, or {@code null} if there is no such field.
+   */
+  @Nullable
+  private Object getValue(String fieldName) {
+    int fieldIndex = schema.getFieldIndex(fieldName);
+    return fieldIndex < 0 ? null : values[fieldIndex];
+  }
+
   /**
    * Validates and returns the underlying {@link LogicalType} Schema of the given {@link Schema.Field}.
    *
@@ -351,11 +391,12 @@ public class StructuredRecord implements Serializable {
    */
   public static class Builder {
     private final Schema schema;
-    private Map<String, Object> fields;
+    private final Object[] values;
 
     private Builder(Schema schema) {
       this.schema = schema;
-      this.fields = new HashMap<>();
+      this.values = new Object[schema.getFields().size()];
+      Arrays.fill(values, NOT_SET);
     }
 
     /**
@@ -368,8 +409,7 @@ public class StructuredRecord implements Serializable {
      *                                   value is given
      */
     public Builder set(String fieldName, @Nullable Object value) {
-      validateAndGetField(fieldName, value);
-      fields.put(fieldName, value);
+      values[validateAndGetFieldIndex(fieldName, value)] = value;
       return this;
     }
 
@@ -383,13 +423,14 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided date is an invalid date
      */
     public Builder setDate(String fieldName, @Nullable LocalDate localDate) {
-      validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, localDate), EnumSet.of(LogicalType.DATE));
+      int fieldIndex = validateAndGetFieldIndex(fieldName, localDate);
+      validateAndGetLogicalTypeSchema(schema.getFields().get(fieldIndex), EnumSet.of(LogicalType.DATE));
       if (localDate == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
       try {
-        fields.put(fieldName, Math.toIntExact(localDate.toEpochDay()));
+        values[fieldIndex] = Math.toIntExact(localDate.toEpochDay());
       } catch (ArithmeticException e) {
         // Highest integer is 2,147,483,647 which is Jan 1 2038.
         throw new UnexpectedFormatException(String.format("Field %s was set to a date that is too large." +
@@ -408,12 +449,13 @@ public class StructuredRecord implements Serializable {
      *                                   value is given
      */
     public Builder setTime(String fieldName, @Nullable LocalTime localTime) {
-      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, localTime),
+      int fieldIndex = validateAndGetFieldIndex(fieldName, localTime);
+      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getFields().get(fieldIndex),
                                                                  EnumSet.of(LogicalType.TIME_MILLIS,
                                                                             LogicalType.TIME_MICROS));
 
       if (localTime == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
 
@@ -422,7 +464,7 @@ public class StructuredRecord implements Serializable {
       if (logicalTypeSchema.getLogicalType() == LogicalType.TIME_MILLIS) {
         try {
           int millis = Math.toIntExact(TimeUnit.NANOSECONDS.toMillis(nanos));
-          fields.put(fieldName, millis);
+          values[fieldIndex] = millis;
         } catch (ArithmeticException e) {
           throw new UnexpectedFormatException(String.format("Field %s was set to a time that is too large.",
                                                             fieldName));
@@ -431,7 +473,7 @@ public class StructuredRecord implements Serializable {
       }
 
       long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
-      fields.put(fieldName, micros);
+      values[fieldIndex] = micros;
       return this;
     }
 
@@ -446,12 +488,13 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided date is an invalid timestamp
      */
     public Builder setTimestamp(String fieldName, @Nullable ZonedDateTime zonedDateTime) {
-      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, zonedDateTime),
+      int fieldIndex = validateAndGetFieldIndex(fieldName, zonedDateTime);
+      Schema logicalTypeSchema = validateAndGetLogicalTypeSchema(schema.getFields().get(fieldIndex),
                                                                  EnumSet.of(LogicalType.TIMESTAMP_MILLIS,
                                                                             LogicalType.TIMESTAMP_MICROS));
 
       if (zonedDateTime == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
 
@@ -460,13 +503,13 @@ public class StructuredRecord implements Serializable {
         if (logicalTypeSchema.getLogicalType() == LogicalType.TIMESTAMP_MILLIS) {
           long millis = TimeUnit.SECONDS.toMillis(instant.getEpochSecond());
           long tsMillis = Math.addExact(millis, TimeUnit.NANOSECONDS.toMillis(instant.getNano()));
-          fields.put(fieldName, tsMillis);
+          values[fieldIndex] = tsMillis;
           return this;
         }
 
         long micros = TimeUnit.SECONDS.toMicros(instant.getEpochSecond());
         long tsMicros = Math.addExact(micros, TimeUnit.NANOSECONDS.toMicros(instant.getNano()));
-        fields.put(fieldName, tsMicros);
+        values[fieldIndex] = tsMicros;
         return this;
       } catch (ArithmeticException e) {
         throw new UnexpectedFormatException(String.format("Field %s was set to a timestamp that is too large.",
@@ -485,10 +528,11 @@ public class StructuredRecord implements Serializable {
      *                                   value is given or if the provided decimal is invalid
      */
     public Builder setDecimal(String fieldName, @Nullable BigDecimal decimal) {
-      Schema logicalSchema = validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, decimal),
+      int fieldIndex = validateAndGetFieldIndex(fieldName, decimal);
+      Schema logicalSchema = validateAndGetLogicalTypeSchema(schema.getFields().get(fieldIndex),
                                                              EnumSet.of(LogicalType.DECIMAL));
       if (decimal == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
 
@@ -504,7 +548,7 @@ public class StructuredRecord implements Serializable {
                         fieldName, decimal.scale(), logicalSchema.getScale()));
       }
 
-      fields.put(fieldName, decimal.unscaledValue().toByteArray());
+      values[fieldIndex] = decimal.unscaledValue().toByteArray();
       return this;
     }
 
@@ -517,14 +561,14 @@ public class StructuredRecord implements Serializable {
      * @return {@link Builder} for the StructuredRecord
      */
     public Builder setDateTime(String fieldName, @Nullable LocalDateTime localDateTime) {
-      validateAndGetLogicalTypeSchema(validateAndGetField(fieldName, localDateTime),
-                                                             EnumSet.of(LogicalType.DATETIME));
+      int fieldIndex = validateAndGetFieldIndex(fieldName, localDateTime);
+      validateAndGetLogicalTypeSchema(schema.getFields().get(fieldIndex), EnumSet.of(LogicalType.DATETIME));
       if (localDateTime == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
       // Save as ISO-8601 format without the offset
-      fields.put(fieldName, localDateTime.format(DateTimeFormatter.ISO_DATE_TIME));
+      values[fieldIndex] = localDateTime.format(DateTimeFormatter.ISO_DATE_TIME);
       return this;
     }
 
@@ -564,19 +608,20 @@ public class StructuredRecord implements Serializable {
     @Deprecated
     public Builder convertAndSet(String fieldName, @Nullable Date date,
                                  @Nullable DateFormat dateFormat) throws UnexpectedFormatException {
-      Schema.Field field = validateAndGetField(fieldName, date);
+      int fieldIndex = validateAndGetFieldIndex(fieldName, date);
+      Schema.Field field = schema.getFields().get(fieldIndex);
       boolean isNullable = field.getSchema().isNullable();
       if (isNullable && date == null) {
-        fields.put(fieldName, null);
+        values[fieldIndex] = null;
         return this;
       }
 
       Schema.Type fieldType = isNullable ? field.getSchema().getNonNullable().getType() : field.getSchema().getType();
       if (fieldType == Schema.Type.LONG) {
-        fields.put(fieldName, date.getTime());
+        values[fieldIndex] = date.getTime();
       } else if (fieldType == Schema.Type.STRING) {
         DateFormat format = dateFormat == null ? DEFAULT_FORMAT : dateFormat;
-        fields.put(fieldName, format.format(date));
+        values[fieldIndex] = format.format(date);
       } else {
         throw new UnexpectedFormatException("Date must be either a long or a string, not a " + fieldType);
       }
@@ -594,8 +639,8 @@ public class StructuredRecord implements Serializable {
      *                                   value is given, or the string cannot be converted to the type for the field
      */
     public Builder convertAndSet(String fieldName, @Nullable String strVal) throws UnexpectedFormatException {
-      Schema.Field field = validateAndGetField(fieldName, strVal);
-      fields.put(fieldName, convertString(field.getSchema(), strVal));
+      int fieldIndex = validateAndGetFieldIndex(fieldName, strVal);
+      values[fieldIndex] = convertString(schema.getFields().get(fieldIndex).getSchema(), strVal);
       return this;
     }
 
@@ -607,19 +652,19 @@ public class StructuredRecord implements Serializable {
      */
     public StructuredRecord build() throws UnexpectedFormatException {
       // check that all non-nullable fields have a value.
-      for (Schema.Field field : schema.getFields()) {
-        String fieldName = field.getName();
-        if (!fields.containsKey(fieldName)) {
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] == NOT_SET) {
+          Schema.Field field = schema.getFields().get(i);
           // if the field is not nullable and there is no value set for the field, this is invalid.
           if (!field.getSchema().isNullable()) {
-            throw new UnexpectedFormatException("Field " + fieldName + " must contain a value.");
+            throw new UnexpectedFormatException("Field " + field.getName() + " must contain a value.");
           } else {
             // otherwise, set the value for the field to null
-            fields.put(fieldName, null);
+            values[i] = null;
           }
         }
       }
-      return new StructuredRecord(schema, fields);
+      return new StructuredRecord(schema, values);
     }
 
     private Object convertString(Schema schema, String strVal) throws UnexpectedFormatException {
@@ -661,27 +706,27 @@ public class StructuredRecord implements Serializable {
       }
     }
 
-    private Schema.Field validateAndGetField(String fieldName, Object val) {
-      Schema.Field field = schema.getField(fieldName);
-      if (field == null) {
+    private int validateAndGetFieldIndex(String fieldName, Object val) {
+      int fieldIndex = schema.getFieldIndex(fieldName);
+      if (fieldIndex < 0) {
         throw new UnexpectedFormatException("field " + fieldName + " is not in the schema.");
       }
-      Schema fieldSchema = field.getSchema();
       if (val == null) {
+        Schema fieldSchema = schema.getFields().get(fieldIndex).getSchema();
         if (fieldSchema.getType() == Schema.Type.NULL) {
-          return field;
+          return fieldIndex;
         }
         if (fieldSchema.getType() != Schema.Type.UNION) {
           throw new UnexpectedFormatException("field " + fieldName + " cannot be set to a null value.");
         }
         for (Schema unionSchema : fieldSchema.getUnionSchemas()) {
           if (unionSchema.getType() == Schema.Type.NULL) {
-            return field;
+            return fieldIndex;
           }
         }
         throw new UnexpectedFormatException("field " + fieldName + " cannot be set to a null value.");
       }
-      return field;
+      return fieldIndex;
     }
   }
 
@@ -696,12 +741,34 @@ public class StructuredRecord implements Serializable {
 
     StructuredRecord that = (StructuredRecord) o;
 
-    return Objects.equals(schema, that.schema) && Objects.equals(fields, that.fields);
+    return Objects.equals(schema, that.schema) && Arrays.equals(values, that.values);
 
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(schema, fields);
+    return 31 * Objects.hashCode(schema) + Arrays.hashCode(values);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    Map<String, Object> fields = new HashMap<>();
+    for (int i = 0; i < values.length; i++) {
+      fields.put(schema.getFields().get(i).getName(), values[i]);
+    }
+    ObjectOutputStream.PutField putField = out.putFields();
+    putField.put("schema", schema);
+    putField.put("fields", fields);
+    out.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    ObjectInputStream.GetField getField = in.readFields();
+    schema = SchemaCache.intern((Schema) getField.get("schema", null));
+    Map<String, Object> fields = (Map<String, Object>) getField.get("fields", null);
+    values = new Object[schema.getFields().size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = fields.get(schema.getFields().get(i).getName());
+    }
   }
 }
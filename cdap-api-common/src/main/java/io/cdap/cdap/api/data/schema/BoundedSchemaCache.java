@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.data.schema;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A bounded cache of {@link Schema} keyed by {@link SchemaHash}. Lookups don't acquire any lock. When the cache grows
+ * above the maximum size, entries that were not accessed since the last eviction are removed first (second chance
+ * eviction). The implementation only use pure Java class.
+ *
+ * This class is thread safe.
+ */
+@ThreadSafe
+final class BoundedSchemaCache {
+
+  private final ConcurrentMap<SchemaHash, Entry> entries;
+  private final int maxSize;
+  private final AtomicBoolean evicting;
+  private final LongAdder hits;
+  private final LongAdder misses;
+
+  /**
+   * Creates a {@link BoundedSchemaCache} that caches the given maximum number of schemas.
+   *
+   * @param maxSize maximum cache size
+   */
+  BoundedSchemaCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Maximum size of schema cache must be > 0");
+    }
+    this.entries = new ConcurrentHashMap<>();
+    this.maxSize = maxSize;
+    this.evicting = new AtomicBoolean();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * Returns the cached schema that has the same hash as the given schema, or caches the given schema if there is
+   * none.
+   *
+   * @param schema the schema to lookup
+   * @return either the cached schema or the given schema
+   */
+  Schema intern(Schema schema) {
+    return computeIfAbsent(schema.getSchemaHash(), () -> schema);
+  }
+
+  /**
+   * Returns the cached schema of the given hash, or computes and caches it if there is none.
+   *
+   * @param schemaHash the hash of the schema
+   * @param schemaSupplier the supplier of schema to put in the cache
+   * @return either the cached schema or the new schema
+   */
+  Schema computeIfAbsent(SchemaHash schemaHash, Supplier<Schema> schemaSupplier) {
+    Entry entry = entries.get(schemaHash);
+    if (entry != null) {
+      hits.increment();
+      return entry.access();
+    }
+
+    misses.increment();
+    entry = new Entry(schemaSupplier.get());
+    Entry existing = entries.putIfAbsent(schemaHash, entry);
+    if (existing != null) {
+      return existing.access();
+    }
+    // Mark the new entry as accessed before eviction, so that it is given a second chance by other threads
+    Schema result = entry.access();
+    evictIfNeeded(entry);
+    return result;
+  }
+
+  /**
+   * Returns the cached schema of the given hash.
+   *
+   * @return the cached schema or {@code null} if it is absent in the cache
+   */
+  @Nullable
+  Schema get(SchemaHash schemaHash) {
+    Entry entry = entries.get(schemaHash);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.access();
+  }
+
+  /**
+   * Returns the number of lookups that found the schema in the cache.
+   */
+  long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns the number of lookups that did not find the schema in the cache.
+   */
+  long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the number of schemas in the cache.
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Removes entries until the cache is not larger than the maximum size. Only one thread performs eviction at a time,
+   * other threads just skip it. The size is checked again after the eviction completed, so that entries added by
+   * the skipping threads are not left over the maximum size.
+   *
+   * @param added the entry just added, which is never removed so that its schema stays cached after being returned
+   */
+  private void evictIfNeeded(Entry added) {
+    while (entries.size() > maxSize && evicting.compareAndSet(false, true)) {
+      try {
+        // In the first pass, entries that were accessed are given a second chance.
+        // In the second pass, entries are removed regardless.
+        for (int pass = 0; pass < 2 && entries.size() > maxSize; pass++) {
+          Iterator<Entry> iterator = entries.values().iterator();
+          while (iterator.hasNext() && entries.size() > maxSize) {
+            Entry entry = iterator.next();
+            if (entry == added) {
+              continue;
+            }
+            if (pass == 0 && entry.accessed) {
+              entry.accessed = false;
+            } else {
+              iterator.remove();
+            }
+          }
+        }
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  /**
+   * A cache entry with the access flag for eviction.
+   */
+  private static final class Entry {
+
+    private final Schema schema;
+    private volatile boolean accessed;
+
+    Entry(Schema schema) {
+      this.schema = schema;
+    }
+
+    Schema access() {
+      // Only write when needed to avoid contention on the entry among threads
+      if (!accessed) {
+        accessed = true;
+      }
+      return schema;
+    }
+  }
+}
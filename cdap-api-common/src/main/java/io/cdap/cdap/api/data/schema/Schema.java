@@ -607,6 +607,7 @@ public final class Schema implements Serializable {
   private final String recordName;
   private final Map<String, Field> fieldMap;
   private final List<Field> fields;
+  private final Map<String, Integer> fieldIndexes;
 
   private final List<Schema> unionSchemas;
 
@@ -644,6 +645,7 @@ public final class Schema implements Serializable {
     this.recordName = recordName;
     this.fieldMap = fieldMap == null ? null : copyFields(fieldMap);
     this.fields = this.fieldMap == null ? null : Collections.unmodifiableList(new ArrayList<>(this.fieldMap.values()));
+    this.fieldIndexes = this.fields == null ? null : createFieldIndexes(this.fields);
     this.unionSchemas = unionSchemas == null ? null : new ArrayList<>(unionSchemas);
     this.precision = precision;
     this.scale = scale;
@@ -794,6 +796,21 @@ public final class Schema implements Serializable {
     return ignoreCaseFieldMap.get(name.toLowerCase());
   }
 
+  /**
+   * Returns the position of the record {@link Field} of the given name in {@link #getFields()}.
+   *
+   * @param name Name of the field
+   * @return The position of the field or {@code -1} if there is no such field in this record
+   *         or this is not a {@link Type#RECORD RECORD} schema.
+   */
+  public int getFieldIndex(String name) {
+    if (fieldIndexes == null) {
+      return -1;
+    }
+    Integer index = fieldIndexes.get(name);
+    return index == null ? -1 : index;
+  }
+
   /**
    * @return An immutable {@link List} of schemas inside this union
    *         or {@code null} if this is not a {@link Type#UNION UNION} schema.
@@ -1077,6 +1094,17 @@ public final class Schema implements Serializable {
     return new ImmutableEntry<>(Collections.unmodifiableMap(forwardMap), Collections.unmodifiableMap(reverseMap));
   }
 
+  /**
+   * Creates a map from field name to the position of the field in the given list of fields.
+   */
+  private static Map<String, Integer> createFieldIndexes(List<Field> fields) {
+    Map<String, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < fields.size(); i++) {
+      indexes.put(fields.get(i).getName(), i);
+    }
+    return Collections.unmodifiableMap(indexes);
+  }
+
   /**
    * Helper method to encode this schema into json string.
    *
@@ -19,6 +19,7 @@ package io.cdap.cdap.api.data.schema;
 import io.cdap.cdap.internal.io.SchemaTypeAdapter;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Class that provides a JVM-singleton schema cache. There are two ways to use it:
@@ -33,17 +34,26 @@ import java.io.IOException;
  *   only for top level schemas for not to pollute cache.
  *   </li>
  * </ul>
+ * The maximum number of schemas in the cache can be set with the {@value #MAX_SIZE_PROPERTY} system property.
  */
 public class SchemaCache {
-  private static final LRUCache<String, Schema> SCHEMA_CACHE = new LRUCache<>(100);
+
+  /**
+   * System property for the maximum number of schemas in the cache.
+   */
+  public static final String MAX_SIZE_PROPERTY = "cdap.schema.cache.size";
+
+  private static final int DEFAULT_MAX_SIZE = 1000;
+  private static final BoundedSchemaCache SCHEMA_CACHE =
+    new BoundedSchemaCache(Math.max(1, Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)));
   private static final SchemaTypeAdapter SCHEMA_TYPE_ADAPTER = new SchemaTypeAdapter();
 
   public static final Schema intern(Schema schema) {
-    return SCHEMA_CACHE.putIfAbsent(schema.getSchemaHash().toString(), schema);
+    return SCHEMA_CACHE.intern(schema);
   }
 
   public static final Schema fromJson(String schemaHashStr, String json) {
-    return SCHEMA_CACHE.computeIfAbsent(schemaHashStr, () -> {
+    return SCHEMA_CACHE.computeIfAbsent(parseSchemaHash(schemaHashStr), () -> {
       try {
         return SCHEMA_TYPE_ADAPTER.fromJson(json);
       } catch (IOException e) {
@@ -51,4 +61,37 @@ public class SchemaCache {
       }
     });
   }
+
+  /**
+   * Returns the number of lookups that found the schema in the cache.
+   */
+  public static long getHitCount() {
+    return SCHEMA_CACHE.getHitCount();
+  }
+
+  /**
+   * Returns the number of lookups that did not find the schema in the cache.
+   */
+  public static long getMissCount() {
+    return SCHEMA_CACHE.getMissCount();
+  }
+
+  /**
+   * Parses the hex string returned by {@link SchemaHash#toString()}.
+   */
+  private static SchemaHash parseSchemaHash(String schemaHashStr) {
+    if (schemaHashStr.length() != 32) {
+      throw new IllegalArgumentException("Invalid schema hash " + schemaHashStr);
+    }
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(schemaHashStr.charAt(i * 2), 16);
+      int low = Character.digit(schemaHashStr.charAt(i * 2 + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IllegalArgumentException("Invalid schema hash " + schemaHashStr);
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return new SchemaHash(ByteBuffer.wrap(bytes));
+  }
 }
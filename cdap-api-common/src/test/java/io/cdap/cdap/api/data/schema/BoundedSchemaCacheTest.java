@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.data.schema;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for the {@link BoundedSchemaCache} class.
+ */
+public class BoundedSchemaCacheTest {
+
+  @Test
+  public void testIntern() {
+    BoundedSchemaCache cache = new BoundedSchemaCache(10);
+    Schema schema = createSchema(1);
+    Assert.assertSame(schema, cache.intern(schema));
+    Assert.assertSame(schema, cache.intern(createSchema(1)));
+    Assert.assertSame(schema, cache.computeIfAbsent(schema.getSchemaHash(), () -> createSchema(1)));
+    Assert.assertSame(schema, cache.get(createSchema(1).getSchemaHash()));
+    Assert.assertNull(cache.get(createSchema(2).getSchemaHash()));
+
+    Assert.assertEquals(2, cache.getMissCount());
+    Assert.assertEquals(3, cache.getHitCount());
+
+    // Interning the cached instance again is a hit
+    Assert.assertSame(schema, cache.intern(schema));
+    Assert.assertEquals(4, cache.getHitCount());
+  }
+
+  @Test
+  public void testInternEvictedInstance() {
+    BoundedSchemaCache cache = new BoundedSchemaCache(1);
+    Schema schema1 = cache.intern(createSchema(1));
+    Schema schema2 = cache.intern(createSchema(2));
+    Assert.assertNull(cache.get(schema1.getSchemaHash()));
+
+    // An instance that was returned by the cache before, but evicted since, is a miss and gets cached again
+    long misses = cache.getMissCount();
+    Assert.assertSame(schema1, cache.intern(schema1));
+    Assert.assertEquals(misses + 1, cache.getMissCount());
+    Assert.assertSame(schema1, cache.get(schema1.getSchemaHash()));
+    Assert.assertNull(cache.get(schema2.getSchemaHash()));
+  }
+
+  @Test
+  public void testEviction() {
+    BoundedSchemaCache cache = new BoundedSchemaCache(2);
+    Schema schema1 = cache.intern(createSchema(1));
+    Schema schema2 = cache.intern(createSchema(2));
+
+    // Both schema1 and schema2 were accessed, so one of them is evicted in the second pass,
+    // but never the schema just added
+    Schema schema3 = cache.intern(createSchema(3));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertSame(schema3, cache.get(schema3.getSchemaHash()));
+
+    // The remaining one of schema1 and schema2 was not accessed since the last eviction while schema3 was,
+    // so it is evicted in the first pass
+    Schema schema4 = cache.intern(createSchema(4));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNull(cache.get(schema1.getSchemaHash()));
+    Assert.assertNull(cache.get(schema2.getSchemaHash()));
+    Assert.assertSame(schema3, cache.get(schema3.getSchemaHash()));
+    Assert.assertSame(schema4, cache.get(schema4.getSchemaHash()));
+  }
+
+  @Test
+  public void testConcurrentIntern() throws Exception {
+    BoundedSchemaCache cache = new BoundedSchemaCache(5);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            Schema schema = createSchema(i % 10);
+            Assert.assertEquals(schema, cache.intern(schema));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertTrue(cache.size() <= 5);
+    Assert.assertEquals(4000, cache.getHitCount() + cache.getMissCount());
+  }
+
+  private Schema createSchema(int id) {
+    return Schema.recordOf("record" + id, Schema.Field.of("field", Schema.of(Schema.Type.STRING)));
+  }
+}
@@ -46,6 +46,12 @@ public interface SparkClientContext extends SchedulableProgramContext, RuntimeCo
   ClientLocalizationContext, Transactional, ServiceDiscoverer, PluginContext, WorkflowInfoProvider,
   SecureStore, MessagingContext, LineageRecorder, MetadataReader, MetadataWriter {
 
+  /**
+   * Name of the Spark configuration that contains a json array of record schemas. Records with those schemas are
+   * serialized with only the schema hash instead of the full schema when they are shuffled or cached.
+   */
+  String STRUCTURED_RECORD_SCHEMAS_CONF = "spark.cdap.structured.record.schemas";
+
   /**
    * @return The specification used to configure this {@link Spark} job instance.
    */
@@ -17,12 +17,15 @@
 package io.cdap.cdap.app.metrics;
 
 import com.google.common.collect.Sets;
+import io.cdap.cdap.api.metrics.BoundMetric;
 import io.cdap.cdap.api.metrics.Metrics;
 import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.Constants;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link Metrics} for user-defined metrics.
@@ -30,7 +33,12 @@ import java.util.Map;
  */
 public class ProgramUserMetrics implements Metrics {
 
+  // Maximum number of metric names to keep a BoundMetric for. Metrics beyond that, which usually means
+  // the names are generated from data, are recorded through the MetricsContext.
+  private static final int MAX_BOUND_METRICS = 1000;
+
   private final MetricsContext metricsContext;
+  private final Map<String, BoundMetric> boundMetrics;
 
   public ProgramUserMetrics(MetricsContext metricsContext) {
     this(metricsContext, true);
@@ -42,21 +50,32 @@ public class ProgramUserMetrics implements Metrics {
     } else {
       this.metricsContext = metricsContext;
     }
+    this.boundMetrics = new ConcurrentHashMap<>();
   }
 
   @Override
   public void count(String metricName, int delta) {
-    metricsContext.increment(metricName, delta);
+    countLong(metricName, delta);
   }
 
   @Override
   public void countLong(String metricName, long delta) {
-    metricsContext.increment(metricName, delta);
+    BoundMetric metric = getBoundMetric(metricName);
+    if (metric == null) {
+      metricsContext.increment(metricName, delta);
+    } else {
+      metric.increment(delta);
+    }
   }
 
   @Override
   public void gauge(String metricName, long value) {
-    metricsContext.gauge(metricName, value);
+    BoundMetric metric = getBoundMetric(metricName);
+    if (metric == null) {
+      metricsContext.gauge(metricName, value);
+    } else {
+      metric.gauge(value);
+    }
   }
 
   @Override
@@ -74,4 +93,13 @@ public class ProgramUserMetrics implements Metrics {
   public Map<String, String> getTags() {
     return metricsContext.getTags();
   }
+
+  @Nullable
+  private BoundMetric getBoundMetric(String metricName) {
+    BoundMetric metric = boundMetrics.get(metricName);
+    if (metric != null || boundMetrics.size() >= MAX_BOUND_METRICS) {
+      return metric;
+    }
+    return boundMetrics.computeIfAbsent(metricName, metricsContext::bind);
+  }
 }
@@ -89,6 +89,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -144,7 +145,7 @@ public class ProgramNotificationSubscriberService extends AbstractNotificationSu
     this.programLifecycleService = programLifecycleService;
     this.provisioningService = provisioningService;
     this.programStateWriter = programStateWriter;
-    this.tasks = new LinkedList<>();
+    this.tasks = new ConcurrentLinkedQueue<>();
     this.metricsCollectionService = metricsCollectionService;
     this.programCompletionNotifiers = Collections.emptySet();
     this.runRecordMonitorService = runRecordMonitorService;
@@ -207,6 +208,19 @@ public class ProgramNotificationSubscriberService extends AbstractNotificationSu
     getAppMetadataStore(context).persistSubscriberState(getTopicId().getTopic(), "", messageId);
   }
 
+  @Override
+  protected int getShardCount() {
+    return cConf.getInt(Constants.AppFabric.STATUS_EVENT_PROCESS_SHARDS);
+  }
+
+  @Nullable
+  @Override
+  protected Object getShardKey(Notification notification) {
+    // Shard by application, so that events of a workflow and the programs it runs are processed in order
+    String programRun = notification.getProperties().get(ProgramOptionConstants.PROGRAM_RUN_ID);
+    return programRun == null ? null : GSON.fromJson(programRun, ProgramRunId.class).getParent().getParent();
+  }
+
   @Override
   protected void processMessages(StructuredTableContext structuredTableContext,
                                  Iterator<ImmutablePair<String, Notification>> messages) throws Exception {
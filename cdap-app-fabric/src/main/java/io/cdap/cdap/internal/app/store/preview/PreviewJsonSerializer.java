@@ -18,10 +18,12 @@ package io.cdap.cdap.internal.app.store.preview;
 
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.format.io.JsonEncoder;
@@ -30,7 +32,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.lang.reflect.Type;
 
 /**
@@ -39,19 +40,28 @@ import java.lang.reflect.Type;
 public class PreviewJsonSerializer implements JsonSerializer<StructuredRecord> {
   private static final Logger LOG = LoggerFactory.getLogger(PreviewJsonSerializer.class);
   private static final JsonStructuredRecordDatumWriter JSON_DATUM_WRITER = new JsonStructuredRecordDatumWriter(true);
+  // Encodes the fields of a record directly to a JsonElement instead of going through an intermediate json string
+  private static final TypeAdapter<StructuredRecord> FIELDS_ADAPTER = new TypeAdapter<StructuredRecord>() {
+    @Override
+    public void write(JsonWriter out, StructuredRecord record) throws IOException {
+      JSON_DATUM_WRITER.encode(record, new JsonEncoder(out));
+    }
+
+    @Override
+    public StructuredRecord read(JsonReader in) {
+      throw new UnsupportedOperationException("Decoding of structured record is not supported");
+    }
+  };
 
   @Override
   public JsonElement serialize(StructuredRecord src, Type typeOfSrc, JsonSerializationContext context) {
-    StringWriter strWriter = new StringWriter();
-    try (JsonWriter writer = new JsonWriter(strWriter)) {
+    try {
       // serialize schema
       JsonObject jsonObj = new JsonObject();
       jsonObj.add("schema", context.serialize(src.getSchema()));
-      JsonEncoder encoder = new JsonEncoder(writer);
-      JSON_DATUM_WRITER.encode(src, encoder);
-      jsonObj.add("fields", new JsonParser().parse(strWriter.toString()));
+      jsonObj.add("fields", FIELDS_ADAPTER.toJsonTree(src));
       return jsonObj;
-    } catch (IOException e) {
+    } catch (JsonIOException e) {
       LOG.error("Error while serializing structured record {}", e.getMessage(), e);
     }
     return null;
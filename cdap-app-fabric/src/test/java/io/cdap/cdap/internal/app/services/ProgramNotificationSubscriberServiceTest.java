@@ -18,6 +18,7 @@ package io.cdap.cdap.internal.app.services;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
 import com.google.inject.Injector;
 import io.cdap.cdap.api.app.ApplicationSpecification;
 import io.cdap.cdap.api.artifact.ArtifactId;
@@ -46,10 +47,12 @@ import io.cdap.cdap.internal.app.runtime.workflow.WorkflowStateWriter;
 import io.cdap.cdap.internal.app.store.AppMetadataStore;
 import io.cdap.cdap.internal.app.store.RunRecordDetail;
 import io.cdap.cdap.internal.profile.ProfileService;
+import io.cdap.cdap.proto.Notification;
 import io.cdap.cdap.proto.ProgramRunClusterStatus;
 import io.cdap.cdap.proto.ProgramRunStatus;
 import io.cdap.cdap.proto.ProgramType;
 import io.cdap.cdap.proto.WorkflowNodeStateDetail;
+import io.cdap.cdap.proto.id.ApplicationId;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.ProfileId;
 import io.cdap.cdap.proto.id.ProgramId;
@@ -81,6 +84,7 @@ import java.util.concurrent.TimeoutException;
  */
 public class ProgramNotificationSubscriberServiceTest {
   private static final String SYSTEM_METRIC_PREFIX = "system.";
+  private static final Gson GSON = new Gson();
 
   private static Injector injector;
   private static CConfiguration cConf;
@@ -405,6 +409,36 @@ public class ProgramNotificationSubscriberServiceTest {
     heartbeatDatasetStatusCheck(stopTime, ProgramRunStatus.KILLED);
   }
 
+  @Test
+  public void testShardKeyByApplication() {
+    ProgramNotificationSubscriberService service = injector.getInstance(ProgramNotificationSubscriberService.class);
+
+    // Events of a workflow and the programs it runs must land in the same shard to be processed in order
+    ApplicationId appId = NamespaceId.DEFAULT.app("app");
+    Object workflowKey = service.getShardKey(createNotification(appId.program(ProgramType.WORKFLOW, "wf")));
+    Object sparkKey = service.getShardKey(createNotification(appId.program(ProgramType.SPARK, "s")));
+    Object mrKey = service.getShardKey(createNotification(appId.program(ProgramType.MAPREDUCE, "mr")));
+    Assert.assertNotNull(workflowKey);
+    Assert.assertEquals(workflowKey, sparkKey);
+    Assert.assertEquals(workflowKey, mrKey);
+    Assert.assertEquals(workflowKey.hashCode(), sparkKey.hashCode());
+
+    // Runs of a different application are keyed separately
+    ApplicationId otherAppId = NamespaceId.DEFAULT.app("other");
+    Assert.assertNotEquals(workflowKey,
+                           service.getShardKey(createNotification(otherAppId.program(ProgramType.WORKFLOW, "wf"))));
+
+    // Notifications without a program run go to the default shard
+    Assert.assertNull(service.getShardKey(new Notification(Notification.Type.PROGRAM_STATUS,
+                                                           Collections.emptyMap())));
+  }
+
+  private Notification createNotification(ProgramId programId) {
+    ProgramRunId programRunId = programId.run(RunIds.generate());
+    return new Notification(Notification.Type.PROGRAM_STATUS,
+                            ImmutableMap.of(ProgramOptionConstants.PROGRAM_RUN_ID, GSON.toJson(programRunId)));
+  }
+
   private void checkProgramStatus(ArtifactId artifactId, ProgramRunId runId, ProgramRunStatus expectedStatus)
     throws InterruptedException, ExecutionException, TimeoutException {
     Tasks.waitFor(expectedStatus, () -> TransactionRunners.run(transactionRunner, context -> {
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.app.store.preview;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.format.io.JsonEncoder;
+import io.cdap.cdap.format.io.JsonStructuredRecordDatumWriter;
+import io.cdap.cdap.internal.io.SchemaTypeAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for the {@link PreviewJsonSerializer}.
+ */
+public class PreviewJsonSerializerTest {
+
+  // Serialize nulls so that the null fields of the record are kept when the serialized record is copied by Gson
+  private static final Gson GSON = new GsonBuilder()
+    .serializeNulls()
+    .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+    .registerTypeAdapter(StructuredRecord.class, new PreviewJsonSerializer())
+    .create();
+
+  @Test
+  public void testSerialize() throws IOException {
+    Schema innerSchema = Schema.recordOf(
+      "inner",
+      Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("values", Schema.arrayOf(Schema.nullableOf(Schema.of(Schema.Type.LONG)))),
+      Schema.Field.of("props", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.DOUBLE))));
+    Schema schema = Schema.recordOf(
+      "outer",
+      Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("nullable", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("nullValue", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("bytes", Schema.of(Schema.Type.BYTES)),
+      Schema.Field.of("decimal", Schema.decimalOf(10, 2)),
+      Schema.Field.of("inner", Schema.nullableOf(innerSchema)));
+
+    StructuredRecord inner = StructuredRecord.builder(innerSchema)
+      .set("name", "né\"x")
+      .set("values", Arrays.asList(1L, null, 3L))
+      .set("props", Collections.singletonMap("k", 1.5d))
+      .build();
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("id", 3)
+      .set("nullable", "value")
+      .set("bytes", new byte[] { 1, 2, 3 })
+      .setDecimal("decimal", new BigDecimal("12.34"))
+      .set("inner", inner)
+      .build();
+
+    // The result must be the same as encoding the record to a json string and parsing it
+    StringWriter strWriter = new StringWriter();
+    try (JsonWriter writer = new JsonWriter(strWriter)) {
+      new JsonStructuredRecordDatumWriter(true).encode(record, new JsonEncoder(writer));
+    }
+    JsonObject expected = new JsonObject();
+    expected.add("schema", GSON.toJsonTree(schema));
+    expected.add("fields", new JsonParser().parse(strWriter.toString()));
+
+    JsonElement actual = GSON.toJsonTree(record);
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(GSON.toJson(expected), GSON.toJson(actual));
+  }
+}
@@ -17,13 +17,20 @@
 package io.cdap.cdap.etl.batch.connector;
 
 import io.cdap.cdap.api.data.batch.Output;
+import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.dataset.lib.FileSetArguments;
 import io.cdap.cdap.etl.api.batch.BatchSink;
 import io.cdap.cdap.etl.api.batch.BatchSinkContext;
 import io.cdap.cdap.etl.common.Constants;
+import io.cdap.cdap.format.StructuredRecordJsonWriter;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,6 +53,10 @@ import java.util.Map;
 public abstract class ConnectorSink<T> extends BatchSink<T, NullWritable, Text> {
   private final String datasetName;
   private final String phaseName;
+  private transient JsonBuffer jsonBuffer;
+  private transient StructuredRecordJsonWriter jsonWriter;
+  private transient StringWriter stringBuffer;
+  private transient StructuredRecordJsonWriter stringWriter;
 
   protected ConnectorSink(String datasetName, String phaseName) {
     this.datasetName = datasetName;
@@ -58,4 +69,58 @@ public abstract class ConnectorSink<T> extends BatchSink<T, NullWritable, Text>
     FileSetArguments.setOutputPath(arguments, Constants.Connector.DATA_DIR + "/" + phaseName);
     context.addOutput(Output.ofDataset(datasetName, arguments));
   }
+
+  /**
+   * Encodes the given record as json {@link Text}. The json is written to a buffer with a writer that are both
+   * reused across records, and is copied once into the {@link Text}. They are recreated after a failed write.
+   */
+  protected Text toJsonText(StructuredRecord record) throws IOException {
+    if (jsonWriter == null) {
+      jsonBuffer = new JsonBuffer();
+      jsonWriter = new StructuredRecordJsonWriter(new OutputStreamWriter(jsonBuffer, StandardCharsets.UTF_8));
+    }
+    jsonBuffer.reset();
+    try {
+      jsonWriter.write(record);
+    } catch (IOException | RuntimeException e) {
+      // The writer is left in the middle of the failed record, hence a new one is created for the next record
+      jsonBuffer = null;
+      jsonWriter = null;
+      throw e;
+    }
+    Text text = new Text();
+    jsonBuffer.copyTo(text);
+    return text;
+  }
+
+  /**
+   * Encodes the given record as a json string. The json is written to a buffer with a writer that are both
+   * reused across records. They are recreated after a failed write.
+   */
+  protected String toJsonString(StructuredRecord record) throws IOException {
+    if (stringWriter == null) {
+      stringBuffer = new StringWriter();
+      stringWriter = new StructuredRecordJsonWriter(stringBuffer);
+    }
+    stringBuffer.getBuffer().setLength(0);
+    try {
+      stringWriter.write(record);
+    } catch (IOException | RuntimeException e) {
+      // The writer is left in the middle of the failed record, hence a new one is created for the next record
+      stringBuffer = null;
+      stringWriter = null;
+      throw e;
+    }
+    return stringBuffer.toString();
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that copies its content to a {@link Text} without an intermediate array.
+   */
+  private static final class JsonBuffer extends ByteArrayOutputStream {
+
+    void copyTo(Text text) {
+      text.set(buf, 0, count);
+    }
+  }
 }
@@ -17,6 +17,8 @@
 package io.cdap.cdap.etl.batch.connector;
 
 import io.cdap.cdap.api.data.batch.Input;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.FileSet;
 import io.cdap.cdap.api.dataset.lib.FileSetArguments;
 import io.cdap.cdap.api.dataset.lib.FileSetProperties;
@@ -24,12 +26,15 @@ import io.cdap.cdap.api.workflow.WorkflowConfigurer;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.cdap.etl.common.Constants;
+import io.cdap.cdap.format.StructuredRecordStringConverter;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -74,4 +79,13 @@ public class ConnectorSource<T> extends BatchSource<LongWritable, Text, T> {
     context.setInput(Input.ofDataset(datasetName, arguments));
   }
 
+  /**
+   * Decodes a record of the given schema from the json {@link Text}, without decoding the text into a
+   * {@link String} first.
+   */
+  protected StructuredRecord fromJsonText(Text text, Schema schema) throws IOException {
+    return StructuredRecordStringConverter.fromJson(new ByteArrayInputStream(text.getBytes(), 0, text.getLength()),
+                                                    schema);
+  }
+
 }
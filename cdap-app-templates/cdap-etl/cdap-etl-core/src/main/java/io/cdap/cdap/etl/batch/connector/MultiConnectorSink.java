@@ -21,7 +21,6 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
 import io.cdap.cdap.etl.common.RecordInfo;
-import io.cdap.cdap.format.StructuredRecordStringConverter;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 
@@ -42,8 +41,7 @@ public class MultiConnectorSink extends ConnectorSink<RecordInfo<StructuredRecor
   public void transform(RecordInfo<StructuredRecord> input, Emitter<KeyValue<NullWritable, Text>> emitter)
     throws Exception {
     StructuredRecord modifiedRecord = modifyRecord(input);
-    emitter.emit(new KeyValue<>(NullWritable.get(),
-                                new Text(StructuredRecordStringConverter.toJsonString(modifiedRecord))));
+    emitter.emit(new KeyValue<>(NullWritable.get(), toJsonText(modifiedRecord)));
   }
 
   private StructuredRecord modifyRecord(RecordInfo<StructuredRecord> input) throws IOException {
@@ -53,7 +51,7 @@ public class MultiConnectorSink extends ConnectorSink<RecordInfo<StructuredRecor
       .set("stageName", stageName)
       .set("type", input.getType().name())
       .set("schema", inputSchema.toString())
-      .set("record", StructuredRecordStringConverter.toJsonString(input.getValue()))
+      .set("record", toJsonString(input.getValue()))
       .build();
   }
 }
@@ -50,15 +50,13 @@ public class MultiConnectorSource extends ConnectorSource<RecordInfo<StructuredR
   public void transform(KeyValue<LongWritable, Text> input,
                         Emitter<RecordInfo<StructuredRecord>> emitter) throws Exception {
     StructuredRecord output;
-    String inputStr = input.getValue().toString();
-    StructuredRecord recordWithSchema =
-      StructuredRecordStringConverter.fromJsonString(inputStr, RECORD_WITH_SCHEMA);
+    StructuredRecord recordWithSchema = fromJsonText(input.getValue(), RECORD_WITH_SCHEMA);
     String stageName = recordWithSchema.get("stageName");
     if (schema == null) {
       Schema outputSchema = Schema.parseJson((String) recordWithSchema.get("schema"));
       output = StructuredRecordStringConverter.fromJsonString((String) recordWithSchema.get("record"), outputSchema);
     } else {
-      output = StructuredRecordStringConverter.fromJsonString(inputStr, schema);
+      output = fromJsonText(input.getValue(), schema);
     }
     RecordType recordType = RecordType.valueOf((String) recordWithSchema.get("type"));
     emitter.emit(RecordInfo.builder(output, stageName, recordType).build());
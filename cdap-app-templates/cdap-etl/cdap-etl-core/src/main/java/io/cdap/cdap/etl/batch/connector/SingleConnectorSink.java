@@ -20,7 +20,6 @@ import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
-import io.cdap.cdap.format.StructuredRecordStringConverter;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 
@@ -40,15 +39,14 @@ public class SingleConnectorSink extends ConnectorSink<StructuredRecord> {
   public void transform(StructuredRecord input, Emitter<KeyValue<NullWritable, Text>> emitter)
     throws Exception {
     StructuredRecord modifiedRecord = modifyRecord(input);
-    emitter.emit(new KeyValue<>(NullWritable.get(),
-                                new Text(StructuredRecordStringConverter.toJsonString(modifiedRecord))));
+    emitter.emit(new KeyValue<>(NullWritable.get(), toJsonText(modifiedRecord)));
   }
 
   private StructuredRecord modifyRecord(StructuredRecord input) throws IOException {
     Schema inputSchema = input.getSchema();
     return StructuredRecord.builder(SingleConnectorSource.RECORD_WITH_SCHEMA)
       .set("schema", inputSchema.toString())
-      .set("record", StructuredRecordStringConverter.toJsonString(input))
+      .set("record", toJsonString(input))
       .build();
   }
 }
@@ -46,14 +46,12 @@ public class SingleConnectorSource extends ConnectorSource<StructuredRecord> {
   public void transform(KeyValue<LongWritable, Text> input,
                         Emitter<StructuredRecord> emitter) throws Exception {
     StructuredRecord output;
-    String inputStr = input.getValue().toString();
-    StructuredRecord recordWithSchema =
-      StructuredRecordStringConverter.fromJsonString(inputStr, RECORD_WITH_SCHEMA);
+    StructuredRecord recordWithSchema = fromJsonText(input.getValue(), RECORD_WITH_SCHEMA);
     if (schema == null) {
       Schema outputSchema = Schema.parseJson((String) recordWithSchema.get("schema"));
       output = StructuredRecordStringConverter.fromJsonString((String) recordWithSchema.get("record"), outputSchema);
     } else {
-      output = StructuredRecordStringConverter.fromJsonString(inputStr, schema);
+      output = fromJsonText(input.getValue(), schema);
     }
     emitter.emit(output);
   }
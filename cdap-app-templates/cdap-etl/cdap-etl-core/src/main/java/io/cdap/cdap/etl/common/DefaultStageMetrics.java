@@ -27,6 +27,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Wrapper around the {@link Metrics} instance from CDAP that prefixes metric names with the ETL context the metric
@@ -34,9 +35,14 @@ import java.util.concurrent.Callable;
  */
 public class DefaultStageMetrics implements StageMetrics, Externalizable {
 
+  // Maximum number of prefixed metric names to cache
+  private static final int MAX_CACHED_NAMES = 1000;
+
   private Metrics metrics;
   private String prefix;
   private transient Caller caller;
+  // Stage metrics are usually emitted per record. Caching the prefixed names avoids concatenating them every time.
+  private final transient Map<String, String> prefixedNames = new ConcurrentHashMap<>();
 
   // Only used by Externalizable
   public DefaultStageMetrics() {
@@ -54,7 +60,7 @@ public class DefaultStageMetrics implements StageMetrics, Externalizable {
     caller.callUnchecked(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
-        metrics.count(prefix + metricName, delta);
+        metrics.count(getPrefixedName(metricName), delta);
         return null;
       }
     });
@@ -65,7 +71,7 @@ public class DefaultStageMetrics implements StageMetrics, Externalizable {
     caller.callUnchecked(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
-        metrics.countLong(prefix + metricName, delta);
+        metrics.countLong(getPrefixedName(metricName), delta);
         return null;
       }
     });
@@ -76,7 +82,7 @@ public class DefaultStageMetrics implements StageMetrics, Externalizable {
     caller.callUnchecked(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
-        metrics.gauge(prefix + metricName, value);
+        metrics.gauge(getPrefixedName(metricName), value);
         return null;
       }
     });
@@ -114,6 +120,18 @@ public class DefaultStageMetrics implements StageMetrics, Externalizable {
     });
   }
 
+  private String getPrefixedName(String metricName) {
+    String name = prefixedNames.get(metricName);
+    if (name != null) {
+      return name;
+    }
+    name = prefix + metricName;
+    if (prefixedNames.size() < MAX_CACHED_NAMES) {
+      prefixedNames.put(metricName, name);
+    }
+    return name;
+  }
+
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     out.writeObject(metrics);
@@ -19,6 +19,7 @@ package io.cdap.cdap.etl.spark.batch;
 import com.google.common.collect.SetMultimap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import io.cdap.cdap.api.ProgramStatus;
 import io.cdap.cdap.api.annotation.TransactionControl;
 import io.cdap.cdap.api.annotation.TransactionPolicy;
@@ -33,18 +34,23 @@ import io.cdap.cdap.etl.batch.BatchPhaseSpec;
 import io.cdap.cdap.etl.common.Constants;
 import io.cdap.cdap.etl.common.DefaultMacroEvaluator;
 import io.cdap.cdap.etl.common.FieldOperationTypeAdapter;
+import io.cdap.cdap.etl.common.PipelinePhase;
 import io.cdap.cdap.etl.common.PipelineRuntime;
 import io.cdap.cdap.etl.common.SetMultimapCodec;
 import io.cdap.cdap.etl.common.submit.CompositeFinisher;
 import io.cdap.cdap.etl.common.submit.Finisher;
+import io.cdap.cdap.etl.proto.v2.spec.StageSpec;
 import io.cdap.cdap.internal.io.SchemaTypeAdapter;
 import org.apache.spark.SparkConf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Type;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -59,6 +65,7 @@ public class ETLSpark extends AbstractSpark {
     .registerTypeAdapter(InputFormatProvider.class, new InputFormatProviderTypeAdapter())
     .registerTypeAdapter(FieldOperation.class, new FieldOperationTypeAdapter())
     .create();
+  private static final Type SCHEMAS_TYPE = new TypeToken<Set<Schema>>() { }.getType();
 
   private final BatchPhaseSpec phaseSpec;
   private final RuntimeConfigurer runtimeConfigurer;
@@ -114,6 +121,11 @@ public class ETLSpark extends AbstractSpark {
     Map<String, String> properties = context.getSpecification().getProperties();
     BatchPhaseSpec phaseSpec = GSON.fromJson(properties.get(Constants.PIPELINEID), BatchPhaseSpec.class);
 
+    // Register the stage schemas with the Kryo serializer so that records with those schemas only carry the schema
+    // hash instead of the full schema when they are shuffled or cached.
+    sparkConf.set(SparkClientContext.STRUCTURED_RECORD_SCHEMAS_CONF,
+                  GSON.toJson(getRecordSchemas(phaseSpec.getPhase()), SCHEMAS_TYPE));
+
     for (Map.Entry<String, String> pipelineProperty : phaseSpec.getPipelineProperties().entrySet()) {
       sparkConf.set(pipelineProperty.getKey(), pipelineProperty.getValue());
     }
@@ -134,4 +146,21 @@ public class ETLSpark extends AbstractSpark {
       finisher.onFinish(getContext().getState().getStatus() == ProgramStatus.COMPLETED);
     }
   }
+
+  /**
+   * Returns all the record schemas of the stage inputs and outputs in the given phase.
+   */
+  private static Set<Schema> getRecordSchemas(PipelinePhase phase) {
+    Set<Schema> schemas = new LinkedHashSet<>();
+    for (StageSpec stageSpec : phase) {
+      schemas.addAll(stageSpec.getInputSchemas().values());
+      schemas.add(stageSpec.getOutputSchema());
+      for (StageSpec.Port port : stageSpec.getOutputPorts().values()) {
+        schemas.add(port.getSchema());
+      }
+      schemas.add(stageSpec.getErrorSchema());
+    }
+    schemas.removeIf(schema -> schema == null || schema.getType() != Schema.Type.RECORD);
+    return schemas;
+  }
 }
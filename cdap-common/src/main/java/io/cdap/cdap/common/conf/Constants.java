@@ -226,6 +226,7 @@ public final class Constants {
     public static final String APP_SCHEDULER_QUEUE = "apps.scheduler.queue";
     public static final String STATUS_EVENT_FETCH_SIZE = "app.program.status.event.fetch.size";
     public static final String STATUS_EVENT_POLL_DELAY_MILLIS = "app.program.status.event.poll.delay.millis";
+    public static final String STATUS_EVENT_PROCESS_SHARDS = "app.program.status.event.process.shards";
     public static final String MAPREDUCE_JOB_CLIENT_CONNECT_MAX_RETRIES = "mapreduce.jobclient.connect.max.retries";
     public static final String MAPREDUCE_INCLUDE_CUSTOM_CLASSES = "mapreduce.include.custom.format.classes";
     public static final String MAPREDUCE_STATUS_REPORT_INTERVAL_SECONDS = "mapreduce.status.report.interval.seconds";
@@ -617,6 +618,15 @@ public final class Constants {
     // tables. Constant could be moved to Table after that is changed. See CDAP-1193 for more info
     public static final String TABLE_TX_DISABLED = "dataset.table.tx.disabled";
 
+    // Table dataset property and cConf setting that bound the size in bytes of the per-transaction cache of rows read
+    // from the persisted store. A value of zero disables the cache. A dataset property overrides the cConf setting.
+    public static final String TABLE_READ_CACHE_MAX_BYTES = "dataset.table.read.cache.max.bytes";
+
+    // Table dataset property and cConf setting for the size in bytes past which the in-memory buffer of changes of a
+    // transaction is spilled to local disk. A value of zero disables spilling. A dataset property overrides the cConf
+    // setting.
+    public static final String TABLE_BUFFER_SPILL_THRESHOLD_BYTES = "dataset.table.buffer.spill.threshold.bytes";
+
     public static final String CUSTOM_MODULE_ENABLED = "dataset.custom.module.enabled";
 
     public static final String DATA_DIR = "dataset.data.dir";
@@ -641,6 +651,8 @@ public final class Constants {
     public static final String DATA_STORAGE_SQL_PROPERTY_PREFIX = "data.storage.sql.jdbc.property.";
     public static final String DATA_STORAGE_SQL_CONNECTION_SIZE = "data.storage.sql.jdbc.connection.pool.size";
     public static final String DATA_STORAGE_SQL_SCAN_FETCH_SIZE_ROWS = "data.storage.sql.scan.size.rows";
+    public static final String DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE = "data.storage.sql.jdbc.statement.cache.size";
+    public static final String DATA_STORAGE_SQL_QUERY_CACHE_SIZE = "data.storage.sql.query.cache.size";
 
     // the db credentials properties should be from cdap-security.xml
     public static final String DATA_STORAGE_SQL_USERNAME = "data.storage.sql.jdbc.username";
@@ -794,8 +806,19 @@ public final class Constants {
 
     public static final String ENTITY_TABLE_NAME = "metrics.data.entity.tableName";
     public static final String METRICS_TABLE_WRITE_PARRALELISM = "metrics.data.table.write.parallelism";
+    public static final String METRICS_PRE_AGGREGATION_WINDOW_MS = "metrics.data.pre.aggregation.window.ms";
+    public static final String METRICS_PRE_AGGREGATION_MAX_MEASUREMENTS =
+      "metrics.data.pre.aggregation.max.measurements";
     public static final String METRICS_TABLE_PREFIX = "metrics.data.table.prefix";
+    public static final String METRICS_QUERY_PARALLELISM = "metrics.query.parallelism";
+    public static final String METRICS_BATCH_QUERY_PARALLELISM = "metrics.query.batch.parallelism";
+    public static final String METRICS_QUERY_CACHE_MAX_TIME_VALUES = "metrics.query.cache.max.time.values";
+    public static final String METRICS_QUERY_CACHE_CLOSED_LAG_SECONDS = "metrics.query.cache.closed.lag.seconds";
     public static final String TIME_SERIES_TABLE_ROLL_TIME = "metrics.data.table.ts.rollTime";
+    // Key prefix for block size. The actual key is suffixed by the table resolution.
+    public static final String TIME_SERIES_TABLE_BLOCK_SIZE = "metrics.data.table.ts.block.size";
+    public static final String TIME_SERIES_TABLE_BLOCK_SEAL_DELAY_SECONDS =
+      "metrics.data.table.ts.block.seal.delay.seconds";
 
     public static final String COARSE_LAG_FACTOR = "metrics.data.coarse.lag.factor";
     public static final String COARSE_ROUND_FACTOR = "metrics.data.coarse.round.factor";
@@ -973,6 +996,8 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String READ_CACHE_HIT_COUNT = "dataset.store.read.cache.hits";
+        public static final String READ_CACHE_MISS_COUNT = "dataset.store.read.cache.misses";
       }
 
       /**
@@ -1074,6 +1099,8 @@ public final class Constants {
       public static final String ACTIVE_CONNECTIONS = "structured.table.connection.active";
       public static final String IDLE_CONNECTIONS = "structured.table.connection.idle";
       public static final String ERROR_CONNECTIONS = "structured.table.connection.error";
+      public static final String QUERY_CACHE_HIT = "structured.table.query.cache.hit";
+      public static final String QUERY_CACHE_MISS = "structured.table.query.cache.miss";
     }
 
     /**
@@ -1729,8 +1756,14 @@ public final class Constants {
     public static final String LOCAL_DATA_DIR = "messaging.local.data.dir";
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
     public static final String LOCAL_DATA_PARTITION_SECONDS = "messaging.local.data.partition.secs";
+    public static final String LOCAL_DATA_MERGED_PARTITION_SECONDS = "messaging.local.data.merged.partition.secs";
 
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
+    public static final String CACHE_TYPE = "messaging.cache.type";
+    public static final String CACHE_SEGMENTS = "messaging.cache.segments";
+
+    public static final String GROUP_COMMIT_MAX_BATCH_BYTES = "messaging.group.commit.max.batch.bytes";
+    public static final String GROUP_COMMIT_LINGER_MICROS = "messaging.group.commit.linger.micros";
 
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
@@ -1750,7 +1783,10 @@ public final class Constants {
     public static final String HTTP_SERVER_EXECUTOR_THREADS = "messaging.http.server.executor.threads";
     public static final String HTTP_SERVER_MAX_REQUEST_SIZE_MB = "messaging.http.server.max.request.size.mb";
     public static final String HTTP_SERVER_CONSUME_CHUNK_SIZE = "messaging.http.server.consume.chunk.size";
+    public static final String HTTP_SERVER_MAX_POLL_TIMEOUT_MS = "messaging.http.server.max.poll.timeout.ms";
+    public static final String HTTP_SERVER_LONG_POLL_THREADS = "messaging.http.server.long.poll.threads";
     public static final String HTTP_COMPRESS_PAYLOAD = "messaging.http.compress.payload";
+    public static final String HTTP_COMPRESSION_CODEC = "messaging.http.compression.codec";
 
     // Distributed mode related configurations
     public static final String HA_FENCING_DELAY_SECONDS = "messaging.ha.fencing.delay.seconds";
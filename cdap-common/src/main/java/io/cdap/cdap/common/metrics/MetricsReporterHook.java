@@ -16,11 +16,9 @@
 
 package io.cdap.cdap.common.metrics;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import io.cdap.cdap.api.feature.FeatureFlagsProvider;
+import io.cdap.cdap.api.metrics.BoundMetric;
 import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.CConfiguration;
@@ -37,7 +35,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Records gateway requests/response metrics.
@@ -47,7 +46,9 @@ public class MetricsReporterHook extends AbstractHandlerHook {
   private static final String LATENCY_METRIC_NAME = "response.latency";
 
   private final String serviceName;
-  private final LoadingCache<Map<String, String>, MetricsContext> collectorCache;
+  private final MetricsCollectionService metricsCollectionService;
+  // Metrics by handler name and then by method name. Both are bounded by the handlers of the service.
+  private final ConcurrentMap<String, ConcurrentMap<String, HandlerMetrics>> handlerMetrics;
 
   private final FeatureFlagsProvider featureFlagsProvider;
 
@@ -55,28 +56,17 @@ public class MetricsReporterHook extends AbstractHandlerHook {
                              MetricsCollectionService metricsCollectionService, String serviceName) {
     this.serviceName = serviceName;
     this.featureFlagsProvider = new DefaultFeatureFlagsProvider(cConf);
-    if (metricsCollectionService != null) {
-      this.collectorCache = CacheBuilder.newBuilder()
-        .expireAfterAccess(1, TimeUnit.HOURS)
-        .build(new CacheLoader<Map<String, String>, MetricsContext>() {
-          @Override
-          public MetricsContext load(Map<String, String> key) {
-            return metricsCollectionService.getContext(key);
-          }
-        });
-    } else {
-      collectorCache = null;
-    }
+    this.metricsCollectionService = metricsCollectionService;
+    this.handlerMetrics = new ConcurrentHashMap<>();
   }
 
   @Override
   public boolean preCall(HttpRequest request, HttpResponder responder, HandlerInfo handlerInfo) {
-    if (collectorCache == null) {
+    if (metricsCollectionService == null) {
       return true;
     }
     try {
-      MetricsContext collector = collectorCache.get(createContext(handlerInfo));
-      collector.increment("request.received", 1);
+      getHandlerMetrics(handlerInfo).requestReceived.increment(1);
       request.headers().add(HttpHeaderNames.CDAP_REQ_TIMESTAMP_HDR, System.nanoTime());
     } catch (Throwable e) {
       LOG.error("Got exception while getting collector", e);
@@ -86,38 +76,21 @@ public class MetricsReporterHook extends AbstractHandlerHook {
 
   @Override
   public void postCall(HttpRequest request, HttpResponseStatus status, HandlerInfo handlerInfo) {
-    if (collectorCache == null) {
+    if (metricsCollectionService == null) {
       return;
     }
     try {
-      MetricsContext collector = collectorCache.get(createContext(handlerInfo));
-      String name;
-      int code = status.code();
-      if (code < 100) {
-        name = "unknown";
-      } else if (code < 200) {
-        name = "information";
-      } else if (code < 300) {
-        name = "successful";
-      } else if (code < 400) {
-        name = "redirect";
-      } else if (code < 500) {
-        name = "client-error";
-      } else if (code < 600) {
-        name = "server-error";
-      } else {
-        name = "unknown";
-      }
+      HandlerMetrics metrics = getHandlerMetrics(handlerInfo);
 
       // todo: report metrics broken down by status
-      collector.increment("response." + name, 1/*, "status:" + code*/);
+      metrics.getResponseMetric(status.code()).increment(1);
 
       // store response time metric
       long currTime = System.nanoTime();
       String startTimeStr = request.headers().get(HttpHeaderNames.CDAP_REQ_TIMESTAMP_HDR);
       if (startTimeStr != null) {
         long responseTimeNanos = currTime - Long.parseLong(startTimeStr);
-        collector.event(LATENCY_METRIC_NAME, responseTimeNanos);
+        metrics.latency.event(responseTimeNanos);
       }
 
     } catch (Throwable e) {
@@ -125,8 +98,20 @@ public class MetricsReporterHook extends AbstractHandlerHook {
     }
   }
 
+  private HandlerMetrics getHandlerMetrics(HandlerInfo handlerInfo) {
+    ConcurrentMap<String, HandlerMetrics> methodMetrics = handlerMetrics.get(handlerInfo.getHandlerName());
+    if (methodMetrics == null) {
+      methodMetrics = handlerMetrics.computeIfAbsent(handlerInfo.getHandlerName(), k -> new ConcurrentHashMap<>());
+    }
+    HandlerMetrics metrics = methodMetrics.get(handlerInfo.getMethodName());
+    if (metrics == null) {
+      metrics = methodMetrics.computeIfAbsent(handlerInfo.getMethodName(), k -> new HandlerMetrics(
+        metricsCollectionService.getContext(createContext(handlerInfo))));
+    }
+    return metrics;
+  }
+
   private Map<String, String> createContext(HandlerInfo handlerInfo) {
-    // todo: really inefficient to call this on the intense data flow path
     return ImmutableMap.of(
       Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getEntityName(),
       Constants.Metrics.Tag.COMPONENT, serviceName,
@@ -138,4 +123,46 @@ public class MetricsReporterHook extends AbstractHandlerHook {
     int ind = className.lastIndexOf('.');
     return className.substring(ind + 1);
   }
+
+  /**
+   * The metrics of one handler method.
+   */
+  private static final class HandlerMetrics {
+    private final BoundMetric requestReceived;
+    private final BoundMetric information;
+    private final BoundMetric successful;
+    private final BoundMetric redirect;
+    private final BoundMetric clientError;
+    private final BoundMetric serverError;
+    private final BoundMetric unknown;
+    private final BoundMetric latency;
+
+    private HandlerMetrics(MetricsContext context) {
+      this.requestReceived = context.bind("request.received");
+      this.information = context.bind("response.information");
+      this.successful = context.bind("response.successful");
+      this.redirect = context.bind("response.redirect");
+      this.clientError = context.bind("response.client-error");
+      this.serverError = context.bind("response.server-error");
+      this.unknown = context.bind("response.unknown");
+      this.latency = context.bind(LATENCY_METRIC_NAME);
+    }
+
+    private BoundMetric getResponseMetric(int code) {
+      if (code < 100) {
+        return unknown;
+      } else if (code < 200) {
+        return information;
+      } else if (code < 300) {
+        return successful;
+      } else if (code < 400) {
+        return redirect;
+      } else if (code < 500) {
+        return clientError;
+      } else if (code < 600) {
+        return serverError;
+      }
+      return unknown;
+    }
+  }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.io;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import io.cdap.cdap.format.io.StructuredRecordDatumReader;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
+import io.cdap.cdap.internal.asm.ByteCodeClassLoader;
+import io.cdap.cdap.internal.asm.ClassDefinition;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A factory for creating {@link StructuredRecordDatumWriter} and {@link StructuredRecordDatumReader} that are
+ * specialized for a given record {@link Schema} using ASM. It serves as an in memory cache of the generated instances,
+ * keyed by the {@link SchemaHash}. The instances returned are thread safe and reusable.
+ */
+public final class ASMStructuredRecordDatumFactory {
+
+  private static final int DEFAULT_MAX_SIZE = 1000;
+
+  private final Cache<SchemaHash, StructuredRecordDatumWriter> datumWriters;
+  private final Cache<SchemaHash, StructuredRecordDatumReader> datumReaders;
+
+  public ASMStructuredRecordDatumFactory() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates an instance that caches at most the given number of writers and readers.
+   *
+   * @param maxSize maximum number of writers and readers to cache
+   */
+  public ASMStructuredRecordDatumFactory(int maxSize) {
+    this.datumWriters = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.datumReaders = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Returns a {@link StructuredRecordDatumWriter} for encoding {@link StructuredRecord} of the given schema.
+   *
+   * @param schema the record schema
+   * @return a {@link StructuredRecordDatumWriter} specialized for the given schema
+   */
+  public StructuredRecordDatumWriter getDatumWriter(Schema schema) {
+    try {
+      return datumWriters.get(schema.getSchemaHash(), () -> {
+        StructuredRecordDatumWriterGenerator generator = new StructuredRecordDatumWriterGenerator();
+        ClassDefinition classDef = generator.generate(schema);
+        return (StructuredRecordDatumWriter) loadClass(classDef)
+          .getConstructor(Schema[].class, Schema.Field[].class)
+          .newInstance(generator.getSchemas(), generator.getFields());
+      });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Returns a {@link StructuredRecordDatumReader} for decoding {@link StructuredRecord} of the given schema.
+   *
+   * @param schema the record schema
+   * @return a {@link StructuredRecordDatumReader} specialized for the given schema
+   */
+  public StructuredRecordDatumReader getDatumReader(Schema schema) {
+    try {
+      return datumReaders.get(schema.getSchemaHash(), () -> {
+        StructuredRecordDatumReaderGenerator generator = new StructuredRecordDatumReaderGenerator();
+        ClassDefinition classDef = generator.generate(schema);
+        return (StructuredRecordDatumReader) loadClass(classDef)
+          .getConstructor(Schema[].class)
+          .newInstance((Object) generator.getSchemas());
+      });
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private Class<?> loadClass(ClassDefinition classDef) throws ClassNotFoundException {
+    // Each generated class has its own ClassLoader, so that it can be unloaded when it is evicted from the cache.
+    // The parent is the ClassLoader of the super class of the generated class.
+    ByteCodeClassLoader classLoader = new ByteCodeClassLoader(StructuredRecordDatumWriter.class.getClassLoader());
+    return classLoader.addClass(classDef).loadClass(classDef.getClassName());
+  }
+}
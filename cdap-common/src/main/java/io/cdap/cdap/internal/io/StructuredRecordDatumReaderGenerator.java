@@ -0,0 +1,352 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.io;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import io.cdap.cdap.common.io.Decoder;
+import io.cdap.cdap.format.io.StructuredRecordDatumReader;
+import io.cdap.cdap.internal.asm.ClassDefinition;
+import io.cdap.cdap.internal.asm.Methods;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.TableSwitchGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link StructuredRecordDatumReader} bytecodes specialized for one record {@link Schema}
+ * using ASM. The generated class has the field loop of each record schema unrolled, with values of primitive,
+ * string and record types, as well as the branches of unions of them, read directly from the {@link Decoder}.
+ * All the other values are decoded by the {@link StructuredRecordDatumReader} super class.
+ * The class generated will look like the following after decompile:
+ * <pre>
+ * {@code
+ *
+ *   public final class StructuredRecordDatumReader07D4F780E3528DB8C539EE5C21FDDEAE
+ *     extends StructuredRecordDatumReader {
+ *
+ *     private final Schema[] schemas;
+ *
+ *     public StructuredRecordDatumReader07D4F780E3528DB8C539EE5C21FDDEAE(Schema[] schemas) {
+ *       this.schemas = schemas;
+ *     }
+ *
+ *     public StructuredRecord read(Decoder decoder, Schema sourceSchema) throws IOException {
+ *       if (!this.schemas[0].equals(sourceSchema)) {
+ *         return super.read(decoder, sourceSchema);
+ *       }
+ *       return decodeRecord07D4F780E3528DB8C539EE5C21FDDEAE(decoder);
+ *     }
+ *
+ *     private StructuredRecord decodeRecord07D4F780E3528DB8C539EE5C21FDDEAE(Decoder decoder) throws IOException {
+ *       StructuredRecord.Builder builder = StructuredRecord.builder(this.schemas[0]);
+ *       builder.set("id", Integer.valueOf(decoder.readInt()));
+ *       Object value;
+ *       switch (decoder.readInt()) {
+ *         case 0:
+ *           value = decoder.readString();
+ *           break;
+ *         case 1:
+ *           decoder.readNull();
+ *           value = null;
+ *           break;
+ *         default:
+ *           value = decode(decoder, this.schemas[1].getUnionSchema(index));
+ *       }
+ *       builder.set("name", value);
+ *       return builder.build();
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+final class StructuredRecordDatumReaderGenerator {
+
+  private static final Type DECODER_TYPE = Type.getType(Decoder.class);
+  private static final Type BUILDER_TYPE = Type.getType(StructuredRecord.Builder.class);
+  private static final Type SCHEMA_TYPE = Type.getType(Schema.class);
+  private static final Type SCHEMA_ARRAY_TYPE = Type.getType(Schema[].class);
+
+  private final Map<SchemaHash, Method> decodeMethods = new HashMap<>();
+  private final List<Schema> schemas = new ArrayList<>();
+  private ClassWriter classWriter;
+  private Type classType;
+
+  /**
+   * Generates a {@link StructuredRecordDatumReader} class for decoding {@link StructuredRecord} of the given schema.
+   * The generated class has a constructor of signature {@code (Schema[])}, which should be called with the value
+   * returned by {@link #getSchemas()}.
+   *
+   * @param schema Schema of the record
+   * @return A {@link ClassDefinition} that contains generated class information.
+   */
+  ClassDefinition generate(Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD) {
+      throw new IllegalArgumentException("Expected schema of type RECORD. Got: " + schema.getType());
+    }
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+    String className = Type.getInternalName(StructuredRecordDatumReader.class) + schema.getSchemaHash();
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, className, null,
+                      Type.getInternalName(StructuredRecordDatumReader.class), null);
+
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, "schemas",
+                           SCHEMA_ARRAY_TYPE.getDescriptor(), null, null).visitEnd();
+
+    generateRead(schema);
+    generateConstructor();
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className);
+    // DEBUG block. Uncomment for debug
+//    io.cdap.cdap.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Returns the schemas referenced by the generated class.
+   */
+  Schema[] getSchemas() {
+    return schemas.toArray(new Schema[0]);
+  }
+
+  /**
+   * Generates the constructor with signature {@code (Schema[])}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", Schema[].class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super();
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(StructuredRecordDatumReader.class), getMethod(void.class, "<init>"));
+
+    // this.schemas = schemas;
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.putField(classType, "schemas", SCHEMA_ARRAY_TYPE);
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates the {@link StructuredRecordDatumReader#read(Decoder, Schema)} method. It calls the generated decode
+   * method if the source schema is the same as the one used for generating the class, otherwise it calls the super
+   * class.
+   */
+  private void generateRead(Schema schema) {
+    Method readMethod = getMethod(StructuredRecord.class, "read", Decoder.class, Schema.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, readMethod, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+
+    // Add the schema first so that it is always at index 0
+    int schemaIdx = addSchema(schema);
+
+    // if (!this.schemas[0].equals(sourceSchema)) { return super.read(decoder, sourceSchema); }
+    Label sameSchema = mg.newLabel();
+    loadSchema(mg, schemaIdx);
+    mg.loadArg(1);
+    mg.invokeVirtual(SCHEMA_TYPE, getMethod(boolean.class, "equals", Object.class));
+    mg.ifZCmp(GeneratorAdapter.NE, sameSchema);
+    mg.loadThis();
+    mg.loadArgs();
+    mg.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(StructuredRecordDatumReader.class),
+                       readMethod.getName(), readMethod.getDescriptor(), false);
+    mg.returnValue();
+
+    // return decodeRecord(decoder);
+    mg.mark(sameSchema);
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.invokeVirtual(classType, getDecodeRecordMethod(schema, schemaIdx));
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Returns the method for decoding a record of the given schema. The method is generated if it is not yet generated.
+   */
+  private Method getDecodeRecordMethod(Schema schema, int schemaIdx) {
+    Method method = decodeMethods.get(schema.getSchemaHash());
+    if (method != null) {
+      return method;
+    }
+
+    method = getMethod(StructuredRecord.class, "decodeRecord" + schema.getSchemaHash(), Decoder.class);
+    // Put the method into map first before generating the body in order to support recursive schema.
+    decodeMethods.put(schema.getSchemaHash(), method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+
+    // StructuredRecord.Builder builder = StructuredRecord.builder(this.schemas[idx]);
+    int builder = mg.newLocal(BUILDER_TYPE);
+    loadSchema(mg, schemaIdx);
+    mg.invokeStatic(Type.getType(StructuredRecord.class),
+                    getMethod(StructuredRecord.Builder.class, "builder", Schema.class));
+    mg.storeLocal(builder);
+
+    for (Schema.Field field : schema.getFields()) {
+      // builder.set(fieldName, value);
+      mg.loadLocal(builder);
+      mg.push(field.getName());
+      generateDecodeValue(mg, field.getSchema());
+      mg.invokeVirtual(BUILDER_TYPE, getMethod(StructuredRecord.Builder.class, "set", String.class, Object.class));
+      mg.pop();
+    }
+
+    // return builder.build();
+    mg.loadLocal(builder);
+    mg.invokeVirtual(BUILDER_TYPE, getMethod(StructuredRecord.class, "build"));
+    mg.returnValue();
+    mg.endMethod();
+    return method;
+  }
+
+  /**
+   * Generates code to decode a value of the given schema and leave it on the stack.
+   */
+  private void generateDecodeValue(GeneratorAdapter mg, Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        mg.loadArg(0);
+        mg.invokeInterface(DECODER_TYPE, getMethod(Object.class, "readNull"));
+        mg.pop();
+        mg.visitInsn(Opcodes.ACONST_NULL);
+        break;
+      case BOOLEAN:
+        readPrimitive(mg, "readBool", Type.BOOLEAN_TYPE);
+        break;
+      case INT:
+        readPrimitive(mg, "readInt", Type.INT_TYPE);
+        break;
+      case LONG:
+        readPrimitive(mg, "readLong", Type.LONG_TYPE);
+        break;
+      case FLOAT:
+        readPrimitive(mg, "readFloat", Type.FLOAT_TYPE);
+        break;
+      case DOUBLE:
+        readPrimitive(mg, "readDouble", Type.DOUBLE_TYPE);
+        break;
+      case STRING:
+        mg.loadArg(0);
+        mg.invokeInterface(DECODER_TYPE, getMethod(String.class, "readString"));
+        break;
+      case RECORD:
+        Method method = decodeMethods.get(schema.getSchemaHash());
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.invokeVirtual(classType, method == null ? getDecodeRecordMethod(schema, addSchema(schema)) : method);
+        break;
+      case UNION:
+        generateDecodeUnion(mg, schema);
+        break;
+      default:
+        // decode(decoder, this.schemas[idx]);
+        mg.loadThis();
+        mg.loadArg(0);
+        loadSchema(mg, addSchema(schema));
+        mg.invokeVirtual(classType, getMethod(Object.class, "decode", Decoder.class, Schema.class));
+    }
+  }
+
+  /**
+   * Generates code to decode a union value. It reads the union index, followed by a switch on the index for
+   * decoding the value of each schema in the union.
+   */
+  private void generateDecodeUnion(GeneratorAdapter mg, Schema schema) {
+    List<Schema> unionSchemas = schema.getUnionSchemas();
+    int index = mg.newLocal(Type.INT_TYPE);
+    int unionIdx = addSchema(schema);
+
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+    mg.storeLocal(index);
+
+    int[] keys = new int[unionSchemas.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+    }
+
+    Label end = mg.newLabel();
+    mg.loadLocal(index);
+    mg.tableSwitch(keys, new TableSwitchGenerator() {
+      @Override
+      public void generateCase(int key, Label caseEnd) {
+        generateDecodeValue(mg, unionSchemas.get(key));
+        mg.goTo(end);
+      }
+
+      @Override
+      public void generateDefault() {
+        // decode(decoder, this.schemas[idx].getUnionSchema(index));
+        // It is for raising the same error as the StructuredRecordDatumReader
+        mg.loadThis();
+        mg.loadArg(0);
+        loadSchema(mg, unionIdx);
+        mg.loadLocal(index);
+        mg.invokeVirtual(SCHEMA_TYPE, getMethod(Schema.class, "getUnionSchema", int.class));
+        mg.invokeVirtual(classType, getMethod(Object.class, "decode", Decoder.class, Schema.class));
+        mg.goTo(end);
+      }
+    });
+    mg.mark(end);
+  }
+
+  /**
+   * Generates code to read a primitive value from the decoder and box it.
+   */
+  private void readPrimitive(GeneratorAdapter mg, String readMethod, Type type) {
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, new Method(readMethod, type, new Type[0]));
+    mg.valueOf(type);
+  }
+
+  /**
+   * Generates code to load a schema from the schemas array field.
+   */
+  private void loadSchema(GeneratorAdapter mg, int idx) {
+    mg.loadThis();
+    mg.getField(classType, "schemas", SCHEMA_ARRAY_TYPE);
+    mg.push(idx);
+    mg.arrayLoad(SCHEMA_TYPE);
+  }
+
+  private int addSchema(Schema schema) {
+    schemas.add(schema);
+    return schemas.size() - 1;
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.internal.io;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import io.cdap.cdap.common.io.Encoder;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
+import io.cdap.cdap.internal.asm.ClassDefinition;
+import io.cdap.cdap.internal.asm.Methods;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link StructuredRecordDatumWriter} bytecodes specialized for one record {@link Schema}
+ * using ASM. Instead of walking the schema for every record, the generated class has the field loop of each record
+ * schema unrolled, with values of primitive, string and record types, as well as nullable unions of them, written
+ * directly to the {@link Encoder}. All the other values are encoded by the {@link StructuredRecordDatumWriter}
+ * super class, which is also used for values that don't match the schema, so that the errors raised are the same.
+ * The class generated will look like the following after decompile:
+ * <pre>
+ * {@code
+ *
+ *   public final class StructuredRecordDatumWriter07D4F780E3528DB8C539EE5C21FDDEAE
+ *     extends StructuredRecordDatumWriter {
+ *
+ *     private final Schema[] schemas;
+ *     private final Schema.Field[] fields;
+ *
+ *     public StructuredRecordDatumWriter07D4F780E3528DB8C539EE5C21FDDEAE(Schema[] schemas, Schema.Field[] fields) {
+ *       this.schemas = schemas;
+ *       this.fields = fields;
+ *     }
+ *
+ *     public void encode(StructuredRecord record, Encoder encoder) throws IOException {
+ *       encodeRecord07D4F780E3528DB8C539EE5C21FDDEAE(record, encoder);
+ *     }
+ *
+ *     private void encodeRecord07D4F780E3528DB8C539EE5C21FDDEAE(StructuredRecord record,
+ *                                                               Encoder encoder) throws IOException {
+ *       boolean sameSchema = this.schemas[0].equals(record.getSchema());
+ *       Object value = sameSchema ? record.get(0) : record.get("id");
+ *       if (value instanceof Integer) {
+ *         encoder.writeInt(((Integer) value).intValue());
+ *       } else {
+ *         encodeRecordField(encoder, this.fields[0], value);
+ *       }
+ *       value = sameSchema ? record.get(1) : record.get("name");
+ *       if (value == null) {
+ *         encoder.writeInt(1);
+ *         encoder.writeNull();
+ *       } else if (value instanceof String) {
+ *         encoder.writeInt(0);
+ *         encoder.writeString((String) value);
+ *       } else {
+ *         encodeRecordField(encoder, this.fields[1], value);
+ *       }
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+final class StructuredRecordDatumWriterGenerator {
+
+  private static final Type ENCODER_TYPE = Type.getType(Encoder.class);
+  private static final Type RECORD_TYPE = Type.getType(StructuredRecord.class);
+  private static final Type SCHEMA_TYPE = Type.getType(Schema.class);
+  private static final Type SCHEMA_ARRAY_TYPE = Type.getType(Schema[].class);
+  private static final Type FIELD_ARRAY_TYPE = Type.getType(Schema.Field[].class);
+
+  private final Map<SchemaHash, Method> encodeMethods = new HashMap<>();
+  private final List<Schema> schemas = new ArrayList<>();
+  private final List<Schema.Field> fields = new ArrayList<>();
+  private final Map<Schema.Field, Integer> fieldIndexes = new IdentityHashMap<>();
+  private ClassWriter classWriter;
+  private Type classType;
+
+  /**
+   * Generates a {@link StructuredRecordDatumWriter} class for encoding {@link StructuredRecord} of the given schema.
+   * The generated class has a constructor of signature {@code (Schema[], Schema.Field[])}, which should be called
+   * with the values returned by {@link #getSchemas()} and {@link #getFields()}.
+   *
+   * @param schema Schema of the record
+   * @return A {@link ClassDefinition} that contains generated class information.
+   */
+  ClassDefinition generate(Schema schema) {
+    if (schema.getType() != Schema.Type.RECORD) {
+      throw new IllegalArgumentException("Expected schema of type RECORD. Got: " + schema.getType());
+    }
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+    String className = Type.getInternalName(StructuredRecordDatumWriter.class) + schema.getSchemaHash();
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, className, null,
+                      Type.getInternalName(StructuredRecordDatumWriter.class), null);
+
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, "schemas",
+                           SCHEMA_ARRAY_TYPE.getDescriptor(), null, null).visitEnd();
+    classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, "fields",
+                           FIELD_ARRAY_TYPE.getDescriptor(), null, null).visitEnd();
+
+    generateEncode(schema);
+    generateConstructor();
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className);
+    // DEBUG block. Uncomment for debug
+//    io.cdap.cdap.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Returns the record schemas referenced by the generated class.
+   */
+  Schema[] getSchemas() {
+    return schemas.toArray(new Schema[0]);
+  }
+
+  /**
+   * Returns the record fields referenced by the generated class.
+   */
+  Schema.Field[] getFields() {
+    return fields.toArray(new Schema.Field[0]);
+  }
+
+  /**
+   * Generates the constructor with signature {@code (Schema[], Schema.Field[])}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", Schema[].class, Schema.Field[].class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super();
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(StructuredRecordDatumWriter.class), getMethod(void.class, "<init>"));
+
+    // this.schemas = schemas;
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.putField(classType, "schemas", SCHEMA_ARRAY_TYPE);
+
+    // this.fields = fields;
+    mg.loadThis();
+    mg.loadArg(1);
+    mg.putField(classType, "fields", FIELD_ARRAY_TYPE);
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates the {@link StructuredRecordDatumWriter#encode(StructuredRecord, Encoder)} method, which calls the
+   * generated encode method of the record schema.
+   */
+  private void generateEncode(Schema schema) {
+    Method encodeMethod = getMethod(void.class, "encode", StructuredRecord.class, Encoder.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, encodeMethod, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.loadArg(1);
+    mg.invokeVirtual(classType, getEncodeRecordMethod(schema));
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Returns the method for encoding a record of the given schema. The method is generated if it is not yet generated.
+   */
+  private Method getEncodeRecordMethod(Schema schema) {
+    Method method = encodeMethods.get(schema.getSchemaHash());
+    if (method != null) {
+      return method;
+    }
+
+    method = getMethod(void.class, "encodeRecord" + schema.getSchemaHash(), StructuredRecord.class, Encoder.class);
+    // Put the method into map first before generating the body in order to support recursive schema.
+    encodeMethods.put(schema.getSchemaHash(), method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+
+    // boolean sameSchema = this.schemas[idx].equals(record.getSchema());
+    int sameSchema = mg.newLocal(Type.BOOLEAN_TYPE);
+    loadArrayElement(mg, "schemas", SCHEMA_ARRAY_TYPE, addSchema(schema));
+    mg.loadArg(0);
+    mg.invokeVirtual(RECORD_TYPE, getMethod(Schema.class, "getSchema"));
+    mg.invokeVirtual(SCHEMA_TYPE, getMethod(boolean.class, "equals", Object.class));
+    mg.storeLocal(sameSchema);
+
+    int value = mg.newLocal(Type.getType(Object.class));
+    List<Schema.Field> recordFields = schema.getFields();
+    for (int i = 0; i < recordFields.size(); i++) {
+      Schema.Field field = recordFields.get(i);
+
+      // Object value = sameSchema ? record.get(i) : record.get(fieldName);
+      Label getByName = mg.newLabel();
+      Label valueLoaded = mg.newLabel();
+      mg.loadArg(0);
+      mg.loadLocal(sameSchema);
+      mg.ifZCmp(GeneratorAdapter.EQ, getByName);
+      mg.push(i);
+      mg.invokeVirtual(RECORD_TYPE, getMethod(Object.class, "get", int.class));
+      mg.goTo(valueLoaded);
+      mg.mark(getByName);
+      mg.push(field.getName());
+      mg.invokeVirtual(RECORD_TYPE, getMethod(Object.class, "get", String.class));
+      mg.mark(valueLoaded);
+      mg.storeLocal(value);
+
+      generateEncodeField(mg, field, value);
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+    return method;
+  }
+
+  /**
+   * Generates code for encoding a field value.
+   *
+   * @param mg Method body generator
+   * @param field The record field to encode
+   * @param value Local variable index of the field value
+   */
+  private void generateEncodeField(GeneratorAdapter mg, Schema.Field field, int value) {
+    Label fallback = mg.newLabel();
+    Label end = mg.newLabel();
+    Schema schema = field.getSchema();
+
+    if (schema.getType() == Schema.Type.UNION) {
+      // Only the first schema of each type in the union is used, which is the same as StructuredRecordDatumWriter
+      List<Schema> unionSchemas = schema.getUnionSchemas();
+      for (int i = 0; i < unionSchemas.size(); i++) {
+        Schema unionSchema = unionSchemas.get(i);
+        if (!isDirectEncode(unionSchema) || isTypeSeen(unionSchemas, i)) {
+          continue;
+        }
+        Label nextSchema = mg.newLabel();
+        generateTypeCheck(mg, unionSchema, value, nextSchema);
+        mg.loadArg(1);
+        mg.push(i);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeInt", int.class));
+        mg.pop();
+        generateEncodeValue(mg, unionSchema, value);
+        mg.goTo(end);
+        mg.mark(nextSchema);
+      }
+    } else if (isDirectEncode(schema)) {
+      generateTypeCheck(mg, schema, value, fallback);
+      generateEncodeValue(mg, schema, value);
+      mg.goTo(end);
+    }
+
+    // encodeRecordField(encoder, this.fields[idx], value);
+    mg.mark(fallback);
+    mg.loadThis();
+    mg.loadArg(1);
+    loadArrayElement(mg, "fields", FIELD_ARRAY_TYPE, addField(field));
+    mg.loadLocal(value);
+    mg.invokeVirtual(classType, getMethod(void.class, "encodeRecordField",
+                                          Encoder.class, Schema.Field.class, Object.class));
+    mg.mark(end);
+  }
+
+  /**
+   * Generates code to check if the value matches the given schema type. If it is not matching, jump to the given
+   * label.
+   */
+  private void generateTypeCheck(GeneratorAdapter mg, Schema schema, int value, Label notMatch) {
+    mg.loadLocal(value);
+    if (schema.getType() == Schema.Type.NULL) {
+      mg.ifNonNull(notMatch);
+      return;
+    }
+    mg.instanceOf(Type.getType(getValueClass(schema)));
+    mg.ifZCmp(GeneratorAdapter.EQ, notMatch);
+  }
+
+  /**
+   * Generates code to encode a value that matches the given schema type.
+   */
+  private void generateEncodeValue(GeneratorAdapter mg, Schema schema, int value) {
+    if (schema.getType() == Schema.Type.RECORD) {
+      mg.loadThis();
+      mg.loadLocal(value);
+      mg.checkCast(RECORD_TYPE);
+      mg.loadArg(1);
+      mg.invokeVirtual(classType, getEncodeRecordMethod(schema));
+      return;
+    }
+
+    mg.loadArg(1);
+    switch (schema.getType()) {
+      case NULL:
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeNull"));
+        break;
+      case BOOLEAN:
+        unbox(mg, value, Boolean.class, boolean.class);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeBool", boolean.class));
+        break;
+      case INT:
+        unbox(mg, value, Integer.class, int.class);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeInt", int.class));
+        break;
+      case LONG:
+        unbox(mg, value, Long.class, long.class);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeLong", long.class));
+        break;
+      case FLOAT:
+        unbox(mg, value, Float.class, float.class);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeFloat", float.class));
+        break;
+      case DOUBLE:
+        unbox(mg, value, Double.class, double.class);
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeDouble", double.class));
+        break;
+      case STRING:
+        mg.loadLocal(value);
+        mg.checkCast(Type.getType(String.class));
+        mg.invokeInterface(ENCODER_TYPE, getMethod(Encoder.class, "writeString", String.class));
+        break;
+      default:
+        // Should not happen, as it is guarded by isDirectEncode
+        throw new IllegalArgumentException("Unsupported schema type " + schema.getType());
+    }
+    mg.pop();
+  }
+
+  /**
+   * Generates code to load the given boxed value as primitive value on the stack.
+   */
+  private void unbox(GeneratorAdapter mg, int value, Class<?> boxedType, Class<?> primitiveType) {
+    mg.loadLocal(value);
+    mg.checkCast(Type.getType(boxedType));
+    mg.invokeVirtual(Type.getType(boxedType), getMethod(primitiveType, primitiveType.getName() + "Value"));
+  }
+
+  /**
+   * Generates code to load an element of an array field.
+   */
+  private void loadArrayElement(GeneratorAdapter mg, String fieldName, Type arrayType, int idx) {
+    mg.loadThis();
+    mg.getField(classType, fieldName, arrayType);
+    mg.push(idx);
+    mg.arrayLoad(arrayType.getElementType());
+  }
+
+  private int addSchema(Schema schema) {
+    schemas.add(schema);
+    return schemas.size() - 1;
+  }
+
+  private int addField(Schema.Field field) {
+    return fieldIndexes.computeIfAbsent(field, f -> {
+      fields.add(f);
+      return fields.size() - 1;
+    });
+  }
+
+  /**
+   * Returns {@code true} if a value of the given schema is encoded by the generated code directly.
+   */
+  private boolean isDirectEncode(Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+      case STRING:
+      case RECORD:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the type of the union schema at the given index appears earlier in the union.
+   */
+  private boolean isTypeSeen(List<Schema> unionSchemas, int idx) {
+    for (int i = 0; i < idx; i++) {
+      if (unionSchemas.get(i).getType() == unionSchemas.get(idx).getType()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the Java class of value for the given schema type. The mapping is the same as the one used by
+   * the {@link StructuredRecordDatumWriter} for finding the union schema.
+   */
+  private Class<?> getValueClass(Schema schema) {
+    switch (schema.getType()) {
+      case BOOLEAN:
+        return Boolean.class;
+      case INT:
+        return Integer.class;
+      case LONG:
+        return Long.class;
+      case FLOAT:
+        return Float.class;
+      case DOUBLE:
+        return Double.class;
+      case STRING:
+        return String.class;
+      case RECORD:
+        return StructuredRecord.class;
+      default:
+        throw new IllegalArgumentException("Unsupported schema type " + schema.getType());
+    }
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+}
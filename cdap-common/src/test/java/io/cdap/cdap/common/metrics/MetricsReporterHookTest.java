@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.common.metrics;
 
+import io.cdap.cdap.api.metrics.BoundMetric;
 import io.cdap.cdap.api.metrics.MetricsCollectionService;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.CConfiguration;
@@ -29,7 +30,7 @@ import org.junit.Test;
 
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
-import static org.mockito.Mockito.eq;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +43,10 @@ public class MetricsReporterHookTest {
     @Test
     public void testReponseTimeCollection() throws InterruptedException {
         MetricsContext mockCollector = mock(MetricsContext.class);
+        BoundMetric mockMetric = mock(BoundMetric.class);
+        BoundMetric mockLatencyMetric = mock(BoundMetric.class);
+        when(mockCollector.bind(anyString())).thenReturn(mockMetric);
+        when(mockCollector.bind("response.latency")).thenReturn(mockLatencyMetric);
         MetricsCollectionService mockCollectionService = mock(MetricsCollectionService.class);
         when(mockCollectionService.getContext(anyMap())).thenReturn(mockCollector);
 
@@ -53,6 +58,6 @@ public class MetricsReporterHookTest {
         hook.preCall(request, null, handlerInfo);
         hook.postCall(request, HttpResponseStatus.OK, handlerInfo);
 
-        verify(mockCollector).event(eq("response.latency"), anyLong());
+        verify(mockLatencyMetric).event(anyLong());
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.io;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
+import io.cdap.cdap.format.io.StructuredRecordDatumReader;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
+import io.cdap.cdap.internal.io.ASMStructuredRecordDatumFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit tests for the {@link StructuredRecordDatumWriter} and {@link StructuredRecordDatumReader} generated by
+ * the {@link ASMStructuredRecordDatumFactory}.
+ */
+public class ASMStructuredRecordDatumTest {
+
+  private static final ASMStructuredRecordDatumFactory DATUM_FACTORY = new ASMStructuredRecordDatumFactory();
+
+  private static final Schema INNER_SCHEMA = Schema.recordOf(
+    "inner",
+    Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))));
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("null", Schema.of(Schema.Type.NULL)),
+    Schema.Field.of("boolean", Schema.of(Schema.Type.BOOLEAN)),
+    Schema.Field.of("int", Schema.of(Schema.Type.INT)),
+    Schema.Field.of("long", Schema.of(Schema.Type.LONG)),
+    Schema.Field.of("float", Schema.of(Schema.Type.FLOAT)),
+    Schema.Field.of("double", Schema.of(Schema.Type.DOUBLE)),
+    Schema.Field.of("string", Schema.of(Schema.Type.STRING)),
+    Schema.Field.of("bytes", Schema.of(Schema.Type.BYTES)),
+    Schema.Field.of("enum", Schema.enumWith("a", "b", "c")),
+    Schema.Field.of("map", Schema.mapOf(Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.INT))),
+    Schema.Field.of("nullableString", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("nullableInner", Schema.nullableOf(INNER_SCHEMA)),
+    Schema.Field.of("union", Schema.unionOf(Schema.of(Schema.Type.INT), Schema.arrayOf(Schema.of(Schema.Type.INT)),
+                                            Schema.of(Schema.Type.STRING), Schema.of(Schema.Type.NULL))),
+    Schema.Field.of("inner", INNER_SCHEMA));
+
+  @Test
+  public void testEncodeDecode() throws IOException {
+    StructuredRecord inner = StructuredRecord.builder(INNER_SCHEMA)
+      .set("id", 10L)
+      .set("tags", Arrays.asList("x", "y"))
+      .build();
+
+    StructuredRecord record = createRecord(inner, null, "nullable", Arrays.asList(1, 2, 3));
+    testRoundTrip(record);
+
+    record = createRecord(inner, inner, null, 5);
+    testRoundTrip(record);
+
+    record = createRecord(inner, null, null, "union");
+    testRoundTrip(record);
+
+    record = createRecord(inner, inner, "nullable", null);
+    testRoundTrip(record);
+  }
+
+  @Test
+  public void testDifferentInnerSchema() throws IOException {
+    // The inner record has extra field and the fields are in different order than the inner schema
+    Schema schema = Schema.recordOf(
+      "inner",
+      Schema.Field.of("tags", Schema.arrayOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("extra", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+
+    StructuredRecord inner = StructuredRecord.builder(schema)
+      .set("id", 20L)
+      .set("extra", "extra")
+      .set("tags", Arrays.asList("z"))
+      .build();
+
+    StructuredRecord record = createRecord(inner, inner, null, null);
+    Assert.assertArrayEquals(encode(new StructuredRecordDatumWriter(), record),
+                             encode(DATUM_FACTORY.getDatumWriter(SCHEMA), record));
+  }
+
+  @Test (expected = IllegalArgumentException.class)
+  public void testInvalidValue() throws IOException {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("int", Schema.of(Schema.Type.INT)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("int", "not int").build();
+    encode(DATUM_FACTORY.getDatumWriter(schema), record);
+  }
+
+  @Test
+  public void testRecursiveSchema() throws IOException {
+    Schema schema = Schema.recordOf(
+      "node",
+      Schema.Field.of("value", Schema.of(Schema.Type.INT)),
+      Schema.Field.of("next", Schema.nullableOf(Schema.recordOf("node"))));
+
+    StructuredRecord record = null;
+    for (int i = 0; i < 5; i++) {
+      record = StructuredRecord.builder(schema).set("value", i).set("next", record).build();
+    }
+    testRoundTrip(record);
+  }
+
+  @Test
+  public void testCache() {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("int", Schema.of(Schema.Type.INT)));
+    Assert.assertSame(DATUM_FACTORY.getDatumWriter(schema), DATUM_FACTORY.getDatumWriter(schema));
+    Assert.assertSame(DATUM_FACTORY.getDatumReader(schema), DATUM_FACTORY.getDatumReader(schema));
+
+    // The instances should be of the generated classes
+    Assert.assertNotEquals(StructuredRecordDatumWriter.class, DATUM_FACTORY.getDatumWriter(schema).getClass());
+    Assert.assertNotEquals(StructuredRecordDatumReader.class, DATUM_FACTORY.getDatumReader(schema).getClass());
+  }
+
+  private StructuredRecord createRecord(StructuredRecord inner, StructuredRecord nullableInner,
+                                        String nullableString, Object union) {
+    return StructuredRecord.builder(SCHEMA)
+      .set("null", null)
+      .set("boolean", true)
+      .set("int", 1)
+      .set("long", 2L)
+      .set("float", 3.0f)
+      .set("double", 4.0d)
+      .set("string", "string")
+      .set("bytes", new byte[] {1, 2, 3})
+      .set("enum", "b")
+      .set("map", ImmutableMap.of("k1", 1, "k2", 2))
+      .set("nullableString", nullableString)
+      .set("nullableInner", nullableInner)
+      .set("union", union)
+      .set("inner", inner)
+      .build();
+  }
+
+  private void testRoundTrip(StructuredRecord record) throws IOException {
+    Schema schema = record.getSchema();
+    byte[] expected = encode(new StructuredRecordDatumWriter(), record);
+    byte[] actual = encode(DATUM_FACTORY.getDatumWriter(schema), record);
+    Assert.assertArrayEquals(expected, actual);
+
+    StructuredRecord expectedRecord = new StructuredRecordDatumReader()
+      .read(new BinaryDecoder(new ByteArrayInputStream(expected)), schema);
+    StructuredRecord actualRecord = DATUM_FACTORY.getDatumReader(schema)
+      .read(new BinaryDecoder(new ByteArrayInputStream(actual)), schema);
+    Assert.assertEquals(expectedRecord, actualRecord);
+  }
+
+  private byte[] encode(StructuredRecordDatumWriter writer, StructuredRecord record) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    writer.encode(record, new BinaryEncoder(os));
+    return os.toByteArray();
+  }
+}
@@ -16,6 +16,7 @@
 
 package io.cdap.cdap.data2.dataset2.lib.cube;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -67,6 +68,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
@@ -90,6 +92,16 @@ public class DefaultCube implements Cube, MeteredDataset {
   private final Map<String, AggregationAlias> aggregationAliasMap;
   private final ExecutorService executorService;
   private final int writeParallelism;
+  private final int queryParallelism;
+  // null if queries are not split
+  @Nullable
+  private final ExecutorService queryExecutor;
+  private final long preAggregationWindowMillis;
+  private final int maxPreAggregatedMeasurements;
+  // null if pre-aggregation is disabled
+  @Nullable
+  private final FactBuffer factBuffer;
+  private long bufferStartMillis;
 
   @Nullable
   private MetricsCollector metrics;
@@ -111,6 +123,32 @@ public class DefaultCube implements Cube, MeteredDataset {
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap,
                      int writeParallelism) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, writeParallelism, 0, 0);
+  }
+
+  /**
+   * Creates a cube that can do up to writePrallelism parallel computations when writing data to each resolution
+   * table, and that pre-aggregates the facts added within preAggregationWindowMillis before writing them, as long as
+   * no more than maxPreAggregatedMeasurements distinct measurements are buffered. Pre-aggregation is disabled if the
+   * window is not positive.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap,
+                     int writeParallelism, long preAggregationWindowMillis, int maxPreAggregatedMeasurements) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, writeParallelism,
+         preAggregationWindowMillis, maxPreAggregatedMeasurements, 1);
+  }
+
+  /**
+   * Creates a cube as above, that also splits the scan of each query into up to queryParallelism scans over
+   * distinct time ranges that are executed concurrently. Queries are not split if queryParallelism is 1 or less.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap,
+                     int writeParallelism, long preAggregationWindowMillis, int maxPreAggregatedMeasurements,
+                     int queryParallelism) {
     this.aggregations = aggregations;
     this.resolutionToFactTable = Maps.newHashMap();
     for (int resolution : resolutions) {
@@ -125,6 +163,20 @@ public class DefaultCube implements Cube, MeteredDataset {
                                                          Threads.createDaemonThreadFactory("metrics-table-%d"));
     executor.allowCoreThreadTimeOut(true);
     this.executorService = executor;
+    this.preAggregationWindowMillis = preAggregationWindowMillis;
+    this.maxPreAggregatedMeasurements = maxPreAggregatedMeasurements;
+    this.factBuffer = preAggregationWindowMillis > 0 ? new FactBuffer(resolutions) : null;
+    this.queryParallelism = queryParallelism;
+    if (queryParallelism > 1) {
+      ThreadPoolExecutor queryExecutor = new ThreadPoolExecutor(queryParallelism, queryParallelism,
+                                                                30, TimeUnit.SECONDS,
+                                                                new LinkedBlockingQueue<>(),
+                                                                Threads.createDaemonThreadFactory("metrics-query-%d"));
+      queryExecutor.allowCoreThreadTimeOut(true);
+      this.queryExecutor = queryExecutor;
+    } else {
+      this.queryExecutor = null;
+    }
   }
 
   @Override
@@ -141,7 +193,6 @@ public class DefaultCube implements Cube, MeteredDataset {
     long sumTimestamp = 0;
     long numFacts = 0;
     long numMeasurements = 0;
-    AtomicLong numUpdates = new AtomicLong();
     for (CubeFact fact : facts) {
       for (Map.Entry<String, ? extends Aggregation> aggEntry : aggregations.entrySet()) {
         Aggregation agg = aggEntry.getValue();
@@ -170,31 +221,121 @@ public class DefaultCube implements Cube, MeteredDataset {
       }
     }
 
-    Map<Integer, List<Future<?>>> futures = new HashMap<>();
-    Consumer<List<Fact>> batchWriter = batch -> {
-      for (Map.Entry<Integer, FactTable> table : resolutionToFactTable.entrySet()) {
-        Future<?> future = executorService.submit(() -> numUpdates.addAndGet(table.getValue().add(batch)));
-        futures.computeIfAbsent(table.getKey(), k -> new ArrayList<>()).add(future);
+    long numUpdates;
+    if (factBuffer == null) {
+      Map<Integer, Collection<List<Fact>>> resolutionFacts = new HashMap<>();
+      for (Integer resolution : resolutionToFactTable.keySet()) {
+        resolutionFacts.put(resolution, toWrite.values());
       }
-    };
-
-    List<Fact> writeBatch = new ArrayList<>();
-    int batchSize = (int) Math.min(Integer.MAX_VALUE, numFacts / writeParallelism);
-    for (List<Fact> metricFacts: toWrite.values()) {
-      if (metricFacts.size() > batchSize) {
-        batchWriter.accept(metricFacts);
-      } else if (writeBatch.size() <= batchSize - metricFacts.size()) {
-        writeBatch.addAll(metricFacts);
-      } else {
-        batchWriter.accept(writeBatch);
-        writeBatch = new ArrayList<>();
-        writeBatch.addAll(metricFacts);
+      numUpdates = write(resolutionFacts);
+    } else {
+      numUpdates = addToBuffer(toWrite.values());
+    }
+
+    incrementMetric("cube.cubeFact.add.request.count", 1);
+    incrementMetric("cube.cubeFact.added.count", facts.size());
+    incrementMetric("cube.tsFact.created.count", numFacts);
+    incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
+    incrementMetric("cube.tsFact.added.count", numFacts * resolutionToFactTable.size());
+    if (numFacts > 0) {
+      long avgTimestamp = sumTimestamp / numFacts;
+      PROGRESS_LOG.debug(
+        "Persisted {} updates for {} facts with {} measurements for {} dimension sets " +
+          "from {} cube facts for timestamps {}..{} (avg {}, lag {}s)",
+        numUpdates, numFacts, numMeasurements, toWrite.size(), facts.size(), minTimestamp, maxTimestamp,
+        avgTimestamp, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - avgTimestamp);
+    }
+  }
+
+  /**
+   * Writes out the facts buffered for pre-aggregation, if any.
+   */
+  public void flush() {
+    if (factBuffer == null) {
+      return;
+    }
+    synchronized (factBuffer) {
+      flushBuffer();
+    }
+  }
+
+  /**
+   * Adds the given facts to the pre-aggregation buffer and writes out the buffer if the pre-aggregation window has
+   * passed or if the buffer is full.
+   *
+   * @return the number of updates made to the fact tables
+   */
+  private long addToBuffer(Collection<List<Fact>> facts) {
+    // Writes happen while holding the lock, so that updates of a gauge are written in the order they are added
+    synchronized (factBuffer) {
+      if (factBuffer.isEmpty()) {
+        bufferStartMillis = System.currentTimeMillis();
       }
+      for (List<Fact> dimensionFacts : facts) {
+        for (Fact fact : dimensionFacts) {
+          factBuffer.add(fact);
+        }
+      }
+      if (factBuffer.getNumMeasurements() < maxPreAggregatedMeasurements
+        && System.currentTimeMillis() - bufferStartMillis < preAggregationWindowMillis) {
+        return 0;
+      }
+      return flushBuffer();
+    }
+  }
+
+  private long flushBuffer() {
+    if (factBuffer.isEmpty()) {
+      return 0;
     }
-    if (!writeBatch.isEmpty()) {
-      batchWriter.accept(writeBatch);
+    int numBufferedFacts = factBuffer.getNumFacts();
+    Map<Integer, Collection<List<Fact>>> resolutionFacts = new HashMap<>();
+    for (Map.Entry<Integer, Map<List<DimensionValue>, List<Fact>>> entry : factBuffer.drain().entrySet()) {
+      resolutionFacts.put(entry.getKey(), entry.getValue().values());
     }
+    long numUpdates = write(resolutionFacts);
+    incrementMetric("cube.tsFact.preAggregated.count", numBufferedFacts);
+    return numUpdates;
+  }
 
+  /**
+   * Writes the given facts to the fact table of each resolution, using up to writeParallelism concurrent writes
+   * per resolution table.
+   *
+   * @param resolutionFacts the facts to write for each resolution, grouped by dimension values
+   * @return the number of updates made to the fact tables
+   */
+  private long write(Map<Integer, Collection<List<Fact>>> resolutionFacts) {
+    AtomicLong numUpdates = new AtomicLong();
+    Map<Integer, List<Future<?>>> futures = new HashMap<>();
+    for (Map.Entry<Integer, Collection<List<Fact>>> entry : resolutionFacts.entrySet()) {
+      long numFacts = 0;
+      for (List<Fact> metricFacts : entry.getValue()) {
+        numFacts += metricFacts.size();
+      }
+      int batchSize = (int) Math.min(Integer.MAX_VALUE, numFacts / writeParallelism);
+      FactTable factTable = resolutionToFactTable.get(entry.getKey());
+      Consumer<List<Fact>> batchWriter = batch -> {
+        Future<?> future = executorService.submit(() -> numUpdates.addAndGet(factTable.add(batch)));
+        futures.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(future);
+      };
+
+      List<Fact> writeBatch = new ArrayList<>();
+      for (List<Fact> metricFacts : entry.getValue()) {
+        if (metricFacts.size() > batchSize) {
+          batchWriter.accept(metricFacts);
+        } else if (writeBatch.size() <= batchSize - metricFacts.size()) {
+          writeBatch.addAll(metricFacts);
+        } else {
+          batchWriter.accept(writeBatch);
+          writeBatch = new ArrayList<>();
+          writeBatch.addAll(metricFacts);
+        }
+      }
+      if (!writeBatch.isEmpty()) {
+        batchWriter.accept(writeBatch);
+      }
+    }
 
     boolean failed = false;
     Exception failedException = null;
@@ -222,20 +363,7 @@ public class DefaultCube implements Cube, MeteredDataset {
     if (failed) {
       throw new RuntimeException(failedMessage.append(".").toString(), failedException);
     }
-
-    incrementMetric("cube.cubeFact.add.request.count", 1);
-    incrementMetric("cube.cubeFact.added.count", facts.size());
-    incrementMetric("cube.tsFact.created.count", numFacts);
-    incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
-    incrementMetric("cube.tsFact.added.count", numFacts * resolutionToFactTable.size());
-    if (numFacts > 0) {
-      long avgTimestamp = sumTimestamp / numFacts;
-      PROGRESS_LOG.debug(
-        "Persisted {} updates for {} facts with {} measurements for {} dimension sets " +
-          "from {} cube facts for timestamps {}..{} (avg {}, lag {}s)",
-        numUpdates.get(), numFacts, numMeasurements, toWrite.size(), facts.size(), minTimestamp, maxTimestamp,
-        avgTimestamp, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - avgTimestamp);
-    }
+    return numUpdates.get();
   }
 
   @Override
@@ -277,6 +405,8 @@ public class DefaultCube implements Cube, MeteredDataset {
     */
 
     incrementMetric("cube.query.request.count", 1);
+    // make the pre-aggregated facts visible to the query
+    flush();
 
     if (!resolutionToFactTable.containsKey(query.getResolution())) {
       incrementMetric("cube.query.request.failure.count", 1);
@@ -323,8 +453,7 @@ public class DefaultCube implements Cube, MeteredDataset {
 
     // 3) execute scan query
     FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
+    Table<Map<String, String>, String, Map<Long, Long>> resultMap = scan(query, table, scan);
 
     incrementMetric("cube.query.request.success.count", 1);
     incrementMetric("cube.query.result.size", resultMap.size());
@@ -335,8 +464,51 @@ public class DefaultCube implements Cube, MeteredDataset {
     return timeSeries;
   }
 
+  /**
+   * Executes the scan of a query. If query parallelism is enabled, the scan is split into up to queryParallelism
+   * scans over distinct time ranges, which are executed concurrently and merged in order as they complete.
+   */
+  private Table<Map<String, String>, String, Map<Long, Long>> scan(CubeQuery query, FactTable table, FactScan scan) {
+    AtomicInteger scannedCount = new AtomicInteger();
+    List<FactScan> splits = queryExecutor == null ?
+      Collections.singletonList(scan) : table.splitScan(scan, queryParallelism);
+    if (splits.size() == 1) {
+      return scanSplit(query, table, scan, scannedCount);
+    }
+
+    incrementMetric("cube.query.scan.split.count", splits.size());
+    List<Future<Table<Map<String, String>, String, Map<Long, Long>>>> futures = new ArrayList<>();
+    for (FactScan split : splits) {
+      futures.add(queryExecutor.submit(() -> scanSplit(query, table, split, scannedCount)));
+    }
+    Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
+    try {
+      for (Future<Table<Map<String, String>, String, Map<Long, Long>>> future : futures) {
+        mergeTimeSeries(query, result, Uninterruptibles.getUninterruptibly(future));
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  private Table<Map<String, String>, String, Map<Long, Long>> scanSplit(CubeQuery query, FactTable table,
+                                                                        FactScan scan, AtomicInteger scannedCount) {
+    FactScanner scanner = table.scan(scan);
+    try {
+      return getTimeSeries(query, scanner, scannedCount);
+    } finally {
+      scanner.close();
+    }
+  }
+
   @Override
   public void delete(CubeDeleteQuery query) {
+    flush();
     //this may be very inefficient and its better to use TTL, this is to only support existing old functionality.
     List<DimensionValue> dimensionValues = Lists.newArrayList();
     // find all the aggregations that match the dimensionValues in the query and
@@ -354,9 +526,23 @@ public class DefaultCube implements Cube, MeteredDataset {
     }
   }
 
+  /**
+   * Seals the time windows that end before the given timestamp into compressed blocks in the fact tables that have
+   * blocks enabled. See {@link FactTable#sealBlocks(long)}.
+   *
+   * @param endTs timestamp in seconds before which windows are sealed
+   */
+  public void sealBlocks(long endTs) {
+    flush();
+    for (FactTable factTable : resolutionToFactTable.values()) {
+      incrementMetric("cube.tsFact.sealed.block.count", factTable.sealBlocks(endTs));
+    }
+  }
+
   @Override
   public Collection<DimensionValue> findDimensionValues(CubeExploreQuery query) {
     LOG.trace("Searching for next-level context, query: {}", query);
+    flush();
 
     // In each aggregation that matches given dimensions, try to fill in value in a single null-valued given dimension.
     // NOTE: that we try to fill in first value that is non-null-valued in a stored record
@@ -384,6 +570,7 @@ public class DefaultCube implements Cube, MeteredDataset {
   @Override
   public Collection<String> findMeasureNames(CubeExploreQuery query) {
     LOG.trace("Searching for measures, query: {}", query);
+    flush();
 
     // In each aggregation that matches given dimensions, try to find measure names
     SortedSet<String> result = Sets.newTreeSet();
@@ -443,12 +630,13 @@ public class DefaultCube implements Cube, MeteredDataset {
     return currentBest;
   }
 
-  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner) {
+  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner,
+                                                                            AtomicInteger scannedCount) {
     // {dimension values, measure} -> {time -> value}s
     Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
 
-    int count = 0;
-    while (scanner.hasNext()) {
+    // the limit is shared by all the splits of the scan
+    while (scannedCount.get() < MAX_RECORDS_TO_SCAN && scanner.hasNext()) {
       FactScanResult next = scanner.next();
       incrementMetric("cube.query.scan.records.count", 1);
 
@@ -480,40 +668,56 @@ public class DefaultCube implements Cube, MeteredDataset {
         continue;
       }
 
+      AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
       for (TimeValue timeValue : next) {
         Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
         if (timeValues == null) {
-          result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
-        }
-
-        AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
-        if (AggregationFunction.SUM == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value == null ? 0 : value;
-          value += timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MAX == function) {
-          Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MIN == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.LATEST == function) {
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
-        } else {
-          // should never happen: developer error
-          throw new RuntimeException("Unknown MeasureType: " + function);
+          timeValues = Maps.newHashMap();
+          result.put(seriesDimensions, next.getMeasureName(), timeValues);
         }
+        aggregate(timeValues, timeValue.getTimestamp(), timeValue.getValue(), function);
       }
-      if (++count >= MAX_RECORDS_TO_SCAN) {
+      if (scannedCount.incrementAndGet() >= MAX_RECORDS_TO_SCAN) {
         break;
       }
     }
     return result;
   }
 
+  /**
+   * Merges the time series of a scan split into the time series of the query.
+   */
+  private void mergeTimeSeries(CubeQuery query, Table<Map<String, String>, String, Map<Long, Long>> result,
+                               Table<Map<String, String>, String, Map<Long, Long>> splitResult) {
+    for (Table.Cell<Map<String, String>, String, Map<Long, Long>> cell : splitResult.cellSet()) {
+      Map<Long, Long> timeValues = result.get(cell.getRowKey(), cell.getColumnKey());
+      if (timeValues == null) {
+        result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+        continue;
+      }
+      AggregationFunction function = query.getMeasurements().get(cell.getColumnKey());
+      for (Map.Entry<Long, Long> timeValue : cell.getValue().entrySet()) {
+        aggregate(timeValues, timeValue.getKey(), timeValue.getValue(), function);
+      }
+    }
+  }
+
+  private static void aggregate(Map<Long, Long> timeValues, long timestamp, long value,
+                                AggregationFunction function) {
+    if (AggregationFunction.SUM == function) {
+      timeValues.merge(timestamp, value, Long::sum);
+    } else if (AggregationFunction.MAX == function) {
+      timeValues.merge(timestamp, value, Math::max);
+    } else if (AggregationFunction.MIN == function) {
+      timeValues.merge(timestamp, value, Math::min);
+    } else if (AggregationFunction.LATEST == function) {
+      timeValues.put(timestamp, value);
+    } else {
+      // should never happen: developer error
+      throw new RuntimeException("Unknown MeasureType: " + function);
+    }
+  }
+
   private Collection<TimeSeries> convertToQueryResult(
     CubeQuery query, Table<Map<String, String>, String, Map<Long, Long>> resultTable) {
     List<TimeSeries> result = new ArrayList<>();
@@ -579,12 +783,20 @@ public class DefaultCube implements Cube, MeteredDataset {
 
   @Override
   public void close() throws IOException {
+    try {
+      flush();
+    } catch (Exception e) {
+      LOG.warn("Failed to write pre-aggregated metrics before closing the cube", e);
+    }
     try {
       for (FactTable factTable : resolutionToFactTable.values()) {
         factTable.close();
       }
     } finally {
       executorService.shutdown();
+      if (queryExecutor != null) {
+        queryExecutor.shutdown();
+      }
     }
   }
 
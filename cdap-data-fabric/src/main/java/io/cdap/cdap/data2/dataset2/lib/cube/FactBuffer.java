@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
+import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
+import io.cdap.cdap.api.dataset.lib.cube.Measurement;
+import io.cdap.cdap.data2.dataset2.lib.timeseries.Fact;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-aggregates the {@link Fact}s of the aggregations of a cube per resolution bucket before they are written to
+ * the resolution tables, so that repeated updates of the same counter or gauge within the buffering window result in
+ * a single write. Counters are summed up and gauges keep the last value.
+ *
+ * This class is not thread safe.
+ */
+final class FactBuffer {
+
+  private final int[] resolutions;
+  // resolution -> dimension values -> timestamp rounded to the resolution -> measure name -> measurement
+  private final Map<Integer, Map<List<DimensionValue>, Map<Long, Map<String, Measurement>>>> buffer;
+  private int numFacts;
+  private int numMeasurements;
+
+  FactBuffer(int[] resolutions) {
+    this.resolutions = resolutions;
+    this.buffer = new HashMap<>();
+    for (int resolution : resolutions) {
+      buffer.put(resolution, new LinkedHashMap<>());
+    }
+  }
+
+  /**
+   * Adds the given fact to the buffer of every resolution.
+   */
+  void add(Fact fact) {
+    numFacts++;
+    for (int resolution : resolutions) {
+      long timestamp = fact.getTimestamp() / resolution * resolution;
+      Map<String, Measurement> measurements = buffer.get(resolution)
+        .computeIfAbsent(fact.getDimensionValues(), k -> new HashMap<>())
+        .computeIfAbsent(timestamp, k -> new LinkedHashMap<>());
+      for (Measurement measurement : fact.getMeasurements()) {
+        Measurement existing = measurements.get(measurement.getName());
+        if (existing == null) {
+          numMeasurements++;
+          measurements.put(measurement.getName(), measurement);
+        } else if (existing.getType() == MeasureType.COUNTER && measurement.getType() == MeasureType.COUNTER) {
+          measurements.put(measurement.getName(), new Measurement(measurement.getName(), MeasureType.COUNTER,
+                                                                  existing.getValue() + measurement.getValue()));
+        } else {
+          measurements.put(measurement.getName(), measurement);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of facts added since the last {@link #drain()}.
+   */
+  int getNumFacts() {
+    return numFacts;
+  }
+
+  /**
+   * Returns the number of distinct measurements buffered across all resolutions.
+   */
+  int getNumMeasurements() {
+    return numMeasurements;
+  }
+
+  boolean isEmpty() {
+    return numFacts == 0;
+  }
+
+  /**
+   * Removes all the buffered measurements from this buffer.
+   *
+   * @return the merged facts of each resolution, grouped by dimension values
+   */
+  Map<Integer, Map<List<DimensionValue>, List<Fact>>> drain() {
+    Map<Integer, Map<List<DimensionValue>, List<Fact>>> result = new HashMap<>();
+    for (Map.Entry<Integer, Map<List<DimensionValue>, Map<Long, Map<String, Measurement>>>> resolutionEntry
+      : buffer.entrySet()) {
+      Map<List<DimensionValue>, List<Fact>> facts = new LinkedHashMap<>();
+      for (Map.Entry<List<DimensionValue>, Map<Long, Map<String, Measurement>>> entry
+        : resolutionEntry.getValue().entrySet()) {
+        List<Fact> dimensionFacts = new ArrayList<>(entry.getValue().size());
+        for (Map.Entry<Long, Map<String, Measurement>> tsEntry : entry.getValue().entrySet()) {
+          dimensionFacts.add(new Fact(tsEntry.getKey(), entry.getKey(), new ArrayList<>(tsEntry.getValue().values())));
+        }
+        facts.put(entry.getKey(), dimensionFacts);
+      }
+      result.put(resolutionEntry.getKey(), facts);
+      resolutionEntry.getValue().clear();
+    }
+    numFacts = 0;
+    numMeasurements = 0;
+    return result;
+  }
+}
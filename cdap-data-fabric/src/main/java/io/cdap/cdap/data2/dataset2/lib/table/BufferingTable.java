@@ -18,7 +18,9 @@ package io.cdap.cdap.data2.dataset2.lib.table;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.cdap.cdap.api.annotation.ReadOnly;
@@ -38,12 +40,15 @@ import io.cdap.cdap.api.dataset.table.Scanner;
 import io.cdap.cdap.api.dataset.table.TableProperties;
 import io.cdap.cdap.api.dataset.table.TableSplit;
 import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.data2.datafabric.dataset.DatasetsUtil;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -69,12 +74,15 @@ import javax.annotation.Nullable;
  * <p>
  * This implementation assumes that the table has name and conflicts are resolved on row level.
  * <p>
- * NOTE: this implementation doesn't cache any data in-memory besides changes. I.e. if you do get of same data that is
- *       not in in-memory buffer twice, two times it will try to fetch it from persistent store.
- *       Given the snapshot isolation tx model, this can be improved in future implementations.
+ * NOTE: unless {@link Constants.Dataset#TABLE_READ_CACHE_MAX_BYTES} is set, this implementation doesn't cache any data
+ *       in-memory besides changes. I.e. if you do get of same data that is not in in-memory buffer twice, two times it
+ *       will try to fetch it from persistent store. With the read cache enabled, data fetched from persistent store is
+ *       kept until the transaction ends: given the snapshot isolation tx model it cannot change during the transaction.
  * <p>
- * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME. There should be better
- *       implementation for MapReduce case (YMMV though, for counters/aggregations this implementation looks sweet)
+ * NOTE: current implementation persists changes only at the end of transaction. Beware of OOME, unless
+ *       {@link Constants.Dataset#TABLE_BUFFER_SPILL_THRESHOLD_BYTES} is set: then the in-memory buffer is spilled to
+ *       local disk as sorted runs whenever it grows past the threshold, and changes are persisted at the end of the
+ *       transaction in chunks of that size, merged from the spilled runs and the in-memory buffer.
  * <p>
  * NOTE: Using {@link #get(byte[], byte[], byte[], int)} is generally always not efficient since it always hits the
  *       persisted store even if all needed data is in-memory buffer. See more info at method javadoc
@@ -99,9 +107,25 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // that the corresponded column was removed.
   private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
 
+  // Estimated size in bytes of the in-memory buffer
+  private long buffSize;
+
   // Keeps track of what was persisted so far
   private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
 
+  // Size of the in-memory buffer past which it is spilled to disk, zero if spilling is disabled
+  private final long spillThreshold;
+  // Local directory to spill the in-memory buffer to
+  private final File spillDir;
+  // Changes of the current transaction that were spilled to disk, older than those in the in-memory buffer.
+  // Null if nothing was spilled.
+  private SpilledBuffer spilled;
+  // Spilled changes that were persisted so far, older than those in toUndo
+  private SpilledBuffer spilledToUndo;
+
+  // Cache of data fetched from persistent store in the current transaction, null if disabled
+  private final PersistedReadCache readCache;
+
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
@@ -129,7 +153,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   /**
-   * Creates an instance of {@link BufferingTable}.
+   * Creates an instance of {@link BufferingTable}. The read cache and buffer spilling are disabled unless they are
+   * set in the dataset properties.
    *
    * @param name the name of the table
    * @param enableReadlessIncrements whether or not readless increments are enabled
@@ -137,6 +162,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
    */
   public BufferingTable(String name, boolean enableReadlessIncrements,
                         Map<String, String> properties) {
+    this(name, enableReadlessIncrements, properties, null);
+  }
+
+  /**
+   * Creates an instance of {@link BufferingTable}.
+   *
+   * @param name the name of the table
+   * @param enableReadlessIncrements whether or not readless increments are enabled
+   * @param properties dataset properties for the table
+   * @param cConf configuration to take the read cache and buffer spilling settings from if they are not set in the
+   *              dataset properties; if {@code null}, they are disabled unless set in the dataset properties
+   */
+  public BufferingTable(String name, boolean enableReadlessIncrements,
+                        Map<String, String> properties, @Nullable CConfiguration cConf) {
     super(properties);
 
     // for optimization purposes we don't allow table name of length greater than Byte.MAX_VALUE
@@ -151,6 +190,23 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
     this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+
+    long readCacheMaxBytes = getSize(properties, cConf, Constants.Dataset.TABLE_READ_CACHE_MAX_BYTES);
+    // reads of non-transactional tables are not isolated from concurrent writes, hence cannot be cached
+    this.readCache = readCacheMaxBytes > 0 && DatasetsUtil.isTransactional(properties)
+      ? new PersistedReadCache(readCacheMaxBytes) : null;
+    this.spillThreshold = getSize(properties, cConf, Constants.Dataset.TABLE_BUFFER_SPILL_THRESHOLD_BYTES);
+    this.spillDir = cConf == null
+      ? new File(System.getProperty("java.io.tmpdir"))
+      : new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR), cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
+  }
+
+  private static long getSize(Map<String, String> properties, @Nullable CConfiguration cConf, String key) {
+    String value = properties.get(key);
+    if (value != null) {
+      return Long.parseLong(value);
+    }
+    return cConf == null ? 0L : cConf.getLong(key, 0L);
   }
 
   /**
@@ -262,6 +318,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // releasing resources
     buff = null;
     toUndo = null;
+    clearReadCache();
+    discardSpilled();
   }
 
   @Override
@@ -273,7 +331,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
+    buffSize = 0;
     toUndo = null;
+    clearReadCache();
+    discardSpilled();
     this.tx = tx;
   }
 
@@ -309,8 +370,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = getBuffered(null, null);
+    while (iterator.hasNext()) {
+      changes.add(Bytes.add(getNameAsTxChangePrefix(), iterator.next().getKey()));
     }
     return changes;
   }
@@ -318,7 +380,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
     List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = getBuffered(null, null);
+    while (iterator.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = iterator.next();
       if (rowChange.getValue() == null) {
         // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
         //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
@@ -338,17 +402,30 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean commitTx() throws Exception {
-    if (!buff.isEmpty()) {
+    // persisted data is about to change: cached reads are not valid anymore
+    clearReadCache();
+    if (!buff.isEmpty() || spilled != null) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
       toUndo = buff;
+      spilledToUndo = spilled;
       // clearing up in-memory buffer by initializing new map.
       // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
       // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
       buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      buffSize = 0;
+      spilled = null;
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      if (spilledToUndo == null) {
+        persist(toUndo);
+      } else {
+        // stream the spilled changes to the persistent store in chunks, to not load all of them in memory
+        Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> chunks = getChunks(spilledToUndo, toUndo);
+        while (chunks.hasNext()) {
+          persist(chunks.next());
+        }
+      }
     }
     return true;
   }
@@ -357,16 +434,30 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
+    buffSize = 0;
     toUndo = null;
+    clearReadCache();
+    discardSpilled();
     tx = null;
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
-    if (toUndo != null) {
-      undo(toUndo);
+    buffSize = 0;
+    clearReadCache();
+    try {
+      if (spilledToUndo != null) {
+        Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> chunks = getChunks(spilledToUndo, toUndo);
+        while (chunks.hasNext()) {
+          undo(chunks.next());
+        }
+      } else if (toUndo != null) {
+        undo(toUndo);
+      }
       toUndo = null;
+    } finally {
+      discardSpilled();
     }
     tx = null;
     return true;
@@ -414,13 +505,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     ensureTransactionIsStarted();
     reportRead(1);
-    // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
     try {
-      Map<byte[], byte[]> persistedCols = getPersisted(row, startColumn, stopColumn, limit);
+      // checking if the row was deleted inside this tx
+      NavigableMap<byte[], Update> buffCols = getBuffered(row);
+      Map<byte[], byte[]> persistedCols = getPersistedCached(row, startColumn, stopColumn, limit);
 
       // adding server cols, and then overriding with buffered values
       NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -448,7 +538,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     try {
       // get persisted, then overwrite with whats buffered
-      List<Map<byte[], byte[]>> persistedRows = getPersisted(gets);
+      List<Map<byte[], byte[]>> persistedRows = getPersistedCached(gets);
       // gets and rows lists are always of the same size
       Preconditions.checkArgument(gets.size() == persistedRows.size(),
         "Invalid number of rows fetched when performing multi-get. There must be one row for each get.");
@@ -467,7 +557,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -518,6 +608,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
       buff.put(copy(row), colVals);
     }
+    buffSize += getBufferedSize(row, columns, newRow) + getSize(values);
+    spillIfNeeded();
   }
 
   /**
@@ -621,13 +713,16 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     if (enableReadlessIncrements) {
       NavigableMap<byte[], Update> colVals = buff.get(row);
-      if (colVals == null) {
+      boolean newRow = colVals == null;
+      if (newRow) {
         colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
         buff.put(row, colVals);
       }
       for (int i = 0; i < columns.length; i++) {
         colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
       }
+      buffSize += getBufferedSize(row, columns, newRow) + getSize(amounts);
+      spillIfNeeded();
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
     } else {
       internalIncrementAndGet(row, columns, amounts);
@@ -695,9 +790,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      return new BufferingScanner(scanBuffer(scan), scanPersistedCached(scan));
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
@@ -705,10 +799,55 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanBuffer(Scan scan) {
+    return applyFilter(getBuffered(scan.getStartRow(), scan.getStopRow()), scan.getFilter());
+  }
+
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> applyFilter(
+                                                Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter,
+                                                @Nullable final Filter filter) {
+    if (filter == null) {
+      return bufferIter;
+    }
+
+    // todo: currently we support only FuzzyRowFilter as an experimental feature
+    if (filter instanceof FuzzyRowFilter) {
+      return Iterators.filter(bufferIter, new Predicate<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+        @Override
+        public boolean apply(Map.Entry<byte[], NavigableMap<byte[], Update>> entry) {
+          return FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey());
+        }
+      });
+    } else {
+      throw new DataSetException("Unknown filter type: " + filter);
+    }
+  }
+
+  /**
+   * Returns the buffered changes of a row, merged from the spilled and the in-memory buffer.
+   */
+  @Nullable
+  private NavigableMap<byte[], Update> getBuffered(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    if (spilled == null) {
+      return buffCols;
+    }
+    NavigableMap<byte[], Update> spilledCols = spilled.get(row);
+    if (spilledCols == null) {
+      return buffCols;
+    }
+    return buffCols == null ? spilledCols : SpilledBuffer.mergeRow(spilledCols, buffCols);
+  }
+
+  /**
+   * Returns the buffered changes of a range of rows in row order, merged from the spilled and the in-memory buffer.
+   *
+   * @param startRow first row of the range, inclusive; {@code null} means from the first row
+   * @param stopRow last row of the range, exclusive; {@code null} means up to the last row
+   */
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBuffered(@Nullable byte[] startRow,
+                                                                                @Nullable byte[] stopRow) {
     NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
-    byte[] startRow = scan.getStartRow();
-    byte[] stopRow = scan.getStopRow();
     if (startRow == null && stopRow == null) {
       bufferMap = buff;
     } else if (startRow == null) {
@@ -718,41 +857,77 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     } else {
       bufferMap = buff.subMap(startRow, true, stopRow, false);
     }
-    bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+    return spilled == null ? bufferMap.entrySet().iterator() : spilled.iterator(startRow, stopRow, bufferMap);
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
-                                                        NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap,
-                                                        @Nullable Filter filter) {
-    if (filter == null) {
-      return bufferMap;
+  /**
+   * Spills the in-memory buffer to disk if it grew past the spill threshold.
+   */
+  private void spillIfNeeded() {
+    if (spillThreshold <= 0 || buffSize < spillThreshold) {
+      return;
+    }
+    try {
+      if (spilled == null) {
+        spilled = new SpilledBuffer(spillDir, name + "-");
+      }
+      spilled.spill(buff);
+      LOG.trace("Spilled {} rows buffered for table {} to disk, {} runs on disk",
+                buff.size(), getTransactionAwareName(), spilled.getRunCount());
+    } catch (IOException e) {
+      throw new DataSetException("Failed to spill buffered changes of table " + getTransactionAwareName(), e);
     }
+    buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    buffSize = 0;
+  }
 
-    // todo: currently we support only FuzzyRowFilter as an experimental feature
-    if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
+  /**
+   * Returns the spilled and in-memory changes in chunks of roughly the spill threshold size, in row order.
+   */
+  private Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> getChunks(
+    SpilledBuffer spilledChanges, NavigableMap<byte[], NavigableMap<byte[], Update>> buffChanges) {
+
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows =
+      spilledChanges.iterator(null, null, buffChanges);
+    return new AbstractIterator<NavigableMap<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      protected NavigableMap<byte[], NavigableMap<byte[], Update>> computeNext() {
+        NavigableMap<byte[], NavigableMap<byte[], Update>> chunk = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        long chunkSize = 0;
+        while (chunkSize < spillThreshold && rows.hasNext()) {
+          Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+          chunk.put(row.getKey(), row.getValue());
+          chunkSize += getSize(row.getKey());
+          for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
+            chunkSize += getSize(column.getKey()) + getSize(column.getValue().getBytes());
+          }
         }
+        return chunk.isEmpty() ? endOfData() : chunk;
       }
-      return result;
-    } else {
-      throw new DataSetException("Unknown filter type: " + filter);
+    };
+  }
+
+  private void discardSpilled() {
+    if (spilled != null) {
+      spilled.close();
+      spilled = null;
+    }
+    if (spilledToUndo != null) {
+      spilledToUndo.close();
+      spilledToUndo = null;
     }
   }
 
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
     boolean rowDeleted = buffCols == null && buff.containsKey(row);
     if (rowDeleted) {
       return Collections.emptyMap();
     }
 
-    Map<byte[], byte[]> persisted = getPersisted(row, null);
+    Map<byte[], byte[]> persisted = getPersistedCached(row, null);
 
 
     result.putAll(persisted);
@@ -767,11 +942,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = getBuffered(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
-      return getPersisted(row, columns);
+      return getPersistedCached(row, columns);
     }
 
     // otherwise try to fetch data from in-memory buffer. If not all present - fetch leftover from persisted
@@ -793,7 +968,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // fetching from server those that were not found in in-mem buffer
     if (colsToFetchFromPersisted.size() > 0) {
       Map<byte[], byte[]> persistedCols =
-        getPersisted(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
+        getPersistedCached(row, colsToFetchFromPersisted.toArray(new byte[colsToFetchFromPersisted.size()][]));
       if (persistedCols != null) {
         result.putAll(persistedCols);
       }
@@ -805,6 +980,114 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return unwrapDeletes(result);
   }
 
+  /**
+   * Fetches column->value pairs for set of columns from persistent store, serving them from the read cache if possible.
+   */
+  private NavigableMap<byte[], byte[]> getPersistedCached(byte[] row, @Nullable byte[][] columns) throws Exception {
+    if (readCache == null) {
+      return getPersisted(row, columns);
+    }
+    NavigableMap<byte[], byte[]> result = readCache.get(row, columns);
+    reportReadCache(result != null);
+    if (result == null) {
+      result = getPersisted(row, columns);
+      readCache.put(row, columns, result);
+    }
+    return result;
+  }
+
+  /**
+   * Fetches column->value pairs for range of columns from persistent store. The range is served from the read cache
+   * only if the whole row is cached, as otherwise there is no way to tell which columns of the range are missing.
+   */
+  private NavigableMap<byte[], byte[]> getPersistedCached(byte[] row, byte[] startColumn, byte[] stopColumn,
+                                                          int limit) throws Exception {
+    if (readCache == null) {
+      return getPersisted(row, startColumn, stopColumn, limit);
+    }
+    NavigableMap<byte[], byte[]> cached = readCache.get(row, null);
+    reportReadCache(cached != null);
+    if (cached == null) {
+      return getPersisted(row, startColumn, stopColumn, limit);
+    }
+    return getRange(cached, startColumn, stopColumn, limit);
+  }
+
+  /**
+   * Fetches a list of rows from persistent store, only fetching those that are not in the read cache.
+   */
+  private List<Map<byte[], byte[]>> getPersistedCached(List<Get> gets) throws Exception {
+    if (readCache == null) {
+      return getPersisted(gets);
+    }
+    List<Map<byte[], byte[]>> results = new ArrayList<>(gets.size());
+    List<Get> misses = new ArrayList<>();
+    for (Get get : gets) {
+      Map<byte[], byte[]> cached = readCache.get(get.getRow(), getColumns(get));
+      reportReadCache(cached != null);
+      if (cached == null) {
+        misses.add(get);
+      }
+      results.add(cached);
+    }
+    if (misses.isEmpty()) {
+      return results;
+    }
+
+    List<Map<byte[], byte[]>> persistedRows = getPersisted(misses);
+    Preconditions.checkArgument(misses.size() == persistedRows.size(),
+      "Invalid number of rows fetched when performing multi-get. There must be one row for each get.");
+    Iterator<Map<byte[], byte[]>> persistedRowsIter = persistedRows.iterator();
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i) == null) {
+        Get get = gets.get(i);
+        Map<byte[], byte[]> persistedRow = persistedRowsIter.next();
+        readCache.put(get.getRow(), getColumns(get), persistedRow);
+        results.set(i, persistedRow);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Scans range of rows from persistent store, serving the scan from the read cache if the same range was fully
+   * scanned before in this transaction. Scans with filters are never cached.
+   */
+  private Scanner scanPersistedCached(Scan scan) throws Exception {
+    if (readCache == null || scan.getFilter() != null) {
+      return scanPersisted(scan);
+    }
+    List<Row> cached = readCache.getScan(scan.getStartRow(), scan.getStopRow());
+    reportReadCache(cached != null);
+    if (cached == null) {
+      return new CachingScanner(scan, scanPersisted(scan));
+    }
+    final Iterator<Row> iterator = cached.iterator();
+    return new Scanner() {
+      @Override
+      public Row next() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+  }
+
+  private void clearReadCache() {
+    if (readCache != null) {
+      readCache.clear();
+    }
+  }
+
+  @Nullable
+  private static byte[][] getColumns(Get get) {
+    List<byte[]> getColumns = get.getColumns();
+    return getColumns == null ? null : getColumns.toArray(new byte[getColumns.size()][]);
+  }
+
   /**
    * Applies the buffered updates on top of the map of persisted values.  The persisted map is modified in place
    * with the updated values.
@@ -943,6 +1226,23 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
+  private void reportReadCache(boolean hit) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(hit ? Constants.Metrics.Name.Dataset.READ_CACHE_HIT_COUNT
+                                     : Constants.Metrics.Name.Dataset.READ_CACHE_MISS_COUNT, 1);
+    }
+  }
+
+  /**
+   * Returns the estimated memory taken in the in-memory buffer by the keys of a change.
+   */
+  private static long getBufferedSize(byte[] row, byte[][] columns, boolean newRow) {
+    // rough estimate of the overhead of a map entry
+    int entryOverhead = 64;
+    long size = (long) entryOverhead * columns.length + getSize(columns);
+    return newRow ? size + entryOverhead + getSize(row) : size;
+  }
+
   private int getSize(long[] values) {
     return Bytes.SIZEOF_LONG * values.length;
   }
@@ -968,11 +1268,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferIterator(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator) {
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
         return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
       }
     };
@@ -988,28 +1288,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
-  }
-
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
     private byte[] currentKey;
+    private NavigableMap<byte[], Update> currentBuffered;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
-      this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
-      }
+    private BufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> buffer,
+                             Scanner persistedScanner) {
+      this.bufferIter = getBufferIterator(buffer);
+      nextBuffered();
       this.persistedScanner = persistedScanner;
       this.currentRow = this.persistedScanner.next();
     }
@@ -1050,26 +1342,82 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
             currentRow = persistedScanner.next();
           }
 
-          mergeToPersisted(columns, getFromBuffer(buffer, currentKey), null);
+          mergeToPersisted(columns, currentBuffered, null);
 
           // If there is no column values available after merging, it is the same as no result for the given row.
           // This is because we use null to represent delete marker.
           if (!columns.isEmpty()) {
             result = new Result(copy(currentKey), columns);
           }
-          currentKey = keyIter.hasNext() ? keyIter.next() : null;
+          nextBuffered();
         }
       }
 
       return result;
     }
 
+    private void nextBuffered() {
+      if (bufferIter.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = bufferIter.next();
+        currentKey = entry.getKey();
+        currentBuffered = entry.getValue();
+      } else {
+        currentKey = null;
+        currentBuffered = null;
+      }
+    }
+
     @Override
     public void close() {
       this.persistedScanner.close();
     }
   }
 
+  /**
+   * Scanner over persistent store that adds the rows it returns to the read cache, and records the scan itself
+   * once it is exhausted, so that the same scan can be served from the read cache later in the transaction.
+   */
+  private class CachingScanner implements Scanner {
+    private final Scan scan;
+    private final Scanner persistedScanner;
+    // keys of the rows returned so far, null if the scan is too big to be cached
+    private List<byte[]> rows;
+    private long rowsSize;
+
+    private CachingScanner(Scan scan, Scanner persistedScanner) {
+      this.scan = scan;
+      this.persistedScanner = persistedScanner;
+      this.rows = new ArrayList<>();
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+      Row row = persistedScanner.next();
+      if (rows == null) {
+        return row;
+      }
+      if (row == null) {
+        readCache.putScan(scan.getStartRow(), scan.getStopRow(), rows);
+        rows = null;
+        return null;
+      }
+      rowsSize += row.getRow().length;
+      if (rowsSize > readCache.getMaxBytes()) {
+        rows = null;
+        return row;
+      }
+      readCache.put(row.getRow(), null, row.getColumns());
+      rows.add(row.getRow());
+      return row;
+    }
+
+    @Override
+    public void close() {
+      persistedScanner.close();
+    }
+  }
+
   private long warnedCount;
   private long skippedCount;
   private long warnFrequency = 1L;
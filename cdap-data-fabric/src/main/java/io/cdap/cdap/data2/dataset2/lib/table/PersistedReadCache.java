@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.table.Result;
+import io.cdap.cdap.api.dataset.table.Row;
+import io.cdap.cdap.common.utils.ImmutablePair;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * A size bounded cache of data read from the persisted store of a {@link BufferingTable}.
+ * <p>
+ * The cache is meant to live for the duration of a single transaction only: under snapshot isolation the persisted
+ * data visible to a transaction does not change while the transaction is running, so the cache never has to be
+ * invalidated on reads or writes, only cleared when a transaction starts or ends.
+ * <p>
+ * Columns and values are copied when entering and leaving the cache, so that clients changing returned byte arrays in
+ * place cannot affect the cached data. Least recently used entries are evicted first when the cache is full.
+ */
+final class PersistedReadCache {
+
+  // rough estimate of the memory taken by a map entry besides the keys and values
+  private static final int ENTRY_OVERHEAD = 64;
+
+  private final long maxBytes;
+  private final LinkedHashMap<ByteBuffer, CachedRow> rows;
+  private final LinkedHashMap<ImmutablePair<ByteBuffer, ByteBuffer>, CachedScan> scans;
+  private long size;
+
+  PersistedReadCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.rows = new LinkedHashMap<>(16, 0.75f, true);
+    this.scans = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns the cached columns of a row.
+   *
+   * @param row the row to look up
+   * @param columns the columns to look up; {@code null} means all columns of the row
+   * @return a map of column->value, or {@code null} if not all of the requested columns are known to the cache
+   */
+  @Nullable
+  NavigableMap<byte[], byte[]> get(byte[] row, @Nullable byte[][] columns) {
+    CachedRow cached = rows.get(ByteBuffer.wrap(row));
+    if (cached == null) {
+      return null;
+    }
+    if (columns == null) {
+      return cached.complete ? copy(cached.columns) : null;
+    }
+
+    NavigableMap<byte[], byte[]> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (byte[] column : columns) {
+      if (!cached.complete && !cached.columns.containsKey(column)) {
+        return null;
+      }
+      byte[] value = cached.columns.get(column);
+      if (value != null) {
+        result.put(copy(column), copy(value));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds columns of a row read from the persisted store.
+   *
+   * @param row the row that was read
+   * @param columns the columns that were read; {@code null} means all columns of the row were read
+   * @param persisted the column->value map returned by the persisted store
+   */
+  void put(byte[] row, @Nullable byte[][] columns, Map<byte[], byte[]> persisted) {
+    ByteBuffer key = ByteBuffer.wrap(copy(row));
+    CachedRow cached = rows.get(key);
+    if (cached != null && cached.complete && columns != null) {
+      // nothing to learn from a partial read of a complete row
+      return;
+    }
+    // the row is re-added below with its new size
+    removeRow(key);
+    if (cached == null || columns == null) {
+      cached = new CachedRow(columns == null);
+    }
+
+    if (columns == null) {
+      for (Map.Entry<byte[], byte[]> entry : persisted.entrySet()) {
+        cached.put(copy(entry.getKey()), copy(entry.getValue()));
+      }
+    } else {
+      // remember the requested columns that are absent as well, so that they are not looked up again
+      for (byte[] column : columns) {
+        cached.put(copy(column), copy(persisted.get(column)));
+      }
+    }
+    putRow(key, cached);
+  }
+
+  /**
+   * Returns the rows of a cached scan of the persisted store.
+   *
+   * @return the list of rows in scan order, or {@code null} if the scan is not in the cache
+   */
+  @Nullable
+  List<Row> getScan(@Nullable byte[] startRow, @Nullable byte[] stopRow) {
+    ImmutablePair<ByteBuffer, ByteBuffer> key = getScanKey(startRow, stopRow);
+    CachedScan cached = scans.get(key);
+    if (cached == null) {
+      return null;
+    }
+    List<Row> result = new ArrayList<>(cached.rows.size());
+    for (byte[] row : cached.rows) {
+      NavigableMap<byte[], byte[]> columns = get(row, null);
+      if (columns == null) {
+        // one of the rows was evicted, the scan has to go to the persisted store again
+        size -= scans.remove(key).size;
+        return null;
+      }
+      result.add(new Result(copy(row), columns));
+    }
+    return result;
+  }
+
+  /**
+   * Adds the complete result of a scan of the persisted store. Only the row keys are kept for the scan, the rows
+   * themselves must have been added through {@link #put(byte[], byte[][], Map)}.
+   *
+   * @param rows the keys of the rows returned by the scan, in scan order
+   */
+  void putScan(@Nullable byte[] startRow, @Nullable byte[] stopRow, List<byte[]> rows) {
+    ImmutablePair<ByteBuffer, ByteBuffer> key = getScanKey(startRow, stopRow);
+    CachedScan removed = scans.remove(key);
+    if (removed != null) {
+      size -= removed.size;
+    }
+    CachedScan cached = new CachedScan(rows.size());
+    for (byte[] row : rows) {
+      cached.add(copy(row));
+    }
+    if (cached.size <= maxBytes) {
+      scans.put(key, cached);
+      size += cached.size;
+      evict();
+    }
+  }
+
+  /**
+   * Returns the maximum size in bytes of the cached data.
+   */
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the approximate size in bytes of the cached data.
+   */
+  long getSize() {
+    return size;
+  }
+
+  /**
+   * Removes everything from the cache.
+   */
+  void clear() {
+    rows.clear();
+    scans.clear();
+    size = 0;
+  }
+
+  private void putRow(ByteBuffer key, CachedRow cached) {
+    if (cached.size + key.remaining() > maxBytes) {
+      return;
+    }
+    rows.put(key, cached);
+    size += cached.size + key.remaining();
+    evict();
+  }
+
+  private void removeRow(ByteBuffer key) {
+    CachedRow removed = rows.remove(key);
+    if (removed != null) {
+      size -= removed.size + key.remaining();
+    }
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<ByteBuffer, CachedRow>> rowIterator = rows.entrySet().iterator();
+    while (size > maxBytes && rowIterator.hasNext()) {
+      Map.Entry<ByteBuffer, CachedRow> entry = rowIterator.next();
+      size -= entry.getValue().size + entry.getKey().remaining();
+      rowIterator.remove();
+    }
+    Iterator<CachedScan> scanIterator = scans.values().iterator();
+    while (size > maxBytes && scanIterator.hasNext()) {
+      size -= scanIterator.next().size;
+      scanIterator.remove();
+    }
+  }
+
+  private static ImmutablePair<ByteBuffer, ByteBuffer> getScanKey(@Nullable byte[] startRow,
+                                                                  @Nullable byte[] stopRow) {
+    return ImmutablePair.of(startRow == null ? null : ByteBuffer.wrap(copy(startRow)),
+                            stopRow == null ? null : ByteBuffer.wrap(copy(stopRow)));
+  }
+
+  private static NavigableMap<byte[], byte[]> copy(NavigableMap<byte[], byte[]> columns) {
+    NavigableMap<byte[], byte[]> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<byte[], byte[]> entry : columns.entrySet()) {
+      if (entry.getValue() != null) {
+        result.put(copy(entry.getKey()), copy(entry.getValue()));
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private static byte[] copy(@Nullable byte[] bytes) {
+    return bytes == null ? null : Arrays.copyOf(bytes, bytes.length);
+  }
+
+  /**
+   * Cached columns of a single row. A {@code null} value marks a column that is known to be absent.
+   */
+  private static final class CachedRow {
+    private final NavigableMap<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    // whether all columns of the row are known, in which case any column not in the map is absent
+    private final boolean complete;
+    private long size = ENTRY_OVERHEAD;
+
+    private CachedRow(boolean complete) {
+      this.complete = complete;
+    }
+
+    private void put(byte[] column, @Nullable byte[] value) {
+      if (columns.containsKey(column)) {
+        byte[] previous = columns.get(column);
+        size -= ENTRY_OVERHEAD + column.length + (previous == null ? 0 : previous.length);
+      }
+      columns.put(column, value);
+      size += ENTRY_OVERHEAD + column.length + (value == null ? 0 : value.length);
+    }
+  }
+
+  /**
+   * Row keys returned by a scan, in scan order. The rows themselves are kept as complete rows in the row cache.
+   */
+  private static final class CachedScan {
+    private final List<byte[]> rows;
+    private long size = ENTRY_OVERHEAD;
+
+    private CachedScan(int numRows) {
+      this.rows = new ArrayList<>(numRows);
+    }
+
+    private void add(byte[] row) {
+      rows.add(row);
+      size += ENTRY_OVERHEAD + row.length;
+    }
+  }
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import io.cdap.cdap.api.common.Bytes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Changes buffered by a {@link BufferingTable} that were spilled to local disk, to bound the memory taken by the
+ * in-memory buffer of long running transactions writing a lot of data.
+ * <p>
+ * Each spill writes a sorted run: a file of rows in ascending row key order. Runs are kept in the order they were
+ * spilled, and when the same column was changed in more than one run, its updates are merged from the oldest to the
+ * newest run with {@link Updates#mergeUpdates(Update, Update)}. A sparse index of row keys is kept in memory for each
+ * run, so that a single row can be looked up without reading the whole run. Once there are too many runs, they are
+ * merged into a single one to keep lookups cheap.
+ * <p>
+ * This class is not thread safe.
+ */
+final class SpilledBuffer implements Closeable {
+
+  // number of rows between two entries of the sparse index of a run
+  private static final int INDEX_INTERVAL = 64;
+  // number of runs that triggers merging all runs into one
+  private static final int MAX_RUNS = 16;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+  private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+  private static final int LOOKUP_BUFFER_SIZE = 4 * 1024;
+
+  private static final int END_OF_RUN = -1;
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_DELETE = 1;
+  private static final byte TYPE_INCREMENT = 2;
+
+  private final File dir;
+  private final String prefix;
+  private final List<Run> runs;
+  // runs that were merged into a new run while still being read by an iterator
+  private final List<Run> retired;
+
+  /**
+   * Creates an empty instance.
+   *
+   * @param dir the local directory to write runs to
+   * @param prefix the prefix of the names of the run files
+   */
+  SpilledBuffer(File dir, String prefix) {
+    this.dir = dir;
+    this.prefix = prefix;
+    this.runs = new ArrayList<>();
+    this.retired = new ArrayList<>();
+  }
+
+  /**
+   * Returns whether nothing was spilled.
+   */
+  boolean isEmpty() {
+    return runs.isEmpty();
+  }
+
+  /**
+   * Returns the number of runs currently on disk.
+   */
+  int getRunCount() {
+    return runs.size();
+  }
+
+  /**
+   * Writes the given changes to a new run. The changes are newer than everything spilled before.
+   *
+   * @param changes row->(column->update) map of changes, as kept by the in-memory buffer of {@link BufferingTable}
+   */
+  void spill(NavigableMap<byte[], NavigableMap<byte[], Update>> changes) throws IOException {
+    runs.add(writeRun(changes.entrySet().iterator()));
+    if (runs.size() >= MAX_RUNS) {
+      Run merged = writeRun(iterator(null, null, Collections.<byte[], NavigableMap<byte[], Update>>emptyMap()));
+      for (Run run : runs) {
+        if (!run.retire()) {
+          retired.add(run);
+        }
+      }
+      runs.clear();
+      runs.add(merged);
+    }
+  }
+
+  /**
+   * Returns the spilled updates of a row, or {@code null} if the row was not spilled.
+   */
+  @Nullable
+  NavigableMap<byte[], Update> get(byte[] row) throws IOException {
+    NavigableMap<byte[], Update> result = null;
+    for (Run run : runs) {
+      NavigableMap<byte[], Update> columns = run.get(row);
+      if (columns != null) {
+        result = result == null ? columns : mergeRow(result, columns);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns an iterator over the spilled rows in a range, merged with the in-memory changes of the same range. The
+   * in-memory changes are considered newer than everything that was spilled. Rows are returned in ascending order.
+   *
+   * @param startRow first row of the range, inclusive; {@code null} means from the first row
+   * @param stopRow last row of the range, exclusive; {@code null} means up to the last row
+   * @param newest in-memory changes in the same range
+   */
+  Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator(
+    @Nullable byte[] startRow, @Nullable byte[] stopRow, Map<byte[], NavigableMap<byte[], Update>> newest) {
+
+    final PriorityQueue<Source> sources = new PriorityQueue<>(runs.size() + 1, SOURCE_COMPARATOR);
+    int order = 0;
+    for (Run run : runs) {
+      addSource(sources, new Source(run.iterator(startRow, stopRow), order++));
+    }
+    addSource(sources, new Source(newest.entrySet().iterator(), order));
+
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        Source source = sources.poll();
+        if (source == null) {
+          return endOfData();
+        }
+        byte[] row = source.current.getKey();
+        NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        columns.putAll(source.current.getValue());
+        addSource(sources, source);
+        // the queue returns the older of sources with the same row first
+        while (!sources.isEmpty() && Bytes.equals(row, sources.peek().current.getKey())) {
+          source = sources.poll();
+          mergeRow(columns, source.current.getValue());
+          addSource(sources, source);
+        }
+        return Maps.immutableEntry(row, columns);
+      }
+    };
+  }
+
+  /**
+   * Deletes all runs.
+   */
+  @Override
+  public void close() {
+    for (Run run : runs) {
+      run.close();
+    }
+    runs.clear();
+    for (Run run : retired) {
+      run.close();
+    }
+    retired.clear();
+  }
+
+  /**
+   * Merges the updates of a row on top of older updates of the same row.
+   *
+   * @param base older updates, modified in place
+   * @param modifier newer updates
+   * @return the base map
+   */
+  static NavigableMap<byte[], Update> mergeRow(NavigableMap<byte[], Update> base, Map<byte[], Update> modifier) {
+    for (Map.Entry<byte[], Update> entry : modifier.entrySet()) {
+      base.put(entry.getKey(), Updates.mergeUpdates(base.get(entry.getKey()), entry.getValue()));
+    }
+    return base;
+  }
+
+  private Run writeRun(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Failed to create directory " + dir + " for spilling table buffer");
+    }
+    File file = File.createTempFile(prefix, ".spill", dir);
+    try {
+      NavigableMap<byte[], Long> index = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      CountingOutputStream counting =
+        new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE));
+      try (DataOutputStream out = new DataOutputStream(counting)) {
+        int count = 0;
+        while (rows.hasNext()) {
+          Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+          if (count++ % INDEX_INTERVAL == 0) {
+            index.put(row.getKey(), counting.getCount());
+          }
+          writeRow(out, row.getKey(), row.getValue());
+        }
+        out.writeInt(END_OF_RUN);
+      }
+      return new Run(file, index);
+    } catch (IOException | RuntimeException e) {
+      if (!file.delete()) {
+        e.addSuppressed(new IOException("Failed to delete spill file " + file));
+      }
+      throw e;
+    }
+  }
+
+  private static void writeRow(DataOutputStream out, byte[] row, Map<byte[], Update> columns) throws IOException {
+    writeBytes(out, row);
+    out.writeInt(columns.size());
+    for (Map.Entry<byte[], Update> column : columns.entrySet()) {
+      writeBytes(out, column.getKey());
+      Update update = column.getValue();
+      if (update instanceof IncrementValue) {
+        out.writeByte(TYPE_INCREMENT);
+        out.writeLong(((IncrementValue) update).getValue());
+      } else if (update.getBytes() == null) {
+        out.writeByte(TYPE_DELETE);
+      } else {
+        out.writeByte(TYPE_PUT);
+        writeBytes(out, update.getBytes());
+      }
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads the next row of a run, or returns {@code null} at the end of the run.
+   */
+  @Nullable
+  private static Map.Entry<byte[], NavigableMap<byte[], Update>> readRow(DataInputStream in) throws IOException {
+    int rowLength = in.readInt();
+    if (rowLength == END_OF_RUN) {
+      return null;
+    }
+    byte[] row = new byte[rowLength];
+    in.readFully(row);
+    int numColumns = in.readInt();
+    NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < numColumns; i++) {
+      byte[] column = readBytes(in);
+      byte type = in.readByte();
+      switch (type) {
+        case TYPE_PUT:
+          columns.put(column, new PutValue(readBytes(in)));
+          break;
+        case TYPE_DELETE:
+          columns.put(column, new PutValue(null));
+          break;
+        case TYPE_INCREMENT:
+          columns.put(column, new IncrementValue(in.readLong()));
+          break;
+        default:
+          throw new IOException("Unknown update type " + type + " in spilled buffer");
+      }
+    }
+    return Maps.immutableEntry(row, columns);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void addSource(PriorityQueue<Source> sources, Source source) {
+    if (source.advance()) {
+      sources.add(source);
+    }
+  }
+
+  private static final Comparator<Source> SOURCE_COMPARATOR = new Comparator<Source>() {
+    @Override
+    public int compare(Source s1, Source s2) {
+      int cmp = Bytes.compareTo(s1.current.getKey(), s2.current.getKey());
+      return cmp != 0 ? cmp : Integer.compare(s1.order, s2.order);
+    }
+  };
+
+  /**
+   * One of the sorted sources merged by {@link #iterator(byte[], byte[], Map)}.
+   */
+  private static final class Source {
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows;
+    // older sources have lower order
+    private final int order;
+    private Map.Entry<byte[], NavigableMap<byte[], Update>> current;
+
+    private Source(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows, int order) {
+      this.rows = rows;
+      this.order = order;
+    }
+
+    private boolean advance() {
+      current = rows.hasNext() ? rows.next() : null;
+      return current != null;
+    }
+  }
+
+  /**
+   * A sorted run of rows in a local file.
+   */
+  private static final class Run {
+    private final File file;
+    private final FileChannel channel;
+    // sparse index of row key -> file offset of the row
+    private final NavigableMap<byte[], Long> index;
+    // number of iterators that are not exhausted yet
+    private int readers;
+    private boolean retired;
+
+    private Run(File file, NavigableMap<byte[], Long> index) throws IOException {
+      this.file = file;
+      this.channel = new RandomAccessFile(file, "r").getChannel();
+      this.index = index;
+    }
+
+    @Nullable
+    private NavigableMap<byte[], Update> get(byte[] row) throws IOException {
+      Map.Entry<byte[], Long> start = index.floorEntry(row);
+      if (start == null) {
+        return null;
+      }
+      DataInputStream in = open(start.getValue(), LOOKUP_BUFFER_SIZE);
+      for (int i = 0; i < INDEX_INTERVAL; i++) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = readRow(in);
+        if (entry == null) {
+          return null;
+        }
+        int cmp = Bytes.compareTo(entry.getKey(), row);
+        if (cmp == 0) {
+          return entry.getValue();
+        }
+        if (cmp > 0) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator(@Nullable final byte[] startRow,
+                                                                               @Nullable final byte[] stopRow) {
+      Map.Entry<byte[], Long> start = startRow == null ? null : index.floorEntry(startRow);
+      final DataInputStream in = open(start == null ? 0L : start.getValue(), SCAN_BUFFER_SIZE);
+      readers++;
+      return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+        @Override
+        protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+          try {
+            Map.Entry<byte[], NavigableMap<byte[], Update>> entry = readRow(in);
+            while (entry != null && startRow != null && Bytes.compareTo(entry.getKey(), startRow) < 0) {
+              entry = readRow(in);
+            }
+            if (entry == null || (stopRow != null && Bytes.compareTo(entry.getKey(), stopRow) >= 0)) {
+              if (--readers == 0 && retired) {
+                close();
+              }
+              return endOfData();
+            }
+            return entry;
+          } catch (IOException e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      };
+    }
+
+    private DataInputStream open(long position, int bufferSize) {
+      return new DataInputStream(new BufferedInputStream(new PositionalInputStream(channel, position), bufferSize));
+    }
+
+    /**
+     * Marks the run as no longer needed, closing it unless it is still being read.
+     *
+     * @return whether the run was closed
+     */
+    private boolean retire() {
+      retired = true;
+      if (readers > 0) {
+        return false;
+      }
+      close();
+      return true;
+    }
+
+    private void close() {
+      if (!channel.isOpen()) {
+        return;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore, the file is deleted below anyway
+      }
+      if (!file.delete()) {
+        file.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * An {@link InputStream} that reads from a {@link FileChannel} using positional reads, so that multiple streams
+   * can read from the same channel independently.
+   */
+  private static final class PositionalInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+
+    private PositionalInputStream(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+}
@@ -125,7 +125,7 @@ public class HBaseTable extends BufferingTable {
                     CConfiguration cConf, Configuration hConf, HBaseTableUtil tableUtil, TransactionCodec txCodec)
     throws IOException {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), spec.getName()),
-          TableProperties.getReadlessIncrementSupport(spec.getProperties()), spec.getProperties());
+          TableProperties.getReadlessIncrementSupport(spec.getProperties()), spec.getProperties(), cConf);
     TableId hBaseTableId = tableUtil.createHTableId(new NamespaceId(datasetContext.getNamespaceId()), spec.getName());
     this.table = tableUtil.createTable(hConf, hBaseTableId);
     // todo: make configurable
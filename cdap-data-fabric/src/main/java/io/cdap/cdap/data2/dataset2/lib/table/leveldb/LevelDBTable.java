@@ -51,7 +51,7 @@ public class LevelDBTable extends BufferingTable {
                       LevelDBTableService service, CConfiguration cConf,
                       DatasetSpecification spec) throws IOException {
     super(PrefixedNamespaces.namespace(cConf, datasetContext.getNamespaceId(), tableName),
-          false, spec.getProperties());
+          false, spec.getProperties(), cConf);
     this.core = new LevelDBTableCore(getTableName(), service);
   }
 
@@ -34,13 +34,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -85,7 +90,16 @@ public class LevelDBTableCore {
   }
 
 
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    List<Lock> locks = lockRows(Collections.singleton(row));
+    try {
+      return swapLocked(row, column, oldValue, newValue);
+    } finally {
+      unlock(locks);
+    }
+  }
+
+  private boolean swapLocked(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
     byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
     // verify
     if (oldValue == null && existing != null) {
@@ -104,11 +118,12 @@ public class LevelDBTableCore {
     return true;
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
     Map<byte[], Long> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
 
     DB db = getDB();
     WriteBatch writeBatch = db.createWriteBatch();
+    List<Lock> locks = lockRows(Collections.singleton(row));
     try (Snapshot snapshot = db.getSnapshot()) {
       ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
 
@@ -120,19 +135,22 @@ public class LevelDBTableCore {
         writeBatch.put(rowKey, Bytes.toBytes(newValue));
       }
       db.write(writeBatch, service.getWriteOptions());
+    } finally {
+      unlock(locks);
     }
 
     return result;
   }
 
 
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
     if (updates.isEmpty()) {
       return;
     }
 
     DB db = getDB();
     WriteBatch writeBatch = db.createWriteBatch();
+    List<Lock> locks = lockRows(updates.keySet());
     try (Snapshot snapshot = db.getSnapshot()) {
       ReadOptions readOptions = new ReadOptions().snapshot(snapshot);
 
@@ -145,6 +163,35 @@ public class LevelDBTableCore {
         }
       }
       db.write(writeBatch, service.getWriteOptions());
+    } finally {
+      unlock(locks);
+    }
+  }
+
+  /**
+   * Acquires the locks of the given rows, which guard read-modify-write operations against concurrent ones on the
+   * same rows. The snapshot for reading the current values must be taken after the locks are acquired.
+   *
+   * @return the acquired locks, to be released with {@link #unlock(List)}
+   */
+  private List<Lock> lockRows(Collection<byte[]> rows) {
+    // acquire the locks in stripe order, to avoid deadlocks between operations on multiple rows
+    SortedSet<Integer> stripes = new TreeSet<>();
+    for (byte[] row : rows) {
+      stripes.add(service.getRowLockStripe(tableName, row));
+    }
+    List<Lock> locks = new ArrayList<>(stripes.size());
+    for (int stripe : stripes) {
+      Lock lock = service.getRowLock(stripe);
+      lock.lock();
+      locks.add(lock);
+    }
+    return locks;
+  }
+
+  private static void unlock(List<Lock> locks) {
+    for (int i = locks.size() - 1; i >= 0; i--) {
+      locks.get(i).unlock();
     }
   }
 
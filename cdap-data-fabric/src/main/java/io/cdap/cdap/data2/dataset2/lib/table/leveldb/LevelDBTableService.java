@@ -25,6 +25,7 @@ import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.data2.util.TableId;
@@ -55,6 +56,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -65,6 +68,8 @@ import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 public class LevelDBTableService implements AutoCloseable {
 
   private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableService.class);
+  // must be a power of two
+  private static final int ROW_LOCK_STRIPES = 256;
 
   private boolean compressionEnabled;
   private int blockSize;
@@ -78,6 +83,8 @@ public class LevelDBTableService implements AutoCloseable {
   private boolean isClosed;
 
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  // guard the read-modify-write operations on rows, see getRowLockStripe
+  private final Lock[] rowLocks;
 
   private final ScheduledExecutorService executor;
   private ScheduledFuture<?> scheduledFuture;
@@ -98,6 +105,10 @@ public class LevelDBTableService implements AutoCloseable {
   public LevelDBTableService() {
     executor = Executors.newSingleThreadScheduledExecutor(
       Threads.createDaemonThreadFactory("leveldb-periodic-compaction"));
+    rowLocks = new Lock[ROW_LOCK_STRIPES];
+    for (int i = 0; i < rowLocks.length; i++) {
+      rowLocks[i] = new ReentrantLock();
+    }
   }
 
   /**
@@ -281,6 +292,22 @@ public class LevelDBTableService implements AutoCloseable {
     return writeOptions;
   }
 
+  /**
+   * Returns the index of the lock stripe that guards the read-modify-write operations on the given row of the given
+   * table. The rows of all tables are spread over a fixed number of stripes, so that operations on different rows
+   * rarely contend, while all the {@link LevelDBTableCore} instances of a table share the same locks.
+   */
+  int getRowLockStripe(String tableName, byte[] row) {
+    int hash = 31 * tableName.hashCode() + Bytes.hashCode(row);
+    // row keys often differ in their last bytes only, so spread the high bits of the hash
+    hash ^= hash >>> 16;
+    return hash & (ROW_LOCK_STRIPES - 1);
+  }
+
+  Lock getRowLock(int stripe) {
+    return rowLocks[stripe];
+  }
+
   public DB getTable(String tableName) throws IOException {
     ensureOpen();
     DB db = tables.get(tableName);
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.timeseries;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Codec of the sealed blocks of a {@link FactTable}. A block holds all the values of a measure for a dimension set
+ * within a closed time window, in a single cell. Timestamps are stored as the delta-of-delta of their offset from
+ * the row time base, in number of resolution intervals, and values as the delta from the previous value. Both are
+ * written as zig-zag variable length longs, so that regularly spaced points with slowly changing values take about
+ * two bytes each.
+ */
+final class FactBlock {
+
+  private static final byte VERSION = 0;
+
+  private FactBlock() {
+  }
+
+  /**
+   * Encodes the given values.
+   *
+   * @param timeBase time base of the row the block is stored in, in seconds
+   * @param resolution resolution of the values, in seconds
+   * @param values values keyed by timestamp, in seconds. Timestamps must be aligned to the resolution and not before
+   *               the time base
+   * @return the encoded block
+   */
+  static byte[] encode(long timeBase, int resolution, NavigableMap<Long, Long> values) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(2 + values.size() * 3);
+    os.write(VERSION);
+    writeVarLong(os, values.size());
+    long prevOffset = 0;
+    long prevDelta = 0;
+    long prevValue = 0;
+    for (Map.Entry<Long, Long> entry : values.entrySet()) {
+      long offset = (entry.getKey() - timeBase) / resolution;
+      long delta = offset - prevOffset;
+      writeVarLong(os, zigZag(delta - prevDelta));
+      writeVarLong(os, zigZag(entry.getValue() - prevValue));
+      prevOffset = offset;
+      prevDelta = delta;
+      prevValue = entry.getValue();
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Decodes a block encoded with {@link #encode(long, int, NavigableMap)}.
+   *
+   * @return the values keyed by timestamp, in seconds
+   */
+  static NavigableMap<Long, Long> decode(long timeBase, int resolution, byte[] block) {
+    if (block.length == 0 || block[0] != VERSION) {
+      throw new IllegalArgumentException("Unsupported fact block version");
+    }
+    int[] position = {1};
+    long size = readVarLong(block, position);
+    NavigableMap<Long, Long> values = new TreeMap<>();
+    long offset = 0;
+    long delta = 0;
+    long value = 0;
+    for (long i = 0; i < size; i++) {
+      delta += unZigZag(readVarLong(block, position));
+      offset += delta;
+      value += unZigZag(readVarLong(block, position));
+      values.put(timeBase + offset * resolution, value);
+    }
+    return values;
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream os, long value) {
+    while ((value & ~0x7FL) != 0) {
+      os.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    os.write((int) value);
+  }
+
+  private static long readVarLong(byte[] bytes, int[] position) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bytes[position[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
@@ -38,6 +38,9 @@ public class FactCodec {
   // current version
   private static final byte[] VERSION = new byte[] {0};
 
+  // column of the sealed blocks, which is never used for a time delta since roll time is at most 0xfffe
+  static final byte[] BLOCK_COLUMN = new byte[] {(byte) 0xff, (byte) 0xff};
+
   // encoding types
   private static final String TYPE_MEASURE_NAME = "measureName";
   private static final String TYPE_DIMENSIONS_GROUP = "tagsGroup";
@@ -306,6 +309,35 @@ public class FactCodec {
     return timebase + leftover;
   }
 
+  /**
+   * Returns the time base of the given row, in seconds.
+   */
+  public long getTimeBase(byte[] rowKey) {
+    return Bytes.toInt(rowKey, getTimeBaseOffset());
+  }
+
+  /**
+   * Returns the key of the row that has the same aggregation group, dimension values and measure name as the given
+   * row, and the time base of the given timestamp.
+   */
+  public byte[] replaceTimeBase(byte[] rowKey, long ts) {
+    byte[] result = Arrays.copyOf(rowKey, rowKey.length);
+    Bytes.putInt(result, getTimeBaseOffset(), getTimeBase(ts));
+    return result;
+  }
+
+  /**
+   * Returns the offset of the time base in row keys, which is also the length of the row key prefix that identifies
+   * the aggregation group.
+   */
+  public int getTimeBaseOffset() {
+    return VERSION.length + entityTable.getIdSize();
+  }
+
+  static boolean isBlockColumn(byte[] column) {
+    return Arrays.equals(BLOCK_COLUMN, column);
+  }
+
   static byte[][] getSplits(int aggGroupsCount) {
     // Row key format:
     // <version><encoded agg group><time base>...
@@ -25,10 +25,14 @@ import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 
 /**
@@ -51,16 +55,27 @@ public final class FactScanner implements Iterator<FactScanResult> {
   // set of measureNames - useful to process measures that are requested while scanning.
   private final Set<String> measureNames;
 
+  private final int resolution;
+  // time window of the sealed blocks in seconds, or 0 if the table has no sealed blocks
+  private final long blockWindow;
+  // timestamps of the sealed blocks of the current window, keyed by the row key without time base
+  private final Map<ByteBuffer, Set<Long>> sealedTimestamps;
+  private long currentWindow = -1;
+
   /**
    * Construct a FactScanner. Should only be called by FactTable.
    */
-  FactScanner(Scanner scanner, FactCodec codec, long startTs, long endTs, Collection<String> measureNames) {
+  FactScanner(Scanner scanner, FactCodec codec, long startTs, long endTs, Collection<String> measureNames,
+              int resolution, long blockWindow) {
     this.scanner = scanner;
     this.codec = codec;
     this.internalIterator = createIterator();
     this.startTs = startTs;
     this.endTs = endTs;
     this.measureNames = ImmutableSet.copyOf(measureNames);
+    this.resolution = resolution;
+    this.blockWindow = blockWindow;
+    this.sealedTimestamps = new HashMap<>();
   }
 
   public void close() {
@@ -106,10 +121,34 @@ public final class FactScanner implements Iterator<FactScanResult> {
           //       list of dimension names as we *always* know it (it is given) at the time of scanning
           List<DimensionValue> dimensionValues = codec.getDimensionValues(rowKey);
 
+          // Values of a sealed window are stored in a block in the row of the start of the window. Rows of the same
+          // window that are not deleted yet by sealing, or that were written after sealing, may have values for
+          // the same timestamps, which are ignored in favor of the block.
+          NavigableMap<Long, Long> blockValues = null;
+          Set<Long> sealed = null;
+          if (blockWindow > 0) {
+            long timeBase = codec.getTimeBase(rowKey);
+            long window = timeBase - timeBase % blockWindow;
+            if (window != currentWindow) {
+              sealedTimestamps.clear();
+              currentWindow = window;
+            }
+            ByteBuffer seriesKey = ByteBuffer.wrap(codec.replaceTimeBase(rowKey, 0));
+            byte[] block = rowResult.get(FactCodec.BLOCK_COLUMN);
+            if (block != null) {
+              blockValues = FactBlock.decode(timeBase, resolution, block);
+              sealedTimestamps.put(seriesKey, blockValues.keySet());
+            }
+            sealed = sealedTimestamps.get(seriesKey);
+          }
+
           boolean exhausted = false;
           List<TimeValue> timeValues = Lists.newLinkedList();
           // todo: entry set is ordered by ts?
           for (Map.Entry<byte[], byte[]> columnValue : rowResult.getColumns().entrySet()) {
+            if (FactCodec.isBlockColumn(columnValue.getKey())) {
+              continue;
+            }
             long ts = codec.getTimestamp(rowKey, columnValue.getKey());
             if (ts < startTs) {
               continue;
@@ -120,11 +159,22 @@ public final class FactScanner implements Iterator<FactScanResult> {
               break;
             }
 
+            if (sealed != null && sealed.contains(ts)) {
+              continue;
+            }
+
             // todo: move Bytes.toLong into codec?
             TimeValue timeValue = new TimeValue(ts, Bytes.toLong(columnValue.getValue()));
             timeValues.add(timeValue);
           }
 
+          if (blockValues != null) {
+            for (Map.Entry<Long, Long> entry : blockValues.subMap(startTs, true, endTs, true).entrySet()) {
+              timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+            }
+            timeValues.sort(Comparator.comparingLong(TimeValue::getTimestamp));
+          }
+
           if (timeValues.isEmpty() && exhausted) {
             break;
           }
@@ -38,17 +38,20 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -75,8 +78,14 @@ public final class FactTable implements Closeable {
   // todo: should not be used outside of codec
   private final int rollTime;
 
+  // time window of the sealed blocks in seconds, or 0 if blocks are disabled
+  private final long blockWindow;
+  // windows before this timestamp have been sealed by this instance
+  private volatile long sealedBeforeTs;
+
   private final String putCountMetric;
   private final String incrementCountMetric;
+  private final String sealedBlockCountMetric;
   private final Cache<FactCacheKey, Long> factCounterCache;
 
   @Nullable
@@ -95,8 +104,29 @@ public final class FactTable implements Closeable {
    */
   public FactTable(MetricsTable timeSeriesTable,
                    EntityTable entityTable, int resolution, int rollTime, int coarseLagFactor, int coarseRoundFactor) {
+    this(timeSeriesTable, entityTable, resolution, rollTime, coarseLagFactor, coarseRoundFactor, 0);
+  }
+
+  /**
+   * Creates an instance of {@link FactTable} that can seal closed time windows into compressed blocks.
+   * @param timeSeriesTable A table for storing facts information.
+   * @param entityTable The table for storing dimension encoding mappings.
+   * @param resolution Resolution in seconds
+   * @param rollTime Number of resolution for writing to a new row with a new timebase.
+   * @param coarseLagFactor
+   * @param coarseRoundFactor
+   * @param blockSize Number of resolution intervals sealed into a single block by {@link #sealBlocks(long)},
+   *                  or 0 to disable blocks. Blocks are not supported for the total resolution.
+   */
+  public FactTable(MetricsTable timeSeriesTable, EntityTable entityTable, int resolution, int rollTime,
+                   int coarseLagFactor, int coarseRoundFactor, int blockSize) {
     // Two bytes for column name, which is a delta timestamp
     Preconditions.checkArgument(rollTime <= MAX_ROLL_TIME, "Rolltime should be <= " + MAX_ROLL_TIME);
+    this.blockWindow = blockSize <= 0 || resolution == Integer.MAX_VALUE ? 0 : (long) blockSize * resolution;
+    // blocks are stored in the row of the start of their window
+    Preconditions.checkArgument(blockWindow % rollTime == 0,
+                                "Block window of %s seconds must be a multiple of the roll time %s",
+                                blockWindow, rollTime);
 
     this.entityTable = entityTable;
     this.timeSeriesTable = timeSeriesTable;
@@ -105,6 +135,7 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.sealedBlockCountMetric = "factTable." + resolution + ".sealed.block.count";
 
     // only use the cache if the resolution is not the total resolution
     this.factCounterCache = resolution == Integer.MAX_VALUE ? null :
@@ -245,8 +276,39 @@ public final class FactTable implements Closeable {
     }
   }
 
+  /**
+   * Splits the given scan into scans over consecutive time ranges that can be executed concurrently. Within an
+   * aggregation group rows are sorted by time base first, so each returned scan reads a distinct range of rows. The
+   * time ranges are aligned to the row time base, or to the block window if blocks are enabled.
+   *
+   * @param scan the scan to split
+   * @param maxSplits maximum number of scans to return
+   * @return the scans that together cover the given scan
+   */
+  public List<FactScan> splitScan(FactScan scan, int maxSplits) {
+    long interval = blockWindow > 0 ? blockWindow : rollTime;
+    long firstRow = scan.getStartTs() / interval;
+    long numRows = scan.getEndTs() / interval - firstRow + 1;
+    // totals resolution keeps all the values in the same row
+    if (maxSplits <= 1 || numRows <= 1 || resolution == Integer.MAX_VALUE) {
+      return Collections.singletonList(scan);
+    }
+
+    int numSplits = (int) Math.min(maxSplits, numRows);
+    List<FactScan> splits = new ArrayList<>(numSplits);
+    long startTs = scan.getStartTs();
+    for (int i = 1; i < numSplits; i++) {
+      long endTs = (firstRow + numRows * i / numSplits) * interval - 1;
+      splits.add(new FactScan(startTs, endTs, scan.getMeasureNames(), scan.getDimensionValues()));
+      startTs = endTs + 1;
+    }
+    splits.add(new FactScan(startTs, scan.getEndTs(), scan.getMeasureNames(), scan.getDimensionValues()));
+    return splits;
+  }
+
   public FactScanner scan(FactScan scan) {
-    return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames());
+    return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames(),
+                           resolution, blockWindow);
   }
 
   private List<String> getSortedMeasures(Collection<String> measures) {
@@ -267,9 +329,11 @@ public final class FactTable implements Closeable {
     // sort the measures based on their entity ids and based on that get the start and end row key metric names
     List<String> measureNames = getSortedMeasures(scan.getMeasureNames());
 
+    // start from the beginning of the block window, as blocks are stored in the row of the start of their window
+    long startTs = blockWindow > 0 ? scan.getStartTs() - scan.getStartTs() % blockWindow : scan.getStartTs();
     byte[] startRow = codec.createStartRowKey(scan.getDimensionValues(),
                                               measureNames.isEmpty() ? null : measureNames.get(0),
-                                              scan.getStartTs(), false);
+                                              startTs, false);
     byte[] endRow = codec.createEndRowKey(scan.getDimensionValues(),
                                           measureNames.isEmpty() ? null : measureNames.get(measureNames.size() - 1),
                                           scan.getEndTs(), false);
@@ -309,7 +373,14 @@ public final class FactTable implements Closeable {
 
         boolean exhausted = false;
         boolean fullRow = true;
+        byte[] block = row.get(FactCodec.BLOCK_COLUMN);
+        if (block != null && !deleteFromBlock(row.getRow(), block, scan.getStartTs(), scan.getEndTs())) {
+          fullRow = false;
+        }
         for (byte[] column : row.getColumns().keySet()) {
+          if (FactCodec.isBlockColumn(column)) {
+            continue;
+          }
           long ts = codec.getTimestamp(row.getRow(), column);
           if (ts < scan.getStartTs()) {
             fullRow = false;
@@ -324,6 +395,9 @@ public final class FactTable implements Closeable {
 
           columns.add(column);
         }
+        if (block != null && fullRow) {
+          columns.add(FactCodec.BLOCK_COLUMN);
+        }
 
         // todo: do deletes efficiently, in batches, not one-by-one
         timeSeriesTable.delete(row.getRow(), columns.toArray(new byte[columns.size()][]), fullRow);
@@ -335,6 +409,174 @@ public final class FactTable implements Closeable {
     }
   }
 
+  /**
+   * Removes the values within the given time range from a sealed block.
+   *
+   * @return {@code true} if the block has no values left and should be deleted
+   */
+  private boolean deleteFromBlock(byte[] rowKey, byte[] block, long startTs, long endTs) {
+    long timeBase = codec.getTimeBase(rowKey);
+    NavigableMap<Long, Long> values = FactBlock.decode(timeBase, resolution, block);
+    NavigableMap<Long, Long> deleted = values.subMap(startTs, true, endTs, true);
+    if (deleted.size() == values.size()) {
+      return true;
+    }
+    if (!deleted.isEmpty()) {
+      deleted.clear();
+      NavigableMap<byte[], byte[]> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      columns.put(FactCodec.BLOCK_COLUMN, FactBlock.encode(timeBase, resolution, values));
+      NavigableMap<byte[], NavigableMap<byte[], byte[]>> update = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      update.put(rowKey, columns);
+      timeSeriesTable.putBytes(update);
+    }
+    return false;
+  }
+
+  /**
+   * Seals the values of every time window that ends before the given timestamp into compressed blocks, one per
+   * dimension set and measure. The values of a window are encoded into a single cell in the row of the start of the
+   * window, and the cells they were stored in are deleted. Windows should only be sealed once no more values are
+   * written to them, as values written to a window after it has been sealed are ignored if the block already has a
+   * value for the same timestamp.
+   *
+   * @param endTs timestamp in seconds before which windows are sealed
+   * @return the number of blocks written
+   */
+  public int sealBlocks(long endTs) {
+    if (blockWindow <= 0) {
+      return 0;
+    }
+    long sealBeforeTs = endTs - endTs % blockWindow;
+    // windows before sealedBeforeTs were sealed by a previous call, skip them
+    long startTs = Math.min(sealedBeforeTs, sealBeforeTs);
+    int timeBaseOffset = codec.getTimeBaseOffset();
+    int blocks = 0;
+
+    // Rows are sorted by aggregation group, then by time base. Scan the rows of each aggregation group from startTs
+    // until sealBeforeTs, and then skip to the next aggregation group.
+    byte[] startRow = null;
+    while (true) {
+      byte[] nextStartRow = null;
+      SealedWindow window = null;
+      try (Scanner scanner = timeSeriesTable.scan(startRow, null, null)) {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          byte[] rowKey = row.getRow();
+          long timeBase = codec.getTimeBase(rowKey);
+          byte[] aggGroupPrefix = Arrays.copyOf(rowKey, timeBaseOffset);
+          if (timeBase < startTs) {
+            nextStartRow = codec.replaceTimeBase(Arrays.copyOf(rowKey, timeBaseOffset + Bytes.SIZEOF_INT), startTs);
+            break;
+          }
+          if (timeBase >= sealBeforeTs) {
+            nextStartRow = Bytes.stopKeyForPrefix(aggGroupPrefix);
+            break;
+          }
+          long windowStart = timeBase - timeBase % blockWindow;
+          if (window != null && (window.start != windowStart || !window.hasAggGroup(aggGroupPrefix))) {
+            blocks += window.seal();
+            window = null;
+          }
+          if (window == null) {
+            window = new SealedWindow(windowStart, aggGroupPrefix);
+          }
+          window.add(row);
+        }
+      }
+      if (window != null) {
+        blocks += window.seal();
+      }
+      if (nextStartRow == null) {
+        break;
+      }
+      startRow = nextStartRow;
+    }
+    sealedBeforeTs = Math.max(sealedBeforeTs, sealBeforeTs);
+    return blocks;
+  }
+
+  /**
+   * The rows of a time window of an aggregation group that are being sealed.
+   */
+  private final class SealedWindow {
+    private final long start;
+    private final byte[] aggGroupPrefix;
+    // values keyed by the row key of the block
+    private final Map<ByteBuffer, NavigableMap<Long, Long>> values = new HashMap<>();
+    // columns to delete once the blocks are written, keyed by row key
+    private final NavigableMap<byte[], List<byte[]>> sealedColumns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    // row keys of the sealed columns, keyed by the row key of the block they are sealed into
+    private final Map<ByteBuffer, List<byte[]>> sealedRows = new HashMap<>();
+    private final Set<ByteBuffer> existingBlocks = new HashSet<>();
+
+    SealedWindow(long start, byte[] aggGroupPrefix) {
+      this.start = start;
+      this.aggGroupPrefix = aggGroupPrefix;
+    }
+
+    boolean hasAggGroup(byte[] prefix) {
+      return Arrays.equals(aggGroupPrefix, prefix);
+    }
+
+    void add(Row row) {
+      byte[] rowKey = row.getRow();
+      ByteBuffer blockRowKey = ByteBuffer.wrap(codec.replaceTimeBase(rowKey, start));
+      NavigableMap<Long, Long> blockValues = values.computeIfAbsent(blockRowKey, k -> new TreeMap<>());
+      byte[] block = row.get(FactCodec.BLOCK_COLUMN);
+      if (block != null) {
+        // the block is in the first row of the window, so its values are added before the values of other rows
+        blockValues.putAll(FactBlock.decode(codec.getTimeBase(rowKey), resolution, block));
+        existingBlocks.add(blockRowKey);
+      }
+      for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+        if (FactCodec.isBlockColumn(column.getKey())) {
+          continue;
+        }
+        // values already sealed take precedence, in line with how FactScanner reads them
+        blockValues.putIfAbsent(codec.getTimestamp(rowKey, column.getKey()), Bytes.toLong(column.getValue()));
+        List<byte[]> columns = sealedColumns.get(rowKey);
+        if (columns == null) {
+          columns = new ArrayList<>();
+          sealedColumns.put(rowKey, columns);
+          sealedRows.computeIfAbsent(blockRowKey, k -> new ArrayList<>()).add(rowKey);
+        }
+        columns.add(column.getKey());
+      }
+    }
+
+    int seal() {
+      NavigableMap<byte[], NavigableMap<byte[], byte[]>> blocks = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      for (Map.Entry<ByteBuffer, NavigableMap<Long, Long>> entry : values.entrySet()) {
+        byte[] blockRowKey = entry.getKey().array();
+        // a single value is not worth a block, unless it is added to an existing one
+        if (entry.getValue().size() < 2 && !existingBlocks.contains(entry.getKey())) {
+          // keep the cells of the value where they are
+          for (byte[] rowKey : sealedRows.getOrDefault(entry.getKey(), Collections.emptyList())) {
+            sealedColumns.remove(rowKey);
+          }
+          continue;
+        }
+        NavigableMap<byte[], byte[]> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        columns.put(FactCodec.BLOCK_COLUMN, FactBlock.encode(start, resolution, entry.getValue()));
+        blocks.put(blockRowKey, columns);
+      }
+      if (blocks.isEmpty()) {
+        return 0;
+      }
+      // write the blocks before deleting the sealed cells, so that readers never miss a value
+      timeSeriesTable.putBytes(blocks);
+      for (Map.Entry<byte[], List<byte[]>> entry : sealedColumns.entrySet()) {
+        // rows with a block keep it
+        boolean fullRow = !blocks.containsKey(entry.getKey());
+        timeSeriesTable.delete(entry.getKey(), entry.getValue().toArray(new byte[0][]), fullRow);
+      }
+      if (metrics != null) {
+        metrics.increment(sealedBlockCountMetric, blocks.size());
+      }
+      return blocks.size();
+    }
+  }
+
   /**
    * Searches for first non-null valued dimensions in records that contain given list of dimensions and match given
    * dimension values in given time range. Returned dimension values are those that are not defined in given
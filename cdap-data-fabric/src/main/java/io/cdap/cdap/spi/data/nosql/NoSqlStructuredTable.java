@@ -58,6 +58,7 @@ import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * Nosql structured table implementation. This table will prepend the table name as the prefix for each row key.
@@ -134,8 +135,10 @@ public final class NoSqlStructuredTable implements StructuredTable {
 
 
   /*
-   *  Sorting in memory for the no-sql implementation. We sort post table scan.
-   * */
+   * Rows of the whole table are read in order from the secondary index of the sort field when possible, so that only
+   * the rows returned are read. Otherwise, the range is scanned and the rows are sorted in memory, keeping only the
+   * first limit rows.
+   */
   @Override
   public CloseableIterator<StructuredRow> scan(Range keyRange, int limit, String orderByField, SortOrder sortOrder)
     throws InvalidFieldException, IOException {
@@ -144,15 +147,26 @@ public final class NoSqlStructuredTable implements StructuredTable {
     if (!schema.isIndexColumn(orderByField)) {
       throw new InvalidFieldException(schema.getTableId(), orderByField, "is not an indexed column");
     }
+    if (isIndexOrdered(keyRange, limit, orderByField, sortOrder)) {
+      return scanByIndexOrder(limit, orderByField);
+    }
+
     Comparator<StructuredRow> comparator = sortOrder.equals(SortOrder.ASC) ? getComparator(orderByField) :
       getComparator(orderByField).reversed();
-    PriorityQueue<StructuredRow> rows = new PriorityQueue<>(comparator);
-
+    // bounded heap with the greatest of the rows kept so far on top, so that it can be evicted by a smaller row
+    PriorityQueue<StructuredRow> heap = new PriorityQueue<>(comparator.reversed());
     try (ScannerIterator scannerIterator = new ScannerIterator(getScanner(keyRange), schema)) {
       while (scannerIterator.hasNext()) {
-        rows.offer(scannerIterator.next());
+        heap.offer(scannerIterator.next());
+        if (heap.size() > limit) {
+          heap.poll();
+        }
       }
     }
+    Deque<StructuredRow> rows = new LinkedList<>();
+    while (!heap.isEmpty()) {
+      rows.addFirst(heap.poll());
+    }
     // return an iterator for the sorted elements
     CloseableIterator<StructuredRow> abstractCloseableIterator = new AbstractCloseableIterator<StructuredRow>() {
       @Override
@@ -171,6 +185,63 @@ public final class NoSqlStructuredTable implements StructuredTable {
     return new LimitIterator(abstractCloseableIterator, limit);
   }
 
+  /**
+   * Returns whether the rows of a sorted scan can be read in order from the secondary index of the sort field.
+   * The index is over the whole table, so it is only used when the scan is not restricted to a key range. It is in
+   * ascending byte order of the values, which is the order of the values for strings, bytes and,
+   * once negative numbers are moved first, for integers and longs. An unlimited scan reads the whole table anyway,
+   * which is cheaper to do with a table scan than with a lookup for every index entry.
+   */
+  private boolean isIndexOrdered(Range keyRange, int limit, String orderByField, SortOrder sortOrder) {
+    if (sortOrder != SortOrder.ASC || limit == Integer.MAX_VALUE
+      || !keyRange.getBegin().isEmpty() || !keyRange.getEnd().isEmpty()) {
+      return false;
+    }
+    switch (schema.getType(orderByField)) {
+      case INTEGER:
+      case LONG:
+      case STRING:
+      case BYTES:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private CloseableIterator<StructuredRow> scanByIndexOrder(int limit, String orderByField) {
+    byte[] column = convertColumnsToBytes(Collections.singleton(orderByField))[0];
+    // ranges of index values to scan, in order
+    List<ImmutablePair<byte[], byte[]>> valueRanges;
+    switch (schema.getType(orderByField)) {
+      case INTEGER:
+        // negative numbers have the sign bit set, hence come last in byte order
+        byte[] minInt = Bytes.toBytes(Integer.MIN_VALUE);
+        valueRanges = Arrays.asList(ImmutablePair.of(minInt, null), ImmutablePair.of(null, minInt));
+        break;
+      case LONG:
+        byte[] minLong = Bytes.toBytes(Long.MIN_VALUE);
+        valueRanges = Arrays.asList(ImmutablePair.of(minLong, null), ImmutablePair.of(null, minLong));
+        break;
+      default:
+        valueRanges = Collections.singletonList(ImmutablePair.of(null, null));
+    }
+
+    // the index may be shared with other tables, skip the rows of other tables
+    byte[] rowKeyPrefix = keyPrefix.getKey();
+    Iterator<ImmutablePair<byte[], byte[]>> rangeIterator = valueRanges.iterator();
+    return new LimitIterator(new AbstractIterator<CloseableIterator<StructuredRow>>() {
+      @Override
+      protected CloseableIterator<StructuredRow> computeNext() {
+        if (!rangeIterator.hasNext()) {
+          return endOfData();
+        }
+        ImmutablePair<byte[], byte[]> range = rangeIterator.next();
+        Scanner scanner = table.scanByIndex(column, range.getFirst(), range.getSecond());
+        return new ScannerIterator(new PrefixFilterScanner(scanner, rowKeyPrefix), schema);
+      }
+    }, limit);
+  }
+
   private Comparator<StructuredRow> getComparator(String orderByField)
     throws InvalidFieldException {
     switch (schema.getType(orderByField)) {
@@ -186,8 +257,9 @@ public final class NoSqlStructuredTable implements StructuredTable {
         return (row1, row2) -> Objects.compare(row1.getDouble(orderByField), row2.getDouble(orderByField),
                                                Double::compare);
       case STRING:
+        // compare the UTF-8 bytes, which is the order of the index
         return (row1, row2) -> Objects.compare(row1.getString(orderByField), row2.getString(orderByField),
-                                               String::compareTo);
+                                               (s1, s2) -> Bytes.compareTo(Bytes.toBytes(s1), Bytes.toBytes(s2)));
       case BYTES:
         return (row1, row2) -> new Bytes.ByteArrayComparator().compare(row1.getBytes(orderByField),
                                                                        row2.getBytes(orderByField));
@@ -638,6 +710,34 @@ public final class NoSqlStructuredTable implements StructuredTable {
    * Create a {@link CloseableIterator} from a {@link Scanner}.
    */
   @VisibleForTesting
+  /**
+   * A {@link Scanner} that only returns the rows of another {@link Scanner} whose row key starts with a prefix.
+   */
+  private static final class PrefixFilterScanner implements Scanner {
+    private final Scanner scanner;
+    private final byte[] rowKeyPrefix;
+
+    PrefixFilterScanner(Scanner scanner, byte[] rowKeyPrefix) {
+      this.scanner = scanner;
+      this.rowKeyPrefix = rowKeyPrefix;
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+      Row row = scanner.next();
+      while (row != null && !Bytes.startsWith(row.getRow(), rowKeyPrefix)) {
+        row = scanner.next();
+      }
+      return row;
+    }
+
+    @Override
+    public void close() {
+      scanner.close();
+    }
+  }
+
   static final class ScannerIterator extends AbstractCloseableIterator<StructuredRow> {
     private final Scanner scanner;
     private final StructuredTableSchema schema;
@@ -41,6 +41,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -52,6 +53,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import javax.annotation.Nullable;
@@ -67,12 +69,19 @@ public class PostgreSqlStructuredTable implements StructuredTable {
   private final StructuredTableSchema tableSchema;
   private final FieldValidator fieldValidator;
   private final int fetchSize;
+  private final SqlQueryCache queryCache;
 
   public PostgreSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema, int fetchSize) {
+    this(connection, tableSchema, fetchSize, new SqlQueryCache());
+  }
+
+  public PostgreSqlStructuredTable(Connection connection, StructuredTableSchema tableSchema, int fetchSize,
+                                   SqlQueryCache queryCache) {
     this.connection = connection;
     this.tableSchema = tableSchema;
     this.fieldValidator = new FieldValidator(tableSchema);
     this.fetchSize = fetchSize;
+    this.queryCache = queryCache;
   }
 
   @Override
@@ -87,6 +96,21 @@ public class PostgreSqlStructuredTable implements StructuredTable {
     upsertInternal(fields);
   }
 
+  @Override
+  public void multiUpsert(Collection<? extends Collection<Field<?>>> multiFields)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Write multiple rows {}", tableSchema.getTableId(), multiFields);
+    for (Collection<Field<?>> fields : multiFields) {
+      Set<String> fieldNames = fields.stream().map(Field::getName).collect(Collectors.toSet());
+      if (!fieldNames.containsAll(tableSchema.getPrimaryKeys())) {
+        throw new InvalidFieldException(tableSchema.getTableId(), fields,
+                                        String.format("Given fields %s do not contain all the " +
+                                                        "primary keys %s", fieldNames, tableSchema.getPrimaryKeys()));
+      }
+    }
+    executeBatches(multiFields, fields -> getWriteSqlQuery(fields, null), "write to");
+  }
+
   @Override
   public void update(Collection<Field<?>> fields) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: Update fields {}", tableSchema.getTableId(), fields);
@@ -530,6 +554,16 @@ public class PostgreSqlStructuredTable implements StructuredTable {
     }
   }
 
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys)
+    throws InvalidFieldException, IOException {
+    LOG.trace("Table {}: Delete with multiple keys {}", tableSchema.getTableId(), multiKeys);
+    for (Collection<Field<?>> keys : multiKeys) {
+      fieldValidator.validatePrimaryKeys(keys, false);
+    }
+    executeBatches(multiKeys, this::getDeleteQuery, "delete rows from");
+  }
+
   @Override
   public void deleteAll(Range keyRange) throws InvalidFieldException, IOException {
     LOG.trace("Table {}: DeleteAll with range {}", tableSchema.getTableId(), keyRange);
@@ -595,6 +629,50 @@ public class PostgreSqlStructuredTable implements StructuredTable {
     }
   }
 
+  /**
+   * Executes a statement for each of the given rows, with the rows sent to the database in JDBC batches.
+   * Consecutive rows with the same statement are executed in the same batch, so that the rows are still written
+   * in the given order.
+   *
+   * @param rows the fields to set as the statement arguments, for each row
+   * @param queryFunction the function to create the statement for the fields of a row
+   * @param operation the description of the operation used in the error message
+   */
+  private void executeBatches(Collection<? extends Collection<Field<?>>> rows,
+                              Function<Collection<Field<?>>, String> queryFunction,
+                              String operation) throws IOException {
+    String sqlQuery = null;
+    List<Collection<Field<?>>> batch = new ArrayList<>();
+    for (Collection<Field<?>> fields : rows) {
+      String query = queryFunction.apply(fields);
+      if (!query.equals(sqlQuery)) {
+        executeBatch(sqlQuery, batch, operation);
+        sqlQuery = query;
+        batch.clear();
+      }
+      batch.add(fields);
+    }
+    executeBatch(sqlQuery, batch, operation);
+  }
+
+  private void executeBatch(@Nullable String sqlQuery, List<Collection<Field<?>>> batch,
+                            String operation) throws IOException {
+    if (sqlQuery == null || batch.isEmpty()) {
+      return;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+      for (Collection<Field<?>> fields : batch) {
+        setFields(statement, fields, 1);
+        statement.addBatch();
+      }
+      LOG.trace("SQL statement: {} with {} rows", sqlQuery, batch.size());
+      statement.executeBatch();
+    } catch (SQLException e) {
+      throw new IOException(String.format("Failed to %s table %s with %d rows",
+                                          operation, tableSchema.getTableId().getName(), batch.size()), e);
+    }
+  }
+
   private void updateInternal(Collection<Field<?>> fields) throws IOException {
     String sqlQuery = getUpdateSqlQuery(fields);
     try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
@@ -781,6 +859,11 @@ public class PostgreSqlStructuredTable implements StructuredTable {
    * @return the sql query
    */
   private String getWriteSqlQuery(Collection<Field<?>> fields, @Nullable String incrementField) {
+    return queryCache.get(Arrays.asList(tableSchema.getTableId(), "write", getFieldNames(fields), incrementField),
+                          () -> buildWriteSqlQuery(fields, incrementField));
+  }
+
+  private String buildWriteSqlQuery(Collection<Field<?>> fields, @Nullable String incrementField) {
     StringJoiner insertPart = new StringJoiner(",",
                                                "INSERT INTO " + tableSchema.getTableId().getName() + " (",
                                                ") ");
@@ -803,6 +886,11 @@ public class PostgreSqlStructuredTable implements StructuredTable {
   }
 
   private String getUpdateSqlQuery(Collection<Field<?>> fields) {
+    return queryCache.get(Arrays.asList(tableSchema.getTableId(), "update", getFieldNames(fields)),
+                          () -> buildUpdateSqlQuery(fields));
+  }
+
+  private String buildUpdateSqlQuery(Collection<Field<?>> fields) {
     String tablePart = "UPDATE " + tableSchema.getTableId().getName();
     StringJoiner updatePart = new StringJoiner(", ", " SET ", "");
     StringJoiner conditionPart = new StringJoiner(" AND ", " WHERE ", ";");
@@ -816,7 +904,13 @@ public class PostgreSqlStructuredTable implements StructuredTable {
     return tablePart + updatePart + conditionPart;
   }
 
-  private String getReadQuery(Collection<Field<?>> keys, Collection<String> columns, boolean forUpdate) {
+  private String getReadQuery(Collection<Field<?>> keys, @Nullable Collection<String> columns, boolean forUpdate) {
+    List<Object> key = Arrays.asList(tableSchema.getTableId(), "read", getFieldNames(keys),
+                                     columns == null ? null : new ArrayList<>(columns), forUpdate);
+    return queryCache.get(key, () -> buildReadQuery(keys, columns, forUpdate));
+  }
+
+  private String buildReadQuery(Collection<Field<?>> keys, @Nullable Collection<String> columns, boolean forUpdate) {
     return new StringBuilder("SELECT ")
       .append(columns == null ? "*" : Joiner.on(",").join(columns))
       .append(" FROM ")
@@ -902,6 +996,11 @@ public class PostgreSqlStructuredTable implements StructuredTable {
   }
 
   private String getDeleteQuery(Collection<Field<?>> keys) {
+    return queryCache.get(Arrays.asList(tableSchema.getTableId(), "delete", getFieldNames(keys)),
+                          () -> buildDeleteQuery(keys));
+  }
+
+  private String buildDeleteQuery(Collection<Field<?>> keys) {
     return String.format("DELETE FROM %s WHERE %s;", tableSchema.getTableId().getName(), getEqualsClause(keys));
   }
 
@@ -937,6 +1036,18 @@ public class PostgreSqlStructuredTable implements StructuredTable {
     return statement.toString();
   }
 
+  /**
+   * Returns the names of the given fields in order, which together with the table id determine the SQL text
+   * of a statement.
+   */
+  private List<String> getFieldNames(Collection<Field<?>> fields) {
+    List<String> names = new ArrayList<>(fields.size());
+    for (Field<?> field : fields) {
+      names.add(field.getName());
+    }
+    return names;
+  }
+
   private String getEqualsClause(Collection<Field<?>> keys) {
     StringJoiner joiner = new StringJoiner(" AND ");
     for (Field<?> key : keys) {
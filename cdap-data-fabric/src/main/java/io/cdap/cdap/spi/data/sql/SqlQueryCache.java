@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.spi.data.sql;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.common.conf.Constants;
+
+import java.util.List;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the SQL text of the statements executed by {@link PostgreSqlStructuredTable}, so that the same statement
+ * text is not built again on every call. It is shared by all the tables created by a {@link SqlTransactionRunner}.
+ * This class is thread safe.
+ */
+public final class SqlQueryCache {
+
+  @Nullable
+  private final Cache<List<Object>, String> cache;
+  @Nullable
+  private final MetricsCollector metricsCollector;
+
+  /**
+   * Creates a cache that doesn't cache anything.
+   */
+  public SqlQueryCache() {
+    this(0, null);
+  }
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxSize the max number of statements to cache, or 0 to disable the cache
+   * @param metricsCollector the collector to emit the cache hits and misses to
+   */
+  public SqlQueryCache(int maxSize, @Nullable MetricsCollector metricsCollector) {
+    this.cache = maxSize <= 0 ? null : CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.metricsCollector = metricsCollector;
+  }
+
+  /**
+   * Returns the SQL text of a statement, building it if it is not cached.
+   *
+   * @param key the table id, the operation and everything else the SQL text depends on, except for the values
+   * @param builder builds the SQL text if it is not cached
+   * @return the SQL text of the statement
+   */
+  String get(List<Object> key, Supplier<String> builder) {
+    if (cache == null) {
+      return builder.get();
+    }
+    String query = cache.getIfPresent(key);
+    if (query != null) {
+      increment(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT);
+      return query;
+    }
+    increment(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS);
+    query = builder.get();
+    cache.put(key, query);
+    return query;
+  }
+
+  private void increment(String metricName) {
+    if (metricsCollector != null) {
+      metricsCollector.increment(metricName, 1L);
+    }
+  }
+}
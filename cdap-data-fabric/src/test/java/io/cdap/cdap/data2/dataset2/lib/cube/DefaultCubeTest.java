@@ -39,8 +39,12 @@ public class DefaultCubeTest extends AbstractCubeTest {
   @Override
   protected Cube getCube(String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations,
                          int coarseLagFactor, int coarseRoundFactor) throws Exception {
+    return new DefaultCube(resolutions, getFactTableSupplier(name, coarseLagFactor, coarseRoundFactor), aggregations,
+                           ImmutableMap.<String, AggregationAlias>of());
+  }
 
-    FactTableSupplier supplier = (resolution, rollTime) -> {
+  protected FactTableSupplier getFactTableSupplier(String name, int coarseLagFactor, int coarseRoundFactor) {
+    return (resolution, rollTime) -> {
       String entityTableName = "EntityTable-" + name;
       InMemoryTableService.create(entityTableName);
       String dataTableName = "DataTable-" + name + "-" + resolution;
@@ -50,7 +54,5 @@ public class DefaultCubeTest extends AbstractCubeTest {
                            resolution, rollTime, coarseLagFactor, coarseRoundFactor);
 
     };
-
-    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
   }
 }
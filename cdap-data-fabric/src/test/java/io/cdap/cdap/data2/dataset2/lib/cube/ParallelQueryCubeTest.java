@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.Cube;
+import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the cube tests against a {@link DefaultCube} that splits the scans of queries into concurrent scans.
+ */
+public class ParallelQueryCubeTest extends DefaultCubeTest {
+
+  // small roll time, so that the scans of the tests span multiple rows and get split
+  private static final int ROLL_TIME = 2;
+
+  @Override
+  protected Cube getCube(String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations,
+                         int coarseLagFactor, int coarseRoundFactor) throws Exception {
+    FactTableSupplier supplier = getFactTableSupplier("ParallelQuery-" + name, coarseLagFactor, coarseRoundFactor);
+    return new DefaultCube(resolutions, (resolution, ignored) -> supplier.get(resolution, ROLL_TIME),
+                           aggregations, ImmutableMap.<String, AggregationAlias>of(), 1, 0, 0, 4);
+  }
+
+  @Test
+  public void testParallelQuery() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    int resolution = 1;
+    Cube cube = getCube("myParallelCube", new int[] {resolution}, ImmutableMap.of("agg", agg));
+
+    List<TimeValue> sums = new ArrayList<>();
+    List<TimeValue> latest = new ArrayList<>();
+    for (int ts = 1; ts <= 100; ts++) {
+      writeInc(cube, "counter", ts, ts, "1", "a");
+      writeInc(cube, "counter", ts, 2 * ts, "1", "b");
+      writeGauge(cube, "gauge", ts, ts, "1", "a");
+      sums.add(new TimeValue(ts, 3 * ts));
+      latest.add(new TimeValue(ts, ts));
+    }
+
+    // time values of all the splits are merged and aggregated over dim2
+    verifyCountQuery(cube, 0, 200, resolution, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("counter", new HashMap<>(), sums)));
+    verifyCountQuery(cube, 0, 200, resolution, "gauge", AggregationFunction.LATEST, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("gauge", new HashMap<>(), latest)));
+    // scan that starts and ends in the middle of rows
+    verifyCountQuery(cube, 15, 56, resolution, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("counter", new HashMap<>(),
+                                                                        sums.subList(14, 56))));
+  }
+}
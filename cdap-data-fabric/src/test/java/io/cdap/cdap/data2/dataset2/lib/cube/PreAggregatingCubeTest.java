@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.cube;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.Cube;
+import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the cube tests against a {@link DefaultCube} that pre-aggregates facts before writing them.
+ */
+public class PreAggregatingCubeTest extends DefaultCubeTest {
+
+  @Override
+  protected Cube getCube(String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations,
+                         int coarseLagFactor, int coarseRoundFactor) throws Exception {
+    return new DefaultCube(resolutions, getFactTableSupplier("PreAggregated-" + name, coarseLagFactor,
+                                                             coarseRoundFactor),
+                           aggregations, ImmutableMap.<String, AggregationAlias>of(), 1, TimeUnit.HOURS.toMillis(1),
+                           Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void testPreAggregation() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1"));
+    int res1 = 1;
+    int res100 = 100;
+    int[] resolutions = {res1, res100};
+    Map<String, Aggregation> aggregations = ImmutableMap.of("agg", agg);
+    DefaultCube cube = (DefaultCube) getCube("myPreAggCube", resolutions, aggregations);
+    // reads the same tables without flushing the pre-aggregated facts
+    Cube reader = new DefaultCube(resolutions, getFactTableSupplier("PreAggregated-myPreAggCube", 10, 1),
+                                  aggregations, ImmutableMap.<String, AggregationAlias>of());
+
+    writeInc(cube, "counter", 1, 1, "1");
+    writeInc(cube, "counter", 1, 2, "1");
+    writeInc(cube, "counter", 10, 3, "1");
+    writeGauge(cube, "gauge", 1, 4, "1");
+    writeGauge(cube, "gauge", 10, 5, "1");
+    writeGauge(cube, "gauge", 1, 6, "1");
+
+    // nothing is written until the buffer is flushed
+    verifyCountQuery(reader, 0, 150, res1, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), Collections.emptyList());
+
+    cube.flush();
+    verifyCountQuery(reader, 0, 150, res1, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("counter", new HashMap<>(),
+                                                                        timeValues(1, 3, 10, 3))));
+    verifyCountQuery(reader, 0, 150, res100, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("counter", new HashMap<>(),
+                                                                        timeValues(0, 6))));
+    // gauges keep the last value of each resolution interval
+    verifyCountQuery(reader, 0, 150, res1, "gauge", AggregationFunction.LATEST, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("gauge", new HashMap<>(),
+                                                                        timeValues(1, 6, 10, 5))));
+    verifyCountQuery(reader, 0, 150, res100, "gauge", AggregationFunction.LATEST, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("gauge", new HashMap<>(),
+                                                                        timeValues(0, 6))));
+
+    // counters written after a flush are added to the stored values
+    writeInc(cube, "counter", 1, 10, "1");
+    cube.flush();
+    verifyCountQuery(reader, 0, 150, res100, "counter", AggregationFunction.SUM, ImmutableMap.of("dim1", "1"),
+                     new ArrayList<>(), ImmutableList.of(new TimeSeries("counter", new HashMap<>(),
+                                                                        timeValues(0, 16))));
+  }
+}
@@ -27,6 +27,7 @@ import io.cdap.cdap.api.dataset.table.Scan;
 import io.cdap.cdap.api.dataset.table.Scanner;
 import io.cdap.cdap.api.dataset.table.Table;
 import io.cdap.cdap.api.dataset.table.TableProperties;
+import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.data2.dataset2.TableAssert;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
@@ -497,6 +498,132 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     }
   }
 
+  @Test
+  public void testReadCache() throws Exception {
+    DatasetProperties props = DatasetProperties.builder()
+      .add(Constants.Dataset.TABLE_READ_CACHE_MAX_BYTES, "1048576")
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try (BufferingTable table1 = getTable(CONTEXT1, MY_TABLE, props);
+         BufferingTable table2 = getTable(CONTEXT1, MY_TABLE, props)) {
+      Transaction tx1 = txClient.startShort();
+      table1.startTx(tx1);
+      table1.put(R1, a(C1, C2), lb(1, 2));
+      table1.put(R2, a(C1), lb(3));
+      txClient.canCommitOrThrow(tx1, table1.getTxChanges());
+      Assert.assertTrue(table1.commitTx());
+      txClient.commitOrThrow(tx1);
+      table1.postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      table1.startTx(tx2);
+      // read the same data repeatedly, changing the returned values in place must not affect later reads
+      for (int i = 0; i < 2; i++) {
+        TableAssert.assertRow(table1.get(R1), R1, a(C1, C2), lb(1, 2));
+        TableAssert.assertRow(table1.get(R1, a(C2, C3)), R1, a(C2), lb(2));
+        TableAssert.assertRow(table1.get(R1, C1, null, 1), R1, a(C1), lb(1));
+        List<Row> rows = table1.get(Lists.newArrayList(new Get(R1, C1), new Get(R2), new Get(R3)));
+        TableAssert.assertRow(rows.get(0), R1, a(C1), lb(1));
+        TableAssert.assertRow(rows.get(1), R2, a(C1), lb(3));
+        Assert.assertTrue(rows.get(2).isEmpty());
+        TableAssert.assertScan(a(R1, R2), aa(a(C1, L1, C2, L2), a(C1, L3)), table1.scan(null, null));
+        table1.get(R1).getColumns().get(C1)[0]++;
+      }
+
+      // a concurrent transaction changes the data, which must not be visible to the running transaction
+      Transaction tx3 = txClient.startShort();
+      table2.startTx(tx3);
+      table2.put(R1, C1, L4);
+      table2.delete(R2);
+      txClient.canCommitOrThrow(tx3, table2.getTxChanges());
+      Assert.assertTrue(table2.commitTx());
+      txClient.commitOrThrow(tx3);
+      table2.postTxCommit();
+      TableAssert.assertRow(table1.get(R1), R1, a(C1, C2), lb(1, 2));
+      TableAssert.assertScan(a(R1, R2), aa(a(C1, L1, C2, L2), a(C1, L3)), table1.scan(null, null));
+
+      // own writes are applied on top of cached reads
+      table1.put(R2, C2, L5);
+      table1.increment(R1, C2, 3L);
+      TableAssert.assertRow(table1.get(R1), R1, a(C1, C2), lb(1, 5));
+      TableAssert.assertScan(a(R1, R2), aa(a(C1, L1, C2, L5), a(C1, L3, C2, L5)), table1.scan(null, null));
+      Assert.assertTrue(table1.rollbackTx());
+      txClient.abort(tx2);
+
+      // a new transaction sees the changes committed in between
+      Transaction tx4 = txClient.startShort();
+      table1.startTx(tx4);
+      TableAssert.assertRow(table1.get(R1), R1, a(C1, C2), lb(4, 2));
+      TableAssert.assertScan(a(R1), aa(a(C1, L4, C2, L2)), table1.scan(null, null));
+      txClient.commitOrThrow(tx4);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  @Test
+  public void testSpilling() throws Exception {
+    // spill the buffer on every write
+    DatasetProperties props = DatasetProperties.builder()
+      .add(Constants.Dataset.TABLE_BUFFER_SPILL_THRESHOLD_BYTES, "1")
+      .build();
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, props);
+    admin.create();
+    try (BufferingTable table = getTable(CONTEXT1, MY_TABLE, props)) {
+      Transaction tx1 = txClient.startShort();
+      table.startTx(tx1);
+      for (int i = 0; i < 100; i++) {
+        table.put(Bytes.toBytes(i), C1, Bytes.toBytes((long) i));
+        table.increment(Bytes.toBytes(i), C2, 1L);
+      }
+      table.increment(R1, C1, 1L);
+      table.increment(R1, C1, 2L);
+      table.put(R2, a(C1, C2), lb(1, 2));
+      table.delete(R2, C1);
+
+      // buffered changes are visible whether they were spilled or not
+      TableAssert.assertRow(table.get(Bytes.toBytes(42)), Bytes.toBytes(42), a(C1, C2), lb(42, 1));
+      TableAssert.assertRow(table.get(R1), R1, a(C1), lb(3));
+      TableAssert.assertRow(table.get(R2, a(C1, C2)), R2, a(C2), lb(2));
+      TableAssert.assertScan(a(R1, R2), aa(a(C1, L3), a(C2, L2)), table.scan(R1, R3));
+      Scanner scanner = table.scan(null, null);
+      int count = 0;
+      while (scanner.next() != null) {
+        count++;
+      }
+      scanner.close();
+      Assert.assertEquals(102, count);
+
+      txClient.canCommitOrThrow(tx1, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx1);
+      table.postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      table.startTx(tx2);
+      TableAssert.assertRow(table.get(Bytes.toBytes(99)), Bytes.toBytes(99), a(C1, C2), lb(99, 1));
+      TableAssert.assertRow(table.get(R1), R1, a(C1), lb(3));
+      for (int i = 0; i < 100; i++) {
+        table.delete(Bytes.toBytes(i));
+      }
+      table.put(R1, C1, L5);
+      txClient.canCommitOrThrow(tx2, table.getTxChanges());
+      Assert.assertTrue(table.commitTx());
+      // all spilled changes that were persisted must be undone
+      Assert.assertTrue(table.rollbackTx());
+      txClient.abort(tx2);
+
+      Transaction tx3 = txClient.startShort();
+      table.startTx(tx3);
+      TableAssert.assertRow(table.get(Bytes.toBytes(0)), Bytes.toBytes(0), a(C1, C2), lb(0, 1));
+      TableAssert.assertRow(table.get(R1), R1, a(C1), lb(3));
+      txClient.commitOrThrow(tx3);
+    } finally {
+      admin.drop();
+    }
+  }
+
   private void verify123(BufferingTable table) throws Exception {
     byte[] row = new byte[] {1};
     byte[] col = new byte[] {2};
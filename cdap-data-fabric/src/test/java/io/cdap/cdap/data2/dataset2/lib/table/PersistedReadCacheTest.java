@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.table.Row;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Unit tests for {@link PersistedReadCache}.
+ */
+public class PersistedReadCacheTest {
+
+  private static final byte[] R1 = Bytes.toBytes("r1");
+  private static final byte[] R2 = Bytes.toBytes("r2");
+  private static final byte[] C1 = Bytes.toBytes("c1");
+  private static final byte[] C2 = Bytes.toBytes("c2");
+  private static final byte[] C3 = Bytes.toBytes("c3");
+  private static final byte[] V1 = Bytes.toBytes("v1");
+  private static final byte[] V2 = Bytes.toBytes("v2");
+
+  @Test
+  public void testPartialRows() {
+    PersistedReadCache cache = new PersistedReadCache(1024 * 1024);
+    Assert.assertNull(cache.get(R1, new byte[][] {C1}));
+
+    // C2 is absent in the persisted store, the cache should remember that
+    cache.put(R1, new byte[][] {C1, C2}, columns(C1, V1));
+    assertColumns(columns(C1, V1), cache.get(R1, new byte[][] {C1}));
+    assertColumns(columns(), cache.get(R1, new byte[][] {C2}));
+    assertColumns(columns(C1, V1), cache.get(R1, new byte[][] {C1, C2}));
+
+    // not all columns are known
+    Assert.assertNull(cache.get(R1, new byte[][] {C1, C3}));
+    Assert.assertNull(cache.get(R1, null));
+
+    // partial reads are merged
+    cache.put(R1, new byte[][] {C3}, columns(C3, V2));
+    assertColumns(columns(C1, V1, C3, V2), cache.get(R1, new byte[][] {C1, C2, C3}));
+    Assert.assertNull(cache.get(R2, new byte[][] {C1}));
+  }
+
+  @Test
+  public void testCompleteRows() {
+    PersistedReadCache cache = new PersistedReadCache(1024 * 1024);
+    cache.put(R1, null, columns(C1, V1, C2, V2));
+    assertColumns(columns(C1, V1, C2, V2), cache.get(R1, null));
+    assertColumns(columns(C2, V2), cache.get(R1, new byte[][] {C2, C3}));
+
+    // a partial read does not turn a complete row into a partial one
+    cache.put(R1, new byte[][] {C1}, columns(C1, V1));
+    assertColumns(columns(C1, V1, C2, V2), cache.get(R1, null));
+  }
+
+  @Test
+  public void testReturnedDataIsCopied() {
+    PersistedReadCache cache = new PersistedReadCache(1024 * 1024);
+    NavigableMap<byte[], byte[]> persisted = columns(C1, Bytes.toBytes("v1"));
+    cache.put(R1, null, persisted);
+    persisted.firstEntry().getValue()[0]++;
+
+    NavigableMap<byte[], byte[]> result = cache.get(R1, null);
+    Assert.assertNotNull(result);
+    assertColumns(columns(C1, V1), result);
+    result.firstEntry().getValue()[0]++;
+    result.clear();
+    assertColumns(columns(C1, V1), cache.get(R1, null));
+  }
+
+  @Test
+  public void testScans() {
+    PersistedReadCache cache = new PersistedReadCache(1024 * 1024);
+    Assert.assertNull(cache.getScan(R1, null));
+
+    cache.put(R1, null, columns(C1, V1));
+    cache.put(R2, null, columns(C2, V2));
+    cache.putScan(R1, null, ImmutableList.of(R1, R2));
+
+    List<Row> rows = cache.getScan(R1, null);
+    Assert.assertNotNull(rows);
+    Assert.assertEquals(2, rows.size());
+    Assert.assertArrayEquals(R1, rows.get(0).getRow());
+    assertColumns(columns(C1, V1), rows.get(0).getColumns());
+    Assert.assertArrayEquals(R2, rows.get(1).getRow());
+    assertColumns(columns(C2, V2), rows.get(1).getColumns());
+
+    // scans of other ranges are not cached
+    Assert.assertNull(cache.getScan(R1, R2));
+    Assert.assertNull(cache.getScan(null, null));
+
+    // an empty scan result is cached too
+    cache.putScan(R2, R1, ImmutableList.<byte[]>of());
+    List<Row> empty = cache.getScan(R2, R1);
+    Assert.assertNotNull(empty);
+    Assert.assertTrue(empty.isEmpty());
+
+    cache.clear();
+    Assert.assertNull(cache.getScan(R1, null));
+    Assert.assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testEviction() {
+    PersistedReadCache cache = new PersistedReadCache(1024);
+    byte[] value = new byte[300];
+    for (int i = 0; i < 10; i++) {
+      cache.put(Bytes.toBytes(i), null, columns(C1, value));
+      Assert.assertTrue(cache.getSize() <= 1024);
+    }
+    // least recently used rows are evicted first
+    Assert.assertNull(cache.get(Bytes.toBytes(0), null));
+    Assert.assertNotNull(cache.get(Bytes.toBytes(9), null));
+
+    // rows bigger than the cache are not cached at all
+    cache.put(R1, null, columns(C1, new byte[2048]));
+    Assert.assertNull(cache.get(R1, null));
+    Assert.assertNotNull(cache.get(Bytes.toBytes(9), null));
+
+    // a scan whose rows were evicted is not served from the cache
+    cache.putScan(null, null, ImmutableList.of(Bytes.toBytes(9)));
+    Assert.assertNotNull(cache.getScan(null, null));
+    for (int i = 10; i < 20; i++) {
+      cache.put(Bytes.toBytes(i), null, columns(C1, value));
+    }
+    Assert.assertNull(cache.getScan(null, null));
+    Assert.assertTrue(cache.getSize() <= 1024);
+  }
+
+  private static NavigableMap<byte[], byte[]> columns(byte[]... columnsAndValues) {
+    NavigableMap<byte[], byte[]> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      columns.put(columnsAndValues[i], columnsAndValues[i + 1]);
+    }
+    return columns;
+  }
+
+  private static void assertColumns(Map<byte[], byte[]> expected, Map<byte[], byte[]> actual) {
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+      Assert.assertArrayEquals(entry.getValue(), actual.get(entry.getKey()));
+    }
+  }
+}
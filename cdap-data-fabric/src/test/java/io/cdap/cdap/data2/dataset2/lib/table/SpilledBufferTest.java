@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.table;
+
+import io.cdap.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Unit tests for {@link SpilledBuffer}.
+ */
+public class SpilledBufferTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final byte[] C1 = Bytes.toBytes("c1");
+  private static final byte[] C2 = Bytes.toBytes("c2");
+
+  @Test
+  public void testMergeAcrossRuns() throws Exception {
+    File dir = TEMP_FOLDER.newFolder();
+    try (SpilledBuffer buffer = new SpilledBuffer(dir, "test")) {
+      Assert.assertTrue(buffer.isEmpty());
+      Assert.assertNull(buffer.get(Bytes.toBytes("r1")));
+
+      NavigableMap<byte[], NavigableMap<byte[], Update>> changes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      changes.put(Bytes.toBytes("r1"), row(C1, new PutValue(Bytes.toBytes(10L)), C2, new PutValue(null)));
+      changes.put(Bytes.toBytes("r2"), row(C1, new IncrementValue(5L)));
+      buffer.spill(changes);
+
+      changes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      changes.put(Bytes.toBytes("r1"), row(C1, new IncrementValue(1L)));
+      changes.put(Bytes.toBytes("r2"), row(C1, new IncrementValue(2L), C2, new PutValue(Bytes.toBytes("v"))));
+      buffer.spill(changes);
+      Assert.assertEquals(2, buffer.getRunCount());
+
+      // increment on top of a put becomes a put, deletes are kept
+      NavigableMap<byte[], Update> r1 = buffer.get(Bytes.toBytes("r1"));
+      Assert.assertNotNull(r1);
+      Assert.assertEquals(2, r1.size());
+      Assert.assertTrue(r1.get(C1) instanceof PutValue);
+      Assert.assertEquals(11L, Bytes.toLong(r1.get(C1).getBytes()));
+      Assert.assertTrue(r1.get(C2) instanceof PutValue);
+      Assert.assertNull(r1.get(C2).getBytes());
+
+      // increments are summed up
+      NavigableMap<byte[], Update> r2 = buffer.get(Bytes.toBytes("r2"));
+      Assert.assertNotNull(r2);
+      Assert.assertTrue(r2.get(C1) instanceof IncrementValue);
+      Assert.assertEquals(7L, ((IncrementValue) r2.get(C1)).getValue().longValue());
+      Assert.assertArrayEquals(Bytes.toBytes("v"), r2.get(C2).getBytes());
+
+      Assert.assertNull(buffer.get(Bytes.toBytes("r0")));
+      Assert.assertNull(buffer.get(Bytes.toBytes("r3")));
+    }
+    Assert.assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testIterator() throws Exception {
+    try (SpilledBuffer buffer = new SpilledBuffer(TEMP_FOLDER.newFolder(), "test")) {
+      // spill even rows and odd rows separately, with enough rows to have multiple index entries per run
+      for (int parity = 0; parity < 2; parity++) {
+        NavigableMap<byte[], NavigableMap<byte[], Update>> changes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        for (int i = parity; i < 1000; i += 2) {
+          changes.put(key(i), row(C1, new IncrementValue(1L)));
+        }
+        buffer.spill(changes);
+      }
+
+      // in-memory changes are the newest
+      NavigableMap<byte[], NavigableMap<byte[], Update>> newest = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      newest.put(key(500), row(C1, new IncrementValue(1L)));
+      newest.put(key(1000), row(C1, new PutValue(Bytes.toBytes("x"))));
+
+      List<Integer> rows = new ArrayList<>();
+      Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = buffer.iterator(null, null, newest);
+      while (iterator.hasNext()) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = iterator.next();
+        int i = Bytes.toInt(entry.getKey());
+        rows.add(i);
+        if (i == 500) {
+          Assert.assertEquals(2L, ((IncrementValue) entry.getValue().get(C1)).getValue().longValue());
+        }
+      }
+      Assert.assertEquals(1001, rows.size());
+      for (int i = 0; i < rows.size(); i++) {
+        Assert.assertEquals(i, (int) rows.get(i));
+      }
+
+      // ranges
+      Assert.assertEquals(100, count(buffer.iterator(key(100), key(200), newest.subMap(key(100), key(200)))));
+      Assert.assertEquals(1, count(buffer.iterator(key(999), null, Collections.emptyMap())));
+      Assert.assertEquals(0, count(buffer.iterator(key(2000), null, Collections.emptyMap())));
+      Assert.assertEquals(11, count(buffer.iterator(null, key(11), Collections.emptyMap())));
+    }
+  }
+
+  @Test
+  public void testMergeRuns() throws Exception {
+    try (SpilledBuffer buffer = new SpilledBuffer(TEMP_FOLDER.newFolder(), "test")) {
+      NavigableMap<byte[], NavigableMap<byte[], Update>> changes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      changes.put(key(0), row(C1, new IncrementValue(1L)));
+      changes.put(key(1), row(C1, new IncrementValue(1L)));
+
+      // an iterator that is still open while the runs get merged must keep working
+      buffer.spill(changes);
+      Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator =
+        buffer.iterator(null, null, Collections.emptyMap());
+      Assert.assertTrue(iterator.hasNext());
+      Assert.assertEquals(0, Bytes.toInt(iterator.next().getKey()));
+
+      int spills = 1;
+      while (buffer.getRunCount() > 1 || spills == 1) {
+        buffer.spill(changes);
+        spills++;
+      }
+      Assert.assertTrue(spills > 2);
+      Assert.assertEquals(1, buffer.getRunCount());
+      Assert.assertEquals(spills, ((IncrementValue) buffer.get(key(1)).get(C1)).getValue().longValue());
+
+      Assert.assertTrue(iterator.hasNext());
+      Assert.assertEquals(1, Bytes.toInt(iterator.next().getKey()));
+      Assert.assertFalse(iterator.hasNext());
+    }
+  }
+
+  private static byte[] key(int i) {
+    return Bytes.toBytes(i);
+  }
+
+  private static NavigableMap<byte[], Update> row(Object... columnsAndUpdates) {
+    NavigableMap<byte[], Update> row = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (int i = 0; i < columnsAndUpdates.length; i += 2) {
+      row.put((byte[]) columnsAndUpdates[i], (Update) columnsAndUpdates[i + 1]);
+    }
+    return row;
+  }
+
+  private static int count(Iterator<?> iterator) {
+    int count = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      count++;
+    }
+    return count;
+  }
+}
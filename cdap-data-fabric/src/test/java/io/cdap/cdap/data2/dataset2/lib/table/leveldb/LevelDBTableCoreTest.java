@@ -41,8 +41,16 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 
@@ -276,6 +284,55 @@ public class LevelDBTableCoreTest {
     }
   }
 
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    String tableName = "testConcurrentIncrementsTable";
+    service.ensureTableExists(tableName);
+    byte[] col = Bytes.toBytes(colName);
+    int numRows = 16;
+    int numThreads = 8;
+    int numIncrements = 512;
+
+    // each thread uses its own table instance, all of them must see each other's increments
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      CyclicBarrier barrier = new CyclicBarrier(numThreads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(executor.submit(() -> {
+          LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+          barrier.await();
+          for (int i = 0; i < numIncrements; i++) {
+            // increment a single row, and all the rows at once
+            table.increment(Bytes.toBytes(rowNamePrefix + (i % numRows)), Collections.singletonMap(col, 1L));
+            NavigableMap<byte[], NavigableMap<byte[], Long>> updates = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+            for (int r = 0; r < numRows; r++) {
+              NavigableMap<byte[], Long> increments = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+              increments.put(col, 1L);
+              updates.put(Bytes.toBytes(rowNamePrefix + r), increments);
+            }
+            table.increment(updates);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LevelDBTableCore table = new LevelDBTableCore(tableName, service);
+    for (int r = 0; r < numRows; r++) {
+      long expected = numThreads * (numIncrements + numIncrements / numRows);
+      byte[] value = table.getRow(Bytes.toBytes(rowNamePrefix + r), new byte[][] { col }, null, null, -1, null)
+        .get(col);
+      Assert.assertEquals(expected, Bytes.toLong(value));
+    }
+    service.dropTable(tableName);
+  }
+
   /**
    * Write the given value as the latest at the target row and col.
    */
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.data2.dataset2.lib.timeseries;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Tests for {@link FactBlock}.
+ */
+public class FactBlockTest {
+
+  @Test
+  public void testEncodeDecode() {
+    int resolution = 60;
+    long timeBase = 1422309600;
+
+    // regularly spaced values
+    NavigableMap<Long, Long> values = new TreeMap<>();
+    for (int i = 0; i < 60; i++) {
+      values.put(timeBase + i * resolution, 1000L + i);
+    }
+    byte[] block = FactBlock.encode(timeBase, resolution, values);
+    Assert.assertEquals(values, FactBlock.decode(timeBase, resolution, block));
+    // one byte for each delta-of-delta and value delta, plus the header
+    Assert.assertEquals(2 + 2 * values.size() + 1, block.length);
+
+    // irregularly spaced values, with negative and extreme values
+    values = new TreeMap<>();
+    values.put(timeBase + 5 * resolution, -7L);
+    values.put(timeBase + 6 * resolution, Long.MAX_VALUE);
+    values.put(timeBase + 42 * resolution, Long.MIN_VALUE);
+    values.put(timeBase + 43 * resolution, 0L);
+    Assert.assertEquals(values, FactBlock.decode(timeBase, resolution, FactBlock.encode(timeBase, resolution, values)));
+
+    // empty block
+    values = new TreeMap<>();
+    Assert.assertEquals(values, FactBlock.decode(timeBase, resolution, FactBlock.encode(timeBase, resolution, values)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedVersion() {
+    FactBlock.decode(0, 60, new byte[] {1, 0});
+  }
+}
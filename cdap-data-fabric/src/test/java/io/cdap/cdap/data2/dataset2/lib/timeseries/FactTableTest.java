@@ -38,6 +38,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -516,6 +517,164 @@ public class FactTableTest {
     }
   }
 
+  @Test
+  public void testSealBlocks() throws Exception {
+    InMemoryTableService.create("BlocksEntityTable");
+    InMemoryTableService.create("BlocksDataTable");
+    int resolution = 60;
+    int rollTimebaseInterval = 60;
+    int blockSize = 60;
+    long blockWindow = blockSize * resolution;
+
+    InMemoryMetricsTable metricsTable = new InMemoryMetricsTable("BlocksDataTable");
+    FactTable table = new FactTable(metricsTable, new EntityTable(new InMemoryMetricsTable("BlocksEntityTable")),
+                                    resolution, rollTimebaseInterval, coarseLagFactor, coarseRoundFactor, blockSize);
+
+    // aligned to the start of a block window, two windows of data for two series
+    long ts = ((System.currentTimeMillis() / 1000) / blockWindow) * blockWindow - 3 * blockWindow;
+    List<TimeValue> expected1 = new ArrayList<>();
+    List<TimeValue> expected2 = new ArrayList<>();
+    for (int i = 0; i < 2 * blockSize; i++) {
+      writeInc(table, "metric", ts + i * resolution, i, "dim", "value1");
+      writeInc(table, "metric", ts + i * resolution, 2 * i + 1, "dim", "value2");
+      expected1.add(new TimeValue(ts + i * resolution, i));
+      expected2.add(new TimeValue(ts + i * resolution, 2 * i + 1));
+    }
+    int rowsBefore = countRows(metricsTable);
+
+    // nothing to seal if no window has ended
+    Assert.assertEquals(0, table.sealBlocks(ts + blockWindow - 1));
+    // seal the first window only
+    Assert.assertEquals(2, table.sealBlocks(ts + blockWindow + resolution));
+    Assert.assertEquals(rowsBefore - 2 * (blockSize - 1), countRows(metricsTable));
+    // sealing again is a no-op
+    Assert.assertEquals(0, table.sealBlocks(ts + blockWindow + resolution));
+
+    Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+    expected.put("metric", dimValues("dim", "value1"), expected1);
+    expected.put("metric", dimValues("dim", "value2"), expected2);
+    assertScan(table, expected, new FactScan(ts, ts + 3 * blockWindow, "metric", dimValues("dim", null)));
+
+    // seal the second window
+    Assert.assertEquals(2, table.sealBlocks(ts + 2 * blockWindow));
+    Assert.assertEquals(4, countRows(metricsTable));
+    assertScan(table, expected, new FactScan(ts, ts + 3 * blockWindow, "metric", dimValues("dim", null)));
+
+    // scan that starts and ends in the middle of windows
+    long startTs = ts + 30 * resolution;
+    long endTs = ts + blockWindow + 9 * resolution;
+    expected = HashBasedTable.create();
+    expected.put("metric", dimValues("dim", "value1"), expected1.subList(30, blockSize + 10));
+    assertScan(table, expected, new FactScan(startTs, endTs, "metric", dimValues("dim", "value1")));
+
+    // values written after the sealed windows are merged with the blocks
+    writeInc(table, "metric", ts + 2 * blockWindow, 5, "dim", "value1");
+    expected = HashBasedTable.create();
+    List<TimeValue> withLateValue = new ArrayList<>(expected1);
+    withLateValue.add(new TimeValue(ts + 2 * blockWindow, 5));
+    expected.put("metric", dimValues("dim", "value1"), withLateValue);
+    assertScan(table, expected, new FactScan(ts, ts + 3 * blockWindow, "metric", dimValues("dim", "value1")));
+
+    // delete the values of the first half of the second window
+    table.delete(new FactScan(ts + blockWindow, ts + blockWindow + 29 * resolution, "metric",
+                              dimValues("dim", "value1")));
+    List<TimeValue> afterDelete = new ArrayList<>(withLateValue.subList(0, blockSize));
+    afterDelete.addAll(withLateValue.subList(blockSize + 30, withLateValue.size()));
+    expected = HashBasedTable.create();
+    expected.put("metric", dimValues("dim", "value1"), afterDelete);
+    assertScan(table, expected, new FactScan(ts, ts + 3 * blockWindow, "metric", dimValues("dim", "value1")));
+
+    // delete everything
+    table.delete(new FactScan(ts, ts + 3 * blockWindow, "metric", dimValues("dim", null)));
+    Assert.assertEquals(0, countRows(metricsTable));
+  }
+
+  @Test
+  public void testSealSparseSeries() throws Exception {
+    InMemoryTableService.create("SparseBlocksEntityTable");
+    InMemoryTableService.create("SparseBlocksDataTable");
+    int resolution = 60;
+    int rollTimebaseInterval = 60;
+    int blockSize = 60;
+    long blockWindow = blockSize * resolution;
+
+    InMemoryMetricsTable metricsTable = new InMemoryMetricsTable("SparseBlocksDataTable");
+    FactTable table = new FactTable(metricsTable,
+                                    new EntityTable(new InMemoryMetricsTable("SparseBlocksEntityTable")),
+                                    resolution, rollTimebaseInterval, coarseLagFactor, coarseRoundFactor, blockSize);
+
+    // a dense series and a series with a single value, which is not in the first row of the window
+    long ts = ((System.currentTimeMillis() / 1000) / blockWindow) * blockWindow - 2 * blockWindow;
+    List<TimeValue> expected1 = new ArrayList<>();
+    for (int i = 0; i < blockSize; i++) {
+      writeInc(table, "metric", ts + i * resolution, i, "dim", "value1");
+      expected1.add(new TimeValue(ts + i * resolution, i));
+    }
+    writeInc(table, "metric", ts + 10 * resolution, 7, "dim", "value2");
+    int rowsBefore = countRows(metricsTable);
+
+    // only the dense series is sealed, the single value stays in its row
+    Assert.assertEquals(1, table.sealBlocks(ts + blockWindow));
+    Assert.assertEquals(rowsBefore - (blockSize - 1), countRows(metricsTable));
+
+    Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+    expected.put("metric", dimValues("dim", "value1"), expected1);
+    expected.put("metric", dimValues("dim", "value2"),
+                 Collections.singletonList(new TimeValue(ts + 10 * resolution, 7)));
+    assertScan(table, expected, new FactScan(ts, ts + 2 * blockWindow, "metric", dimValues("dim", null)));
+  }
+
+  @Test
+  public void testSplitScan() throws Exception {
+    InMemoryTableService.create("SplitEntityTable");
+    InMemoryTableService.create("SplitDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 100;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("SplitDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("SplitEntityTable")),
+                                    resolution, rollTimebaseInterval, coarseLagFactor, coarseRoundFactor);
+
+    long ts = ((System.currentTimeMillis() / 1000) / rollTimebaseInterval) * rollTimebaseInterval;
+    List<TimeValue> expectedValues = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      writeInc(table, "metric", ts + i * resolution, i, "dim", "value");
+      expectedValues.add(new TimeValue(ts + i * resolution, i));
+    }
+
+    // 10 rows, split into 3 ranges aligned to the time base
+    long startTs = ts + 5;
+    long endTs = ts + 999;
+    FactScan scan = new FactScan(startTs, endTs, "metric", dimValues("dim", "value"));
+    List<FactScan> splits = table.splitScan(scan, 3);
+    Assert.assertEquals(3, splits.size());
+    Assert.assertEquals(startTs, splits.get(0).getStartTs());
+    Assert.assertEquals(endTs, splits.get(2).getEndTs());
+    List<TimeValue> values = new ArrayList<>();
+    for (int i = 0; i < splits.size(); i++) {
+      FactScan split = splits.get(i);
+      if (i > 0) {
+        Assert.assertEquals(splits.get(i - 1).getEndTs() + 1, split.getStartTs());
+        Assert.assertEquals(0, split.getStartTs() % rollTimebaseInterval);
+      }
+      FactScanner scanner = table.scan(split);
+      try {
+        while (scanner.hasNext()) {
+          values.addAll(Lists.newArrayList(scanner.next().iterator()));
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+    Assert.assertEquals(expectedValues.subList(1, expectedValues.size()), values);
+
+    // no more splits than rows
+    Assert.assertEquals(10, table.splitScan(scan, 20).size());
+    // a scan within a single row is not split
+    Assert.assertEquals(1, table.splitScan(new FactScan(ts, ts + 99, "metric", dimValues("dim", "value")), 3).size());
+    Assert.assertEquals(1, table.splitScan(scan, 1).size());
+  }
+
   @Test
   public void testPreSplits() throws Exception {
     InMemoryTableService.create("presplitEntityTable");
@@ -644,6 +803,16 @@ public class FactTableTest {
     return timeValues;
   }
 
+  private int countRows(InMemoryMetricsTable metricsTable) {
+    int count = 0;
+    try (Scanner scanner = metricsTable.scan(null, null, null)) {
+      while (scanner.next() != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private void writeInc(FactTable table, String metric, long ts, int value, String... dims) {
     table.add(ImmutableList.of(new Fact(ts, dimValues(dims), new Measurement(metric, MeasureType.COUNTER, value))));
   }
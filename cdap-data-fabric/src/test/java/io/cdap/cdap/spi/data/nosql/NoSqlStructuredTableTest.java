@@ -17,6 +17,7 @@
 package io.cdap.cdap.spi.data.nosql;
 
 import io.cdap.cdap.api.common.Bytes;
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.dataset.table.Result;
 import io.cdap.cdap.api.dataset.table.Row;
 import io.cdap.cdap.api.dataset.table.Scanner;
@@ -24,11 +25,15 @@ import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.data2.dataset2.DatasetFrameworkTestUtil;
 import io.cdap.cdap.data2.dataset2.lib.table.MDSKey;
+import io.cdap.cdap.spi.data.SortOrder;
+import io.cdap.cdap.spi.data.StructuredRow;
+import io.cdap.cdap.spi.data.StructuredTable;
 import io.cdap.cdap.spi.data.StructuredTableAdmin;
 import io.cdap.cdap.spi.data.StructuredTableTest;
 import io.cdap.cdap.spi.data.table.StructuredTableSchema;
 import io.cdap.cdap.spi.data.table.field.Field;
 import io.cdap.cdap.spi.data.table.field.Fields;
+import io.cdap.cdap.spi.data.table.field.Range;
 import io.cdap.cdap.spi.data.transaction.TransactionRunner;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.tephra.TransactionManager;
@@ -203,6 +208,38 @@ public class NoSqlStructuredTableTest extends StructuredTableTest {
     Assert.assertEquals(actual.get(2), filterIndex.getValue());
   }
 
+  @Test
+  public void testSortedScanUtf8Order() throws Exception {
+    // U+1F600 is encoded as a surrogate pair, which sorts before U+FFFD in UTF-16, but after it in UTF-8
+    List<String> expected = Arrays.asList("a", "\uFFFD", new String(Character.toChars(0x1F600)));
+    transactionRunner.run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_SPEC.getTableId());
+      for (int i = 0; i < expected.size(); i++) {
+        table.upsert(Arrays.asList(Fields.intField("key", i), Fields.longField("key2", 0L),
+                                   Fields.stringField("col1", expected.get(expected.size() - 1 - i))));
+      }
+    });
+
+    List<String> reversed = new ArrayList<>(expected);
+    Collections.reverse(reversed);
+    transactionRunner.run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_SPEC.getTableId());
+      // sorted by the index, and in memory, in the same order
+      Assert.assertEquals(expected, scanStrings(table.scan(Range.all(), 10, "col1", SortOrder.ASC)));
+      Assert.assertEquals(reversed, scanStrings(table.scan(Range.all(), 10, "col1", SortOrder.DESC)));
+      Range range = Range.from(Collections.<Field<?>>singleton(Fields.intField("key", 0)), Range.Bound.INCLUSIVE);
+      Assert.assertEquals(expected, scanStrings(table.scan(range, 10, "col1", SortOrder.ASC)));
+    });
+  }
+
+  private static List<String> scanStrings(CloseableIterator<StructuredRow> iterator) {
+    try (CloseableIterator<StructuredRow> rows = iterator) {
+      List<String> result = new ArrayList<>();
+      rows.forEachRemaining(row -> result.add(row.getString("col1")));
+      return result;
+    }
+  }
+
   private static class MockScanner implements Scanner {
     private final Iterator<Integer> iterator;
     private boolean closed;
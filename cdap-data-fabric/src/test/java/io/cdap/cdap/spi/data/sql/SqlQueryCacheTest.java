@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.spi.data.sql;
+
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.common.conf.Constants;
+import io.cdap.cdap.common.conf.SConfiguration;
+import io.cdap.cdap.common.metrics.NoOpMetricsCollectionService;
+import io.cdap.cdap.spi.data.SortOrder;
+import io.cdap.cdap.spi.data.StructuredRow;
+import io.cdap.cdap.spi.data.StructuredTable;
+import io.cdap.cdap.spi.data.table.StructuredTableId;
+import io.cdap.cdap.spi.data.table.StructuredTableSpecification;
+import io.cdap.cdap.spi.data.table.field.Field;
+import io.cdap.cdap.spi.data.table.field.Fields;
+import io.cdap.cdap.spi.data.table.field.Range;
+import io.cdap.cdap.spi.data.transaction.TransactionRunner;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.apache.commons.dbcp2.DelegatingStatement;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+
+/**
+ * Tests for the caching of the SQL text and of the prepared statements of {@link PostgreSqlStructuredTable}.
+ */
+public class SqlQueryCacheTest {
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final StructuredTableId TABLE = new StructuredTableId("queryCacheTable");
+  private static final String KEY = "key";
+  private static final String STRING_COL = "col1";
+  private static final String LONG_COL = "col2";
+
+  private static EmbeddedPostgres pg;
+  private static CConfiguration cConf;
+  private static DataSource dataSource;
+  private static PostgreSqlStructuredTableAdmin tableAdmin;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    cConf = CConfiguration.create();
+    pg = PostgresInstantiator.createAndStart(cConf, TEMP_FOLDER.newFolder());
+    cConf.setInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE, 10);
+    dataSource = PostgreSqlStorageProvider.createDataSource(cConf, SConfiguration.create(),
+                                                            new NoOpMetricsCollectionService());
+    tableAdmin = new PostgreSqlStructuredTableAdmin(dataSource);
+    tableAdmin.create(new StructuredTableSpecification.Builder()
+                        .withId(TABLE)
+                        .withFields(Fields.intType(KEY), Fields.stringType(STRING_COL), Fields.longType(LONG_COL))
+                        .withPrimaryKeys(KEY)
+                        .build());
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    if (dataSource instanceof AutoCloseable) {
+      ((AutoCloseable) dataSource).close();
+    }
+    if (pg != null) {
+      pg.close();
+    }
+  }
+
+  @Test
+  public void testCache() {
+    CountingMetricsContext metrics = new CountingMetricsContext();
+    SqlQueryCache cache = new SqlQueryCache(10, metrics);
+    AtomicInteger builds = new AtomicInteger();
+
+    Assert.assertEquals("a", cache.get(Arrays.asList(TABLE, "read", "a"), () -> build(builds, "a")));
+    Assert.assertEquals("b", cache.get(Arrays.asList(TABLE, "read", "b"), () -> build(builds, "b")));
+    Assert.assertEquals("a", cache.get(Arrays.asList(TABLE, "read", "a"), () -> build(builds, "c")));
+    Assert.assertEquals(2, builds.get());
+    Assert.assertEquals(1L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+    Assert.assertEquals(2L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS));
+
+    // a cache of size 0 builds the SQL text on every call
+    cache = new SqlQueryCache(0, metrics);
+    Assert.assertEquals("a", cache.get(Arrays.asList(TABLE, "read", "a"), () -> build(builds, "a")));
+    Assert.assertEquals("c", cache.get(Arrays.asList(TABLE, "read", "a"), () -> build(builds, "c")));
+    Assert.assertEquals(4, builds.get());
+    Assert.assertEquals(1L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+  }
+
+  @Test
+  public void testDistinctQueries() throws Exception {
+    CountingMetricsContext metrics = new CountingMetricsContext();
+    SqlQueryCache cache = new SqlQueryCache(100, metrics);
+    List<Field<?>> keys = Collections.singletonList(Fields.intField(KEY, 1));
+    List<List<String>> queries = new ArrayList<>();
+
+    for (int i = 0; i < 2; i++) {
+      List<String> sqls = new ArrayList<>();
+      try (Connection connection = dataSource.getConnection()) {
+        SqlStructuredTableContext context = new SqlStructuredTableContext(tableAdmin, recordSql(connection, sqls),
+                                                                          metrics, false, 100, cache);
+        StructuredTable table = context.getTable(TABLE);
+        table.upsert(Arrays.asList(Fields.intField(KEY, 1), Fields.stringField(STRING_COL, "v" + i)));
+        table.increment(keys, LONG_COL, 1L);
+        table.update(Arrays.asList(Fields.intField(KEY, 1), Fields.longField(LONG_COL, 5L + i)));
+        Assert.assertEquals(5L + i, (long) table.read(keys).get().getLong(LONG_COL));
+        Assert.assertEquals("v" + i, table.read(keys, Collections.singleton(STRING_COL)).get().getString(STRING_COL));
+        Assert.assertTrue(table.compareAndSwap(keys, Fields.stringField(STRING_COL, "v" + i),
+                                               Fields.stringField(STRING_COL, "w" + i)));
+        table.upsert(Arrays.asList(Fields.intField(KEY, 2), Fields.stringField(STRING_COL, "x")));
+        // scans inline the limit and the sort order, and are not cached
+        assertKeys(Collections.singletonList(1), table.scan(Range.all(), 1, SortOrder.ASC));
+        assertKeys(Arrays.asList(2, 1), table.scan(Range.all(), 2, SortOrder.DESC));
+        table.delete(Collections.singletonList(Fields.intField(KEY, 2)));
+        table.delete(keys);
+      }
+      queries.add(sqls);
+    }
+
+    // every statement with different fields, columns or locking has a different SQL text
+    List<String> sqls = queries.get(0);
+    Assert.assertEquals(6, sqls.subList(0, 6).stream().distinct().count());
+    // the upsert and the delete of the second row have the same fields as those of the first row
+    Assert.assertEquals(sqls.get(0), sqls.get(7));
+    Assert.assertEquals(sqls.get(10), sqls.get(11));
+
+    // the same SQL text is used in the next transaction, without being built again. The order of the fields written
+    // by compareAndSwap depends on their values, so its upsert is left out.
+    Set<String> cached = new HashSet<>();
+    for (int i = 0; i < sqls.size(); i++) {
+      if (i != 6) {
+        Assert.assertEquals(sqls.get(i), queries.get(1).get(i));
+      }
+      // the scans are not cached
+      if (i != 8 && i != 9) {
+        cached.add(queries.get(0).get(i));
+        cached.add(queries.get(1).get(i));
+      }
+    }
+    long misses = metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS);
+    Assert.assertEquals(cached.size(), misses);
+    Assert.assertEquals(20L, misses + metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+  }
+
+  @Test
+  public void testTransactionRunner() throws Exception {
+    CountingMetricsContext metrics = new CountingMetricsContext();
+    NoOpMetricsCollectionService metricsCollectionService = new NoOpMetricsCollectionService() {
+      @Override
+      public MetricsContext getContext(Map<String, String> tags) {
+        return metrics;
+      }
+    };
+    List<Field<?>> keys = Collections.singletonList(Fields.intField(KEY, 3));
+
+    // the cache is shared by the transactions of the runner
+    TransactionRunner txRunner = new SqlTransactionRunner(tableAdmin, dataSource, metricsCollectionService,
+                                                          false, 100, 10);
+    for (int i = 0; i < 3; i++) {
+      txRunner.run(context -> Assert.assertFalse(context.getTable(TABLE).read(keys).isPresent()));
+    }
+    Assert.assertEquals(1L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS));
+    Assert.assertEquals(2L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+
+    // the retrying runner takes the cache size from the configuration
+    CConfiguration noCacheConf = CConfiguration.copy(cConf);
+    noCacheConf.setInt(Constants.Dataset.DATA_STORAGE_SQL_QUERY_CACHE_SIZE, 0);
+    txRunner = new RetryingSqlTransactionRunner(tableAdmin, dataSource, metricsCollectionService, noCacheConf, 100);
+    txRunner.run(context -> Assert.assertFalse(context.getTable(TABLE).read(keys).isPresent()));
+    Assert.assertEquals(1L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS));
+    Assert.assertEquals(2L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+
+    txRunner = new RetryingSqlTransactionRunner(tableAdmin, dataSource, metricsCollectionService, cConf, 100);
+    txRunner.run(context -> Assert.assertFalse(context.getTable(TABLE).read(keys).isPresent()));
+    txRunner.run(context -> Assert.assertFalse(context.getTable(TABLE).read(keys).isPresent()));
+    Assert.assertEquals(2L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_MISS));
+    Assert.assertEquals(3L, metrics.get(Constants.Metrics.StructuredTable.QUERY_CACHE_HIT));
+  }
+
+  @Test
+  public void testStatementCache() throws Exception {
+    String sql = "SELECT " + STRING_COL + " FROM " + TABLE.getName() + " WHERE " + KEY + " = ?;";
+    Assert.assertSame(getStatement(dataSource, sql), getStatement(dataSource, sql));
+
+    // without the statement cache, the statement is prepared again
+    CConfiguration noCacheConf = CConfiguration.copy(cConf);
+    noCacheConf.setInt(Constants.Dataset.DATA_STORAGE_SQL_STATEMENT_CACHE_SIZE, 0);
+    DataSource noCacheDataSource = PostgreSqlStorageProvider.createDataSource(noCacheConf, SConfiguration.create(),
+                                                                              new NoOpMetricsCollectionService());
+    try {
+      Assert.assertNotSame(getStatement(noCacheDataSource, sql), getStatement(noCacheDataSource, sql));
+    } finally {
+      ((AutoCloseable) noCacheDataSource).close();
+    }
+  }
+
+  /**
+   * Prepares and closes a statement. The pool hands out its idle connections in LIFO order, so consecutive calls
+   * use the same connection.
+   *
+   * @return the statement of the JDBC driver
+   */
+  private static Statement getStatement(DataSource dataSource, String sql) throws Exception {
+    try (Connection connection = dataSource.getConnection();
+         PreparedStatement statement = connection.prepareStatement(sql)) {
+      return ((DelegatingStatement) statement).getInnermostDelegate();
+    }
+  }
+
+  private static String build(AtomicInteger builds, String query) {
+    builds.incrementAndGet();
+    return query;
+  }
+
+  private static void assertKeys(List<Integer> expected, CloseableIterator<StructuredRow> iterator) {
+    try (CloseableIterator<StructuredRow> rows = iterator) {
+      List<Integer> keys = new ArrayList<>();
+      rows.forEachRemaining(row -> keys.add(row.getInteger(KEY)));
+      Assert.assertEquals(expected, keys);
+    }
+  }
+
+  /**
+   * Returns a {@link Connection} that records the SQL text of the statements prepared by it.
+   */
+  private static Connection recordSql(Connection connection, List<String> sqls) {
+    return (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+        if (method.getName().equals("prepareStatement")) {
+          sqls.add((String) args[0]);
+        }
+        try {
+          return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      });
+  }
+
+  /**
+   * A {@link MetricsContext} that keeps the total of the increments of each metric.
+   */
+  private static final class CountingMetricsContext implements MetricsContext {
+
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+
+    long get(String metricName) {
+      AtomicLong count = counts.get(metricName);
+      return count == null ? 0L : count.get();
+    }
+
+    @Override
+    public void increment(String metricName, long value) {
+      counts.computeIfAbsent(metricName, name -> new AtomicLong()).addAndGet(value);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      // no-op
+    }
+
+    @Override
+    public void event(String metricName, long value) {
+      // no-op
+    }
+
+    @Override
+    public MetricsContext childContext(Map<String, String> tags) {
+      return this;
+    }
+
+    @Override
+    public MetricsContext childContext(String tagName, String tagValue) {
+      return this;
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+      return Collections.emptyMap();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.format;
+
+import com.google.gson.stream.JsonWriter;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.format.io.JsonEncoder;
+import io.cdap.cdap.format.io.JsonStructuredRecordDatumWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes {@link StructuredRecord}s as json to a {@link Writer} one after another, using the same {@link JsonWriter}
+ * and {@link JsonEncoder} for all of them. The json of each record is the same as the one returned by
+ * {@link StructuredRecordStringConverter#toJsonString(StructuredRecord)}.
+ *
+ * This class is not thread safe.
+ */
+public final class StructuredRecordJsonWriter {
+
+  private static final JsonStructuredRecordDatumWriter JSON_DATUM_WRITER = new JsonStructuredRecordDatumWriter();
+
+  private final JsonWriter jsonWriter;
+  private final JsonEncoder encoder;
+
+  public StructuredRecordJsonWriter(Writer writer) {
+    this.jsonWriter = new JsonWriter(writer);
+    // lenient so that a top level value can be written for each record
+    this.jsonWriter.setLenient(true);
+    this.encoder = new JsonEncoder(jsonWriter);
+  }
+
+  /**
+   * Writes the json of the given record and flushes the underlying {@link Writer}, without closing it.
+   * If it fails, the json of the record is left incomplete and this instance must not be used anymore.
+   */
+  public void write(StructuredRecord record) throws IOException {
+    JSON_DATUM_WRITER.encode(record, encoder);
+    jsonWriter.flush();
+  }
+}
@@ -28,9 +28,12 @@ import io.cdap.cdap.format.io.JsonStructuredRecordDatumWriter;
 import io.cdap.cdap.format.utils.FormatUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.stream.Collectors;
 
@@ -62,6 +65,16 @@ public class StructuredRecordStringConverter {
     }
   }
 
+  /**
+   * Reads a {@link StructuredRecord} based on the schema from UTF-8 encoded json in the given {@link InputStream},
+   * without decoding the whole input into a {@link String} first. The stream is expected to contain only the json
+   * of one record, as it may be read beyond the end of the record. It is not closed by this method.
+   */
+  public static StructuredRecord fromJson(InputStream is, Schema schema) throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+    return JSON_DATUM_READER.read(new JsonDecoder(reader), schema);
+  }
+
   /**
    * Converts a {@link StructuredRecord} to a delimited string.
    */
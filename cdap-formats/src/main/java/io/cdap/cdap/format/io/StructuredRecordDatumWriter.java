@@ -28,6 +28,7 @@ import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -320,9 +321,15 @@ public class StructuredRecordDatumWriter implements DatumWriter<StructuredRecord
       throw new IOException("Expected StructuredRecord type. Got: " + record.getClass());
     }
 
+    StructuredRecord structuredRecord = (StructuredRecord) record;
+    List<Schema.Field> fields = recordSchema.getFields();
+    // If the record has the same schema, the field values can be fetched by position instead of by name
+    boolean sameSchema = recordSchema.equals(structuredRecord.getSchema());
+
     encodeRecordBegin(encoder, recordSchema);
-    for (Schema.Field field : recordSchema.getFields()) {
-      encodeRecordField(encoder, field, ((StructuredRecord) record).get(field.getName()));
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      encodeRecordField(encoder, field, sameSchema ? structuredRecord.get(i) : structuredRecord.get(field.getName()));
     }
     encodeRecordEnd(encoder, recordSchema);
   }
@@ -60,6 +60,22 @@ public class StructuredRecordBuilderTest {
     Assert.assertEquals(5L, (long) StructuredRecord.builder(schema).set("x", 5L).build().get("x"));
   }
 
+  @Test
+  public void testGetByPosition() {
+    Schema schema = Schema.recordOf("x",
+                                    Schema.Field.of("a", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("b", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("c", Schema.of(Schema.Type.STRING)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("c", "c").set("a", 1).build();
+
+    Assert.assertEquals(2, schema.getFieldIndex("c"));
+    Assert.assertEquals(-1, schema.getFieldIndex("d"));
+    Assert.assertEquals(1, (int) record.get(schema.getFieldIndex("a")));
+    Assert.assertNull(record.get(schema.getFieldIndex("b")));
+    Assert.assertEquals("c", record.get(schema.getFieldIndex("c")));
+    Assert.assertNull(record.get("d"));
+  }
+
   @Test
   public void testDateConversion() {
     long ts = 0L;
@@ -29,7 +29,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -110,6 +113,27 @@ public class StructuredRecordStringConverterTest {
     Assert.assertNull(decoded.get("b"));
   }
 
+  @Test
+  public void testJsonStream() throws Exception {
+    Schema s = Schema.recordOf("stream",
+                               Schema.Field.of("id", Schema.of(Schema.Type.INT)),
+                               Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    StructuredRecordJsonWriter writer = new StructuredRecordJsonWriter(new OutputStreamWriter(os, Charsets.UTF_8));
+
+    // The same writer and stream can be reused for multiple records
+    for (String name : Arrays.asList("ascii", "\u00e9\u4e2d\ud83d\ude00", null)) {
+      StructuredRecord record = StructuredRecord.builder(s).set("id", 1).set("name", name).build();
+
+      os.reset();
+      writer.write(record);
+      Assert.assertArrayEquals(StructuredRecordStringConverter.toJsonString(record).getBytes(Charsets.UTF_8),
+                               os.toByteArray());
+      Assert.assertEquals(record, StructuredRecordStringConverter.fromJson(
+        new ByteArrayInputStream(os.toByteArray()), s));
+    }
+  }
+
   @Test
   public void testNullableBytesDelimited() throws Exception {
     Schema s = Schema.recordOf("nullableBytes", Schema.Field.of("b", Schema.nullableOf(Schema.of(Schema.Type.BYTES))));
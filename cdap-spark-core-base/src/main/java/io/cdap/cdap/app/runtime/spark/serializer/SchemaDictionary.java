@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.app.runtime.spark.serializer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import io.cdap.cdap.api.spark.SparkClientContext;
+import io.cdap.cdap.internal.io.SchemaTypeAdapter;
+import org.apache.spark.SparkEnv;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A dictionary of {@link Schema} that is shared by the driver and all the executors of a Spark application
+ * through the {@link org.apache.spark.SparkConf}. It allows {@link StructuredRecordSerializer} to write only the
+ * {@link SchemaHash} of a record schema that is in the dictionary.
+ */
+final class SchemaDictionary {
+
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+    .create();
+  private static final Type SCHEMA_LIST_TYPE = new TypeToken<List<Schema>>() { }.getType();
+
+  // The dictionary of the current SparkEnv. It is parsed once and shared by all the serializer instances.
+  private static volatile SchemaDictionary current;
+
+  private final String schemasJson;
+  private final Map<SchemaHash, Schema> schemas;
+
+  /**
+   * Returns the {@link SchemaDictionary} of the current Spark application.
+   *
+   * @return the dictionary, or {@code null} if there is no {@link SparkEnv}
+   */
+  @Nullable
+  static SchemaDictionary get() {
+    SparkEnv env = SparkEnv.get();
+    if (env == null) {
+      return null;
+    }
+    String schemasJson = env.conf().get(SparkClientContext.STRUCTURED_RECORD_SCHEMAS_CONF, "");
+    SchemaDictionary dictionary = current;
+    if (dictionary == null || !dictionary.schemasJson.equals(schemasJson)) {
+      dictionary = new SchemaDictionary(schemasJson);
+      current = dictionary;
+    }
+    return dictionary;
+  }
+
+  @VisibleForTesting
+  SchemaDictionary(String schemasJson) {
+    List<Schema> schemaList = schemasJson.isEmpty()
+      ? Collections.emptyList() : GSON.fromJson(schemasJson, SCHEMA_LIST_TYPE);
+    Map<SchemaHash, Schema> schemas = new HashMap<>();
+    for (Schema schema : schemaList) {
+      schemas.put(schema.getSchemaHash(), schema);
+    }
+    this.schemasJson = schemasJson;
+    this.schemas = Collections.unmodifiableMap(schemas);
+  }
+
+  /**
+   * Returns the {@link Schema} of the given {@link SchemaHash}, or {@code null} if it is not in the dictionary.
+   */
+  @Nullable
+  Schema get(SchemaHash schemaHash) {
+    return schemas.get(schemaHash);
+  }
+}
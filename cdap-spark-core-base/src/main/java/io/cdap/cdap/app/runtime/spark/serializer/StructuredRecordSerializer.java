@@ -21,47 +21,110 @@ import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.data.schema.SchemaCache;
-import io.cdap.cdap.format.io.StructuredRecordDatumReader;
-import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
+import io.cdap.cdap.api.data.schema.SchemaHash;
+import io.cdap.cdap.internal.io.ASMStructuredRecordDatumFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
- * A Kryo {@link Serializer} for {@link StructuredRecord}.
+ * A Kryo {@link Serializer} for {@link StructuredRecord}. If the record schema is in the {@link SchemaDictionary} of
+ * the Spark application, only the schema hash is written in front of the record. Otherwise the schema json is
+ * written as well. The record is encoded and decoded with datum writer and reader generated for the record schema.
+ *
+ * Records written by previous versions, which start with the schema hash and json written as Kryo objects, can still
+ * be read, so that Spark checkpoints written by those versions can be restored.
  */
 public class StructuredRecordSerializer extends Serializer<StructuredRecord> {
 
-  private static final StructuredRecordDatumWriter DATUM_WRITER = new StructuredRecordDatumWriter();
-  private static final StructuredRecordDatumReader DATUM_READER = new StructuredRecordDatumReader();
+  private static final ASMStructuredRecordDatumFactory DATUM_FACTORY = new ASMStructuredRecordDatumFactory();
+
+  // The first byte of a record. Records written by previous versions start with a non-null string written with
+  // Kryo, which is either an ASCII character or a reference marker, but never zero.
+  private static final byte FORMAT_MARKER = 0;
+  private static final byte INLINE_SCHEMA = 0;
+  private static final byte DICTIONARY_SCHEMA = 1;
+  private static final int SCHEMA_HASH_SIZE = 16;
+
+  private SchemaDictionary dictionary;
 
   @Override
   public void write(Kryo kryo, Output output, StructuredRecord record) {
-    // First write out the schema as two fields: hash and json representation
-    // Later with the cache we may skip deserializing JSON if schema is present in cache
-    kryo.writeObject(output, record.getSchema().getSchemaHash().toString());
-    kryo.writeObject(output, record.getSchema().toString());
+    Schema schema = record.getSchema();
+    SchemaHash schemaHash = schema.getSchemaHash();
+    SchemaDictionary dictionary = getDictionary();
+
+    if (dictionary != null && dictionary.get(schemaHash) != null) {
+      // The schema is known by all the readers, just write out the raw schema hash
+      output.writeByte(FORMAT_MARKER);
+      output.writeByte(DICTIONARY_SCHEMA);
+      output.writeBytes(schemaHash.toByteArray());
+    } else {
+      // Write out the schema as two fields: hash and json representation
+      // Later with the cache we may skip deserializing JSON if schema is present in cache
+      output.writeByte(FORMAT_MARKER);
+      output.writeByte(INLINE_SCHEMA);
+      output.writeString(schemaHash.toString());
+      output.writeString(schema.toString());
+    }
 
     // Then write out the data
     try {
-      DATUM_WRITER.encode(record, new KryoEncoder(output));
+      DATUM_FACTORY.getDatumWriter(schema).encode(record, new KryoEncoder(output));
     } catch (IOException e) {
-      throw new KryoException("Failed to encode StructuredRecord " + record.getSchema().getRecordName(), e);
+      throw new KryoException("Failed to encode StructuredRecord " + schema.getRecordName(), e);
     }
   }
 
   @Override
   public StructuredRecord read(Kryo kryo, Input input, Class<StructuredRecord> type) {
     // Read the schema
-    String schemaHashStr = kryo.readObject(input, String.class);
-    String schemaJson = kryo.readObject(input, String.class);
-    Schema schema = SchemaCache.fromJson(schemaHashStr, schemaJson);
+    Schema schema;
+    if (input.readByte() != FORMAT_MARKER) {
+      // The record was written by a previous version, which wrote the schema hash and json as Kryo objects
+      input.setPosition(input.position() - 1);
+      String schemaHashStr = kryo.readObject(input, String.class);
+      String schemaJson = kryo.readObject(input, String.class);
+      schema = SchemaCache.fromJson(schemaHashStr, schemaJson);
+    } else if (input.readByte() == DICTIONARY_SCHEMA) {
+      SchemaHash schemaHash = new SchemaHash(ByteBuffer.wrap(input.readBytes(SCHEMA_HASH_SIZE)));
+      SchemaDictionary dictionary = getDictionary();
+      schema = dictionary == null ? null : dictionary.get(schemaHash);
+      if (schema == null) {
+        throw new KryoException("Schema with hash " + schemaHash + " is not in the schema dictionary");
+      }
+    } else {
+      String schemaHashStr = input.readString();
+      String schemaJson = input.readString();
+      schema = SchemaCache.fromJson(schemaHashStr, schemaJson);
+    }
     try {
-      return DATUM_READER.read(new KryoDecoder(input), schema);
+      return DATUM_FACTORY.getDatumReader(schema).read(new KryoDecoder(input), schema);
     } catch (IOException e) {
       throw new KryoException("Failed to decode StructuredRecord " + schema.getRecordName(), e);
     }
   }
+
+  /**
+   * Sets the {@link SchemaDictionary} to use instead of the one from the Spark application. This is for testing only.
+   */
+  @VisibleForTesting
+  void setDictionary(SchemaDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  @Nullable
+  private SchemaDictionary getDictionary() {
+    SchemaDictionary dictionary = this.dictionary;
+    if (dictionary == null) {
+      // The serializer can be created before the SparkEnv, hence resolve the dictionary lazily
+      dictionary = this.dictionary = SchemaDictionary.get();
+    }
+    return dictionary;
+  }
 }
@@ -17,12 +17,15 @@
 package io.cdap.cdap.app.runtime.spark.serializer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.google.common.collect.ImmutableMap;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.format.StructuredRecordStringConverter;
+import io.cdap.cdap.format.io.StructuredRecordDatumWriter;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -34,6 +37,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -251,6 +255,111 @@ public class KryoSerializerTest {
     Assert.assertSame(newRecord.getSchema(), newRecord2.getSchema());
   }
 
+  @Test
+  public void testStructuredRecordSerializerWithDictionary() throws IOException {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("int", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("string", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("decimal", Schema.decimalOf(10, 2)));
+    Schema otherSchema = Schema.recordOf("other", Schema.Field.of("string", Schema.of(Schema.Type.STRING)));
+
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("int", 10)
+      .set("string", "Hello World")
+      .setDecimal("decimal", new BigDecimal(10.5).setScale(2))
+      .build();
+    StructuredRecord otherRecord = StructuredRecord.builder(otherSchema).set("string", "Hello Other").build();
+
+    StructuredRecordSerializer serializer = new StructuredRecordSerializer();
+    serializer.setDictionary(new SchemaDictionary("[" + schema + "]"));
+
+    Kryo kryo = new Kryo();
+    kryo.addDefaultSerializer(Schema.class, SchemaSerializer.class);
+    kryo.addDefaultSerializer(StructuredRecord.class, serializer);
+
+    // Record with schema in the dictionary should only carry the schema hash
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (Output output = new Output(bos)) {
+      kryo.writeObject(output, record);
+    }
+    byte[] bytes = bos.toByteArray();
+    Assert.assertFalse(new String(bytes, StandardCharsets.UTF_8).contains(schema.getRecordName()));
+
+    StructuredRecord newRecord = kryo.readObject(new Input(bytes), StructuredRecord.class);
+    Assert.assertEquals(StructuredRecordStringConverter.toJsonString(record),
+                        StructuredRecordStringConverter.toJsonString(newRecord));
+
+    // Record with schema not in the dictionary should fallback to carry the full schema
+    bos = new ByteArrayOutputStream();
+    try (Output output = new Output(bos)) {
+      kryo.writeObject(output, otherRecord);
+    }
+    newRecord = kryo.readObject(new Input(bos.toByteArray()), StructuredRecord.class);
+    Assert.assertEquals(otherSchema, newRecord.getSchema());
+    Assert.assertEquals("Hello Other", newRecord.get("string"));
+
+    // Reading a record with schema hash only without the dictionary should fail
+    kryo = new Kryo();
+    kryo.addDefaultSerializer(Schema.class, SchemaSerializer.class);
+    kryo.addDefaultSerializer(StructuredRecord.class, StructuredRecordSerializer.class);
+    try {
+      kryo.readObject(new Input(bytes), StructuredRecord.class);
+      Assert.fail("Expected failure when reading schema hash without dictionary");
+    } catch (KryoException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStructuredRecordSerializerPreviousFormat() throws IOException {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("int", Schema.of(Schema.Type.INT)),
+                                    Schema.Field.of("string", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("decimal", Schema.decimalOf(10, 2)));
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("int", 10)
+      .set("string", "Hello World")
+      .setDecimal("decimal", new BigDecimal(10.5).setScale(2))
+      .build();
+
+    // Records written by previous versions are readable both with and without Kryo reference tracking
+    for (boolean references : Arrays.asList(true, false)) {
+      Kryo previousKryo = new Kryo();
+      previousKryo.setReferences(references);
+      previousKryo.addDefaultSerializer(StructuredRecord.class, PreviousStructuredRecordSerializer.class);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (Output output = new Output(bos)) {
+        previousKryo.writeObject(output, record);
+        // The schema hash and json of the second record are written as references to the ones of the first record
+        StructuredRecord other = StructuredRecord.builder(schema)
+          .set("int", 10)
+          .set("string", "Hello World")
+          .setDecimal("decimal", new BigDecimal(10.5).setScale(2))
+          .build();
+        previousKryo.writeObject(output, new ArrayList<>(Arrays.asList(record, other)));
+      }
+
+      Kryo kryo = new Kryo();
+      kryo.setReferences(references);
+      kryo.addDefaultSerializer(Schema.class, SchemaSerializer.class);
+      kryo.addDefaultSerializer(StructuredRecord.class, StructuredRecordSerializer.class);
+
+      Input input = new Input(bos.toByteArray());
+      List<StructuredRecord> newRecords = new ArrayList<>();
+      newRecords.add(kryo.readObject(input, StructuredRecord.class));
+      for (Object newRecord : kryo.readObject(input, ArrayList.class)) {
+        newRecords.add((StructuredRecord) newRecord);
+      }
+      Assert.assertTrue(input.eof());
+      Assert.assertEquals(3, newRecords.size());
+      for (StructuredRecord newRecord : newRecords) {
+        Assert.assertEquals(StructuredRecordStringConverter.toJsonString(record),
+                            StructuredRecordStringConverter.toJsonString(newRecord));
+      }
+    }
+  }
+
   @Test
   public void testAllTypesChecked() {
     Schema schema = createSchema();
@@ -300,4 +409,26 @@ public class KryoSerializerTest {
                            .collect(Collectors.toList())
     );
   }
+
+  /**
+   * The {@link StructuredRecordSerializer} of previous versions, which wrote the schema hash and json as Kryo objects.
+   */
+  public static final class PreviousStructuredRecordSerializer extends Serializer<StructuredRecord> {
+
+    @Override
+    public void write(Kryo kryo, Output output, StructuredRecord record) {
+      kryo.writeObject(output, record.getSchema().getSchemaHash().toString());
+      kryo.writeObject(output, record.getSchema().toString());
+      try {
+        new StructuredRecordDatumWriter().encode(record, new KryoEncoder(output));
+      } catch (IOException e) {
+        throw new KryoException(e);
+      }
+    }
+
+    @Override
+    public StructuredRecord read(Kryo kryo, Input input, Class<StructuredRecord> type) {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
@@ -332,17 +332,31 @@ public class SpannerStructuredTable implements StructuredTable {
 
   @Override
   public void delete(Collection<Field<?>> keys) throws InvalidFieldException {
+    transactionContext.executeUpdate(getDeleteStatement(keys));
+  }
+
+  @Override
+  public void multiDelete(Collection<? extends Collection<Field<?>>> multiKeys) throws InvalidFieldException {
+    List<Statement> statements = new ArrayList<>();
+    for (Collection<Field<?>> keys : multiKeys) {
+      statements.add(getDeleteStatement(keys));
+    }
+    if (!statements.isEmpty()) {
+      // execute all deletes in one round trip
+      transactionContext.batchUpdate(statements);
+    }
+  }
+
+  private Statement getDeleteStatement(Collection<Field<?>> keys) throws InvalidFieldException {
     fieldValidator.validatePrimaryKeys(keys, false);
     String sql = "DELETE FROM " + escapeName(schema.getTableId().getName()) + " WHERE "
       + keys.stream().map(f -> escapeName(f.getName()) + " = @" + f.getName()).collect(Collectors.joining(" AND "));
 
-    Statement statement = keys.stream()
+    return keys.stream()
       .reduce(Statement.newBuilder(sql),
               (builder, field) -> builder.bind(field.getName()).to(getValue(field)),
               (builder1, builder2) -> builder1)
       .build();
-
-    transactionContext.executeUpdate(statement);
   }
 
   @Override
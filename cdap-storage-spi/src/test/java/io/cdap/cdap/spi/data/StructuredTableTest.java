@@ -39,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -176,6 +177,51 @@ public abstract class StructuredTableTest {
     Assert.assertEquals(new HashSet<>(keys), result);
   }
 
+  @Test
+  public void testMultiUpsertDelete() throws Exception {
+    int max = 10;
+
+    // Write rows in one call, with a row written twice and a row with different columns
+    List<Collection<Field<?>>> expected = new ArrayList<>();
+    List<Collection<Field<?>>> multiFields = new ArrayList<>();
+    for (int i = 0; i < max; i++) {
+      List<Field<?>> fields = Arrays.asList(Fields.intField(KEY, i),
+                                            Fields.longField(KEY2, (long) i),
+                                            Fields.stringField(STRING_COL, VAL + i),
+                                            Fields.doubleField(DOUBLE_COL, (double) i),
+                                            Fields.floatField(FLOAT_COL, (float) i),
+                                            Fields.bytesField(BYTES_COL, Bytes.toBytes("bytes-" + i)));
+      multiFields.add(fields);
+      expected.add(fields);
+    }
+    multiFields.add(Arrays.asList(Fields.intField(KEY, 0), Fields.longField(KEY2, 0L),
+                                  Fields.stringField(STRING_COL, VAL + "updated")));
+    List<Field<?>> updated = new ArrayList<>(expected.get(0));
+    updated.set(2, Fields.stringField(STRING_COL, VAL + "updated"));
+    expected.set(0, updated);
+    multiFields.add(expected.get(1));
+
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiUpsert(multiFields);
+    });
+    Assert.assertEquals(expected, readSimpleStructuredRows(max));
+
+    // Delete half of the rows in one call
+    List<Collection<Field<?>>> keys = new ArrayList<>();
+    for (int i = 0; i < max; i += 2) {
+      keys.add(Arrays.asList(Fields.intField(KEY, i), Fields.longField(KEY2, (long) i)));
+    }
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      table.multiDelete(keys);
+      table.multiDelete(Collections.emptyList());
+    });
+    Assert.assertEquals(IntStream.range(0, max).filter(i -> i % 2 == 1).mapToObj(expected::get)
+                          .collect(Collectors.toList()),
+                        readSimpleStructuredRows(max));
+  }
+
   @Test
   public void testSimpleScan() throws Exception {
     int max = 100;
@@ -728,6 +774,53 @@ public abstract class StructuredTableTest {
     });
   }
 
+  @Test
+  public void testSortedIndexScanWithLimit() throws Exception {
+    int num = 20;
+    List<Collection<Field<?>>> expected = new ArrayList<>();
+
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+      for (int i = 0; i < num; ++i) {
+        // mix positive and negative values of IDX_COL, with the string column in the opposite order
+        long value = i % 2 == 0 ? i * 10L : -i * 10L;
+        String str = String.format("s%05d", 1000 - value);
+        Collection<Field<?>> fields = Arrays.asList(Fields.intField(KEY, i),
+                                                    Fields.longField(KEY2, i * 100L),
+                                                    Fields.stringField(STRING_COL, str),
+                                                    Fields.longField(IDX_COL, value));
+        table.upsert(fields);
+        expected.add(fields);
+      }
+    });
+    expected.sort(Comparator.comparing(fields -> (Long) fields.stream()
+      .filter(field -> field.getName().equals(IDX_COL)).findFirst().get().getValue()));
+
+    List<String> columns = Arrays.asList(KEY, KEY2, STRING_COL, IDX_COL);
+    getTransactionRunner().run(context -> {
+      StructuredTable table = context.getTable(SIMPLE_TABLE);
+
+      try (CloseableIterator<StructuredRow> iterator = table.scan(Range.all(), 5, IDX_COL, SortOrder.ASC)) {
+        Assert.assertEquals(expected.subList(0, 5), convertRowsToFields(iterator, columns));
+      }
+      try (CloseableIterator<StructuredRow> iterator = table.scan(Range.all(), num * 2, IDX_COL, SortOrder.ASC)) {
+        Assert.assertEquals(expected, convertRowsToFields(iterator, columns));
+      }
+      try (CloseableIterator<StructuredRow> iterator = table.scan(Range.all(), 5, STRING_COL, SortOrder.DESC)) {
+        Assert.assertEquals(expected.subList(0, 5), convertRowsToFields(iterator, columns));
+      }
+
+      List<Collection<Field<?>>> reversed = new ArrayList<>(expected);
+      Collections.reverse(reversed);
+      try (CloseableIterator<StructuredRow> iterator = table.scan(Range.all(), 5, IDX_COL, SortOrder.DESC)) {
+        Assert.assertEquals(reversed.subList(0, 5), convertRowsToFields(iterator, columns));
+      }
+      try (CloseableIterator<StructuredRow> iterator = table.scan(Range.all(), 5, STRING_COL, SortOrder.ASC)) {
+        Assert.assertEquals(reversed.subList(0, 5), convertRowsToFields(iterator, columns));
+      }
+    });
+  }
+
   @Test
   public void testSortedPrimaryKeyFilteredIndexScan() throws Exception {
     int num = 100;
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging;
+
+import javax.annotation.Nullable;
+
+/**
+ * Content encodings supported by the messaging HTTP service and client for payload compression.
+ */
+public final class ContentEncodings {
+
+  /**
+   * The gzip content encoding.
+   */
+  public static final String GZIP = "gzip";
+
+  /**
+   * The content encoding for the
+   * <a href="https://github.com/google/snappy/blob/master/framing_format.txt">Snappy framing format</a>.
+   */
+  public static final String SNAPPY_FRAMED = "x-snappy-framed";
+
+  /**
+   * Returns the content encoding for the given compression codec name.
+   *
+   * @param codec the codec name, either {@code gzip} or {@code snappy}
+   * @return the content encoding of the codec
+   * @throws IllegalArgumentException if the codec is not supported
+   */
+  public static String fromCodec(String codec) {
+    if ("gzip".equalsIgnoreCase(codec)) {
+      return GZIP;
+    }
+    if ("snappy".equalsIgnoreCase(codec)) {
+      return SNAPPY_FRAMED;
+    }
+    throw new IllegalArgumentException("Unsupported compression codec " + codec
+                                         + ". Only 'gzip' and 'snappy' are supported.");
+  }
+
+  /**
+   * Returns {@code true} if the given Accept-Encoding header value contains the given content encoding
+   * with a non-zero quality value.
+   */
+  public static boolean isAccepted(@Nullable String acceptEncoding, String contentEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String encoding : acceptEncoding.split(",")) {
+      String[] parts = encoding.split(";", 2);
+      if (!contentEncoding.equalsIgnoreCase(parts[0].trim())) {
+        continue;
+      }
+      if (parts.length == 1) {
+        return true;
+      }
+      String param = parts[1].trim();
+      if (!param.startsWith("q=")) {
+        return true;
+      }
+      try {
+        return Float.parseFloat(param.substring(2)) > 0f;
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private ContentEncodings() {
+    // no-op
+  }
+}
@@ -22,6 +22,7 @@ import io.cdap.cdap.messaging.data.RawMessage;
 import org.apache.tephra.Transaction;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -38,6 +39,8 @@ public abstract class MessageFetcher {
 
   // by default there is virtually no limit
   private int limit = Integer.MAX_VALUE;
+  // by default the fetch returns immediately
+  private long pollTimeoutMillis;
 
   /**
    * Setup the message fetching starting point based on the given message id. Calling this method
@@ -96,6 +99,23 @@ public abstract class MessageFetcher {
     return this;
   }
 
+  /**
+   * Sets the maximum amount of time for the fetch to wait for new messages if there is no message available
+   * when the fetch starts. The fetch returns as soon as new messages become available or the timeout elapsed,
+   * whichever comes first. By default this is {@code 0}, which means the fetch returns immediately.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the {@link TimeUnit} of the timeout
+   * @return this instance
+   */
+  public MessageFetcher setPollTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Invalid message fetching poll timeout. Timeout must be >= 0");
+    }
+    this.pollTimeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
   @Nullable
   protected byte[] getStartOffset() {
     return startOffset;
@@ -119,6 +139,10 @@ public abstract class MessageFetcher {
     return limit;
   }
 
+  protected long getPollTimeoutMillis() {
+    return pollTimeoutMillis;
+  }
+
   /**
    * Returns a {@link CloseableIterator} that iterates over messages fetched from the messaging system.
    *
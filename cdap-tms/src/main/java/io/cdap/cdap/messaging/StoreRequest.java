@@ -59,4 +59,12 @@ public abstract class StoreRequest implements Iterable<byte[]> {
    * Returns {@code true} if there is payload in this request.
    */
   public abstract boolean hasPayload();
+
+  /**
+   * Returns the total size in bytes of all the payloads in this request, or {@code -1} if the size
+   * cannot be determined without iterating over the payloads.
+   */
+  public long getPayloadSize() {
+    return -1L;
+  }
 }
@@ -0,0 +1,480 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.messaging.store.MessageFilter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MessageCache} that partitions the cached entries into a list of append-only segments. Each segment
+ * holds a contiguous range of entries of up to {@code hardLimit / numSegments} weight. Only the newest segment
+ * is being appended to by the single writer; older segments are immutable.
+ *
+ * Unlike the {@link DefaultMessageCache}, this cache doesn't use any lock:
+ *
+ * - The list of segments is an immutable snapshot that gets replaced atomically when a new segment is rolled
+ *   or when segments are evicted.
+ * - Entries are published to readers by a volatile write of the segment size after the entry is stored.
+ * - Eviction removes whole segments, oldest first, whenever the cache weight goes over the reduce trigger.
+ *   Readers holding an older snapshot of the segment list keep on reading from the evicted segments
+ *   until they are done, hence there is no need to copy the entries on scan.
+ *
+ * The min retain limit is not used by this cache, since eviction happens at segment granularity.
+ *
+ * @param <T> type of entry stored in the cache
+ */
+public class SegmentedMessageCache<T> implements MessageCache<T> {
+
+  private static final String METRICS_WEIGHT = "cache.weight";
+  private static final String METRICS_ENTRIES_ADDED = "cache.entries.added";
+  private static final String METRICS_ENTRIES_REMOVED = "cache.entries.removed";
+  private static final String METRICS_SEGMENTS_REMOVED = "cache.segments.removed";
+  private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
+  private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
+
+  private final Comparator<T> comparator;
+  private final Weigher<T> weigher;
+  private final int numSegments;
+  private final AtomicReference<Limits> limits;
+  private final MetricsContext metricsContext;
+  private final AtomicBoolean adding;
+  private final AtomicReference<List<Segment<T>>> segments;
+
+  /**
+   * Creates a new instance of the cache.
+   *
+   * @param comparator a {@link Comparator} for ordering cache entries
+   * @param weigher a {@link Weigher} for computing the weight of each cache entry
+   * @param limits the limits for maintaining cache weight
+   * @param numSegments number of segments that the hard limit is divided into
+   * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
+   */
+  public SegmentedMessageCache(Comparator<T> comparator, Weigher<T> weigher, Limits limits,
+                               int numSegments, MetricsContext metricsContext) {
+    Preconditions.checkArgument(numSegments > 0, "Number of segments must be positive");
+    this.comparator = comparator;
+    this.weigher = weigher;
+    this.numSegments = numSegments;
+    this.limits = new AtomicReference<>(limits);
+    this.metricsContext = metricsContext;
+    this.adding = new AtomicBoolean();
+    this.segments = new AtomicReference<>(ImmutableList.of());
+  }
+
+  @Override
+  public Comparator<T> getComparator() {
+    return comparator;
+  }
+
+  @Override
+  public void addAll(Iterator<T> entries) {
+    if (!adding.compareAndSet(false, true)) {
+      // This is to guard against bug, otherwise this shouldn't happen
+      throw new ConcurrentModificationException(
+        "The MessageCache.addAll method shouldn't be called concurrently by multiple threads.");
+    }
+
+    try {
+      T largestEntry = getLastEntry(segments.get());
+      int entriesAdded = 0;
+
+      while (entries.hasNext()) {
+        T entry = entries.next();
+
+        // Entries must be in strictly increasing order
+        if (largestEntry != null && comparator.compare(largestEntry, entry) >= 0) {
+          // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
+          // unless there is bug in the TMS system (from the caller side).
+          clear();
+          throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
+                                               "Entry " + entry + " is smaller than or equal to " + largestEntry);
+        }
+
+        long segmentLimit = getSegmentLimit();
+        if (segmentLimit <= 0) {
+          // Caching is effectively disabled
+          largestEntry = entry;
+          continue;
+        }
+
+        List<Segment<T>> current = segments.get();
+        Segment<T> segment = current.isEmpty() ? null : current.get(current.size() - 1);
+        if (segment == null || segment.getWeight() >= segmentLimit) {
+          segment = rollSegment();
+        }
+        segment.append(entry, weigher.weight(entry));
+        entriesAdded++;
+        largestEntry = entry;
+
+        evictSegments();
+      }
+
+      metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
+      metricsContext.increment(METRICS_ENTRIES_ADDED, entriesAdded);
+      metricsContext.gauge(METRICS_WEIGHT, getCurrentWeight());
+    } finally {
+      adding.set(false);
+    }
+  }
+
+  @Override
+  public Scanner<T> scan(T startEntry, boolean includeStart, int limit, MessageFilter<T> filter) {
+    List<Segment<T>> snapshot = segments.get();
+    metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
+
+    return new AbstractMessageCacheScanner<T>(new SegmentIterator<>(snapshot, startEntry, includeStart,
+                                                                    limit, filter, comparator),
+                                              getFirstEntry(snapshot)) {
+      @Override
+      protected void doClose() {
+        // no-op, since there is no resources being held by the scanner
+      }
+    };
+  }
+
+  @Override
+  public void updateEntries(T startEntry, T endEntry, EntryUpdater<T> updater) {
+    T lower = null;
+    T current = null;
+    T higher = null;
+
+    Iterator<Segment<T>> iterator = segments.get().iterator();
+    while (higher == null && iterator.hasNext()) {
+      Segment<T> segment = iterator.next();
+      int size = segment.size();
+      for (int idx = segment.search(startEntry, true, size, comparator); idx < size; idx++) {
+        T entry = segment.get(idx);
+        if (current != null) {
+          checkOrder(lower, current, entry);
+        }
+        if (comparator.compare(entry, endEntry) > 0) {
+          higher = entry;
+          break;
+        }
+        try {
+          updater.updateEntry(entry);
+        } catch (RuntimeException e) {
+          clear();
+          throw e;
+        }
+        lower = current;
+        current = entry;
+      }
+    }
+    if (current != null && higher == null) {
+      checkOrder(lower, current, null);
+    }
+  }
+
+  @Override
+  public void clear() {
+    List<Segment<T>> removed = segments.getAndSet(ImmutableList.of());
+    long entriesRemoved = 0;
+    for (Segment<T> segment : removed) {
+      entriesRemoved += segment.size();
+    }
+    metricsContext.increment(METRICS_SEGMENTS_REMOVED, removed.size());
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+  }
+
+  @Override
+  public void resize(Limits limits) {
+    this.limits.set(limits);
+    evictSegments();
+  }
+
+  @Override
+  public Limits getLimits() {
+    return limits.get();
+  }
+
+  /**
+   * Returns the current cache weight.
+   */
+  @VisibleForTesting
+  long getCurrentWeight() {
+    long weight = 0L;
+    for (Segment<T> segment : segments.get()) {
+      weight += segment.getWeight();
+    }
+    return weight;
+  }
+
+  /**
+   * Returns the current number of segments.
+   */
+  @VisibleForTesting
+  int getSegmentCount() {
+    return segments.get().size();
+  }
+
+  /**
+   * Returns the maximum weight of each segment based on the current limits.
+   */
+  private long getSegmentLimit() {
+    return limits.get().getHardLimit() / numSegments;
+  }
+
+  /**
+   * Appends a new segment to the end of the segment list.
+   *
+   * @return the newly added {@link Segment}
+   */
+  private Segment<T> rollSegment() {
+    Segment<T> segment = new Segment<>();
+    List<Segment<T>> current;
+    List<Segment<T>> updated;
+    do {
+      current = segments.get();
+      updated = ImmutableList.<Segment<T>>builder().addAll(current).add(segment).build();
+    } while (!segments.compareAndSet(current, updated));
+    return segment;
+  }
+
+  /**
+   * Removes segments, oldest first, until the cache weight is not larger than the reduce trigger.
+   */
+  private void evictSegments() {
+    List<Segment<T>> current;
+    List<Segment<T>> updated;
+    int segmentsRemoved;
+    long entriesRemoved;
+
+    do {
+      current = segments.get();
+      long weight = 0L;
+      for (Segment<T> segment : current) {
+        weight += segment.getWeight();
+      }
+
+      long reduceTrigger = limits.get().getReduceTrigger();
+      segmentsRemoved = 0;
+      entriesRemoved = 0;
+      while (segmentsRemoved < current.size() && weight > reduceTrigger) {
+        Segment<T> segment = current.get(segmentsRemoved++);
+        weight -= segment.getWeight();
+        entriesRemoved += segment.size();
+      }
+      if (segmentsRemoved == 0) {
+        return;
+      }
+      updated = current.subList(segmentsRemoved, current.size());
+    } while (!segments.compareAndSet(current, updated));
+
+    metricsContext.increment(METRICS_SEGMENTS_REMOVED, segmentsRemoved);
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+  }
+
+  /**
+   * Verifies the ordering of an entry relative to its neighbours hasn't been altered by an update.
+   */
+  private void checkOrder(@Nullable T lower, T entry, @Nullable T higher) {
+    // A quick check that the ordering hasn't been altered.
+    // It doesn't cover all possible case though. This is just a quick catch for bug in the caller.
+    if ((lower != null && comparator.compare(lower, entry) >= 0)
+      || (higher != null && comparator.compare(higher, entry) <= 0)) {
+      // This shouldn't happen, unless there is bug in the caller.
+      clear();
+      throw new IllegalStateException("Entry order should not be altered after update.");
+    }
+  }
+
+  @Nullable
+  private T getFirstEntry(List<Segment<T>> segments) {
+    for (Segment<T> segment : segments) {
+      if (segment.size() > 0) {
+        return segment.get(0);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private T getLastEntry(List<Segment<T>> segments) {
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      Segment<T> segment = segments.get(i);
+      int size = segment.size();
+      if (size > 0) {
+        return segment.get(size - 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * An append-only segment of entries. It only supports a single writer. Readers only see entries
+   * that were fully appended before the size is read.
+   *
+   * @param <T> type of the entry
+   */
+  private static final class Segment<T> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile Object[] entries;
+    private volatile int size;
+    private volatile long weight;
+
+    Segment() {
+      this.entries = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Appends an entry to this segment. This method must only be called from the single writer thread.
+     */
+    void append(T entry, int entryWeight) {
+      Object[] array = entries;
+      int idx = size;
+      if (idx == array.length) {
+        array = Arrays.copyOf(array, array.length * 2);
+        array[idx] = entry;
+        entries = array;
+      } else {
+        array[idx] = entry;
+      }
+      weight += entryWeight;
+      // The volatile write of size publishes the entry to readers
+      size = idx + 1;
+    }
+
+    int size() {
+      return size;
+    }
+
+    long getWeight() {
+      return weight;
+    }
+
+    /**
+     * Returns the entry at the given index. The index must be smaller than a size previously read
+     * from the {@link #size()} method.
+     */
+    @SuppressWarnings("unchecked")
+    T get(int idx) {
+      return (T) entries[idx];
+    }
+
+    /**
+     * Finds the index of the first entry that is larger than (or equal to if inclusive) the given entry,
+     * among the first {@code size} entries in this segment.
+     *
+     * @return the index of the entry or {@code size} if all entries are smaller than the given one
+     */
+    int search(T entry, boolean inclusive, int size, Comparator<T> comparator) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int cmp = comparator.compare(get(mid), entry);
+        if (cmp < 0 || (cmp == 0 && !inclusive)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * An {@link Iterator} that scans entries directly from a snapshot of segments without copying.
+   *
+   * @param <T> type of the entry
+   */
+  private static final class SegmentIterator<T> extends AbstractIterator<T> {
+
+    private final Iterator<Segment<T>> segments;
+    private final T startEntry;
+    private final boolean includeStart;
+    private final MessageFilter<T> filter;
+    private final Comparator<T> comparator;
+    private int remaining;
+    private Segment<T> segment;
+    private int size;
+    private int idx;
+
+    SegmentIterator(List<Segment<T>> segments, T startEntry, boolean includeStart,
+                    int limit, MessageFilter<T> filter, Comparator<T> comparator) {
+      this.segments = segments.iterator();
+      this.startEntry = startEntry;
+      this.includeStart = includeStart;
+      this.filter = filter;
+      this.comparator = comparator;
+      this.remaining = limit;
+    }
+
+    @Override
+    protected T computeNext() {
+      while (remaining > 0) {
+        if (segment == null || idx >= size) {
+          if (!nextSegment()) {
+            return endOfData();
+          }
+          continue;
+        }
+
+        T entry = segment.get(idx++);
+        MessageFilter.Result result = filter.apply(entry);
+        if (result == MessageFilter.Result.ACCEPT) {
+          remaining--;
+          return entry;
+        }
+        if (result == MessageFilter.Result.HOLD) {
+          // Hold means not to scan more
+          return endOfData();
+        }
+      }
+      return endOfData();
+    }
+
+    /**
+     * Moves to the next segment that has entries larger than the start entry.
+     *
+     * @return {@code true} if there is such segment, {@code false} otherwise
+     */
+    private boolean nextSegment() {
+      while (segments.hasNext()) {
+        segment = segments.next();
+        size = segment.size();
+        if (size == 0) {
+          continue;
+        }
+        // Only need to search for the start position if the start entry is not before this segment
+        idx = comparator.compare(segment.get(0), startEntry) > 0
+          ? 0
+          : segment.search(startEntry, includeStart, size, comparator);
+        if (idx < size) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -25,7 +25,6 @@ import com.google.common.net.HttpHeaders;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Inject;
-import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.AbstractCloseableIterator;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.messaging.TopicAlreadyExistsException;
@@ -37,6 +36,7 @@ import io.cdap.cdap.common.http.DefaultHttpRequestConfig;
 import io.cdap.cdap.common.internal.remote.RemoteClient;
 import io.cdap.cdap.common.internal.remote.RemoteClientFactory;
 import io.cdap.cdap.internal.io.ExposedByteArrayOutputStream;
+import io.cdap.cdap.messaging.ContentEncodings;
 import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.MessagingService;
 import io.cdap.cdap.messaging.RollbackDetail;
@@ -54,16 +54,16 @@ import io.cdap.common.http.HttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.TransactionCodec;
+import org.xerial.snappy.SnappyFramedInputStream;
+import org.xerial.snappy.SnappyFramedOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -103,17 +103,28 @@ public final class ClientMessagingService implements MessagingService {
 
   private final RemoteClient remoteClient;
   private final boolean compressPayload;
+  private final String contentEncoding;
 
   @Inject
   public ClientMessagingService(CConfiguration cConf, RemoteClientFactory remoteClientFactory) {
-    this(remoteClientFactory, cConf.getBoolean(Constants.MessagingSystem.HTTP_COMPRESS_PAYLOAD));
+    this(remoteClientFactory, cConf.getBoolean(Constants.MessagingSystem.HTTP_COMPRESS_PAYLOAD),
+         cConf.get(Constants.MessagingSystem.HTTP_COMPRESSION_CODEC));
   }
 
   @VisibleForTesting
   public ClientMessagingService(RemoteClientFactory remoteClientFactory, boolean compressPayload) {
+    this(remoteClientFactory, compressPayload, ContentEncodings.GZIP);
+  }
+
+  @VisibleForTesting
+  public ClientMessagingService(RemoteClientFactory remoteClientFactory,
+                                boolean compressPayload, String compressionCodec) {
     this.remoteClient = remoteClientFactory.createRemoteClient(
       Constants.Service.MESSAGING_SERVICE, HTTP_REQUEST_CONFIG, "/v1/namespaces/");
     this.compressPayload = compressPayload;
+
+    // Only validate the codec if compression is enabled
+    this.contentEncoding = compressPayload ? ContentEncodings.fromCodec(compressionCodec) : ContentEncodings.GZIP;
   }
 
   @Override
@@ -273,7 +284,7 @@ public final class ClientMessagingService implements MessagingService {
     Map<String, String> headers = new HashMap<>();
     headers.put(HttpHeaders.CONTENT_TYPE, "avro/binary");
     if (compressPayload) {
-      headers.put(HttpHeaders.CONTENT_ENCODING, "gzip");
+      headers.put(HttpHeaders.CONTENT_ENCODING, contentEncoding);
     }
 
     HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/" + writeType)
@@ -291,10 +302,17 @@ public final class ClientMessagingService implements MessagingService {
   }
 
   /**
-   * Wraps the given output stream with {@link GZIPOutputStream} if payload compression is enabled.
+   * Wraps the given output stream with {@link GZIPOutputStream} or {@link SnappyFramedOutputStream}
+   * based on the compression codec if payload compression is enabled.
    */
   private OutputStream compressOutputStream(OutputStream outputStream) throws IOException {
-    return compressPayload ? new GZIPOutputStream(outputStream) : outputStream;
+    if (!compressPayload) {
+      return outputStream;
+    }
+    if (ContentEncodings.SNAPPY_FRAMED.equals(contentEncoding)) {
+      return new SnappyFramedOutputStream(outputStream);
+    }
+    return new GZIPOutputStream(outputStream);
   }
 
   /**
@@ -393,15 +411,9 @@ public final class ClientMessagingService implements MessagingService {
   private final class ClientMessageFetcher extends MessageFetcher {
 
     private final TopicId topicId;
-    private final DatumReader<GenericRecord> messageReader;
-    private GenericRecord messageRecord;
 
     private ClientMessageFetcher(TopicId topicId) {
       this.topicId = topicId;
-
-      // These are for reading individual message (response is an array of messages)
-      this.messageRecord = new GenericData.Record(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
-      this.messageReader = new GenericDatumReader<>(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
     }
 
     @Override
@@ -423,10 +435,22 @@ public final class ClientMessagingService implements MessagingService {
 
       // The cask common http library doesn't support read streaming, and we don't want to buffer all messages
       // in memory, hence we use the HttpURLConnection directly instead.
-      HttpURLConnection urlConn = remoteClient.openConnection(HttpMethod.POST, createTopicPath(topicId) + "/poll");
+      String path = createTopicPath(topicId) + "/poll";
+      long pollTimeoutMillis = getPollTimeoutMillis();
+      if (pollTimeoutMillis > 0) {
+        path += "?timeout=" + pollTimeoutMillis;
+      }
+      HttpURLConnection urlConn = remoteClient.openConnection(HttpMethod.POST, path);
+      // Extends the read timeout to cater for the time the server waits for new messages
+      if (pollTimeoutMillis > 0 && urlConn.getReadTimeout() > 0) {
+        urlConn.setReadTimeout((int) Math.min(Integer.MAX_VALUE, urlConn.getReadTimeout() + pollTimeoutMillis));
+      }
       urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
       if (compressPayload) {
-        urlConn.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        // Prefer the configured encoding, while still accepting gzip and deflate from servers that don't support it
+        urlConn.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, ContentEncodings.GZIP.equals(contentEncoding)
+          ? "gzip, deflate"
+          : contentEncoding + ", gzip;q=0.5, deflate;q=0.5");
       }
 
       // Send the request
@@ -479,13 +503,11 @@ public final class ClientMessagingService implements MessagingService {
 
             itemCount--;
 
-            // Use DatumReader to decode individual message
-            // This provides greater flexibility on schema evolution.
-            // The response will likely always be an array, but the element schema can evolve.
-            messageRecord = messageReader.read(messageRecord, decoder);
-
-            return new RawMessage(Bytes.toBytes((ByteBuffer) messageRecord.get("id")),
-                                  Bytes.toBytes((ByteBuffer) messageRecord.get("payload")));
+            // Decode the id and payload fields of the Schemas.V1.ConsumeResponse element directly into byte arrays,
+            // which avoids the intermediate record and ByteBuffer copies per message.
+            byte[] id = readBytes(decoder);
+            byte[] payload = readBytes(decoder);
+            return new RawMessage(id, payload);
           } catch (IOException e) {
             throw Throwables.propagate(e);
           }
@@ -499,9 +521,18 @@ public final class ClientMessagingService implements MessagingService {
       };
     }
 
+    /**
+     * Reads an Avro encoded bytes value from the given {@link Decoder} into a new byte array.
+     */
+    private byte[] readBytes(Decoder decoder) throws IOException {
+      byte[] bytes = new byte[(int) decoder.readLong()];
+      decoder.readFixed(bytes);
+      return bytes;
+    }
+
     /**
      * Based on the given {@link HttpURLConnection} content encoding,
-     * optionally wrap the given {@link InputStream} with either gzip or deflate decompression.
+     * optionally wrap the given {@link InputStream} with either gzip, deflate or snappy decompression.
      */
     private InputStream decompressIfNeeded(HttpURLConnection urlConn, InputStream is) throws IOException {
       String contentEncoding = urlConn.getHeaderField(HttpHeaderNames.CONTENT_ENCODING.toString());
@@ -515,6 +546,9 @@ public final class ClientMessagingService implements MessagingService {
       if ("deflate".equalsIgnoreCase(contentEncoding)) {
         return new DeflaterInputStream(is);
       }
+      if (ContentEncodings.SNAPPY_FRAMED.equalsIgnoreCase(contentEncoding)) {
+        return new SnappyFramedInputStream(is);
+      }
 
       throw new IllegalArgumentException("Unsupported content encoding " + contentEncoding);
     }
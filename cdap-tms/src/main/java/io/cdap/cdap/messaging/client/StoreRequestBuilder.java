@@ -145,6 +145,15 @@ public final class StoreRequestBuilder {
       return !payloads.isEmpty();
     }
 
+    @Override
+    public long getPayloadSize() {
+      long size = 0L;
+      for (byte[] payload : payloads) {
+        size += payload.length;
+      }
+      return size;
+    }
+
     @Override
     public Iterator<byte[]> iterator() {
       return payloads.iterator();
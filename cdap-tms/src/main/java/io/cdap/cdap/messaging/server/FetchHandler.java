@@ -22,6 +22,7 @@ import io.cdap.cdap.api.common.Bytes;
 import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.api.messaging.TopicNotFoundException;
 import io.cdap.cdap.common.BadRequestException;
+import io.cdap.cdap.common.ServiceUnavailableException;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.common.io.ByteBuffers;
@@ -35,26 +36,25 @@ import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
 import io.cdap.http.AbstractHttpHandler;
 import io.cdap.http.BodyProducer;
+import io.cdap.http.HandlerContext;
 import io.cdap.http.HttpResponder;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.io.Encoder;
-import org.apache.avro.io.EncoderFactory;
 import org.apache.tephra.TransactionCodec;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,10 +65,17 @@ import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
  * A netty http handler for handling message fetching REST API for the messaging system.
@@ -86,19 +93,36 @@ public final class FetchHandler extends AbstractHttpHandler {
   );
 
   private final MessagingService messagingService;
+  private final long maxPollTimeoutMillis;
+  private final ExecutorService longPollExecutor;
   private int messageChunkSize;
 
   @Inject
   FetchHandler(CConfiguration cConf, MessagingService messagingService) {
     this.messagingService = messagingService;
     this.messageChunkSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE);
+    this.maxPollTimeoutMillis = cConf.getLong(Constants.MessagingSystem.HTTP_SERVER_MAX_POLL_TIMEOUT_MS);
+
+    // Long poll requests wait for new messages in this executor instead of blocking the http threads.
+    // The executor shrinks to 0 threads if left idle. When all threads are busy, long poll requests
+    // are served as normal poll requests.
+    int longPollThreads = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_LONG_POLL_THREADS);
+    this.longPollExecutor = new ThreadPoolExecutor(0, longPollThreads, 60L, TimeUnit.SECONDS,
+                                                   new SynchronousQueue<>(),
+                                                   Threads.createDaemonThreadFactory("messaging-long-poll-%d"));
+  }
+
+  @Override
+  public void destroy(HandlerContext context) {
+    longPollExecutor.shutdownNow();
   }
 
   @POST
   @Path("poll")
   public void poll(FullHttpRequest request, HttpResponder responder,
                    @PathParam("namespace") String namespace,
-                   @PathParam("topic") String topic) throws Exception {
+                   @PathParam("topic") String topic,
+                   @QueryParam("timeout") @DefaultValue("0") long timeoutMillis) throws Exception {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
 
@@ -111,8 +135,41 @@ public final class FetchHandler extends AbstractHttpHandler {
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
 
+    GenericRecord fetchRequest = datumReader.read(null, decoder);
+    long pollTimeoutMillis = Math.min(Math.max(0L, timeoutMillis), maxPollTimeoutMillis);
+
+    if (pollTimeoutMillis > 0) {
+      // The request content is released after this method returned, hence the fetch request has to be decoded
+      // before handing off to the long poll executor.
+      try {
+        longPollExecutor.execute(() -> {
+          try {
+            sendMessages(responder, fetchMessages(fetchRequest, topicId, pollTimeoutMillis));
+          } catch (TopicNotFoundException e) {
+            responder.sendString(HttpResponseStatus.NOT_FOUND, e.getMessage());
+          } catch (ServiceUnavailableException e) {
+            responder.sendString(HttpResponseStatus.SERVICE_UNAVAILABLE, e.getMessage());
+          } catch (IllegalArgumentException e) {
+            responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
+          } catch (Throwable t) {
+            LOG.warn("Failed to fetch messages from topic {}", topicId, t);
+            responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, t.getMessage());
+          }
+        });
+        return;
+      } catch (RejectedExecutionException e) {
+        SAMPLING_LOG.debug("Too many concurrent long poll requests. Fetching from topic {} without waiting.", topicId);
+      }
+    }
+
     // Fetch the messages
-    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
+    sendMessages(responder, fetchMessages(fetchRequest, topicId, 0L));
+  }
+
+  /**
+   * Sends the messages from the given {@link CloseableIterator} as the response body.
+   */
+  private void sendMessages(HttpResponder responder, CloseableIterator<RawMessage> iterator) {
     try {
       responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
                             new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
@@ -125,9 +182,11 @@ public final class FetchHandler extends AbstractHttpHandler {
   /**
    * Creates a {@link CloseableIterator} of {@link RawMessage} based on the given fetch request.
    */
-  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest,
-                                                      TopicId topicId) throws IOException, TopicNotFoundException {
-    MessageFetcher fetcher = messagingService.prepareFetch(topicId);
+  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest, TopicId topicId,
+                                                      long pollTimeoutMillis)
+    throws IOException, TopicNotFoundException {
+    MessageFetcher fetcher = messagingService.prepareFetch(topicId)
+      .setPollTimeout(pollTimeoutMillis, TimeUnit.MILLISECONDS);
 
     Object startFrom = fetchRequest.get("startFrom");
     if (startFrom != null) {
@@ -158,40 +217,33 @@ public final class FetchHandler extends AbstractHttpHandler {
 
   /**
    * A {@link BodyProducer} to encode and send back messages.
-   * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
-   * all messages in memory before sending out.
+   * Instead of using GenericDatumWriter, we perform the Avro encoding manually so that we don't have to buffer
+   * all messages in memory before sending out. Each chunk is a {@link CompositeByteBuf} with the Avro framing
+   * written to a pooled direct buffer and large payloads added as wrapped components, so that payload bytes
+   * are not copied before being written to the network.
+   *
+   * The encoding follows the {@link Schemas.V1.ConsumeResponse} schema, which is an array of records with
+   * the {@code id} and {@code payload} bytes fields.
    */
   private static class MessagesBodyProducer extends BodyProducer {
 
+    // Payloads smaller than this size are copied into the framing buffer instead of being added
+    // as a separate component, since the per component overhead outweighs the copying cost.
+    private static final int INLINE_PAYLOAD_SIZE = 256;
+    // Maximum number of bytes of an Avro variable-length zig-zag encoded long
+    private static final int MAX_VARLONG_SIZE = 10;
+
     private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
     private final int messageChunkSize;
-    private final ByteBuf chunk;
-    private final Encoder encoder;
-    private final GenericRecord messageRecord;
-    private final DatumWriter<GenericRecord> messageWriter;
-    private boolean arrayStarted;
+    private final ByteBufAllocator allocator;
     private boolean arrayEnded;
 
     MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
       this.iterator = iterator;
       this.messages = new ArrayList<>();
       this.messageChunkSize = messageChunkSize;
-      this.chunk = Unpooled.buffer(messageChunkSize);
-      this.encoder = EncoderFactory.get().directBinaryEncoder(new ByteBufOutputStream(chunk), null);
-
-      // These are for writing individual message (response is an array of messages)
-      this.messageRecord = new GenericData.Record(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
-      this.messageWriter = new GenericDatumWriter<GenericRecord>(Schemas.V1.ConsumeResponse.SCHEMA.getElementType()) {
-        @Override
-        protected void writeBytes(Object datum, Encoder out) throws IOException {
-          if (datum instanceof byte[]) {
-            out.writeBytes((byte[]) datum);
-          } else {
-            super.writeBytes(datum, out);
-          }
-        }
-      };
+      this.allocator = PooledByteBufAllocator.DEFAULT;
     }
 
     @Override
@@ -201,15 +253,10 @@ public final class FetchHandler extends AbstractHttpHandler {
         return Unpooled.EMPTY_BUFFER;
       }
 
-      chunk.clear();
-
-      if (!arrayStarted) {
-        arrayStarted = true;
-        encoder.writeArrayStart();
-      }
-
       // Try to buffer up to buffer size
       int size = 0;
+      int framesSize = MAX_VARLONG_SIZE + 1;
+      int components = 1;
       messages.clear();
       while (iterator.hasNext() && size < messageChunkSize) {
         RawMessage message = iterator.next();
@@ -218,33 +265,78 @@ public final class FetchHandler extends AbstractHttpHandler {
         // Avro encodes bytes as (len + bytes), hence adding 8 to cater for the length of the id and payload
         // Straightly speaking it can be up to 9 bytes each (hence 18 bytes),
         // but we don't expect id and payload of such size
-        size += message.getId().length + message.getPayload().length + 8;
+        int payloadLength = message.getPayload().length;
+        size += message.getId().length + payloadLength + 8;
+
+        framesSize += MAX_VARLONG_SIZE * 2 + message.getId().length;
+        if (payloadLength < INLINE_PAYLOAD_SIZE) {
+          framesSize += payloadLength;
+        } else {
+          components += 2;
+        }
       }
 
-      encoder.setItemCount(messages.size());
-      for (RawMessage message : messages) {
-        encoder.startItem();
+      CompositeByteBuf chunk = allocator.compositeDirectBuffer(components);
+      ByteBuf frames = allocator.directBuffer(framesSize);
+      try {
+        int frameStart = 0;
 
-        // Write individual message (array element) with DatumWrite.
-        // This provides greater flexibility on schema evolution.
-        // The response will likely always be an array, but the element schema can evolve.
-        messageRecord.put("id", message.getId());
-        messageRecord.put("payload", message.getPayload());
-        messageWriter.write(messageRecord, encoder);
-      }
+        // Each non-empty chunk is an Avro array block, which starts with the item count.
+        if (!messages.isEmpty()) {
+          writeLong(frames, messages.size());
+        }
+
+        for (RawMessage message : messages) {
+          byte[] id = message.getId();
+          byte[] payload = message.getPayload();
+
+          writeLong(frames, id.length);
+          frames.writeBytes(id);
+          writeLong(frames, payload.length);
+
+          if (payload.length < INLINE_PAYLOAD_SIZE) {
+            frames.writeBytes(payload);
+          } else {
+            chunk.addComponent(true, frames.retainedSlice(frameStart, frames.writerIndex() - frameStart));
+            chunk.addComponent(true, Unpooled.wrappedBuffer(payload));
+            frameStart = frames.writerIndex();
+          }
+        }
+
+        if (!iterator.hasNext()) {
+          // A zero item count block signals the end of the array
+          arrayEnded = true;
+          frames.writeByte(0);
+        }
 
-      if (!iterator.hasNext()) {
-        arrayEnded = true;
-        encoder.writeArrayEnd();
+        if (frames.writerIndex() > frameStart) {
+          chunk.addComponent(true, frames.retainedSlice(frameStart, frames.writerIndex() - frameStart));
+        }
+      } catch (Throwable t) {
+        chunk.release();
+        throw t;
+      } finally {
+        frames.release();
       }
 
-      return chunk.copy();
+      return chunk;
+    }
+
+    /**
+     * Writes a long value using the Avro variable-length zig-zag encoding.
+     */
+    private static void writeLong(ByteBuf buf, long value) {
+      long n = (value << 1) ^ (value >> 63);
+      while ((n & ~0x7FL) != 0) {
+        buf.writeByte((int) ((n & 0x7F) | 0x80));
+        n >>>= 7;
+      }
+      buf.writeByte((int) n);
     }
 
     @Override
     public void finished() throws Exception {
       iterator.close();
-      chunk.release();
     }
 
     @Override
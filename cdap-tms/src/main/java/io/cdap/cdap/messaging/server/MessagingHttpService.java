@@ -34,7 +34,6 @@ import io.cdap.http.HttpHandler;
 import io.cdap.http.HttpResponder;
 import io.cdap.http.NettyHttpService;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import org.apache.twill.common.Cancellable;
@@ -70,7 +69,9 @@ public class MessagingHttpService extends AbstractIdleService {
       .setChannelPipelineModifier(new ChannelPipelineModifier() {
         @Override
         public void modify(ChannelPipeline pipeline) {
-          pipeline.addAfter("compressor", "decompressor", new HttpContentDecompressor());
+          // Replace the compressor to support negotiating snappy compression in addition to gzip and deflate
+          pipeline.replace("compressor", "compressor", new SnappyHttpContentCompressor());
+          pipeline.addAfter("compressor", "decompressor", new SnappyHttpContentDecompressor());
         }
       })
       .setExceptionHandler(new HttpExceptionHandler() {
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.server;
+
+import io.cdap.cdap.messaging.ContentEncodings;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.SnappyFrameEncoder;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+
+/**
+ * A {@link HttpContentCompressor} that supports the {@link ContentEncodings#SNAPPY_FRAMED} content encoding in
+ * addition to gzip and deflate. Snappy trades compression ratio for much lower CPU cost, which suits the highly
+ * compressible messages of metrics and log topics.
+ */
+public class SnappyHttpContentCompressor extends HttpContentCompressor {
+
+  private ChannelHandlerContext ctx;
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+    super.handlerAdded(ctx);
+    this.ctx = ctx;
+  }
+
+  @Override
+  protected Result beginEncode(HttpResponse headers, String acceptEncoding) throws Exception {
+    if (headers.headers().contains(HttpHeaderNames.CONTENT_ENCODING)
+      || !ContentEncodings.isAccepted(acceptEncoding, ContentEncodings.SNAPPY_FRAMED)) {
+      return super.beginEncode(headers, acceptEncoding);
+    }
+    return new Result(ContentEncodings.SNAPPY_FRAMED,
+                      new EmbeddedChannel(ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+                                          ctx.channel().config(), new SnappyFrameEncoder()));
+  }
+}
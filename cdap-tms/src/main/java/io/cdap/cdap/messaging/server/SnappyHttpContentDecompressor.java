@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.server;
+
+import io.cdap.cdap.messaging.ContentEncodings;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.SnappyFrameDecoder;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+
+/**
+ * A {@link HttpContentDecompressor} that supports decoding request body with the
+ * {@link ContentEncodings#SNAPPY_FRAMED} content encoding in addition to gzip and deflate.
+ */
+public class SnappyHttpContentDecompressor extends HttpContentDecompressor {
+
+  @Override
+  protected EmbeddedChannel newContentDecoder(String contentEncoding) throws Exception {
+    if (ContentEncodings.SNAPPY_FRAMED.equalsIgnoreCase(contentEncoding)) {
+      return new EmbeddedChannel(ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+                                 ctx.channel().config(), new SnappyFrameDecoder());
+    }
+    return super.newContentDecoder(contentEncoding);
+  }
+}
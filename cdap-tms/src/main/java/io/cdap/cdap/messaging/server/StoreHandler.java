@@ -215,6 +215,15 @@ public final class StoreHandler extends AbstractHttpHandler {
       return !payloads.isEmpty();
     }
 
+    @Override
+    public long getPayloadSize() {
+      long size = 0L;
+      for (ByteBuffer payload : payloads) {
+        size += payload.remaining();
+      }
+      return size;
+    }
+
     @Override
     public Iterator<byte[]> iterator() {
       return payloads.stream().map(ByteBuffers::getByteArray).iterator();
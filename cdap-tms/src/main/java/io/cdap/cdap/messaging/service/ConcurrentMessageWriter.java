@@ -18,7 +18,7 @@ package io.cdap.cdap.messaging.service;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.api.metrics.NoopMetricsContext;
 import io.cdap.cdap.messaging.RollbackDetail;
 import io.cdap.cdap.messaging.StoreRequest;
@@ -31,7 +31,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -53,17 +56,28 @@ import javax.annotation.concurrent.ThreadSafe;
  * 5. The message table store method will consume the Iterator until it is empty
  * 6. Set the state of each PendingStoreRequest that are written to COMPLETED (succeed/failure).
  * 7. Set the AtomicBoolean flag back to false.
- * 8. If the PendingStoreRequest enqueued by this thread is NOT COMPLETED, go back to step 2.
+ * 8. Wake up the thread of the PendingStoreRequest at the head of the queue, if there is one.
+ * 9. If the PendingStoreRequest enqueued by this thread is NOT COMPLETED, park until woken up and go back to step 2.
  * </pre>
  *
- * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
- * get written and flushed.
+ * The loop between step 2 to step 9 is necessary as it guarantees events enqueued by all threads would eventually
+ * get written and flushed. A thread that failed to become the writer parks instead of spinning. It is woken up either
+ * when its request is completed in step 6, or when its request is at the head of the queue in step 8, so that
+ * it can become the next writer.
+ *
+ * Optionally, the writer can be configured to do group commit. In step 4, the thread that becomes the writer
+ * lingers for up to the configured linger time, counting from when the oldest pending request was enqueued,
+ * or until the pending requests reach the max batch size in bytes, whichever comes first. Also, each write
+ * only takes pending requests up to the max batch size, with the rest left for the next write.
  */
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
 
+  // Maximum time to park while lingering before checking the pending batch size again
+  private static final long MAX_LINGER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
   private final StoreRequestWriter<?> messagesWriter;
-  private final MetricsCollector metricsCollector;
+  private final MetricsContext metricsContext;
   private final PendingStoreQueue pendingStoreQueue;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
@@ -76,16 +90,33 @@ final class ConcurrentMessageWriter implements Closeable {
     this(messagesWriter, new NoopMetricsContext());
   }
 
+  /**
+   * Constructor without group commit.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsContext the {@link MetricsContext} for collecting metrics emitted by this class.
+   */
+  @VisibleForTesting
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsContext metricsContext) {
+    this(messagesWriter, metricsContext, Long.MAX_VALUE, 0L);
+  }
+
   /**
    * Constructor.
    *
    * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
-   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param metricsContext the {@link MetricsContext} for collecting metrics emitted by this class.
+   * @param maxBatchBytes the maximum total payload size in bytes to write in one batch. A batch always
+   *                      contains at least one request.
+   * @param lingerMicros the maximum time in microseconds to wait for more requests to form a larger batch;
+   *                     {@code 0} to write without waiting.
    */
-  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsContext metricsContext,
+                          long maxBatchBytes, long lingerMicros) {
     this.messagesWriter = messagesWriter;
-    this.metricsCollector = metricsCollector;
-    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
+    this.metricsContext = metricsContext;
+    this.pendingStoreQueue = new PendingStoreQueue(metricsContext, maxBatchBytes,
+                                                   TimeUnit.MICROSECONDS.toNanos(lingerMicros));
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
   }
@@ -109,16 +140,17 @@ final class ConcurrentMessageWriter implements Closeable {
     PendingStoreRequest pendingStoreRequest = new PendingStoreRequest(storeRequest, metadata);
     pendingStoreQueue.enqueue(pendingStoreRequest);
 
-    metricsCollector.increment("persist.requested", 1L);
+    metricsContext.increment("persist.requested", 1L);
 
     while (!pendingStoreRequest.isCompleted()) {
       if (!tryWrite()) {
-        Thread.yield();
+        // Another thread is writing. Wait until it either completes this request or hands over the writer role.
+        LockSupport.park(this);
       }
     }
 
     if (pendingStoreRequest.isSuccess()) {
-      metricsCollector.increment("persist.success", 1L);
+      metricsContext.increment("persist.success", 1L);
       if (!pendingStoreRequest.isTransactional()) {
         return null;
       }
@@ -126,7 +158,7 @@ final class ConcurrentMessageWriter implements Closeable {
                                       pendingStoreRequest.getStartTimestamp(), pendingStoreRequest.getStartSequenceId(),
                                       pendingStoreRequest.getEndTimestamp(), pendingStoreRequest.getEndSequenceId());
     } else {
-      metricsCollector.increment("persist.failure", 1L);
+      metricsContext.increment("persist.failure", 1L);
       Throwables.propagateIfInstanceOf(pendingStoreRequest.getFailureCause(), IOException.class);
       throw new IOException("Unable to write message to " + storeRequest.getTopicId(),
                             pendingStoreRequest.getFailureCause());
@@ -147,6 +179,9 @@ final class ConcurrentMessageWriter implements Closeable {
       pendingStoreQueue.persist(messagesWriter);
     } finally {
       writerFlag.set(false);
+      // Wake up the thread of the oldest pending request, so that it can become the next writer.
+      // Threads that enqueue after this point will try to become the writer themselves.
+      pendingStoreQueue.wakeUpHead();
     }
     return true;
   }
@@ -157,9 +192,9 @@ final class ConcurrentMessageWriter implements Closeable {
       return;
     }
     // Flush everything in the queue.
-    // When this thread can grab the writer flag, all pending write requests must be completed since the closed
-    // flag was already set to false.
-    while (!tryWrite()) {
+    // Once this thread grabbed the writer flag and the queue is empty, all pending write requests must be completed
+    // since the closed flag was already set to true.
+    while (!tryWrite() || !pendingStoreQueue.isEmpty()) {
       Thread.yield();
     }
     messagesWriter.close();
@@ -172,13 +207,19 @@ final class ConcurrentMessageWriter implements Closeable {
    */
   private static final class PendingStoreQueue {
 
-    private final MetricsCollector metricsCollector;
+    private final MetricsContext metricsContext;
+    private final long maxBatchBytes;
+    private final long lingerNanos;
     private final Queue<PendingStoreRequest> writeQueue;
+    private final AtomicLong pendingBytes;
     private final List<PendingStoreRequest> inflightRequests;
 
-    private PendingStoreQueue(MetricsCollector metricsCollector) {
-      this.metricsCollector = metricsCollector;
+    private PendingStoreQueue(MetricsContext metricsContext, long maxBatchBytes, long lingerNanos) {
+      this.metricsContext = metricsContext;
+      this.maxBatchBytes = maxBatchBytes;
+      this.lingerNanos = lingerNanos;
       this.writeQueue = new ConcurrentLinkedQueue<>();
+      this.pendingBytes = new AtomicLong();
       this.inflightRequests = new ArrayList<>(100);
     }
 
@@ -186,27 +227,59 @@ final class ConcurrentMessageWriter implements Closeable {
      * Puts the given {@link PendingStoreRequest} to the concurrent queue.
      */
     void enqueue(PendingStoreRequest storeRequest) {
+      storeRequest.setEnqueueTime(System.nanoTime());
+      pendingBytes.addAndGet(storeRequest.getPayloadSize());
       writeQueue.add(storeRequest);
     }
 
     /**
-     * Persists all {@link PendingStoreRequest} currently in the queue with the given writer.
+     * Wakes up the thread of the oldest pending request in the queue, if there is one.
+     */
+    void wakeUpHead() {
+      PendingStoreRequest head = writeQueue.peek();
+      if (head != null) {
+        head.wakeUp();
+      }
+    }
+
+    /**
+     * Returns {@code true} if there is no pending request in the queue.
+     */
+    boolean isEmpty() {
+      return writeQueue.isEmpty();
+    }
+
+    /**
+     * Persists {@link PendingStoreRequest} currently in the queue with the given writer, up to the max batch size.
      */
     void persist(StoreRequestWriter<?> writer) {
-      // Capture all current events.
+      linger();
+
+      // Capture the current events.
       // The reason for capturing instead of using a live iterator is to avoid the possible case of infinite write
       // time. E.g. while generating the entry to write to the storage table, a new store request get enqueued.
       // The number of requests in the queue is bounded by the number of threads that call this method.
       // Since this method is expected to be called (indirectly) from a http handler thread, that is bounded by
       // the thread pool size used by the http service.
       inflightRequests.clear();
+      long now = System.nanoTime();
+      long batchBytes = 0L;
       PendingStoreRequest request = writeQueue.poll();
       while (request != null) {
         inflightRequests.add(request);
-        request = writeQueue.poll();
+        batchBytes += request.getPayloadSize();
+        metricsContext.event("persist.queue.wait.micros",
+                             TimeUnit.NANOSECONDS.toMicros(now - request.getEnqueueTime()));
+        request = batchBytes < maxBatchBytes ? writeQueue.poll() : null;
       }
+      pendingBytes.addAndGet(-batchBytes);
 
-      metricsCollector.gauge("persist.queue.size", inflightRequests.size());
+      metricsContext.gauge("persist.queue.size", inflightRequests.size());
+      if (inflightRequests.isEmpty()) {
+        return;
+      }
+      metricsContext.event("persist.batch.size", inflightRequests.size());
+      metricsContext.event("persist.batch.bytes", batchBytes);
 
       try {
         writer.write(inflightRequests.iterator());
@@ -217,8 +290,28 @@ final class ConcurrentMessageWriter implements Closeable {
     }
 
     /**
-     * Marks all inflight requests as collected through the {@link Iterator#next()} method as completed.
-     * This method must be called while holding the writer flag.
+     * Waits for more requests to be enqueued until either the linger time has passed since the oldest
+     * request was enqueued or the max batch size is reached.
+     */
+    private void linger() {
+      if (lingerNanos <= 0L) {
+        return;
+      }
+      PendingStoreRequest oldest = writeQueue.peek();
+      if (oldest == null) {
+        return;
+      }
+      long deadline = oldest.getEnqueueTime() + lingerNanos;
+      long remaining = deadline - System.nanoTime();
+      while (remaining > 0 && pendingBytes.get() < maxBatchBytes) {
+        LockSupport.parkNanos(Math.min(remaining, MAX_LINGER_PARK_NANOS));
+        remaining = deadline - System.nanoTime();
+      }
+    }
+
+    /**
+     * Marks all inflight requests as collected through the {@link Iterator#next()} method as completed, which
+     * also wakes up the threads waiting for them. This method must be called while holding the writer flag.
      */
     void completeAll(@Nullable Throwable failureCause) {
       Iterator<PendingStoreRequest> iterator = inflightRequests.iterator();
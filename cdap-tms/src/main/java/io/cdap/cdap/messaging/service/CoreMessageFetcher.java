@@ -44,17 +44,52 @@ final class CoreMessageFetcher extends MessageFetcher {
   private final TopicMetadata topicMetadata;
   private final TableProvider<MessageTable> messageTableProvider;
   private final TableProvider<PayloadTable> payloadTableProvider;
+  private final PublishNotifier publishNotifier;
 
   CoreMessageFetcher(TopicMetadata topicMetadata,
                      TableProvider<MessageTable> messageTableProvider,
-                     TableProvider<PayloadTable> payloadTableProvider) {
+                     TableProvider<PayloadTable> payloadTableProvider,
+                     PublishNotifier publishNotifier) {
     this.topicMetadata = topicMetadata;
     this.messageTableProvider = messageTableProvider;
     this.payloadTableProvider = payloadTableProvider;
+    this.publishNotifier = publishNotifier;
   }
 
   @Override
   public CloseableIterator<RawMessage> fetch() throws IOException {
+    long pollTimeoutMillis = getPollTimeoutMillis();
+    if (pollTimeoutMillis <= 0) {
+      return scan();
+    }
+
+    // Long poll. Wait for new messages being published to the topic if the scan returns nothing.
+    TopicId topicId = topicMetadata.getTopicId();
+    long deadline = System.currentTimeMillis() + pollTimeoutMillis;
+    while (true) {
+      // Get the publish count before scanning, so that publishes happened during the scan won't be missed.
+      long publishCount = publishNotifier.getPublishCount(topicId);
+      CloseableIterator<RawMessage> iterator = scan();
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0 || iterator.hasNext()) {
+        return iterator;
+      }
+      iterator.close();
+
+      try {
+        publishNotifier.awaitPublish(topicId, publishCount, remaining, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        // Preserve the interrupt flag and return whatever is available.
+        Thread.currentThread().interrupt();
+        return scan();
+      }
+    }
+  }
+
+  /**
+   * Scans the message table for messages based on the fetcher settings.
+   */
+  private CloseableIterator<RawMessage> scan() throws IOException {
     MessageTable messageTable = messageTableProvider.get();
     try {
       return new MessageCloseableIterator(messageTable);
@@ -86,6 +86,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   private final TimeProvider timeProvider;
   private final MetricsCollectionService metricsCollectionService;
   private final long txMaxLifeTimeInMillis;
+  private final PublishNotifier publishNotifier;
 
   @Inject
   protected CoreMessagingService(CConfiguration cConf, TableFactory tableFactory,
@@ -115,6 +116,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     this.metricsCollectionService = metricsCollectionService;
     this.txMaxLifeTimeInMillis = TimeUnit.SECONDS.toMillis(cConf.getLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME,
                                                                          TxConstants.Manager.DEFAULT_TX_MAX_LIFETIME));
+    this.publishNotifier = new PublishNotifier();
   }
 
   @Override
@@ -143,6 +145,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       topicCache.invalidate(topicId);
       messageTableWriterCache.invalidate(topicId);
       payloadTableWriterCache.invalidate(topicId);
+      publishNotifier.remove(topicId);
     }
   }
 
@@ -169,7 +172,8 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     final TopicMetadata metadata = getTopic(topicId);
     return new CoreMessageFetcher(metadata,
                                   () -> createMessageTable(metadata),
-                                  () -> createPayloadTable(metadata));
+                                  () -> createPayloadTable(metadata),
+                                  publishNotifier);
   }
 
   @Nullable
@@ -180,7 +184,9 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       if (request.isTransactional()) {
         ensureValidTxLifetime(request.getTransactionWritePointer());
       }
-      return messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      RollbackDetail rollbackDetail = messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      publishNotifier.published(request.getTopicId());
+      return rollbackDetail;
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -367,7 +373,10 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
             Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload"
           ));
 
-          return new ConcurrentMessageWriter(messagesWriter, metricsContext);
+          return new ConcurrentMessageWriter(
+            messagesWriter, metricsContext,
+            cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_MAX_BATCH_BYTES),
+            cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_LINGER_MICROS));
         }
       });
   }
@@ -20,6 +20,7 @@ import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
 
 import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 
 /**
@@ -29,8 +30,11 @@ final class PendingStoreRequest extends StoreRequest {
 
   private final StoreRequest originalRequest;
   private final TopicMetadata metadata;
+  private final long payloadSize;
+  private final Thread waiter;
 
-  private boolean completed;
+  private volatile boolean completed;
+  private long enqueueTime;
   private long startTimestamp;
   private long endTimestamp;
   private int startSequenceId;
@@ -42,6 +46,8 @@ final class PendingStoreRequest extends StoreRequest {
           originalRequest.getTransactionWritePointer());
     this.originalRequest = originalRequest;
     this.metadata = topicMetadata;
+    this.payloadSize = Math.max(0L, originalRequest.getPayloadSize());
+    this.waiter = Thread.currentThread();
   }
 
   TopicMetadata getTopicMetadata() {
@@ -65,8 +71,16 @@ final class PendingStoreRequest extends StoreRequest {
   }
 
   void completed(@Nullable Throwable failureCause) {
-    completed = true;
     this.failureCause = failureCause;
+    completed = true;
+    wakeUp();
+  }
+
+  /**
+   * Unparks the thread that created this request, which parks while waiting for the request to be written.
+   */
+  void wakeUp() {
+    LockSupport.unpark(waiter);
   }
 
   void setStartTimestamp(long startTimestamp) {
@@ -77,6 +91,17 @@ final class PendingStoreRequest extends StoreRequest {
     this.startSequenceId = startSequenceId;
   }
 
+  void setEnqueueTime(long enqueueTime) {
+    this.enqueueTime = enqueueTime;
+  }
+
+  /**
+   * Returns the time in nanoseconds as returned by {@link System#nanoTime()} when this request was enqueued.
+   */
+  long getEnqueueTime() {
+    return enqueueTime;
+  }
+
   void setEndTimestamp(long endTimestamp) {
     this.endTimestamp = endTimestamp;
   }
@@ -106,6 +131,14 @@ final class PendingStoreRequest extends StoreRequest {
     return originalRequest.hasPayload();
   }
 
+  /**
+   * Returns the payload size of the original request, or {@code 0} if it is unknown.
+   */
+  @Override
+  public long getPayloadSize() {
+    return payloadSize;
+  }
+
   @Override
   public Iterator<byte[]> iterator() {
     return originalRequest.iterator();
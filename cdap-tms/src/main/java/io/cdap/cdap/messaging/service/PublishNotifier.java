@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.service;
+
+import io.cdap.cdap.proto.id.TopicId;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks publishing to topics so that fetchers can wait for new messages instead of repeatedly polling.
+ * Each topic has a publish count, which is incremented after every successful publish to that topic.
+ * A fetcher reads the count before scanning and waits for it to change if the scan returns nothing.
+ */
+final class PublishNotifier {
+
+  private final ConcurrentMap<TopicId, TopicState> topicStates = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the current publish count of the given topic.
+   */
+  long getPublishCount(TopicId topicId) {
+    TopicState state = topicStates.get(topicId);
+    return state == null ? 0L : state.getPublishCount();
+  }
+
+  /**
+   * Notifies that messages were published to the given topic.
+   */
+  void published(TopicId topicId) {
+    getTopicState(topicId).published();
+  }
+
+  /**
+   * Waits until the publish count of the given topic is different from the given count.
+   *
+   * @param topicId the topic to wait for
+   * @param publishCount the publish count as returned from the {@link #getPublishCount(TopicId)} method
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return {@code true} if the publish count changed; {@code false} if the timeout elapsed
+   * @throws InterruptedException if the current thread is interrupted while waiting
+   */
+  boolean awaitPublish(TopicId topicId, long publishCount,
+                       long timeout, TimeUnit unit) throws InterruptedException {
+    return getTopicState(topicId).awaitPublish(publishCount, unit.toNanos(timeout));
+  }
+
+  /**
+   * Removes the state of the given topic. Fetchers that are waiting on the topic will be woken up.
+   */
+  void remove(TopicId topicId) {
+    TopicState state = topicStates.remove(topicId);
+    if (state != null) {
+      state.published();
+    }
+  }
+
+  private TopicState getTopicState(TopicId topicId) {
+    TopicState state = topicStates.get(topicId);
+    if (state != null) {
+      return state;
+    }
+    state = new TopicState();
+    TopicState existing = topicStates.putIfAbsent(topicId, state);
+    return existing == null ? state : existing;
+  }
+
+  /**
+   * The publish count and waiters of a topic.
+   */
+  private static final class TopicState {
+
+    private volatile long publishCount;
+    private int waiters;
+
+    long getPublishCount() {
+      return publishCount;
+    }
+
+    synchronized void published() {
+      publishCount++;
+      // Avoid the notification cost when no fetcher is waiting, which is the common case for busy topics
+      if (waiters > 0) {
+        notifyAll();
+      }
+    }
+
+    synchronized boolean awaitPublish(long count, long timeoutNanos) throws InterruptedException {
+      long deadline = System.nanoTime() + timeoutNanos;
+      long remaining = timeoutNanos;
+      waiters++;
+      try {
+        while (publishCount == count && remaining > 0) {
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          remaining = deadline - System.nanoTime();
+        }
+        return publishCount != count;
+      } finally {
+        waiters--;
+      }
+    }
+  }
+}
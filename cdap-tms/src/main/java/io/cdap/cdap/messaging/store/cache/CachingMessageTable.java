@@ -344,7 +344,8 @@ final class CachingMessageTable implements MessageTable {
     private final long publishTimestamp;
     private final short sequenceId;
     private long transactionWritePointer;
-    private boolean rollback;
+    // Volatile since rollback can happen while the entry is being read by a lock-free cache scan
+    private volatile boolean rollback;
 
     CacheMessageTableEntry(TopicMetadata topicMetadata, long publishTimestamp, short sequenceId) {
       this.lookupOnly = true;
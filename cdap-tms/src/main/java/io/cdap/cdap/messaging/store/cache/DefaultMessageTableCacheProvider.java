@@ -23,7 +23,9 @@ import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.conf.CConfiguration;
 import io.cdap.cdap.common.conf.Constants;
 import io.cdap.cdap.messaging.MessagingServiceUtils;
+import io.cdap.cdap.messaging.cache.DefaultMessageCache;
 import io.cdap.cdap.messaging.cache.MessageCache;
+import io.cdap.cdap.messaging.cache.SegmentedMessageCache;
 import io.cdap.cdap.messaging.store.MessageTable;
 import io.cdap.cdap.proto.id.TopicId;
 
@@ -38,6 +40,8 @@ import javax.annotation.Nullable;
  */
 public class DefaultMessageTableCacheProvider implements MessageTableCacheProvider {
 
+  private static final String SEGMENTED_CACHE_TYPE = "segmented";
+
   private final CConfiguration cConf;
   private final MetricsCollectionService metricsCollectionService;
   private Map<TopicId, MessageCache<MessageTable.Entry>> topicMessageCaches;
@@ -75,9 +79,14 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
               // Have reduce trigger as 70% of the hard limit and min retain as 50% of the hard limit
               // In future, it can be adjusted dynamically based on metrics
               MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
+              boolean segmented = SEGMENTED_CACHE_TYPE.equalsIgnoreCase(
+                cConf.get(Constants.MessagingSystem.CACHE_TYPE));
+              int segments = cConf.getInt(Constants.MessagingSystem.CACHE_SEGMENTS);
               for (TopicId topic : systemTopics) {
-                caches.put(topic, new MessageCache<>(comparator, weigher, limits,
-                                                     createMetricsContext(cConf, topic, metricsCollectionService)));
+                MetricsContext metricsContext = createMetricsContext(cConf, topic, metricsCollectionService);
+                caches.put(topic, segmented
+                  ? new SegmentedMessageCache<>(comparator, weigher, limits, segments, metricsContext)
+                  : new DefaultMessageCache<>(comparator, weigher, limits, metricsContext));
               }
             }
           }
@@ -35,7 +35,6 @@ import org.iq80.leveldb.WriteOptions;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.function.BiFunction;
@@ -55,8 +54,6 @@ import javax.annotation.Nullable;
  */
 final class LevelDBMessageTable extends AbstractMessageTable {
   private static final WriteOptions WRITE_OPTIONS = new WriteOptions().sync(true);
-  private static final String PAYLOAD_COL = "p";
-  private static final String TX_COL = "t";
 
   private enum EncodeType {
     NON_TRANSACTIONAL(0),
@@ -91,9 +88,8 @@ final class LevelDBMessageTable extends AbstractMessageTable {
     byte[] topic = MessagingUtils.toDataKeyPrefix(topicMetadata.getTopicId(), topicMetadata.getGeneration());
     MessageTableKey messageTableKey = MessageTableKey.fromTopic(topic);
     BiFunction<byte[], byte[], RawMessageTableEntry> decodeFunction = (key, value) -> {
-      Map<String, byte[]> columns = decodeValue(value);
       messageTableKey.setFromRowKey(key);
-      return tableEntry.set(messageTableKey, columns.get(TX_COL), columns.get(PAYLOAD_COL));
+      return tableEntry.set(messageTableKey, decodeTxPtr(value), decodePayload(value));
     };
 
     return new PartitionedDBScanIterator<>(partitions.iterator(), scanRequest.getStartRow(), scanRequest.getStopRow(),
@@ -151,8 +147,7 @@ final class LevelDBMessageTable extends AbstractMessageTable {
         while (rowIterator.hasNext()) {
           Map.Entry<byte[], byte[]> rowValue = rowIterator.next();
           byte[] value = rowValue.getValue();
-          Map<String, byte[]> columns = decodeValue(value);
-          writeBatch.put(rowValue.getKey(), encodeValue(rollbackRequest.getTxWritePointer(), columns.get(PAYLOAD_COL)));
+          writeBatch.put(rowValue.getKey(), encodeValue(rollbackRequest.getTxWritePointer(), decodePayload(value)));
         }
       }
 
@@ -200,20 +195,34 @@ final class LevelDBMessageTable extends AbstractMessageTable {
     return result;
   }
 
-  private Map<String, byte[]> decodeValue(byte[] value) {
-    Map<String, byte[]> data = new HashMap<>();
-
+  /**
+   * Decodes the transaction write pointer from the given encoded value. The value is decoded in place instead of
+   * going through an intermediate column map since this is called for every row being scanned.
+   *
+   * @return the encoded transaction write pointer or {@code null} if the value is non-transactional
+   */
+  @Nullable
+  private byte[] decodeTxPtr(byte[] value) {
     if (value[0] == EncodeType.NON_TRANSACTIONAL.getType()) {
-      data.put(PAYLOAD_COL, Arrays.copyOfRange(value, 1, value.length));
-    } else {
-      data.put(TX_COL, Arrays.copyOfRange(value, 1, 1 + Bytes.SIZEOF_LONG));
-
-      // Only transactional type has payload, otherwise payload should be null.
-      if (value[0] == EncodeType.TRANSACTIONAL.getType()) {
-        data.put(PAYLOAD_COL, Arrays.copyOfRange(value, 1 + Bytes.SIZEOF_LONG, value.length));
-      }
+      return null;
     }
-    return data;
+    return Arrays.copyOfRange(value, 1, 1 + Bytes.SIZEOF_LONG);
   }
 
+  /**
+   * Decodes the payload from the given encoded value.
+   *
+   * @return the payload or {@code null} if the value is a payload reference
+   */
+  @Nullable
+  private byte[] decodePayload(byte[] value) {
+    if (value[0] == EncodeType.NON_TRANSACTIONAL.getType()) {
+      return Arrays.copyOfRange(value, 1, value.length);
+    }
+    // Only transactional type has payload, otherwise payload should be null.
+    if (value[0] == EncodeType.TRANSACTIONAL.getType()) {
+      return Arrays.copyOfRange(value, 1 + Bytes.SIZEOF_LONG, value.length);
+    }
+    return null;
+  }
 }
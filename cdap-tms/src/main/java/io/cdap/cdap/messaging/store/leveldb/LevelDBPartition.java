@@ -31,6 +31,7 @@ public class LevelDBPartition implements Closeable {
   private final long endTime;
   private final Supplier levelDBSupplier;
   private volatile DB levelDB;
+  private volatile boolean closed;
 
   public LevelDBPartition(File file, long startTime, long endTime, Supplier levelDBSupplier) {
     this.file = file;
@@ -56,6 +57,10 @@ public class LevelDBPartition implements Closeable {
       return levelDB;
     }
     synchronized (this) {
+      if (closed) {
+        // prevents recreating the LevelDB of a partition that was pruned or merged
+        throw new IOException("Partition " + file + " is already closed");
+      }
       if (levelDB == null) {
         levelDB = levelDBSupplier.get();
       }
@@ -64,7 +69,8 @@ public class LevelDBPartition implements Closeable {
   }
 
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    closed = true;
     if (levelDB != null) {
       levelDB.close();
     }
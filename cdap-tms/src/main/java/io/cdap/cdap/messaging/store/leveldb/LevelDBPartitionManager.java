@@ -16,9 +16,14 @@
 
 package io.cdap.cdap.messaging.store.leveldb;
 
+import io.cdap.cdap.api.dataset.lib.CloseableIterator;
 import io.cdap.cdap.common.utils.DirUtils;
+import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
 import org.iq80.leveldb.impl.Iq80DBFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
@@ -26,6 +31,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentNavigableMap;
@@ -40,15 +46,27 @@ import javax.annotation.Nullable;
  *   [base dir]/v2.[namespace].[tablename].[topic].[generation]/part.[start].[end]
  *
  * Each partition contains messages with a publish time between the start (inclusive) and end (exclusive) timestamps.
+ *
+ * Cold partitions, which no longer receive writes, can be merged into a single larger partition
+ * through {@link #mergePartitions(long, long)}. A merged partition is first written into a
+ * [base dir]/.../merge.[start].[end] directory and then renamed to part.[start].[end], so that a crash
+ * leaves either the original partitions or a merged partition that covers all of them. In the latter case,
+ * the partitions contained by the merged one are deleted when the partitions are loaded.
  */
 public class LevelDBPartitionManager implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(LevelDBPartitionManager.class);
   private static final Iq80DBFactory LEVEL_DB_FACTORY = Iq80DBFactory.factory;
   private static final String PART_PREFIX = "part.";
+  private static final String MERGE_PREFIX = "merge.";
+  private static final int MERGE_BATCH_SIZE = 1000;
   private final File topicDir;
   private final Options dbOptions;
   private final long partitionSizeMillis;
   private final ConcurrentNavigableMap<Long, LevelDBPartition> partitions;
   private final AtomicBoolean initialized;
+  // Partitions replaced by a merged partition. They are closed and deleted on the next merge, which gives
+  // scans that were started before the merge time to complete.
+  private final List<LevelDBPartition> retiredPartitions;
 
   public LevelDBPartitionManager(File topicDir, Options dbOptions, long partitionSizeMillis) {
     this.topicDir = topicDir;
@@ -56,6 +74,7 @@ public class LevelDBPartitionManager implements Closeable {
     this.partitionSizeMillis = partitionSizeMillis;
     this.partitions = new ConcurrentSkipListMap<>();
     this.initialized = new AtomicBoolean(false);
+    this.retiredPartitions = new ArrayList<>();
   }
 
   /**
@@ -75,8 +94,12 @@ public class LevelDBPartitionManager implements Closeable {
         continue;
       }
       if (thresholdTimestamp >= timeInterval.endMillis) {
-        LevelDBPartition partition = partitions.remove(timeInterval.startMillis);
-        if (partition != null) {
+        LevelDBPartition partition = partitions.get(timeInterval.startMillis);
+        if (partition != null && partition.getEndTime() != timeInterval.endMillis) {
+          // the directory belongs to a partition that was retired by a merge, which takes care of deleting it
+          continue;
+        }
+        if (partition != null && partitions.remove(timeInterval.startMillis, partition)) {
           partition.close();
           DirUtils.deleteDirectoryContents(partitionDir);
         }
@@ -86,6 +109,62 @@ public class LevelDBPartitionManager implements Closeable {
     return numPruned;
   }
 
+  /**
+   * Merges consecutive partitions that have an end timestamp older than or equal to the given threshold timestamp
+   * into larger partitions, each spanning at most the given number of milliseconds. The threshold must be old
+   * enough that no more writes happen to those partitions, including rollbacks of transactional messages.
+   *
+   * A group of partitions is only merged once it is complete, that is when it spans the maximum size or when the
+   * next cold partition doesn't fit in it. Hence a merged partition is never merged again and each message is
+   * copied at most once, instead of the merged partition being rewritten every time a new partition gets cold.
+   *
+   * @param thresholdTimestamp only partitions that end at or before this timestamp are merged
+   * @param maxMergedSizeMillis the maximum time span of a merged partition
+   * @return the number of partitions that were replaced by merged partitions
+   */
+  public int mergePartitions(long thresholdTimestamp, long maxMergedSizeMillis) throws IOException {
+    if (initialized.compareAndSet(false, true)) {
+      initPartitions();
+    }
+    deleteRetiredPartitions();
+
+    List<List<LevelDBPartition>> groups = new ArrayList<>();
+    List<LevelDBPartition> group = new ArrayList<>();
+    for (LevelDBPartition partition : partitions.values()) {
+      if (partition.getEndTime() > thresholdTimestamp) {
+        break;
+      }
+      if (!group.isEmpty() && partition.getEndTime() - group.get(0).getStartTime() > maxMergedSizeMillis) {
+        groups.add(group);
+        group = new ArrayList<>();
+      }
+      group.add(partition);
+    }
+    // The last group can still be extended by partitions that get cold later, unless it is full already
+    if (!group.isEmpty()
+      && group.get(group.size() - 1).getEndTime() - group.get(0).getStartTime() >= maxMergedSizeMillis) {
+      groups.add(group);
+    }
+
+    int numMerged = 0;
+    for (List<LevelDBPartition> partitionsToMerge : groups) {
+      if (partitionsToMerge.size() < 2) {
+        continue;
+      }
+      LevelDBPartition merged = mergePartitions(partitionsToMerge);
+      synchronized (this) {
+        for (LevelDBPartition partition : partitionsToMerge) {
+          partitions.remove(partition.getStartTime(), partition);
+        }
+        partitions.put(merged.getStartTime(), merged);
+        retiredPartitions.addAll(partitionsToMerge);
+      }
+      LOG.debug("Merged {} partitions into partition {}", partitionsToMerge.size(), merged.getFile());
+      numMerged += partitionsToMerge.size();
+    }
+    return numMerged;
+  }
+
   public LevelDBPartition getOrCreatePartition(long publishTime) throws IOException {
     LevelDBPartition partition = getPartitionIfExists(publishTime);
     if (partition != null) {
@@ -108,13 +187,15 @@ public class LevelDBPartitionManager implements Closeable {
 
   /**
    * Get existing partitions for publish times equal to or greater than the given timestamp.
+   * The returned collection is a snapshot that is not affected by partitions being merged afterwards.
    */
   public Collection<LevelDBPartition> getPartitions(long startTime) throws IOException {
     if (initialized.compareAndSet(false, true)) {
       initPartitions();
     }
     Long partitionStartTime = partitions.floorKey(startTime);
-    return partitionStartTime == null ? partitions.values() : partitions.tailMap(partitionStartTime, true).values();
+    return new ArrayList<>(partitionStartTime == null
+                             ? partitions.values() : partitions.tailMap(partitionStartTime, true).values());
   }
 
   /**
@@ -139,7 +220,7 @@ public class LevelDBPartitionManager implements Closeable {
     Long partitionStartTime = partitions.floorKey(startTime);
     // partitionStartTime can be null if the startTime is less than the start time for any existing partition
     partitionStartTime = partitionStartTime == null ? 0 : partitionStartTime;
-    return partitions.subMap(partitionStartTime, true, partitionEndTime, true).values();
+    return new ArrayList<>(partitions.subMap(partitionStartTime, true, partitionEndTime, true).values());
   }
 
   public void close() throws IOException {
@@ -147,7 +228,9 @@ public class LevelDBPartitionManager implements Closeable {
 
     synchronized (this) {
       partitionsToClose = new ArrayList<>(partitions.values());
+      partitionsToClose.addAll(retiredPartitions);
       partitions.clear();
+      retiredPartitions.clear();
     }
 
     IOException failure = null;
@@ -182,20 +265,92 @@ public class LevelDBPartitionManager implements Closeable {
   private synchronized void initPartitions() throws IOException {
     ensureDirExists(topicDir);
 
+    List<LevelDBPartition> loaded = new ArrayList<>();
     for (File partitionDir : DirUtils.listFiles(topicDir)) {
       if (!partitionDir.isDirectory()) {
         continue;
       }
 
       String dirName = partitionDir.getName();
+      if (dirName.startsWith(MERGE_PREFIX)) {
+        // leftover of a merge that didn't complete. The original partitions are still there.
+        DirUtils.deleteDirectoryContents(partitionDir);
+        continue;
+      }
       TimeInterval interval = extractIntervalFromName(dirName);
       if (interval == null) {
         // should not happen unless somebody manually created a directory here
         continue;
       }
-      LevelDBPartition partition = new LevelDBPartition(partitionDir, interval.startMillis, interval.endMillis,
-                                                        () -> LEVEL_DB_FACTORY.open(partitionDir, dbOptions));
+      loaded.add(new LevelDBPartition(partitionDir, interval.startMillis, interval.endMillis,
+                                      () -> LEVEL_DB_FACTORY.open(partitionDir, dbOptions)));
+    }
+
+    // A partition contained by another one was merged, but not deleted before the process stopped.
+    loaded.sort(Comparator.comparingLong(LevelDBPartition::getStartTime)
+                  .thenComparing(Comparator.comparingLong(LevelDBPartition::getEndTime).reversed()));
+    LevelDBPartition previous = null;
+    for (LevelDBPartition partition : loaded) {
+      if (previous != null && partition.getEndTime() <= previous.getEndTime()) {
+        DirUtils.deleteDirectoryContents(partition.getFile());
+        continue;
+      }
       partitions.put(partition.getStartTime(), partition);
+      previous = partition;
+    }
+  }
+
+  /**
+   * Copies the content of the given partitions into a new partition that covers all of them.
+   */
+  private LevelDBPartition mergePartitions(List<LevelDBPartition> partitionsToMerge) throws IOException {
+    long start = partitionsToMerge.get(0).getStartTime();
+    long end = partitionsToMerge.get(partitionsToMerge.size() - 1).getEndTime();
+    File mergeDir = new File(topicDir, String.format("%s%d.%d", MERGE_PREFIX, start, end));
+    if (mergeDir.exists()) {
+      DirUtils.deleteDirectoryContents(mergeDir);
+    }
+
+    // Partitions are non-overlapping and sorted by time, hence rows are written to the new table in key order.
+    try (DB mergedDB = LEVEL_DB_FACTORY.open(ensureDirExists(mergeDir), dbOptions)) {
+      for (LevelDBPartition partition : partitionsToMerge) {
+        WriteBatch writeBatch = mergedDB.createWriteBatch();
+        int batchSize = 0;
+        try (CloseableIterator<Map.Entry<byte[], byte[]>> iterator =
+               new DBScanIterator(partition.getLevelDB(), null, null)) {
+          while (iterator.hasNext()) {
+            Map.Entry<byte[], byte[]> entry = iterator.next();
+            writeBatch.put(entry.getKey(), entry.getValue());
+            if (++batchSize >= MERGE_BATCH_SIZE) {
+              mergedDB.write(writeBatch);
+              writeBatch.close();
+              writeBatch = mergedDB.createWriteBatch();
+              batchSize = 0;
+            }
+          }
+          mergedDB.write(writeBatch);
+        } finally {
+          writeBatch.close();
+        }
+      }
+    }
+
+    File partitionDir = getPartitionDir(topicDir, start, end);
+    if (!mergeDir.renameTo(partitionDir)) {
+      throw new IOException("Failed to rename merged partition directory " + mergeDir + " to " + partitionDir);
+    }
+    return new LevelDBPartition(partitionDir, start, end, () -> LEVEL_DB_FACTORY.open(partitionDir, dbOptions));
+  }
+
+  private void deleteRetiredPartitions() throws IOException {
+    List<LevelDBPartition> partitionsToDelete;
+    synchronized (this) {
+      partitionsToDelete = new ArrayList<>(retiredPartitions);
+      retiredPartitions.clear();
+    }
+    for (LevelDBPartition partition : partitionsToDelete) {
+      partition.close();
+      DirUtils.deleteDirectoryContents(partition.getFile());
     }
   }
 
@@ -31,6 +31,7 @@ import io.cdap.cdap.messaging.store.PayloadTable;
 import io.cdap.cdap.messaging.store.TableFactory;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
+import org.apache.tephra.TxConstants;
 import org.apache.twill.common.Threads;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
@@ -72,6 +73,8 @@ public final class LevelDBTableFactory implements TableFactory {
   private final ConcurrentMap<File, DB> levelDBs;
   private final ConcurrentMap<File, LevelDBPartitionManager> partitionedLevelDBs;
   private final long partitionSizeMillis;
+  private final long mergedPartitionSizeMillis;
+  private final long txMaxLifeTimeMillis;
 
   private LevelDBMetadataTable metadataTable;
 
@@ -98,6 +101,10 @@ public final class LevelDBTableFactory implements TableFactory {
     this.levelDBs = new ConcurrentHashMap<>();
     this.partitionedLevelDBs = new ConcurrentHashMap<>();
     this.partitionSizeMillis = cConf.getLong(Constants.MessagingSystem.LOCAL_DATA_PARTITION_SECONDS) * 1000;
+    this.mergedPartitionSizeMillis =
+      cConf.getLong(Constants.MessagingSystem.LOCAL_DATA_MERGED_PARTITION_SECONDS) * 1000;
+    this.txMaxLifeTimeMillis = TimeUnit.SECONDS.toMillis(cConf.getLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME,
+                                                                       TxConstants.Manager.DEFAULT_TX_MAX_LIFETIME));
   }
 
   @Override
@@ -328,6 +335,12 @@ public final class LevelDBTableFactory implements TableFactory {
           LevelDBPartitionManager partitionManager = getPartitionedLevelDB(metadata, messageTableName);
           partitionManager.prunePartitions(thresholdTimestamp);
 
+          // Merge partitions that can no longer be written to, including rollback of transactional messages.
+          if (mergedPartitionSizeMillis > partitionSizeMillis) {
+            partitionManager.mergePartitions(now - txMaxLifeTimeMillis - partitionSizeMillis,
+                                             mergedPartitionSizeMillis);
+          }
+
           // Payload table
           File dataDBPath = getDataDBPath(payloadTableName, metadata.getTopicId(), metadata.getGeneration());
           DB levelDB = levelDBs.get(dataDBPath);
@@ -30,6 +30,7 @@ import io.cdap.cdap.common.logging.Loggers;
 import io.cdap.cdap.common.service.AbstractRetryableScheduledService;
 import io.cdap.cdap.common.service.RetryStrategy;
 import io.cdap.cdap.common.utils.ImmutablePair;
+import io.cdap.cdap.messaging.context.LongPollMessageFetcher;
 import io.cdap.cdap.messaging.data.MessageId;
 import io.cdap.cdap.proto.id.TopicId;
 import org.slf4j.Logger;
@@ -39,6 +40,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -160,6 +162,18 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     return delayMillis;
   }
 
+  /**
+   * Returns the maximum number of milliseconds for a fetch to wait for new messages if there is no message
+   * available. It is only used if the {@link MessageFetcher} supports long poll.
+   * By default it is the same as the delay after an empty fetch, such that a message published while waiting
+   * will be processed immediately, while keeping the same empty fetch rate on TMS.
+   *
+   * @return the poll timeout in milliseconds, or {@code 0} to disable long poll
+   */
+  protected long getPollTimeoutMillis() {
+    return emptyFetchDelayMillis;
+  }
+
   /**
    * Fetching messages from TMS.
    */
@@ -167,8 +181,7 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     List<Message> messages = new ArrayList<>();
     LOG.trace("Fetching from topic '{}' with messageId '{}'", topicId, messageId);
     MessageFetcher messageFetcher = getMessagingContext().getMessageFetcher();
-    try (CloseableIterator<Message> iterator = messageFetcher.fetch(getTopicId().getNamespace(),
-                                                                    getTopicId().getTopic(), fetchSize, messageId)) {
+    try (CloseableIterator<Message> iterator = fetch(messageFetcher, messageId)) {
       while (iterator.hasNext() && state() == State.RUNNING) {
         messages.add(iterator.next());
       }
@@ -176,6 +189,20 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     return messages;
   }
 
+  /**
+   * Fetches messages with the given {@link MessageFetcher}, using long poll if it is supported.
+   */
+  private CloseableIterator<Message> fetch(MessageFetcher messageFetcher,
+                                           @Nullable String messageId) throws TopicNotFoundException, IOException {
+    long pollTimeoutMillis = getPollTimeoutMillis();
+    if (pollTimeoutMillis > 0 && messageFetcher instanceof LongPollMessageFetcher) {
+      return ((LongPollMessageFetcher) messageFetcher).fetch(getTopicId().getNamespace(), getTopicId().getTopic(),
+                                                             fetchSize, messageId,
+                                                             pollTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    return messageFetcher.fetch(getTopicId().getNamespace(), getTopicId().getTopic(), fetchSize, messageId);
+  }
+
   /**
    * The method has the main logic to perform one fetch from TMS and process the fetched messages.
    *
@@ -196,6 +223,7 @@ public abstract class AbstractMessagingPollingService<T> extends AbstractRetryab
     metricsContext.increment("tms.fetch.messages", messages.size());
 
     // Return if stopping or request to sleep for configured number of milliseconds if there is no message fetched.
+    // With long poll, the time spent on waiting for new messages is counted towards the delay.
     if (messages.isEmpty() || state() != State.RUNNING) {
       return Math.max(0L, emptyFetchDelayMillis - (System.currentTimeMillis() - startTime));
     }
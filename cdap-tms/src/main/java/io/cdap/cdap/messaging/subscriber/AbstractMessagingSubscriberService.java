@@ -17,6 +17,7 @@
 package io.cdap.cdap.messaging.subscriber;
 
 import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.common.service.RetryStrategy;
 import io.cdap.cdap.common.utils.ImmutablePair;
@@ -26,10 +27,20 @@ import io.cdap.cdap.spi.data.StructuredTableContext;
 import io.cdap.cdap.spi.data.transaction.TransactionRunner;
 import io.cdap.cdap.spi.data.transaction.TransactionRunners;
 import io.cdap.cdap.spi.data.transaction.TxCallable;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
@@ -44,6 +55,7 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
   private static final Logger LOG = LoggerFactory.getLogger(AbstractMessagingSubscriberService.class);
 
   private final int txTimeoutSeconds;
+  private ExecutorService shardExecutor;
 
   /**
    * Constructor.
@@ -102,10 +114,41 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
     return false;
   }
 
+  /**
+   * Returns the number of shards for processing each batch of fetched messages concurrently.
+   * When it is larger than {@code 1}, messages in a batch are partitioned into shards by the key returned from the
+   * {@link #getShardKey(Object)} method. Each shard is processed with a separate call to the
+   * {@link #processMessages(StructuredTableContext, Iterator)} method in its own transaction, concurrently with
+   * other shards. The message id is only persisted after all shards are committed, hence if any of the shards
+   * failed, messages in all shards will be replayed. Sub-classes that enable sharding must process messages
+   * in a thread-safe and idempotent way. By default this method returns {@code 1}, which disables sharding.
+   *
+   * @return the number of shards
+   */
+  protected int getShardCount() {
+    return 1;
+  }
+
+  /**
+   * Returns the key for assigning the given message to a shard when sharding is enabled.
+   * Messages with the same key are always processed in the same shard, in the order they were fetched.
+   * By default this method returns {@code null}, which assigns all messages to the same shard.
+   *
+   * @param message the decoded message
+   * @return the shard key or {@code null}
+   * @see #getShardCount()
+   */
+  @Nullable
+  protected Object getShardKey(T message) {
+    return null;
+  }
+
   /**
    * Processes the give list of messages. This method will be called from the same transaction as the
    * {@link #storeMessageId(StructuredTableContext, String)} call. If {@link Exception} is raised from this method,
    * the messages as provided through the {@code messages} parameter will be replayed in the next call.
+   * If sharding is enabled by {@link #getShardCount()}, this method is called concurrently for each shard
+   * and the message id is persisted in a separate transaction.
    *
    * @param structuredTableContext the {@link StructuredTableContext} for getting the tables for the transaction
    * @param messages an {@link Iterator} of {@link ImmutablePair}, with the {@link ImmutablePair#first}
@@ -131,9 +174,31 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
     return TransactionRunners.run(getTransactionRunner(), (TxCallable<String>) this::loadMessageId);
   }
 
+  @Override
+  protected void doShutdown() throws Exception {
+    try {
+      super.doShutdown();
+    } finally {
+      if (shardExecutor != null) {
+        shardExecutor.shutdownNow();
+      }
+    }
+  }
+
   @Nullable
   @Override
   protected String processMessages(Iterator<ImmutablePair<String, T>> messages) throws Exception {
+    int shardCount = getShardCount();
+    return shardCount > 1 ? processShards(messages, shardCount) : processInTransaction(messages);
+  }
+
+  /**
+   * Processes the given messages in a single transaction, which also persists the message id.
+   *
+   * @return the message id of the last message that the processing is up to
+   */
+  @Nullable
+  private String processInTransaction(Iterator<ImmutablePair<String, T>> messages) throws Exception {
     MessageTrackingIterator iterator;
 
     // Process the notifications and record the message id of where the processing is up to.
@@ -156,6 +221,107 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
     return iterator.getLastMessageId();
   }
 
+  /**
+   * Processes the given messages by partitioning them into shards and processing the shards concurrently,
+   * each in its own transaction. The message id is persisted in a separate transaction after all shards are
+   * committed.
+   *
+   * @return the message id of the last message that the processing is up to
+   */
+  @Nullable
+  private String processShards(Iterator<ImmutablePair<String, T>> messages, int shardCount) throws Exception {
+    List<ImmutablePair<String, T>> batch = new ArrayList<>();
+    while (messages.hasNext()) {
+      ImmutablePair<String, T> message = messages.next();
+      if (shouldRunInSeparateTx(message)) {
+        if (batch.isEmpty()) {
+          // Process this message alone in the current thread
+          return processInTransaction(Collections.singleton(message).iterator());
+        }
+        // End the batch early. The next batch will start with this message.
+        LOG.debug("Ending message batch early to process {} in a separate tx", message.getSecond());
+        break;
+      }
+      batch.add(message);
+    }
+
+    if (batch.isEmpty()) {
+      return null;
+    }
+
+    // Partition the messages by the shard key, preserving the fetch order within each shard.
+    // Each shard is a list of indices to the batch.
+    List<List<Integer>> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<>());
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      Object key = getShardKey(batch.get(i).getSecond());
+      shards.get(key == null ? 0 : Math.floorMod(key.hashCode(), shardCount)).add(i);
+    }
+
+    if (shardExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        shardCount, shardCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        Threads.createDaemonThreadFactory(getServiceName() + "-shard-%d"));
+      executor.allowCoreThreadTimeOut(true);
+      shardExecutor = executor;
+    }
+
+    // Each shard returns the index in the batch of the first message that it didn't process,
+    // or the batch size if all messages in the shard were processed.
+    long timeBoundMillis = 900L * txTimeoutSeconds;
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (List<Integer> shard : shards) {
+      if (shard.isEmpty()) {
+        continue;
+      }
+      futures.add(shardExecutor.submit(() -> {
+        MessageTrackingIterator iterator = TransactionRunners.run(getTransactionRunner(), context -> {
+          Iterator<ImmutablePair<String, T>> shardMessages = shard.stream().map(batch::get).iterator();
+          MessageTrackingIterator trackingIterator =
+            new MessageTrackingIterator(new TimeBoundIterator<>(shardMessages, timeBoundMillis));
+          processMessages(context, trackingIterator);
+          return trackingIterator;
+        }, Exception.class);
+
+        int consumedCount = iterator.getConsumedCount();
+        return consumedCount < shard.size() ? shard.get(consumedCount) : batch.size();
+      }));
+    }
+
+    // Wait for all shards to complete, even if some of them failed, so that no shard is still running when
+    // the messages get replayed.
+    int firstUnprocessed = batch.size();
+    Exception failure = null;
+    for (Future<Integer> future : futures) {
+      try {
+        firstUnprocessed = Math.min(firstUnprocessed, Uninterruptibles.getUninterruptibly(future));
+      } catch (ExecutionException e) {
+        Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    // Messages that come after the first unprocessed message will be replayed in the next batch,
+    // even if they were processed by other shards.
+    if (firstUnprocessed == 0) {
+      return null;
+    }
+    String lastMessageId = batch.get(firstUnprocessed - 1).getFirst();
+    TransactionRunners.run(getTransactionRunner(), context -> {
+      storeMessageId(context, lastMessageId);
+    }, Exception.class);
+    return lastMessageId;
+  }
+
   /**
    * An {@link Iterator} that remembers the message id that has been consumed up to.
    */
@@ -200,5 +366,9 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractMess
     String getLastMessageId() {
       return lastMessageId;
     }
+
+    int getConsumedCount() {
+      return consumedCount;
+    }
   }
 }
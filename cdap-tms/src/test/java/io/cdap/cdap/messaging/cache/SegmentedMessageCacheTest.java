@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.cache;
+
+import com.google.common.collect.Lists;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.NoopMetricsContext;
+import io.cdap.cdap.messaging.store.MessageFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit test for {@link SegmentedMessageCache}.
+ */
+public class SegmentedMessageCacheTest {
+
+  private static final MetricsContext NOOP_METRICS = new NoopMetricsContext();
+  private static final Comparator<Integer> COMPARATOR = Integer::compare;
+  private static final MessageCache.Weigher<Integer> UNIT_WEIGHER = entry -> 1;
+
+  @Test
+  public void testNoCache() {
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(COMPARATOR, UNIT_WEIGHER,
+                                                                       new MessageCache.Limits(0, 0, 0),
+                                                                       4, NOOP_METRICS);
+    cache.addAll(Arrays.asList(1, 2, 3).iterator());
+    Assert.assertEquals(0L, cache.getCurrentWeight());
+
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, MessageFilter.alwaysAccept())) {
+      Assert.assertNull(scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testScanAcrossSegments() {
+    // Each segment holds 5 entries
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(COMPARATOR, UNIT_WEIGHER,
+                                                                       new MessageCache.Limits(20, 20, 20),
+                                                                       4, NOOP_METRICS);
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15, 21, 22).iterator());
+    Assert.assertEquals(12L, cache.getCurrentWeight());
+    Assert.assertEquals(3, cache.getSegmentCount());
+
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 20, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15, 21, 22), Lists.newArrayList(scanner));
+    }
+
+    // Start at the last entry of a segment, exclusive
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(5, false, 3, filter)) {
+      Assert.assertEquals(Arrays.asList(11, 12, 13), Lists.newArrayList(scanner));
+    }
+
+    // Start between keys of different segments
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(16, true, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(21, 22), Lists.newArrayList(scanner));
+    }
+
+    // Start after the last entry
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(22, false, 10, filter)) {
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    // Scan with filter that hold when number 12
+    MessageFilter<Integer> holdAtTwelve = new MessageFilter<Integer>() {
+      @Override
+      public Result apply(Integer input) {
+        return input == 12 ? Result.HOLD : Result.ACCEPT;
+      }
+    };
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(3, true, 10, holdAtTwelve)) {
+      Assert.assertEquals(Arrays.asList(3, 4, 5, 11), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Test
+  public void testSegmentEviction() {
+    // Each segment holds 5 entries, reduction triggers when weight is over 12
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(COMPARATOR, UNIT_WEIGHER,
+                                                                       new MessageCache.Limits(10, 12, 20),
+                                                                       4, NOOP_METRICS);
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 20, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(12, Lists.newArrayList(scanner).size());
+    }
+
+    // Adding one more entry evicts the whole first segment
+    cache.addAll(Arrays.asList(13).iterator());
+    Assert.assertEquals(8L, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 20, filter)) {
+      Assert.assertEquals(Integer.valueOf(6), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(6, 7, 8, 9, 10, 11, 12, 13), Lists.newArrayList(scanner));
+    }
+
+    // A scanner created before eviction still sees the entries from the evicted segment
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 20, filter)) {
+      cache.addAll(Arrays.asList(14, 15, 16, 17, 18).iterator());
+      Assert.assertEquals(Integer.valueOf(6), scanner.getFirstInCache());
+      // Entries appended to a segment that the scanner hasn't reached yet are also visible
+      Assert.assertEquals(Arrays.asList(6, 7, 8, 9, 10, 11, 12, 13, 14, 15), Lists.newArrayList(scanner));
+    }
+
+    // Shrinking the cache evicts segments
+    cache.resize(new MessageCache.Limits(2, 4, 8));
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 20, filter)) {
+      Assert.assertEquals(Integer.valueOf(16), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(16, 17, 18), Lists.newArrayList(scanner));
+    }
+
+    cache.clear();
+    Assert.assertEquals(0L, cache.getCurrentWeight());
+    Assert.assertEquals(0, cache.getSegmentCount());
+  }
+
+  @Test
+  public void testAddError() {
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(COMPARATOR, UNIT_WEIGHER,
+                                                                       new MessageCache.Limits(5, 7, 10),
+                                                                       2, NOOP_METRICS);
+    cache.addAll(Arrays.asList(5, 6, 7, 8).iterator());
+    try {
+      cache.addAll(Arrays.asList(8, 9).iterator());
+      Assert.fail("Expected failure for adding out of order");
+    } catch (IllegalArgumentException e) {
+      // Expected. The cache should be cleared
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+  }
+
+  @Test
+  public void testUpdateAcrossSegments() {
+    // Each segment holds 2 entries
+    Comparator<int[]> comparator = Comparator.comparingInt(e -> e[0]);
+    MessageCache.Weigher<int[]> weigher = e -> 1;
+    SegmentedMessageCache<int[]> cache = new SegmentedMessageCache<>(comparator, weigher,
+                                                                     new MessageCache.Limits(20, 20, 20),
+                                                                     10, NOOP_METRICS);
+    cache.addAll(Arrays.asList(new int[] {1, 0}, new int[] {2, 0}, new int[] {3, 0},
+                               new int[] {4, 0}, new int[] {5, 0}).iterator());
+
+    cache.updateEntries(new int[] {2}, new int[] {4}, new MessageCache.EntryUpdater<int[]>() {
+      @Override
+      public void updateEntry(int[] entry) {
+        entry[1] = 1;
+      }
+    });
+
+    try (MessageCache.Scanner<int[]> scanner = cache.scan(new int[] {0}, true, 10, MessageFilter.alwaysAccept())) {
+      int[] expected = new int[] {0, 1, 1, 1, 0};
+      int idx = 0;
+      while (scanner.hasNext()) {
+        Assert.assertEquals(expected[idx++], scanner.next()[1]);
+      }
+      Assert.assertEquals(5, idx);
+    }
+
+    // Update that alters ordering should fail and clear the cache
+    try {
+      cache.updateEntries(new int[] {2}, new int[] {3}, new MessageCache.EntryUpdater<int[]>() {
+        @Override
+        public void updateEntry(int[] entry) {
+          entry[0] += 10;
+        }
+      });
+      Assert.fail("Expected exception of out of order update");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+  }
+
+  @Test
+  public void testConcurrentScan() throws Exception {
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(COMPARATOR, UNIT_WEIGHER,
+                                                                       new MessageCache.Limits(500, 700, 1000),
+                                                                       10, NOOP_METRICS);
+    AtomicBoolean stopped = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          while (!stopped.get()) {
+            // Entries returned from a scan must always be contiguous
+            try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 200, MessageFilter.alwaysAccept())) {
+              Integer last = null;
+              while (scanner.hasNext()) {
+                Integer entry = scanner.next();
+                if (last != null && entry != last + 1) {
+                  throw new IllegalStateException("Expected " + (last + 1) + " but got " + entry);
+                }
+                last = entry;
+              }
+            }
+          }
+        }));
+      }
+
+      for (int i = 0; i < 100000; i += 10) {
+        cache.addAll(Arrays.asList(i, i + 1, i + 2, i + 3, i + 4, i + 5, i + 6, i + 7, i + 8, i + 9).iterator());
+      }
+      stopped.set(true);
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
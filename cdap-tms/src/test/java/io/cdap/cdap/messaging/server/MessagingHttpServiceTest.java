@@ -67,6 +67,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -75,11 +79,12 @@ import java.util.stream.Collectors;
 @RunWith(Parameterized.class)
 public class MessagingHttpServiceTest {
 
-  @Parameterized.Parameters(name = "{index}: compressPayload = {0}")
+  @Parameterized.Parameters(name = "{index}: compressPayload = {0}, compressionCodec = {1}")
   public static Collection<Object[]> parameters() {
     return Arrays.asList(new Object[][]{
-      {false},
-      {true},
+      {false, "gzip"},
+      {true, "gzip"},
+      {true, "snappy"},
     });
   }
 
@@ -87,12 +92,14 @@ public class MessagingHttpServiceTest {
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
 
   private final boolean compressPayload;
+  private final String compressionCodec;
   private CConfiguration cConf;
   private MessagingHttpService httpService;
   private MessagingService client;
 
-  public MessagingHttpServiceTest(boolean compressPayload) {
+  public MessagingHttpServiceTest(boolean compressPayload, String compressionCodec) {
     this.compressPayload = compressPayload;
+    this.compressionCodec = compressionCodec;
   }
 
   @Before
@@ -106,6 +113,7 @@ public class MessagingHttpServiceTest {
     // Reduce the buffer size for the http request buffer to test "large" message request
     cConf.setInt(Constants.MessagingSystem.HTTP_SERVER_MAX_REQUEST_SIZE_MB, 1);
     cConf.setBoolean(Constants.MessagingSystem.HTTP_COMPRESS_PAYLOAD, compressPayload);
+    cConf.set(Constants.MessagingSystem.HTTP_COMPRESSION_CODEC, compressionCodec);
 
     Injector injector = Guice.createInjector(
       new ConfigModule(cConf),
@@ -124,7 +132,8 @@ public class MessagingHttpServiceTest {
 
     httpService = injector.getInstance(MessagingHttpService.class);
     httpService.startAndWait();
-    client = new ClientMessagingService(injector.getInstance(RemoteClientFactory.class), compressPayload);
+    client = new ClientMessagingService(injector.getInstance(RemoteClientFactory.class),
+                                        compressPayload, compressionCodec);
   }
 
   @After
@@ -649,4 +658,43 @@ public class MessagingHttpServiceTest {
                           .map(RawMessage::getPayload)
                           .map(Bytes::toString).collect(Collectors.toList()));
   }
+
+  @Test
+  public void testLongPoll() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testLongPoll");
+    client.createTopic(new TopicMetadata(topicId));
+
+    // Fetch with a short timeout should return empty after the timeout
+    long startTime = System.currentTimeMillis();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+      .setPollTimeout(200, TimeUnit.MILLISECONDS).fetch()) {
+      Assert.assertFalse(iterator.hasNext());
+    }
+    Assert.assertTrue(System.currentTimeMillis() - startTime >= 200);
+
+    // Fetch with a long timeout should return as soon as a message is published
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<RawMessage>> future = executor.submit(() -> {
+        List<RawMessage> messages = new ArrayList<>();
+        try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId)
+          .setPollTimeout(20, TimeUnit.SECONDS).fetch()) {
+          Iterators.addAll(messages, iterator);
+        }
+        return messages;
+      });
+
+      // Publish a message after the fetch started waiting
+      TimeUnit.MILLISECONDS.sleep(200);
+      client.publish(StoreRequestBuilder.of(topicId).addPayload("m1").build());
+
+      List<RawMessage> messages = future.get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(Collections.singletonList("m1"),
+                          messages.stream()
+                            .map(RawMessage::getPayload)
+                            .map(Bytes::toString).collect(Collectors.toList()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -21,7 +21,8 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.util.concurrent.Uninterruptibles;
 import io.cdap.cdap.api.common.Bytes;
-import io.cdap.cdap.api.metrics.MetricsCollector;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.NoopMetricsContext;
 import io.cdap.cdap.common.utils.TimeProvider;
 import io.cdap.cdap.messaging.StoreRequest;
 import io.cdap.cdap.messaging.TopicMetadata;
@@ -37,14 +38,17 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
@@ -154,7 +158,7 @@ public class ConcurrentMessageWriterTest {
     // before flushing.
     // This will make all requests batched together
     final CountDownLatch latch = new CountDownLatch(requestCount);
-    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new MetricsCollector() {
+    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new MetricsContext() {
       @Override
       public void increment(String metricName, long value) {
         if ("persist.requested".equals(metricName)) {
@@ -167,6 +171,26 @@ public class ConcurrentMessageWriterTest {
       public void gauge(String metricName, long value) {
         LOG.info("MetricsContext.gauge: {} = {}", metricName, value);
       }
+
+      @Override
+      public void event(String metricName, long value) {
+        LOG.info("MetricsContext.event: {} = {}", metricName, value);
+      }
+
+      @Override
+      public MetricsContext childContext(Map<String, String> tags) {
+        return this;
+      }
+
+      @Override
+      public MetricsContext childContext(String tagName, String tagValue) {
+        return this;
+      }
+
+      @Override
+      public Map<String, String> getTags() {
+        return Collections.emptyMap();
+      }
     });
 
     ExecutorService executor = Executors.newFixedThreadPool(3);
@@ -268,6 +292,116 @@ public class ConcurrentMessageWriterTest {
     }
   }
 
+  @Test
+  public void testGroupCommit() throws Exception {
+    int threadCount = 10;
+    TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+
+    // Linger long enough for all concurrent requests to be batched together
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                 Long.MAX_VALUE, TimeUnit.SECONDS.toMicros(2));
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    CyclicBarrier barrier = new CyclicBarrier(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      String payload = Integer.toString(i);
+      executor.submit(() -> {
+        barrier.await();
+        return writer.persist(new TestStoreRequest(topicId, Collections.singletonList(payload)), metadata);
+      });
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    Assert.assertEquals(threadCount, testWriter.getMessages().get(topicId).size());
+    Assert.assertTrue(testWriter.getWriteCount() < threadCount);
+  }
+
+  @Test
+  public void testGroupCommitMaxBatchBytes() throws IOException {
+    TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+
+    // With a very long linger, the write should still happen without waiting once the max batch size is reached
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                 3L, TimeUnit.MINUTES.toMicros(10));
+    Stopwatch stopwatch = new Stopwatch().start();
+    writer.persist(new TestStoreRequest(topicId, Arrays.asList("1", "2", "3")), metadata);
+    writer.persist(new TestStoreRequest(topicId, Arrays.asList("4", "5", "6", "7")), metadata);
+    Assert.assertTrue(stopwatch.elapsedMillis() < TimeUnit.MINUTES.toMillis(1));
+
+    Assert.assertEquals(7, testWriter.getMessages().get(topicId).size());
+    Assert.assertEquals(2, testWriter.getWriteCount());
+  }
+
+  @Test
+  public void testGroupCommitWaitersPark() throws Exception {
+    int threadCount = 5;
+    TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                 Long.MAX_VALUE, TimeUnit.SECONDS.toMicros(2));
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      String payload = Integer.toString(i);
+      Thread thread = new Thread(() -> {
+        try {
+          writer.persist(new TestStoreRequest(topicId, Collections.singletonList(payload)), metadata);
+        } catch (IOException e) {
+          LOG.error("Exception raised when persisting.", e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    // While the writer is lingering, all the other publishers should be parked instead of spinning
+    TimeUnit.MILLISECONDS.sleep(500);
+    for (Thread thread : threads) {
+      Thread.State state = thread.getState();
+      Assert.assertTrue("Unexpected thread state " + state,
+                        state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING);
+    }
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.MINUTES.toMillis(1));
+    }
+    Assert.assertEquals(threadCount, testWriter.getMessages().get(topicId).size());
+  }
+
+  @Test
+  public void testConcurrentWritesMaxBatchBytes() throws Exception {
+    int threadCount = 10;
+    int requestPerThread = 50;
+    TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+
+    // Each batch only takes one request, hence the writer role is handed over to the waiting publishers
+    ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(), 1L, 0L);
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    CyclicBarrier barrier = new CyclicBarrier(threadCount);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      futures.add(executor.submit(() -> {
+        barrier.await();
+        for (int j = 0; j < requestPerThread; j++) {
+          writer.persist(new TestStoreRequest(topicId, Collections.singletonList(Integer.toString(j))), metadata);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get(1, TimeUnit.MINUTES);
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(threadCount * requestPerThread, testWriter.getMessages().get(topicId).size());
+    Assert.assertEquals(threadCount * requestPerThread, testWriter.getWriteCount());
+  }
+
   /**
    * A {@link StoreRequestWriter} that turns all payloads to {@link RawMessage} and stores it in a List.
    */
@@ -275,6 +409,7 @@ public class ConcurrentMessageWriterTest {
 
     private final ListMultimap<TopicId, RawMessage> messages = ArrayListMultimap.create();
     private long writeDelayMillis;
+    private int writeCount;
 
     TestStoreRequestWriter(TimeProvider timeProvider) {
       super(timeProvider, false);
@@ -297,6 +432,7 @@ public class ConcurrentMessageWriterTest {
 
     @Override
     protected void doWrite(Iterator<TestEntry> entries) throws IOException {
+      writeCount++;
       while (entries.hasNext()) {
         TestEntry entry = entries.next();
         byte[] rawId = new byte[MessageId.RAW_ID_SIZE];
@@ -315,6 +451,10 @@ public class ConcurrentMessageWriterTest {
       return messages;
     }
 
+    int getWriteCount() {
+      return writeCount;
+    }
+
     @Override
     public void close() throws IOException {
       // No-op
@@ -390,6 +530,11 @@ public class ConcurrentMessageWriterTest {
       return !payloads.isEmpty();
     }
 
+    @Override
+    public long getPayloadSize() {
+      return payloads.stream().mapToLong(payload -> Bytes.toBytes(payload).length).sum();
+    }
+
     @Override
     public Iterator<byte[]> iterator() {
       return payloads.stream().map(Bytes::toBytes).iterator();
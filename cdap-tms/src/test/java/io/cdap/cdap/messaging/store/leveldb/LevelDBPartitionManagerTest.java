@@ -16,12 +16,14 @@
 
 package io.cdap.cdap.messaging.store.leveldb;
 
+import io.cdap.cdap.api.common.Bytes;
 import org.iq80.leveldb.Options;
 import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
@@ -189,6 +191,91 @@ public class LevelDBPartitionManagerTest {
     Assert.assertEquals(expectedIntervals, convertToIntervals(partitions));
   }
 
+  @Test
+  public void testMergePartitions() throws IOException {
+    File topicDir = tmpFolder.newFolder();
+    LevelDBPartitionManager partitionManager = new LevelDBPartitionManager(topicDir, DB_OPTIONS, 1000);
+
+    // create partitions [0,1000), [1000,2000), [2000,3000), [3000,4000), [4000,5000) with one row each
+    for (long i = 0; i < 5000; i += 1000) {
+      partitionManager.getOrCreatePartition(i).getLevelDB().put(Bytes.toBytes(i), Bytes.toBytes(i));
+    }
+    Collection<LevelDBPartition> scanPartitions = partitionManager.getPartitions(0);
+
+    // nothing to merge if only one partition is cold
+    Assert.assertEquals(0, partitionManager.mergePartitions(1000, 10000));
+
+    // merge the first four partitions into [0,2000) and [2000,4000)
+    Assert.assertEquals(4, partitionManager.mergePartitions(4000, 2000));
+    Map<Long, Long> expectedIntervals = new HashMap<>();
+    expectedIntervals.put(0L, 2000L);
+    expectedIntervals.put(2000L, 4000L);
+    expectedIntervals.put(4000L, 5000L);
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(0)));
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(1500, 4500)));
+
+    // partitions obtained before the merge are still readable
+    Assert.assertEquals(5, scanPartitions.size());
+    for (LevelDBPartition partition : scanPartitions) {
+      byte[] key = Bytes.toBytes(partition.getStartTime());
+      Assert.assertArrayEquals(key, partition.getLevelDB().get(key));
+    }
+
+    // writes for cold publish times go to the merged partition
+    LevelDBPartition partition = partitionManager.getOrCreatePartition(1500);
+    Assert.assertEquals(0, partition.getStartTime());
+    Assert.assertEquals(2000, partition.getEndTime());
+    for (long i = 0; i < 2000; i += 1000) {
+      Assert.assertArrayEquals(Bytes.toBytes(i), partition.getLevelDB().get(Bytes.toBytes(i)));
+    }
+
+    // merged partitions are not merged again, but the ones replaced previously are deleted
+    Assert.assertEquals(0, partitionManager.mergePartitions(5000, 2000));
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(0)));
+    for (LevelDBPartition scanPartition : scanPartitions) {
+      if (scanPartition.getStartTime() < 4000) {
+        Assert.assertFalse(scanPartition.getFile().exists());
+      }
+    }
+    partitionManager.close();
+
+    // simulate a merge that completed but didn't delete the original partitions
+    partitionManager = new LevelDBPartitionManager(topicDir, DB_OPTIONS, 1000);
+    LevelDBPartitionManager.getPartitionDir(topicDir, 1000, 2000).mkdirs();
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(0)));
+    Assert.assertFalse(LevelDBPartitionManager.getPartitionDir(topicDir, 1000, 2000).exists());
+
+    partition = partitionManager.getOrCreatePartition(0);
+    for (long i = 0; i < 2000; i += 1000) {
+      Assert.assertArrayEquals(Bytes.toBytes(i), partition.getLevelDB().get(Bytes.toBytes(i)));
+    }
+    partitionManager.close();
+  }
+
+  @Test
+  public void testMergeIncompletePartitions() throws IOException {
+    LevelDBPartitionManager partitionManager = new LevelDBPartitionManager(tmpFolder.newFolder(), DB_OPTIONS, 1000);
+    for (long i = 0; i < 5000; i += 1000) {
+      partitionManager.getOrCreatePartition(i).getLevelDB().put(Bytes.toBytes(i), Bytes.toBytes(i));
+    }
+
+    // [0,1000) and [1000,2000) don't span the maximum size yet, hence they are not merged
+    Assert.assertEquals(0, partitionManager.mergePartitions(2000, 3000));
+
+    // once the group is complete, it gets merged
+    Assert.assertEquals(3, partitionManager.mergePartitions(3000, 3000));
+    Map<Long, Long> expectedIntervals = new HashMap<>();
+    expectedIntervals.put(0L, 3000L);
+    expectedIntervals.put(3000L, 4000L);
+    expectedIntervals.put(4000L, 5000L);
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(0)));
+
+    // the merged partition doesn't absorb partitions that get cold later
+    Assert.assertEquals(0, partitionManager.mergePartitions(5000, 3000));
+    Assert.assertEquals(expectedIntervals, convertToIntervals(partitionManager.getPartitions(0)));
+    partitionManager.close();
+  }
+
   @Test
   public void testIsolation() throws IOException {
     // test tables are isolated based on the directory given
@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.messaging.subscriber;
+
+import io.cdap.cdap.api.messaging.Message;
+import io.cdap.cdap.api.messaging.MessagingContext;
+import io.cdap.cdap.api.metrics.NoopMetricsContext;
+import io.cdap.cdap.common.service.RetryStrategies;
+import io.cdap.cdap.common.utils.ImmutablePair;
+import io.cdap.cdap.proto.id.NamespaceId;
+import io.cdap.cdap.spi.data.StructuredTableContext;
+import io.cdap.cdap.spi.data.transaction.TransactionException;
+import io.cdap.cdap.spi.data.transaction.TransactionRunner;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Unit tests for the sharded message processing in {@link AbstractMessagingSubscriberService}.
+ */
+public class AbstractMessagingSubscriberServiceTest {
+
+  @Test
+  public void testSingleShardSequential() throws Exception {
+    TestSubscriberService service = new TestSubscriberService(1);
+    List<ImmutablePair<String, String>> messages = createMessages(20, 4);
+
+    Assert.assertEquals("019", service.processMessages(messages.iterator()));
+
+    // All messages are processed in fetch order with one call in the calling thread,
+    // and the message id is stored in the same transaction
+    Assert.assertEquals(1, service.processCalls.get());
+    Assert.assertEquals(Collections.singleton(Thread.currentThread()), service.threads);
+    Assert.assertEquals(1, service.txCount.get());
+    Assert.assertEquals(Collections.singletonList("019"), service.storedIds);
+    Assert.assertEquals(messages.stream().map(ImmutablePair::getSecond).collect(Collectors.toList()),
+                        service.processedOrder);
+  }
+
+  @Test
+  public void testOrderingWithinShard() throws Exception {
+    TestSubscriberService service = new TestSubscriberService(4);
+    List<ImmutablePair<String, String>> messages = createMessages(40, 8);
+
+    Assert.assertEquals("039", service.processMessages(messages.iterator()));
+
+    // Messages of the same key are processed in fetch order, off the calling thread
+    for (int k = 0; k < 8; k++) {
+      String key = "k" + k;
+      List<String> expected = messages.stream()
+        .map(ImmutablePair::getSecond)
+        .filter(m -> key.equals(getKey(m)))
+        .collect(Collectors.toList());
+      Assert.assertEquals(expected, service.processedByKey.get(key));
+    }
+    Assert.assertFalse(service.threads.contains(Thread.currentThread()));
+    Assert.assertTrue(service.processCalls.get() <= 4);
+
+    // One transaction per non-empty shard, plus one for storing the message id
+    Assert.assertEquals(service.processCalls.get() + 1, service.txCount.get());
+    Assert.assertEquals(Collections.singletonList("039"), service.storedIds);
+  }
+
+  @Test
+  public void testPartialShardFailure() throws Exception {
+    TestSubscriberService service = new TestSubscriberService(4);
+    service.failKey = "k1";
+    List<ImmutablePair<String, String>> messages = createMessages(40, 8);
+
+    try {
+      service.processMessages(messages.iterator());
+      Assert.fail("Expected failure in processing");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // The failed shard is not committed and no message id is stored, hence all messages will be replayed
+    Assert.assertNull(service.processedByKey.get("k1"));
+    Assert.assertTrue(service.storedIds.isEmpty());
+  }
+
+  @Test
+  public void testPartialShardConsumption() throws Exception {
+    TestSubscriberService service = new TestSubscriberService(2);
+    service.limit = 2;
+
+    // "a" and "b" are assigned to different shards
+    List<ImmutablePair<String, String>> messages = Arrays.asList(
+      ImmutablePair.of("000", "a-0"), ImmutablePair.of("001", "b-0"), ImmutablePair.of("002", "a-1"),
+      ImmutablePair.of("003", "a-2"), ImmutablePair.of("004", "b-1"), ImmutablePair.of("005", "b-2"));
+
+    // Shard "a" stops before "003" and shard "b" stops before "005". The message id stored is the one
+    // before the first unprocessed message across all shards.
+    Assert.assertEquals("002", service.processMessages(messages.iterator()));
+    Assert.assertEquals(Collections.singletonList("002"), service.storedIds);
+    Assert.assertEquals(Arrays.asList("a-0", "a-1"), service.processedByKey.get("a"));
+    Assert.assertEquals(Arrays.asList("b-0", "b-1"), service.processedByKey.get("b"));
+  }
+
+  /**
+   * Creates a list of messages with ids "000", "001", ..., each having a payload of "k[key]-[index]",
+   * with keys assigned in round robin.
+   */
+  private static List<ImmutablePair<String, String>> createMessages(int count, int keys) {
+    List<ImmutablePair<String, String>> messages = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      messages.add(ImmutablePair.of(String.format("%03d", i), "k" + (i % keys) + "-" + i));
+    }
+    return messages;
+  }
+
+  private static String getKey(String payload) {
+    return payload.substring(0, payload.indexOf('-'));
+  }
+
+  /**
+   * A {@link AbstractMessagingSubscriberService} that records how messages are processed.
+   */
+  private static final class TestSubscriberService extends AbstractMessagingSubscriberService<String> {
+
+    private final int shardCount;
+    private final AtomicInteger txCount = new AtomicInteger();
+    private final AtomicInteger processCalls = new AtomicInteger();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<String>> processedByKey = new ConcurrentHashMap<>();
+    private final List<String> processedOrder = new CopyOnWriteArrayList<>();
+    private final List<String> storedIds = new CopyOnWriteArrayList<>();
+    private final TransactionRunner txRunner;
+
+    private volatile String failKey;
+    private volatile int limit = Integer.MAX_VALUE;
+
+    TestSubscriberService(int shardCount) {
+      super(NamespaceId.SYSTEM.topic("test"), 100, 30, 100L, RetryStrategies.noRetry(), new NoopMetricsContext());
+      this.shardCount = shardCount;
+      this.txRunner = runnable -> {
+        txCount.incrementAndGet();
+        try {
+          runnable.run(null);
+        } catch (Exception e) {
+          throw new TransactionException("Failed to execute transaction", e);
+        }
+      };
+    }
+
+    @Override
+    protected MessagingContext getMessagingContext() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected String decodeMessage(Message message) {
+      return message.getPayloadAsString();
+    }
+
+    @Override
+    protected TransactionRunner getTransactionRunner() {
+      return txRunner;
+    }
+
+    @Nullable
+    @Override
+    protected String loadMessageId(StructuredTableContext context) {
+      return null;
+    }
+
+    @Override
+    protected void storeMessageId(StructuredTableContext context, String messageId) {
+      storedIds.add(messageId);
+    }
+
+    @Override
+    protected int getShardCount() {
+      return shardCount;
+    }
+
+    @Override
+    protected Object getShardKey(String message) {
+      return getKey(message);
+    }
+
+    @Override
+    protected void processMessages(StructuredTableContext context,
+                                   Iterator<ImmutablePair<String, String>> messages) throws Exception {
+      processCalls.incrementAndGet();
+      threads.add(Thread.currentThread());
+
+      List<String> consumed = new ArrayList<>();
+      while (consumed.size() < limit && messages.hasNext()) {
+        String payload = messages.next().getSecond();
+        if (getKey(payload).equals(failKey)) {
+          throw new IOException("Failed to process " + payload);
+        }
+        consumed.add(payload);
+      }
+
+      // Only record the messages when the processing completed, as if the transaction is committed
+      for (String payload : consumed) {
+        processedByKey.computeIfAbsent(getKey(payload), k -> new CopyOnWriteArrayList<>()).add(payload);
+        processedOrder.add(payload);
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.metrics;
+
+/**
+ * A metric of a {@link MetricsContext} with a given name. Holding on to a {@link BoundMetric} avoids resolving the
+ * metric from its tags and name every time a value is recorded, which makes it suitable for frequently updated metrics.
+ */
+public interface BoundMetric {
+
+  /**
+   * Increment the metric value at the current time.
+   * @param value value to increment by
+   */
+  void increment(long value);
+
+  /**
+   * Gauge the metric value at the current time.
+   * @param value value of the metric
+   */
+  void gauge(long value);
+
+  /**
+   * Capture an event value for the metric.
+   * @param value the event value
+   */
+  void event(long value);
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import javax.annotation.Nullable;
+
+/**
+ * Bucket layout of the histograms carried by distribution metrics. Each power of two is split into
+ * {@link #SUB_BUCKETS} linear sub-buckets, so that a value estimated from its bucket is within 1/{@link #SUB_BUCKETS}
+ * of the actual value. Since the layout is fixed, histograms are merged by adding the counts of the same buckets,
+ * which allows them to be stored as counters that aggregate across time, program instances and tags. The layout is
+ * kept coarse, since every non-empty bucket is stored as a separate counter: a distribution that spans {@code n}
+ * powers of two is stored in at most {@code n * SUB_BUCKETS} counters.
+ */
+public final class HistogramSketch {
+
+  /**
+   * Number of bits of a value kept by its bucket.
+   */
+  public static final int SUB_BUCKET_BITS = 1;
+
+  /**
+   * Number of linear buckets per power of two.
+   */
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * Total number of buckets. Values smaller than {@link #SUB_BUCKETS} have one bucket each, followed by
+   * {@link #SUB_BUCKETS} buckets for every power of two up to {@link Long#MAX_VALUE}.
+   */
+  public static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  /**
+   * Infix of the names under which the buckets of a distribution metric are stored, i.e. the counts of bucket
+   * {@code N} of metric {@code m} are stored in the counter {@code m.sketch.N}.
+   */
+  public static final String BUCKET_METRIC_INFIX = ".sketch.";
+
+  private HistogramSketch() {
+  }
+
+  /**
+   * Returns the bucket of the given value. Negative values fall into the bucket of zero.
+   */
+  public static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int row = exponent - SUB_BUCKET_BITS + 1;
+    int column = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return row * SUB_BUCKETS + column;
+  }
+
+  /**
+   * Returns the smallest value of the given bucket.
+   */
+  public static long getLowerBound(int bucket) {
+    checkBucket(bucket);
+    int row = bucket / SUB_BUCKETS;
+    int column = bucket % SUB_BUCKETS;
+    if (row == 0) {
+      return column;
+    }
+    return (long) (SUB_BUCKETS + column) << (row - 1);
+  }
+
+  /**
+   * Returns the largest value of the given bucket.
+   */
+  public static long getUpperBound(int bucket) {
+    checkBucket(bucket);
+    return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : getLowerBound(bucket + 1) - 1;
+  }
+
+  /**
+   * Returns the value that represents all the values of the given bucket, which is the middle of the bucket.
+   */
+  public static long getEstimate(int bucket) {
+    long lower = getLowerBound(bucket);
+    return lower + (getUpperBound(bucket) - lower) / 2;
+  }
+
+  /**
+   * Returns the estimated value at the given quantile of a histogram.
+   *
+   * @param bucketCounts counts of the histogram keyed by bucket
+   * @param quantile the quantile, between 0 and 1
+   * @return the estimated value, or {@code 0} if the histogram is empty
+   */
+  public static long getQuantile(SortedMap<Integer, Long> bucketCounts, double quantile) {
+    if (quantile < 0 || quantile > 1) {
+      throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantile);
+    }
+    long total = 0;
+    for (long count : bucketCounts.values()) {
+      total += count;
+    }
+    if (total <= 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    int bucket = 0;
+    for (Map.Entry<Integer, Long> entry : bucketCounts.entrySet()) {
+      bucket = entry.getKey();
+      seen += entry.getValue();
+      if (seen >= rank) {
+        break;
+      }
+    }
+    return getEstimate(bucket);
+  }
+
+  /**
+   * Returns the name of the counter that stores the given bucket of a distribution metric.
+   */
+  public static String getBucketMetricName(String metricName, int bucket) {
+    checkBucket(bucket);
+    return metricName + BUCKET_METRIC_INFIX + bucket;
+  }
+
+  /**
+   * Returns the bucket stored by the given counter, or {@code -1} if the name is not the name of a bucket counter of
+   * the given distribution metric.
+   */
+  public static int parseBucket(String metricName, String bucketMetricName) {
+    String prefix = metricName + BUCKET_METRIC_INFIX;
+    if (!bucketMetricName.startsWith(prefix)) {
+      return -1;
+    }
+    try {
+      int bucket = Integer.parseInt(bucketMetricName.substring(prefix.length()));
+      return bucket >= 0 && bucket < NUM_BUCKETS ? bucket : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the name of the distribution metric that the given counter stores a bucket of, or {@code null} if the
+   * name is not the name of a bucket counter.
+   */
+  @Nullable
+  public static String getDistributionMetricName(String bucketMetricName) {
+    int idx = bucketMetricName.lastIndexOf(BUCKET_METRIC_INFIX);
+    if (idx <= 0) {
+      return null;
+    }
+    String metricName = bucketMetricName.substring(0, idx);
+    return parseBucket(metricName, bucketMetricName) < 0 ? null : metricName;
+  }
+
+  private static void checkBucket(int bucket) {
+    if (bucket < 0 || bucket >= NUM_BUCKETS) {
+      throw new IllegalArgumentException("Bucket must be between 0 and " + (NUM_BUCKETS - 1) + ": " + bucket);
+    }
+  }
+}
@@ -42,6 +42,13 @@ public interface MetricStore {
    */
   void add(Collection<? extends MetricValues> metricValues);
 
+  /**
+   * Writes out the metric values that have been added but are still buffered by the store.
+   */
+  default void flush() {
+    // no-op by default
+  }
+
   /**
    * Queries metrics data.
    * @param query query to execute
@@ -61,6 +68,14 @@ public interface MetricStore {
    */
   void deleteTTLExpired();
 
+  /**
+   * Compacts metric data that is no longer expected to change, to reduce the storage it takes and speed up queries
+   * over it.
+   */
+  default void compact() {
+    // no-op by default
+  }
+
   /**
    * Deletes all metric data specified by the {@link MetricDeleteQuery}
    * @param query specifies what to delete
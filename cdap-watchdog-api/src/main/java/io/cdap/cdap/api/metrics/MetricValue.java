@@ -46,6 +46,11 @@ public class MetricValue {
 
   private final double sum;
 
+  // histogram of the distribution, see HistogramSketch for the bucket layout
+  private final int[] sketchBuckets;
+
+  private final long[] sketchCounts;
+
   public MetricValue (String name, MetricType type, long value) {
     if (!(type == MetricType.GAUGE || type == MetricType.COUNTER)) {
       throw new IllegalArgumentException("long value allowed only for GAUGE or COUNTER metrics");
@@ -56,18 +61,30 @@ public class MetricValue {
     sum = 0;
     bucketMask = 0;
     bucketCounts = null;
+    sketchBuckets = null;
+    sketchCounts = null;
   }
 
   public MetricValue(String name, long[] bucketCounts, long bucketMask,
                      double sum) {
+    this(name, bucketCounts, bucketMask, sum, new int[0], new long[0]);
+  }
+
+  public MetricValue(String name, long[] bucketCounts, long bucketMask,
+                     double sum, int[] sketchBuckets, long[] sketchCounts) {
     if (bucketCounts == null) {
       throw new IllegalArgumentException("bucketCounts should not be null");
     }
+    if (sketchBuckets == null || sketchCounts == null || sketchBuckets.length != sketchCounts.length) {
+      throw new IllegalArgumentException("sketchBuckets and sketchCounts should be non null and of the same length");
+    }
     this.name = name;
     this.bucketMask = bucketMask;
     this.sum = sum;
     this.type = MetricType.DISTRIBUTION;
     this.bucketCounts = bucketCounts;
+    this.sketchBuckets = sketchBuckets;
+    this.sketchCounts = sketchCounts;
     value = 0;
   }
 
@@ -101,6 +118,8 @@ public class MetricValue {
               ", sum=" + sum +
               ", bucketMask=" + bucketMask +
               ", bucketCounts=" + Arrays.toString(bucketCounts) +
+              ", sketchBuckets=" + Arrays.toString(sketchBuckets) +
+              ", sketchCounts=" + Arrays.toString(sketchCounts) +
               '}';
     }
   }
@@ -165,4 +184,26 @@ public class MetricValue {
     }
     return sum;
   }
+
+  /**
+   * Buckets of the high resolution histogram with non zero counts, in increasing order.
+   * See {@link HistogramSketch} for the bucket layout.
+   */
+  public int[] getSketchBuckets() {
+    if (type != MetricType.DISTRIBUTION) {
+      throw new IllegalStateException("getSketchBuckets allowed only for Distribution Metric");
+    }
+    // distributions decoded from payloads published before the histogram was added don't have it
+    return sketchBuckets == null ? new int[0] : sketchBuckets;
+  }
+
+  /**
+   * Counts of the buckets returned by {@link #getSketchBuckets()}.
+   */
+  public long[] getSketchCounts() {
+    if (type != MetricType.DISTRIBUTION) {
+      throw new IllegalStateException("getSketchCounts allowed only for Distribution Metric");
+    }
+    return sketchCounts == null ? new long[0] : sketchCounts;
+  }
 }
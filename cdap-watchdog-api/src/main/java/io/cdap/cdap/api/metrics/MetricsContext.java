@@ -46,4 +46,32 @@ public interface MetricsContext extends MetricsCollector {
    * @param value corresponding value
    */
   void event(String metricName, long value);
+
+  /**
+   * Returns a {@link BoundMetric} for recording values of the given metric in this context.
+   * Implementations can resolve the metric once, so that recording values through the returned
+   * {@link BoundMetric} is cheaper than through the methods of this context.
+   *
+   * @param metricName name of the metric
+   * @return a {@link BoundMetric} for the metric
+   */
+  default BoundMetric bind(String metricName) {
+    MetricsContext context = this;
+    return new BoundMetric() {
+      @Override
+      public void increment(long value) {
+        context.increment(metricName, value);
+      }
+
+      @Override
+      public void gauge(long value) {
+        context.gauge(metricName, value);
+      }
+
+      @Override
+      public void event(long value) {
+        context.event(metricName, value);
+      }
+    };
+  }
 }
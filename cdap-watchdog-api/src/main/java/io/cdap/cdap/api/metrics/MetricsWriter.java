@@ -32,6 +32,14 @@ public interface MetricsWriter extends Closeable {
    */
   void write(Collection<MetricValues> metricValues);
 
+  /**
+   * Writes out the metrics that were given to {@link #write(Collection)} but are still buffered by this writer.
+   * Metrics that were written are not processed again when the metrics processor restarts after this call.
+   */
+  default void flush() {
+    // no-op by default
+  }
+
   /**
    * Init method to setup configurations for this MetricsWriter
    *
@@ -25,6 +25,23 @@ import java.util.Map;
  */
 public final class NoopMetricsContext implements MetricsContext {
 
+  private static final BoundMetric NOOP_METRIC = new BoundMetric() {
+    @Override
+    public void increment(long value) {
+      // no-op
+    }
+
+    @Override
+    public void gauge(long value) {
+      // no-op
+    }
+
+    @Override
+    public void event(long value) {
+      // no-op
+    }
+  };
+
   private final Map<String, String> tags;
 
   public NoopMetricsContext() {
@@ -66,4 +83,9 @@ public final class NoopMetricsContext implements MetricsContext {
   public void event(String metricName, long value) {
     // no-op
   }
+
+  @Override
+  public BoundMetric bind(String metricName) {
+    return NOOP_METRIC;
+  }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.api.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class HistogramSketchTest {
+
+  @Test
+  public void testBuckets() {
+    // small values have one bucket each
+    for (int i = 0; i < HistogramSketch.SUB_BUCKETS; i++) {
+      Assert.assertEquals(i, HistogramSketch.getBucket(i));
+      Assert.assertEquals(i, HistogramSketch.getLowerBound(i));
+      Assert.assertEquals(i, HistogramSketch.getUpperBound(i));
+    }
+    Assert.assertEquals(0, HistogramSketch.getBucket(-10));
+    Assert.assertEquals(HistogramSketch.NUM_BUCKETS - 1, HistogramSketch.getBucket(Long.MAX_VALUE));
+    Assert.assertEquals(Long.MAX_VALUE, HistogramSketch.getUpperBound(HistogramSketch.NUM_BUCKETS - 1));
+
+    // buckets are contiguous and every value falls into the bucket covering it
+    for (int bucket = 0; bucket < HistogramSketch.NUM_BUCKETS - 1; bucket++) {
+      long lower = HistogramSketch.getLowerBound(bucket);
+      long upper = HistogramSketch.getUpperBound(bucket);
+      Assert.assertEquals(upper + 1, HistogramSketch.getLowerBound(bucket + 1));
+      Assert.assertEquals(bucket, HistogramSketch.getBucket(lower));
+      Assert.assertEquals(bucket, HistogramSketch.getBucket(upper));
+      // the relative error of the estimate is bounded
+      long estimate = HistogramSketch.getEstimate(bucket);
+      Assert.assertTrue(estimate - lower <= lower / HistogramSketch.SUB_BUCKETS);
+      Assert.assertTrue(upper - estimate <= lower / HistogramSketch.SUB_BUCKETS);
+    }
+  }
+
+  @Test
+  public void testQuantile() {
+    SortedMap<Integer, Long> counts = new TreeMap<>();
+    Assert.assertEquals(0, HistogramSketch.getQuantile(counts, 0.5));
+
+    for (long value = 1; value <= 1000; value++) {
+      int bucket = HistogramSketch.getBucket(value);
+      counts.merge(bucket, 1L, Long::sum);
+    }
+    assertWithinError(500, HistogramSketch.getQuantile(counts, 0.5));
+    assertWithinError(990, HistogramSketch.getQuantile(counts, 0.99));
+    assertWithinError(1000, HistogramSketch.getQuantile(counts, 1));
+    Assert.assertEquals(1, HistogramSketch.getQuantile(counts, 0));
+
+    try {
+      HistogramSketch.getQuantile(counts, 1.5);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBucketMetricName() {
+    String name = HistogramSketch.getBucketMetricName("user.latency", 100);
+    Assert.assertEquals("user.latency.sketch.100", name);
+    Assert.assertEquals(100, HistogramSketch.parseBucket("user.latency", name));
+    Assert.assertEquals("user.latency", HistogramSketch.getDistributionMetricName(name));
+
+    Assert.assertEquals(-1, HistogramSketch.parseBucket("user.other", name));
+    Assert.assertEquals(-1, HistogramSketch.parseBucket("user.latency", "user.latency.sketch.x"));
+    Assert.assertEquals(-1, HistogramSketch.parseBucket("user.latency", "user.latency.sketch.100000"));
+    Assert.assertNull(HistogramSketch.getDistributionMetricName("user.latency"));
+    Assert.assertNull(HistogramSketch.getDistributionMetricName("user.latency.sketch.x"));
+  }
+
+  private void assertWithinError(long expected, long actual) {
+    Assert.assertTrue("Expected " + expected + " but was " + actual,
+                      Math.abs(expected - actual) <= expected / HistogramSketch.SUB_BUCKETS);
+  }
+}
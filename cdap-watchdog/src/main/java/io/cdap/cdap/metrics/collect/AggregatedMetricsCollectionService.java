@@ -20,10 +20,12 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.Uninterruptibles;
+import io.cdap.cdap.api.metrics.BoundMetric;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
 import io.cdap.cdap.api.metrics.MetricValues;
@@ -33,9 +35,15 @@ import io.cdap.cdap.common.conf.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +60,9 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
 
   private final LoadingCache<Map<String, String>, MetricsContext> collectors;
   private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  // Emitters of BoundMetric instances. Those are not looked up through the emitters cache when recording values,
+  // hence can expire from it while still in use. They are emitted until the BoundMetric is garbage collected.
+  private final Queue<BoundEmitterReference> boundEmitters;
   // maximum number of milliseconds to sleep between each publish
   private final long publishIntervalInMillis;
   private final CountDownLatch shutdownLatch;
@@ -82,6 +93,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
             });
         }
       });
+    this.boundEmitters = new ConcurrentLinkedQueue<>();
   }
 
   /**
@@ -174,18 +186,24 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private Iterator<MetricValues> getMetrics(final long timestamp) {
     // NOTE : emitters.asMap does not reset the access time in cache,
     // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+    Iterator<Map.Entry<Map<String, String>, Collection<AggregatedMetricsEmitter>>> cachedIterator =
+      Iterators.transform(emitters.asMap().entrySet().iterator(),
+                          entry -> Maps.immutableEntry(entry.getKey(), entry.getValue().asMap().values()));
+    // The same emitter can be both cached and bound. Emitting it twice is fine, since the second emit
+    // only returns what was recorded in between.
+    Iterator<Map.Entry<Map<String, String>, Collection<AggregatedMetricsEmitter>>> iterator =
+      Iterators.concat(cachedIterator, collectBoundEmitters().entrySet().iterator());
+
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
+          Map.Entry<Map<String, String>, Collection<AggregatedMetricsEmitter>> entry = iterator.next();
+          Collection<AggregatedMetricsEmitter> metricEmitters = entry.getValue();
           // +1 because we add extra metric about how many metric values did we emit in this context (see below)
           List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
+          for (AggregatedMetricsEmitter emitter : metricEmitters) {
+            MetricValue metricValue = emitter.emit();
             // skip increment by 0
             if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
               continue;
@@ -213,6 +231,23 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
     };
   }
 
+  /**
+   * Groups the distinct emitters of {@link BoundMetric} instances by tags. Emitters of {@link BoundMetric} that were
+   * garbage collected are included one last time and then forgotten.
+   */
+  private Map<Map<String, String>, Collection<AggregatedMetricsEmitter>> collectBoundEmitters() {
+    Map<Map<String, String>, Collection<AggregatedMetricsEmitter>> result = new LinkedHashMap<>();
+    Iterator<BoundEmitterReference> iterator = boundEmitters.iterator();
+    while (iterator.hasNext()) {
+      BoundEmitterReference reference = iterator.next();
+      if (reference.get() == null) {
+        iterator.remove();
+      }
+      result.computeIfAbsent(reference.tags, k -> new LinkedHashSet<>()).add(reference.emitter);
+    }
+    return result;
+  }
+
   private CacheLoader<Map<String, String>, MetricsContext> createCollectorLoader() {
     return new CacheLoader<Map<String, String>, MetricsContext>() {
       @Override
@@ -257,6 +292,14 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       emitters.getUnchecked(tags).getUnchecked(metricName).event(value);
     }
 
+    @Override
+    public BoundMetric bind(String metricName) {
+      AggregatedBoundMetric boundMetric =
+        new AggregatedBoundMetric(emitters.getUnchecked(tags).getUnchecked(metricName));
+      boundEmitters.add(new BoundEmitterReference(boundMetric, tags));
+      return boundMetric;
+    }
+
     @Override
     public MetricsContext childContext(Map<String, String> tags) {
       if (tags.isEmpty()) {
@@ -269,4 +312,47 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       return collectors.getUnchecked(allTags);
     }
   }
+
+  /**
+   * A {@link BoundMetric} that records to an {@link AggregatedMetricsEmitter} directly.
+   */
+  private static final class AggregatedBoundMetric implements BoundMetric {
+
+    private final AggregatedMetricsEmitter emitter;
+
+    private AggregatedBoundMetric(AggregatedMetricsEmitter emitter) {
+      this.emitter = emitter;
+    }
+
+    @Override
+    public void increment(long value) {
+      emitter.increment(value);
+    }
+
+    @Override
+    public void gauge(long value) {
+      emitter.gauge(value);
+    }
+
+    @Override
+    public void event(long value) {
+      emitter.event(value);
+    }
+  }
+
+  /**
+   * A weak reference to a {@link AggregatedBoundMetric} that keeps its emitter and tags strongly reachable,
+   * so that values recorded before it is garbage collected can still be emitted.
+   */
+  private static final class BoundEmitterReference extends WeakReference<AggregatedBoundMetric> {
+
+    private final Map<String, String> tags;
+    private final AggregatedMetricsEmitter emitter;
+
+    private BoundEmitterReference(AggregatedBoundMetric boundMetric, Map<String, String> tags) {
+      super(boundMetric);
+      this.tags = tags;
+      this.emitter = boundMetric.emitter;
+    }
+  }
 }
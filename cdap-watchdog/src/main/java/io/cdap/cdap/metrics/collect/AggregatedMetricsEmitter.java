@@ -20,18 +20,26 @@ import io.cdap.cdap.api.metrics.MetricValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ *
+ * Recording values doesn't acquire any lock, so that threads emitting the same metric don't contend with each other.
+ * Counter increments are accumulated in a {@link LongAdder} that is never reset. Each {@link #emit()} returns the
+ * difference from the previous emit, so that increments happening concurrently with an emit are never lost.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
   private final String name;
-  private long value;
-
-  private MetricType metricType = MetricType.COUNTER;
-  private Distribution distribution;
+  private final LongAdder counter;
+  private final AtomicReference<MetricType> metricType;
+  private final AtomicReference<ConcurrentDistribution> distribution;
+  private volatile long gaugeValue;
+  private long emittedCount;
 
   AggregatedMetricsEmitter(String name) {
     if (name == null || name.isEmpty()) {
@@ -39,44 +47,59 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
     }
 
     this.name = name;
+    this.counter = new LongAdder();
+    this.metricType = new AtomicReference<>(MetricType.COUNTER);
+    this.distribution = new AtomicReference<>();
   }
 
-  public synchronized void increment(long incrementValue) {
-    this.value += incrementValue;
-    this.metricType = MetricType.COUNTER;
+  public void increment(long incrementValue) {
+    counter.add(incrementValue);
+    setMetricType(MetricType.COUNTER);
   }
 
   @Override
   public synchronized MetricValue emit() {
-    if (metricType == MetricType.DISTRIBUTION) {
-      Distribution oldVal;
-      // TODO emit maybe made faster using CAS inside Distribution.
-      // https://cdap.atlassian.net/browse/CDAP-18792 has more context
-      oldVal = distribution;
-      distribution = null;
-      if (oldVal != null) {
-        LOG.trace("Emitting distribution metric: {}", oldVal.toString());
-        return oldVal.getMetricValue(name);
+    // Only concurrent emits are serialized here. Threads recording values never acquire this lock.
+    if (metricType.get() == MetricType.DISTRIBUTION) {
+      ConcurrentDistribution distribution = this.distribution.get();
+      if (distribution != null) {
+        MetricValue metricValue = distribution.emit(name);
+        LOG.trace("Emitting distribution metric: {}", metricValue);
+        return metricValue;
       }
       return new Distribution().getMetricValue(name);
     }
 
-    MetricValue returnVal = new MetricValue(name, metricType, this.value);
-    this.value = 0;
-    this.metricType = MetricType.COUNTER;
-    return returnVal;
+    // Always consume the increments, since a gauge replaces the increments before it
+    long count = counter.sum();
+    long delta = count - emittedCount;
+    emittedCount = count;
+
+    if (metricType.compareAndSet(MetricType.GAUGE, MetricType.COUNTER)) {
+      return new MetricValue(name, MetricType.GAUGE, gaugeValue);
+    }
+    return new MetricValue(name, MetricType.COUNTER, delta);
   }
 
-  public synchronized void gauge(long value) {
-    this.value = value;
-    this.metricType = MetricType.GAUGE;
+  public void gauge(long value) {
+    gaugeValue = value;
+    metricType.set(MetricType.GAUGE);
   }
 
-  public synchronized void event(long value) {
+  public void event(long value) {
+    ConcurrentDistribution distribution = this.distribution.get();
     if (distribution == null) {
-      distribution = new Distribution();
+      this.distribution.compareAndSet(null, new ConcurrentDistribution());
+      distribution = this.distribution.get();
     }
     distribution.add(value);
-    this.metricType = MetricType.DISTRIBUTION;
+    setMetricType(MetricType.DISTRIBUTION);
+  }
+
+  private void setMetricType(MetricType type) {
+    // Only write if the type changes, to avoid invalidating the cache line read by all recording threads
+    if (metricType.get() != type) {
+      metricType.set(type);
+    }
   }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.collect;
+
+import io.cdap.cdap.api.metrics.HistogramSketch;
+import io.cdap.cdap.api.metrics.MetricValue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe version of {@link Distribution} that records values without locking. Recorded values are never
+ * reset. Instead, {@link #emit(String)} returns the distribution of the values added since the previous emit,
+ * so that no value is lost when it is recorded concurrently with an emit.
+ */
+final class ConcurrentDistribution {
+
+  private final AtomicLongArray bucketCounts = new AtomicLongArray(Long.SIZE);
+  private final long[] emittedBucketCounts = new long[Long.SIZE];
+
+  // The sum is kept as the sums of the high and low 32 bits of the values. Unlike a double sum, the difference
+  // between two emits is exact, and unlike a long sum, it doesn't overflow for large values.
+  private final LongAdder highSum = new LongAdder();
+  private final LongAdder lowSum = new LongAdder();
+  private long emittedHighSum;
+  private long emittedLowSum;
+
+  private final AtomicLongArray sketchCounts = new AtomicLongArray(HistogramSketch.NUM_BUCKETS);
+  private final long[] emittedSketchCounts = new long[HistogramSketch.NUM_BUCKETS];
+
+  void add(long value) {
+    bucketCounts.incrementAndGet(Distribution.findBucketNumber(value));
+    sketchCounts.incrementAndGet(HistogramSketch.getBucket(value));
+    highSum.add(value >> Integer.SIZE);
+    lowSum.add(value & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the distribution of the values added since the last call to this method.
+   * Values added concurrently with this method may be partially accounted for, in which case the rest is returned
+   * by the next call.
+   */
+  synchronized MetricValue emit(String metricName) {
+    long bucketMask = 0;
+    long[] counts = new long[Long.SIZE];
+    int numBuckets = 0;
+    for (int bucket = 0; bucket < Long.SIZE; bucket++) {
+      long count = bucketCounts.get(bucket);
+      long delta = count - emittedBucketCounts[bucket];
+      emittedBucketCounts[bucket] = count;
+      if (delta > 0) {
+        bucketMask |= 1L << bucket;
+        counts[numBuckets++] = delta;
+      }
+    }
+
+    long high = highSum.sum();
+    long low = lowSum.sum();
+    double sum = (double) (high - emittedHighSum) * (1L << Integer.SIZE) + (low - emittedLowSum);
+    emittedHighSum = high;
+    emittedLowSum = low;
+
+    long[] bucketCountsArr = new long[numBuckets];
+    System.arraycopy(counts, 0, bucketCountsArr, 0, numBuckets);
+
+    int[] sketchBuckets = new int[HistogramSketch.NUM_BUCKETS];
+    long[] sketchBucketCounts = new long[HistogramSketch.NUM_BUCKETS];
+    int numSketchBuckets = 0;
+    for (int bucket = 0; bucket < HistogramSketch.NUM_BUCKETS; bucket++) {
+      long count = sketchCounts.get(bucket);
+      long delta = count - emittedSketchCounts[bucket];
+      emittedSketchCounts[bucket] = count;
+      if (delta > 0) {
+        sketchBuckets[numSketchBuckets] = bucket;
+        sketchBucketCounts[numSketchBuckets++] = delta;
+      }
+    }
+    return new MetricValue(metricName, bucketCountsArr, bucketMask, sum,
+                           Arrays.copyOf(sketchBuckets, numSketchBuckets),
+                           Arrays.copyOf(sketchBucketCounts, numSketchBuckets));
+  }
+}
@@ -78,7 +78,7 @@ public class Distribution {
         bucketCounts[i][j] += 1;
     }
 
-    private int findBucketNumber(long value) {
+    static int findBucketNumber(long value) {
         // negative values map to bucket 0
         if (value < 0) {
             return 0;
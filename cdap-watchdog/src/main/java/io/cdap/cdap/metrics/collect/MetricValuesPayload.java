@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.collect;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Helper for the payload format of {@link MetricValues} published to the metrics topics.
+ * <p>
+ * A payload is a one byte {@link #VERSION} header, followed by the {@link MetricValues} encoded with the schema
+ * generated from the current class. Payloads published before the header was introduced have no header, and are
+ * encoded with a schema that doesn't have the histogram sketch fields of {@link MetricValue}. Those payloads always
+ * start with a zigzag encoded non-negative number, which has the lowest bit of the first byte cleared, hence they
+ * can be told apart from the header, which has it set.
+ */
+public final class MetricValuesPayload {
+
+  /**
+   * Header of payloads encoded with the current {@link MetricValues} schema.
+   */
+  public static final int VERSION = 1;
+
+  // Fields of MetricValue that are not in payloads without the header
+  private static final Collection<String> SKETCH_FIELDS = Arrays.asList("sketchBuckets", "sketchCounts");
+
+  /**
+   * Returns {@code true} if the given payload starts with the {@link #VERSION} header.
+   */
+  public static boolean isVersioned(byte[] payload) {
+    return payload.length > 0 && payload[0] == VERSION;
+  }
+
+  /**
+   * Returns the schema of payloads without the {@link #VERSION} header, derived from the given {@link MetricValues}
+   * schema by removing the histogram sketch fields.
+   */
+  public static Schema getUnversionedSchema(Schema schema) {
+    switch (schema.getType()) {
+      case RECORD:
+        List<Schema.Field> fields = schema.getFields().stream()
+          .filter(field -> !SKETCH_FIELDS.contains(field.getName()))
+          .map(field -> Schema.Field.of(field.getName(), getUnversionedSchema(field.getSchema())))
+          .collect(Collectors.toList());
+        return Schema.recordOf(schema.getRecordName(), fields);
+      case ARRAY:
+        return Schema.arrayOf(getUnversionedSchema(schema.getComponentSchema()));
+      case MAP:
+        return Schema.mapOf(getUnversionedSchema(schema.getMapSchema().getKey()),
+                            getUnversionedSchema(schema.getMapSchema().getValue()));
+      case UNION:
+        return Schema.unionOf(schema.getUnionSchemas().stream()
+                                .map(MetricValuesPayload::getUnversionedSchema)
+                                .collect(Collectors.toList()));
+      default:
+        return schema;
+    }
+  }
+
+  private MetricValuesPayload() {
+    // no-op
+  }
+}
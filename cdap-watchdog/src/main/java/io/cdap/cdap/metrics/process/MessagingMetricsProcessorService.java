@@ -44,6 +44,7 @@ import io.cdap.cdap.internal.io.SchemaGenerator;
 import io.cdap.cdap.messaging.MessageFetcher;
 import io.cdap.cdap.messaging.MessagingService;
 import io.cdap.cdap.messaging.data.RawMessage;
+import io.cdap.cdap.metrics.collect.MetricValuesPayload;
 import io.cdap.cdap.metrics.store.MetricDatasetFactory;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.proto.id.TopicId;
@@ -81,6 +82,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final MessagingService messagingService;
   private final DatumReader<MetricValues> metricReader;
   private final Schema metricSchema;
+  private final Schema unversionedMetricSchema;
   private final MetricsWriter metricsWriter;
   private final Map<String, String> metricsContextMap;
   private final int fetcherLimit;
@@ -95,12 +97,15 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   // maximum number of milliseconds to sleep between each run of fetching & processing new metrics, the max sleep time
   // is 1 min
   private final long metricsProcessIntervalMillis;
+  // minimum number of milliseconds between flushes of the metrics writer, which is when messageId's are saved
+  private final long flushIntervalMillis;
   private final List<ProcessMetricsThread> processMetricsThreads;
   private final String processMetricName;
   private final String metricsPrefixForDelayMetrics;
   private final int instanceId;
   private long metricsProcessedCount;
   private AtomicLong lastPersistedTime;
+  private long lastFlushTime;
   private MetricsConsumerMetaTable metaTable;
   private volatile boolean stopping;
 
@@ -145,6 +150,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.messagingService = messagingService;
     try {
       this.metricSchema = schemaGenerator.generate(MetricValues.class);
+      this.unversionedMetricSchema = MetricValuesPayload.getUnversionedSchema(metricSchema);
       this.metricReader = readerFactory.create(TypeToken.of(MetricValues.class), metricSchema);
     } catch (UnsupportedTypeException e) {
       // This should never happen
@@ -161,6 +167,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.persistingFlag = new AtomicBoolean();
     // the max sleep time will be 1 min
     this.metricsProcessIntervalMillis = resolveProcessingInterval(cConf, metricsWriter, metricsProcessIntervalMillis);
+    this.flushIntervalMillis = Math.max(0L, cConf.getLong(Constants.Metrics.METRICS_PRE_AGGREGATION_WINDOW_MS, 0L));
     this.processMetricName = String.format("metrics.%s.process.count", instanceId);
     this.metadataHandler = metadataHandler;
     this.metricsMetaKeyProvider = metricsMetaKeyProvider;
@@ -230,7 +237,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
     // Persist metricsFromAllTopics and messageId's after all ProcessMetricsThread's complete.
     // No need to make a copy of metricsFromAllTopics and topicProcessMetaMap because no thread is writing to them
-    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, metadataHandler.getCache());
+    persistMetricsAndTopicProcessMeta(metricsFromAllTopics, metadataHandler.getCache(), true);
   }
 
   private long resolveProcessingInterval(CConfiguration cConf, MetricsWriter metricsWriter, long defaultInterval) {
@@ -258,18 +265,29 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
   /**
    * Persist metrics from all topics into metric store and messageId's of the last persisted metrics of each topic into
-   * metrics meta table
+   * metrics meta table. The metrics writer may buffer metrics, hence messageId's are only saved after the writer is
+   * flushed, which happens at most once per pre-aggregation window unless forced. This way, metrics that are still
+   * buffered when the processor terminates abruptly are processed again after a restart.
    *
    * @param metricValues        a deque of {@link MetricValues}
    * @param topicProcessMetaMap a map with each key {@link MetricsMetaKey} representing a key and {@link
    *                            TopicProcessMeta} which has info on messageId and processing stats
+   * @param forceFlush          whether to flush the writer and save the messageId's regardless of the time passed
+   *                            since the last flush
    */
   private void persistMetricsAndTopicProcessMeta(Deque<MetricValues> metricValues,
-                                                 Map<MetricsMetaKey, TopicProcessMeta> topicProcessMetaMap) {
+                                                 Map<MetricsMetaKey, TopicProcessMeta> topicProcessMetaMap,
+                                                 boolean forceFlush) {
     try {
       if (!metricValues.isEmpty()) {
         persistMetrics(metricValues);
       }
+      long now = System.currentTimeMillis();
+      if (!forceFlush && now - lastFlushTime < flushIntervalMillis) {
+        return;
+      }
+      metricsWriter.flush();
+      lastFlushTime = now;
       metadataHandler.saveCache(topicProcessMetaMap);
     } catch (Exception e) {
       LOG.warn("Failed to persist metrics.", e);
@@ -386,8 +404,15 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           while (iterator.hasNext() && isRunning()) {
             RawMessage input = iterator.next();
             try {
-              payloadInput.reset(input.getPayload());
-              MetricValues metricValues = metricReader.read(decoder, metricSchema);
+              byte[] payload = input.getPayload();
+              payloadInput.reset(payload);
+              // Payloads published by older versions have no header and are decoded with their own schema
+              Schema sourceSchema = unversionedMetricSchema;
+              if (MetricValuesPayload.isVersioned(payload)) {
+                payloadInput.skip(1);
+                sourceSchema = metricSchema;
+              }
+              MetricValues metricValues = metricReader.read(decoder, sourceSchema);
               if (currentMessageId == null) {
                 //For the first message we are willing to wait for space in queue
                 if (!metricsFromAllTopics.offer(metricValues, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
@@ -465,7 +490,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         }
         // Persist the copy of metrics and MessageId's
 
-        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy);
+        persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy, false);
       } catch (Exception e) {
         LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
       } finally {
@@ -42,6 +42,11 @@ public class MetricStoreMetricsWriter implements MetricsWriter {
     this.metricStore.add(metricValues);
   }
 
+  @Override
+  public void flush() {
+    metricStore.flush();
+  }
+
   @Override
   public void initialize(MetricsWriterContext metricsWriterContext) {
     this.metricStore.setMetricsContext(metricsWriterContext.getMetricsContext());
@@ -54,6 +59,7 @@ public class MetricStoreMetricsWriter implements MetricsWriter {
 
   @Override
   public void close() throws IOException {
-    //no-op
+    // write out the metrics pre-aggregated by the store
+    flush();
   }
 }
@@ -19,18 +19,22 @@ package io.cdap.cdap.metrics.query;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
 import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
 import io.cdap.cdap.api.dataset.lib.cube.AggregationOption;
 import io.cdap.cdap.api.dataset.lib.cube.Interpolator;
 import io.cdap.cdap.api.dataset.lib.cube.Interpolators;
 import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.HistogramSketch;
 import io.cdap.cdap.api.metrics.MetricDataQuery;
 import io.cdap.cdap.api.metrics.MetricSearchQuery;
 import io.cdap.cdap.api.metrics.MetricStore;
@@ -42,6 +46,7 @@ import io.cdap.cdap.common.utils.TimeMathParser;
 import io.cdap.cdap.proto.MetricQueryRequest;
 import io.cdap.cdap.proto.MetricQueryResult;
 import io.cdap.cdap.proto.MetricTagValue;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +54,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 /**
@@ -73,9 +88,12 @@ public class MetricsQueryHelper {
   private static final String PARAM_AGGREGATE = "aggregate";
   private static final String PARAM_AUTO_RESOLUTION = "auto";
   private static final String ANY_TAG_VALUE = "*";
+  // quantile of a distribution metric, e.g. user.latency:p99 or user.latency:p99.9
+  private static final Pattern QUANTILE_METRIC_PATTERN = Pattern.compile("(.+):p(\\d+(?:\\.\\d+)?)");
 
   private final MetricStore metricStore;
   private final int minResolution;
+  private final ExecutorService batchQueryExecutor;
 
   private static final Map<String, String> tagNameToHuman;
   private static final Map<String, String> humanToTagName;
@@ -135,6 +153,12 @@ public class MetricsQueryHelper {
     this.metricStore = metricStore;
     int minimumResolution = cConf.getInt(Constants.Metrics.METRICS_MINIMUM_RESOLUTION_SECONDS);
     this.minResolution = minimumResolution < 60 ? minimumResolution : 60;
+    int batchQueryParallelism = cConf.getInt(Constants.Metrics.METRICS_BATCH_QUERY_PARALLELISM);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(batchQueryParallelism, batchQueryParallelism,
+                                                         60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                                         Threads.createDaemonThreadFactory("metrics-batch-query-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    this.batchQueryExecutor = executor;
   }
 
   public List<MetricTagValue> searchTags(List<String> tags) {
@@ -152,9 +176,30 @@ public class MetricsQueryHelper {
   public Map<String, MetricQueryResult> executeBatchQueries(Map<String, QueryRequestFormat> queries) throws Exception {
     LOG.trace("Received Queries {}", queries);
     Map<String, MetricQueryResult> queryFinalResponse = Maps.newHashMap();
-    for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
-      MetricQueryRequest queryRequest = getQueryRequestFromFormat(query.getValue());
-      queryFinalResponse.put(query.getKey(), executeQuery(queryRequest));
+    if (queries.size() == 1) {
+      Map.Entry<String, QueryRequestFormat> query = queries.entrySet().iterator().next();
+      queryFinalResponse.put(query.getKey(), executeQuery(getQueryRequestFromFormat(query.getValue())));
+      return queryFinalResponse;
+    }
+
+    // the queries of a batch are independent, execute them concurrently
+    Map<String, Future<MetricQueryResult>> futures = Maps.newHashMap();
+    try {
+      for (Map.Entry<String, QueryRequestFormat> query : queries.entrySet()) {
+        // parse the requests upfront, so that invalid requests fail before any query is executed
+        MetricQueryRequest queryRequest = getQueryRequestFromFormat(query.getValue());
+        futures.put(query.getKey(), batchQueryExecutor.submit(() -> executeQuery(queryRequest)));
+      }
+      for (Map.Entry<String, Future<MetricQueryResult>> future : futures.entrySet()) {
+        queryFinalResponse.put(future.getKey(), Uninterruptibles.getUninterruptibly(future.getValue()));
+      }
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), Exception.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<MetricQueryResult> future : futures.values()) {
+        future.cancel(true);
+      }
     }
     return queryFinalResponse;
   }
@@ -177,7 +222,13 @@ public class MetricsQueryHelper {
     MetricSearchQuery searchQuery =
       new MetricSearchQuery(0, Integer.MAX_VALUE, -1, toTagValues(tagValues));
     Collection<String> metricNames = metricStore.findMetricNames(searchQuery);
-    return Lists.newArrayList(Iterables.filter(metricNames, Predicates.notNull()));
+    // the buckets of distribution metrics are returned as the distribution metric itself
+    Set<String> result = Sets.newLinkedHashSet();
+    for (String metricName : Iterables.filter(metricNames, Predicates.notNull())) {
+      String distributionName = HistogramSketch.getDistributionMetricName(metricName);
+      result.add(distributionName == null ? metricName : distributionName);
+    }
+    return Lists.newArrayList(result);
   }
 
   private List<TagValue> toTagValues(List<MetricTagValue> tagValues) {
@@ -369,13 +420,28 @@ public class MetricsQueryHelper {
     }
 
     Map<String, String> tagsSliceBy = humanToTagNames(transformTagMap(queryRequest.getTags()));
+    List<String> groupByTags = transformGroupByTags(queryRequest.getGroupBy());
+
+    List<String> metrics = Lists.newArrayList();
+    Collection<MetricTimeSeries> queryResult = Lists.newArrayList();
+    for (String metric : queryRequest.getMetrics()) {
+      Matcher matcher = QUANTILE_METRIC_PATTERN.matcher(metric);
+      if (matcher.matches()) {
+        queryResult.addAll(queryQuantile(metric, matcher.group(1), Double.parseDouble(matcher.group(2)) / 100,
+                                         timeRange, tagsSliceBy, groupByTags));
+      } else {
+        metrics.add(metric);
+      }
+    }
 
-    MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
-                                                timeRange.getResolutionInSeconds(),
-                                                timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
-                                                tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
-                                                aggregation, timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    if (!metrics.isEmpty()) {
+      MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
+                                                  timeRange.getResolutionInSeconds(),
+                                                  timeRange.getCount(), toMetrics(metrics),
+                                                  tagsSliceBy, groupByTags,
+                                                  aggregation, timeRange.getInterpolate());
+      queryResult.addAll(metricStore.query(query));
+    }
 
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
@@ -386,6 +452,69 @@ public class MetricsQueryHelper {
     return decorate(queryResult, timeRange.getStart(), endTime, timeRange.getResolutionInSeconds());
   }
 
+  /**
+   * Queries a quantile of a distribution metric. The buckets of the histogram of the distribution are stored as
+   * separate counters, which are summed up per time series and timestamp before estimating the quantile.
+   */
+  private Collection<MetricTimeSeries> queryQuantile(String queryMetricName, String metricName, double quantile,
+                                                     MetricQueryRequest.TimeRange timeRange,
+                                                     Map<String, String> tagsSliceBy, List<String> groupByTags) {
+    if (quantile > 1) {
+      throw new IllegalArgumentException("Invalid percentile in metric " + queryMetricName);
+    }
+
+    // only query the buckets that have been emitted for the distribution
+    List<TagValue> tagValues = Lists.newArrayList();
+    for (Map.Entry<String, String> tag : tagsSliceBy.entrySet()) {
+      tagValues.add(new TagValue(tag.getKey(), tag.getValue()));
+    }
+    Map<String, AggregationFunction> bucketMetrics = Maps.newHashMap();
+    MetricSearchQuery searchQuery = new MetricSearchQuery(0, Integer.MAX_VALUE, -1, tagValues);
+    for (String name : metricStore.findMetricNames(searchQuery)) {
+      if (name != null && HistogramSketch.parseBucket(metricName, name) >= 0) {
+        bucketMetrics.put(name, AggregationFunction.SUM);
+      }
+    }
+    if (bucketMetrics.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // interpolation is not applied, as interpolated bucket counts would not form a valid histogram
+    MetricDataQuery query = new MetricDataQuery(timeRange.getStart(), timeRange.getEnd(),
+                                                timeRange.getResolutionInSeconds(), timeRange.getCount(),
+                                                bucketMetrics, tagsSliceBy, groupByTags,
+                                                timeRange.getAggregation(), null);
+
+    Map<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>> histograms = Maps.newHashMap();
+    for (MetricTimeSeries timeSeries : metricStore.query(query)) {
+      int bucket = HistogramSketch.parseBucket(metricName, timeSeries.getMetricName());
+      SortedMap<Long, SortedMap<Integer, Long>> series = histograms.get(timeSeries.getTagValues());
+      if (series == null) {
+        series = new TreeMap<>();
+        histograms.put(timeSeries.getTagValues(), series);
+      }
+      for (TimeValue timeValue : timeSeries.getTimeValues()) {
+        SortedMap<Integer, Long> bucketCounts = series.get(timeValue.getTimestamp());
+        if (bucketCounts == null) {
+          bucketCounts = new TreeMap<>();
+          series.put(timeValue.getTimestamp(), bucketCounts);
+        }
+        Long count = bucketCounts.get(bucket);
+        bucketCounts.put(bucket, count == null ? timeValue.getValue() : count + timeValue.getValue());
+      }
+    }
+
+    List<MetricTimeSeries> result = Lists.newArrayList();
+    for (Map.Entry<Map<String, String>, SortedMap<Long, SortedMap<Integer, Long>>> entry : histograms.entrySet()) {
+      List<TimeValue> timeValues = Lists.newArrayList();
+      for (Map.Entry<Long, SortedMap<Integer, Long>> histogram : entry.getValue().entrySet()) {
+        timeValues.add(new TimeValue(histogram.getKey(), HistogramSketch.getQuantile(histogram.getValue(), quantile)));
+      }
+      result.add(new MetricTimeSeries(queryMetricName, entry.getKey(), timeValues));
+    }
+    return result;
+  }
+
   private Map<String, String> transformTagMap(Map<String, String> tags) {
     return Maps.transformValues(tags, new Function<String, String>() {
       @Override
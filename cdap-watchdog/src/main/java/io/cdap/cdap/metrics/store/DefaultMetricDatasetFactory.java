@@ -87,7 +87,7 @@ public class DefaultMetricDatasetFactory implements MetricDatasetFactory {
 
     MetricsTable table = getOrCreateMetricsTable(tableName, props.build());
     return new FactTable(table, entityTable.get(), resolution, getRollTime(resolution),
-                         coarseLagFactor, coarseRoundFactor);
+                         coarseLagFactor, coarseRoundFactor, getBlockSize(resolution));
   }
 
   @Override
@@ -134,4 +134,8 @@ public class DefaultMetricDatasetFactory implements MetricDatasetFactory {
     return cConf.getInt(Constants.Metrics.TIME_SERIES_TABLE_ROLL_TIME,
                         Constants.Metrics.DEFAULT_TIME_SERIES_TABLE_ROLL_TIME);
   }
+
+  private int getBlockSize(int resolution) {
+    return cConf.getInt(Constants.Metrics.TIME_SERIES_TABLE_BLOCK_SIZE + "." + resolution, 0);
+  }
 }
@@ -24,7 +24,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
-import io.cdap.cdap.api.dataset.lib.cube.Cube;
 import io.cdap.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import io.cdap.cdap.api.dataset.lib.cube.CubeFact;
@@ -33,6 +32,7 @@ import io.cdap.cdap.api.dataset.lib.cube.DimensionValue;
 import io.cdap.cdap.api.dataset.lib.cube.MeasureType;
 import io.cdap.cdap.api.dataset.lib.cube.Measurement;
 import io.cdap.cdap.api.dataset.lib.cube.TimeSeries;
+import io.cdap.cdap.api.metrics.HistogramSketch;
 import io.cdap.cdap.api.metrics.MetricDataQuery;
 import io.cdap.cdap.api.metrics.MetricDeleteQuery;
 import io.cdap.cdap.api.metrics.MetricSearchQuery;
@@ -92,11 +92,15 @@ public class DefaultMetricStore implements MetricStore {
                     new AggregationAlias(ImmutableMap.of(Constants.Metrics.Tag.RUN_ID,
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
-  private final Supplier<Cube> cube;
+  private final Supplier<DefaultCube> cube;
   private final Supplier<MetricsConsumerMetaTable> metaTableSupplier;
   private MetricsContext metricsContext;
   private final List<TopicId> metricsTopics;
   private final Map<Integer, Long> resolutionTTLMap;
+  private final long blockSealDelaySecs;
+  // null if the query cache is disabled
+  @Nullable
+  private final MetricsQueryCache queryCache;
 
 
   static {
@@ -214,6 +218,9 @@ public class DefaultMetricStore implements MetricStore {
   @Inject
   DefaultMetricStore(MetricDatasetFactory dsFactory, CConfiguration cConf) {
     int writeParallelism = cConf.getInt(Constants.Metrics.METRICS_TABLE_WRITE_PARRALELISM);
+    long preAggregationWindowMillis = cConf.getLong(Constants.Metrics.METRICS_PRE_AGGREGATION_WINDOW_MS);
+    int maxPreAggregatedMeasurements = cConf.getInt(Constants.Metrics.METRICS_PRE_AGGREGATION_MAX_MEASUREMENTS);
+    int queryParallelism = cConf.getInt(Constants.Metrics.METRICS_QUERY_PARALLELISM);
     int minimumResolution = cConf.getInt(Constants.Metrics.METRICS_MINIMUM_RESOLUTION_SECONDS);
     int[] resolutions = minimumResolution < 60 ?
       new int[] {minimumResolution, 60, 3600, TOTALS_RESOLUTION} : new int[] {60, 3600, TOTALS_RESOLUTION};
@@ -228,16 +235,22 @@ public class DefaultMetricStore implements MetricStore {
       builder.put(minimumResolution, cConf.getLong(Constants.Metrics.MINIMUM_RESOLUTION_RETENTION_SECONDS));
     }
     this.resolutionTTLMap = builder.build();
+    this.blockSealDelaySecs = cConf.getLong(Constants.Metrics.TIME_SERIES_TABLE_BLOCK_SEAL_DELAY_SECONDS);
+    long queryCacheMaxTimeValues = cConf.getLong(Constants.Metrics.METRICS_QUERY_CACHE_MAX_TIME_VALUES);
+    this.queryCache = queryCacheMaxTimeValues <= 0 ? null :
+      new MetricsQueryCache(queryCacheMaxTimeValues,
+                            cConf.getLong(Constants.Metrics.METRICS_QUERY_CACHE_CLOSED_LAG_SECONDS));
     FactTableSupplier factTableSupplier = (resolution, ignoredRollTime) -> {
       // roll time will be taken from configuration
       // TODO: remove roll time from the supplier api, https://issues.cask.co/browse/CDAP-14730
       return dsFactory.getOrCreateFactTable(resolution);
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
+      public DefaultCube get() {
         DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS,
-                                           writeParallelism);
+                                           writeParallelism, preAggregationWindowMillis,
+                                           maxPreAggregatedMeasurements, queryParallelism);
         cube.setMetricsCollector(metricsContext);
         return cube;
       }
@@ -255,6 +268,9 @@ public class DefaultMetricStore implements MetricStore {
   @Override
   public void setMetricsContext(MetricsContext metricsContext) {
     this.metricsContext = metricsContext;
+    if (queryCache != null) {
+      queryCache.setMetricsCollector(metricsContext);
+    }
   }
 
   @Override
@@ -265,15 +281,22 @@ public class DefaultMetricStore implements MetricStore {
   @Override
   public void add(Collection<? extends MetricValues> metricValues) {
     List<CubeFact> facts = Lists.newArrayListWithCapacity(metricValues.size());
+    long minTimestamp = Long.MAX_VALUE;
     for (MetricValues metricValue : metricValues) {
+      minTimestamp = Math.min(minTimestamp, metricValue.getTimestamp());
       String scope = metricValue.getTags().get(Constants.Metrics.Tag.SCOPE);
       List<Measurement> metrics = Lists.newArrayList();
       // todo improve this logic?
       for (MetricValue metric : metricValue.getMetrics()) {
         String measureName = (scope == null ? "system." : scope + ".") + metric.getName();
         if (metric.getType() == MetricType.DISTRIBUTION) {
-          // TODO save distribution as multiple count metrics
-          // https://cdap.atlassian.net/browse/CDAP-18769
+          // the histogram is saved as one counter per bucket, so that it merges across time, instances and tags
+          int[] sketchBuckets = metric.getSketchBuckets();
+          long[] sketchCounts = metric.getSketchCounts();
+          for (int i = 0; i < sketchBuckets.length; i++) {
+            metrics.add(new Measurement(HistogramSketch.getBucketMetricName(measureName, sketchBuckets[i]),
+                                        MeasureType.COUNTER, sketchCounts[i]));
+          }
           continue;
         }
         MeasureType type = metric.getType() == MetricType.COUNTER ? MeasureType.COUNTER : MeasureType.GAUGE;
@@ -286,10 +309,22 @@ public class DefaultMetricStore implements MetricStore {
       facts.add(fact);
     }
     cube.get().add(facts);
+    if (queryCache != null) {
+      queryCache.written(minTimestamp);
+    }
+  }
+
+  @Override
+  public void flush() {
+    cube.get().flush();
   }
 
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+    return queryCache == null ? queryCube(query) : queryCache.query(query, this::queryCube);
+  }
+
+  private Collection<MetricTimeSeries> queryCube(MetricDataQuery query) {
     Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
     List<MetricTimeSeries> result = Lists.newArrayList();
     for (TimeSeries timeSeries : cubeResult) {
@@ -313,6 +348,7 @@ public class DefaultMetricStore implements MetricStore {
       // Delete all data before the timestamp. null for MeasureName indicates match any MeasureName.
       deleteMetricsBeforeTimestamp(timestamp, resolution);
     }
+    invalidateQueryCache();
   }
 
   @Override
@@ -321,11 +357,19 @@ public class DefaultMetricStore implements MetricStore {
     for (Map.Entry<Integer, Long> resolutionTTL : resolutionTTLMap.entrySet()) {
       deleteMetricsBeforeTimestamp(currentTime - resolutionTTL.getValue(), resolutionTTL.getKey());
     }
+    invalidateQueryCache();
+  }
+
+  @Override
+  public void compact() {
+    long currentTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    cube.get().sealBlocks(currentTime - blockSealDelaySecs);
   }
 
   @Override
   public void delete(MetricDeleteQuery query) {
     cube.get().delete(buildCubeDeleteQuery(query));
+    invalidateQueryCache();
   }
 
   @Override
@@ -392,6 +436,12 @@ public class DefaultMetricStore implements MetricStore {
     return processMap;
   }
 
+  private void invalidateQueryCache() {
+    if (queryCache != null) {
+      queryCache.invalidateAll();
+    }
+  }
+
   private void deleteMetricsBeforeTimestamp(long timestamp, int resolution) {
     CubeDeleteQuery query = new CubeDeleteQuery(0, timestamp, resolution, Collections.emptyMap(),
                                                 Collections.emptySet(), strings -> true);
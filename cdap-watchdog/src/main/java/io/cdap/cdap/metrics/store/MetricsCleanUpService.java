@@ -51,6 +51,8 @@ public class MetricsCleanUpService extends AbstractScheduledService {
   protected void runOneIteration() {
     // delete metrics from resolution table
     metricStore.deleteTTLExpired();
+    // seal the metrics that are no longer updated into blocks
+    metricStore.compact();
   }
 
   @Override
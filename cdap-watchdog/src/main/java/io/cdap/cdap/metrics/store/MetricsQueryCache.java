@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationOption;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricsCollector;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the results of {@link MetricDataQuery} over closed time ranges. A resolution interval is closed once it
+ * ended more than the closed lag ago, as no more metrics are expected to be written to it. Queries that only differ
+ * by their time range share a cache entry, so that a query repeated with a moving time range only queries the
+ * intervals that are not closed or not cached yet, and appends them to the cached time series.
+ * <p/>
+ * Only queries without interpolation and aggregation option are cached. The cache is bounded by the total number of
+ * time values it holds. Entries are rebuilt from a full query once they are older than the closed lag, so that
+ * metrics written late to a closed interval eventually become visible.
+ */
+final class MetricsQueryCache {
+
+  private final Cache<Key, Entry> cache;
+  private final long closedLagSecs;
+  private final LongSupplier currentTimeSecs;
+  @Nullable
+  private volatile MetricsCollector metrics;
+
+  MetricsQueryCache(long maxTimeValues, long closedLagSecs) {
+    this(maxTimeValues, closedLagSecs, () -> TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+  }
+
+  MetricsQueryCache(long maxTimeValues, long closedLagSecs, LongSupplier currentTimeSecs) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxTimeValues)
+      .weigher((Key key, Entry entry) -> entry.numTimeValues)
+      .build();
+    this.closedLagSecs = closedLagSecs;
+    this.currentTimeSecs = currentTimeSecs;
+  }
+
+  void setMetricsCollector(@Nullable MetricsCollector metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Executes the given query, using the cached results for the closed part of its time range.
+   *
+   * @param query the query to execute
+   * @param executor executes queries over the time ranges that are not cached
+   * @return the result of the query
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query,
+                                     Function<MetricDataQuery, Collection<MetricTimeSeries>> executor) {
+    if (!isCacheable(query)) {
+      return executor.apply(query);
+    }
+
+    Key key = new Key(query);
+    long startTs = query.getStartTs();
+    long endTs = query.getEndTs();
+    long nowTs = currentTimeSecs.getAsLong();
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && nowTs - entry.createdTs > closedLagSecs) {
+      entry = null;
+    }
+
+    Map<SeriesKey, List<TimeValue>> result;
+    long createdTs = nowTs;
+    if (entry != null && entry.startTs <= startTs && startTs <= entry.closedBeforeTs) {
+      increment("query.cache.hit.count");
+      createdTs = entry.createdTs;
+      result = entry.getTimeValues(startTs, endTs);
+      if (endTs >= entry.closedBeforeTs) {
+        // query the intervals that were not closed yet when the entry was cached
+        append(result, executor.apply(copy(query, entry.closedBeforeTs, endTs)));
+      }
+    } else {
+      increment("query.cache.miss.count");
+      result = new LinkedHashMap<>();
+      append(result, executor.apply(copy(query, startTs, endTs)));
+    }
+
+    // cache the closed part of the result, unless the cached entry already covers more
+    long closedTs = nowTs - closedLagSecs;
+    long closedBeforeTs = Math.min(closedTs - closedTs % query.getResolution(), endTs + 1);
+    if (closedBeforeTs > startTs && (entry == null || closedBeforeTs > entry.closedBeforeTs)) {
+      cache.put(key, new Entry(createdTs, startTs, closedBeforeTs, result));
+    }
+
+    List<MetricTimeSeries> timeSeries = new ArrayList<>(result.size());
+    for (Map.Entry<SeriesKey, List<TimeValue>> series : result.entrySet()) {
+      List<TimeValue> timeValues = series.getValue();
+      if (timeValues.size() > query.getLimit()) {
+        timeValues = timeValues.subList(0, query.getLimit());
+      }
+      timeSeries.add(new MetricTimeSeries(series.getKey().metricName, series.getKey().tagValues, timeValues));
+    }
+    return timeSeries;
+  }
+
+  /**
+   * Notifies the cache that metrics were written through the same metric store, which removes all the cached results
+   * if any of the metrics were written to a closed interval.
+   *
+   * @param minTimestamp the smallest timestamp of the written metrics, in seconds
+   */
+  void written(long minTimestamp) {
+    if (minTimestamp < currentTimeSecs.getAsLong() - closedLagSecs) {
+      invalidateAll();
+    }
+  }
+
+  /**
+   * Removes all the cached results, e.g. after metrics have been deleted.
+   */
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private boolean isCacheable(MetricDataQuery query) {
+    // the totals resolution has a single value that is never closed
+    return query.getResolution() != Integer.MAX_VALUE && query.getInterpolator() == null
+      && query.getAggregationOption() == AggregationOption.FALSE && query.getStartTs() <= query.getEndTs();
+  }
+
+  private void increment(String metricName) {
+    MetricsCollector metrics = this.metrics;
+    if (metrics != null) {
+      metrics.increment(metricName, 1);
+    }
+  }
+
+  /**
+   * Returns a copy of the query with the given time range and no limit, as the limit is applied to the merged result.
+   */
+  private static MetricDataQuery copy(MetricDataQuery query, long startTs, long endTs) {
+    return new MetricDataQuery(startTs, endTs, query.getResolution(), Integer.MAX_VALUE, query.getMetrics(),
+                               query.getSliceByTags(), query.getGroupByTags(), query.getAggregationOption(),
+                               query.getInterpolator());
+  }
+
+  /**
+   * Appends the time values of the given time series, which are all after the time values already in the result.
+   */
+  private static void append(Map<SeriesKey, List<TimeValue>> result, Collection<MetricTimeSeries> timeSeries) {
+    for (MetricTimeSeries series : timeSeries) {
+      result.computeIfAbsent(new SeriesKey(series.getMetricName(), series.getTagValues()), k -> new ArrayList<>())
+        .addAll(series.getTimeValues());
+    }
+  }
+
+  /**
+   * A query without its time range and limit.
+   */
+  private static final class Key {
+    private final int resolution;
+    private final Map<String, AggregationFunction> metrics;
+    private final Map<String, String> sliceByTags;
+    private final List<String> groupByTags;
+
+    Key(MetricDataQuery query) {
+      this.resolution = query.getResolution();
+      this.metrics = new HashMap<>(query.getMetrics());
+      // null tag values are meaningful, as they match any value
+      this.sliceByTags = new HashMap<>(query.getSliceByTags());
+      this.groupByTags = new ArrayList<>(query.getGroupByTags());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key that = (Key) o;
+      return resolution == that.resolution && metrics.equals(that.metrics)
+        && sliceByTags.equals(that.sliceByTags) && groupByTags.equals(that.groupByTags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(resolution, metrics, sliceByTags, groupByTags);
+    }
+  }
+
+  /**
+   * Identifies a time series in a query result.
+   */
+  private static final class SeriesKey {
+    private final String metricName;
+    private final Map<String, String> tagValues;
+
+    SeriesKey(String metricName, Map<String, String> tagValues) {
+      this.metricName = metricName;
+      this.tagValues = tagValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      SeriesKey that = (SeriesKey) o;
+      return metricName.equals(that.metricName) && tagValues.equals(that.tagValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(metricName, tagValues);
+    }
+  }
+
+  /**
+   * The time series of a query from a start time until the time before which all intervals were closed.
+   */
+  private static final class Entry {
+    // time the values were first read from the metrics tables
+    private final long createdTs;
+    private final long startTs;
+    private final long closedBeforeTs;
+    private final Map<SeriesKey, List<TimeValue>> timeSeries;
+    private final int numTimeValues;
+
+    Entry(long createdTs, long startTs, long closedBeforeTs, Map<SeriesKey, List<TimeValue>> result) {
+      this.createdTs = createdTs;
+      this.startTs = startTs;
+      this.closedBeforeTs = closedBeforeTs;
+      this.timeSeries = new HashMap<>();
+      int numTimeValues = 0;
+      for (Map.Entry<SeriesKey, List<TimeValue>> series : result.entrySet()) {
+        List<TimeValue> closed = new ArrayList<>();
+        for (TimeValue timeValue : series.getValue()) {
+          if (timeValue.getTimestamp() >= closedBeforeTs) {
+            break;
+          }
+          closed.add(timeValue);
+        }
+        if (!closed.isEmpty()) {
+          timeSeries.put(series.getKey(), Collections.unmodifiableList(closed));
+          numTimeValues += closed.size();
+        }
+      }
+      this.numTimeValues = numTimeValues;
+    }
+
+    /**
+     * Returns the cached time values within the given time range.
+     */
+    Map<SeriesKey, List<TimeValue>> getTimeValues(long startTs, long endTs) {
+      Map<SeriesKey, List<TimeValue>> result = new LinkedHashMap<>();
+      for (Map.Entry<SeriesKey, List<TimeValue>> series : timeSeries.entrySet()) {
+        List<TimeValue> timeValues = new ArrayList<>();
+        for (TimeValue timeValue : series.getValue()) {
+          if (timeValue.getTimestamp() > endTs) {
+            break;
+          }
+          if (timeValue.getTimestamp() >= startTs) {
+            timeValues.add(timeValue);
+          }
+        }
+        if (!timeValues.isEmpty()) {
+          result.put(series.getKey(), timeValues);
+        }
+      }
+      return result;
+    }
+  }
+}
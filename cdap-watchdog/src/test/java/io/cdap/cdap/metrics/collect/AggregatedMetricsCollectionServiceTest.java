@@ -17,6 +17,7 @@ package io.cdap.cdap.metrics.collect;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
+import io.cdap.cdap.api.metrics.BoundMetric;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
 import io.cdap.cdap.api.metrics.MetricValues;
@@ -144,6 +145,42 @@ public class AggregatedMetricsCollectionServiceTest {
     }
   }
 
+  @Test
+  public void testBoundMetric() throws InterruptedException {
+    BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+
+    AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService(1000L) {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        Iterators.addAll(published, metrics);
+      }
+    };
+
+    service.startAndWait();
+    try {
+      Map<String, String> tags = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NAMESPACE,
+                                                 Constants.Metrics.Tag.APP, APP);
+      MetricsContext context = service.getContext(tags);
+      BoundMetric counter = context.bind(METRIC);
+      BoundMetric gauge = context.bind(GAUGE_METRIC);
+
+      // values recorded through the bound metric and the context are aggregated together
+      counter.increment(Integer.MAX_VALUE);
+      context.increment(METRIC, 3);
+      counter.increment(4);
+      verifyCounterMetricsValue(published, ImmutableMap.of(2, ImmutableMap.of(METRIC, 7L + Integer.MAX_VALUE)));
+
+      // No publishing for 0 value metrics
+      Assert.assertNull(published.poll(3, TimeUnit.SECONDS));
+
+      gauge.gauge(1);
+      gauge.gauge(5);
+      verifyGaugeMetricsValue(published, ImmutableMap.of(2, 5L));
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
   private void verifyCounterMetricsValue(BlockingQueue<MetricValues> published,
                                          Map<Integer, Map<String, Long>> expected) throws InterruptedException {
     Map<Integer, Map<String, Long>> received = new HashMap<>();
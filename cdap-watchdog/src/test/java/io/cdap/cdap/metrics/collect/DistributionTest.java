@@ -15,6 +15,7 @@
  */
 package io.cdap.cdap.metrics.collect;
 
+import io.cdap.cdap.api.metrics.HistogramSketch;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
 import org.junit.Assert;
@@ -81,6 +82,101 @@ public class DistributionTest {
     verifyDistribution(distribution, 1L << 63, Long.MAX_VALUE, new long[]{1});
   }
 
+  @Test
+  public void testConcurrentDistribution() {
+    long[] values = {0, 1, 2, 2, 16, 100, 101, -5, Long.MAX_VALUE, Long.MIN_VALUE};
+    Distribution distribution = new Distribution();
+    ConcurrentDistribution concurrentDistribution = new ConcurrentDistribution();
+    for (long value : values) {
+      distribution.add(value);
+      concurrentDistribution.add(value);
+    }
+    MetricValue expected = distribution.getMetricValue(METRIC_NAME);
+    MetricValue metricValue = concurrentDistribution.emit(METRIC_NAME);
+    Assert.assertEquals(expected.getBucketMask(), metricValue.getBucketMask());
+    Assert.assertArrayEquals(expected.getBucketCounts(), metricValue.getBucketCounts());
+    // the sum is exact, while adding doubles loses the small values next to Long.MAX_VALUE and Long.MIN_VALUE
+    Assert.assertEquals(216, metricValue.getSum(), TINY_DELTA);
+
+    // only values added after the previous emit are emitted
+    verifyDistribution(concurrentDistribution, 0, 0, new long[]{});
+    concurrentDistribution.add(Long.MAX_VALUE);
+    concurrentDistribution.add(16);
+    verifyDistribution(concurrentDistribution, 64 | 1L << 63, Long.MAX_VALUE + 16.0, new long[]{1, 1});
+  }
+
+  @Test
+  public void testConcurrentDistributionSketch() {
+    ConcurrentDistribution distribution = new ConcurrentDistribution();
+    long[] values = {-5, 0, 2, 2, 1000, 1001, Long.MAX_VALUE};
+    for (long value : values) {
+      distribution.add(value);
+    }
+    MetricValue metricValue = distribution.emit(METRIC_NAME);
+    // 1000 and 1001 share a bucket, as do -5 and 0
+    Assert.assertArrayEquals(new int[]{0, 2, HistogramSketch.getBucket(1000), HistogramSketch.NUM_BUCKETS - 1},
+                             metricValue.getSketchBuckets());
+    Assert.assertArrayEquals(new long[]{2, 2, 2, 1}, metricValue.getSketchCounts());
+
+    // only values added after the previous emit are emitted
+    Assert.assertEquals(0, distribution.emit(METRIC_NAME).getSketchBuckets().length);
+    distribution.add(1000);
+    metricValue = distribution.emit(METRIC_NAME);
+    Assert.assertArrayEquals(new int[]{HistogramSketch.getBucket(1000)}, metricValue.getSketchBuckets());
+    Assert.assertArrayEquals(new long[]{1}, metricValue.getSketchCounts());
+  }
+
+  private void verifyDistribution(ConcurrentDistribution distribution, long expectedMask, double expectedSum,
+                                  long[] bucketCounts) {
+    MetricValue metricValue = distribution.emit(METRIC_NAME);
+    Assert.assertEquals(MetricType.DISTRIBUTION, metricValue.getType());
+    Assert.assertEquals(expectedMask, metricValue.getBucketMask());
+    Assert.assertEquals(expectedSum, metricValue.getSum(), TINY_DELTA);
+    Assert.assertArrayEquals(bucketCounts, metricValue.getBucketCounts());
+  }
+
+  @Test
+  public void testAggregatedEmitterCounterConcurrency() throws InterruptedException {
+    AggregatedMetricsEmitter emitter = new AggregatedMetricsEmitter("ignore");
+    AtomicBoolean end = new AtomicBoolean(false);
+    LongAdder totalIncrements = new LongAdder();
+    long totalEmitted = 0;
+
+    Runnable runnable = () -> {
+      while (!end.get()) {
+        emitter.increment(3);
+        totalIncrements.add(3);
+      }
+    };
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(runnable);
+      threads[i].start();
+    }
+    for (int i = 0; i < 10; i++) {
+      Thread.sleep(100);
+      MetricValue metricValue = emitter.emit();
+      Assert.assertEquals(MetricType.COUNTER, metricValue.getType());
+      totalEmitted += metricValue.getValue();
+    }
+    end.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    totalEmitted += emitter.emit().getValue();
+    Assert.assertEquals(totalIncrements.longValue(), totalEmitted);
+
+    // a gauge replaces the increments before it and is emitted once
+    emitter.increment(5);
+    emitter.gauge(10);
+    MetricValue metricValue = emitter.emit();
+    Assert.assertEquals(MetricType.GAUGE, metricValue.getType());
+    Assert.assertEquals(10, metricValue.getValue());
+    metricValue = emitter.emit();
+    Assert.assertEquals(MetricType.COUNTER, metricValue.getType());
+    Assert.assertEquals(0, metricValue.getValue());
+  }
+
   // TODO mark as slow test
   @Test
   public void testAggregatedEmitterConcurrency() throws InterruptedException {
@@ -89,8 +89,9 @@ public class MessagingMetricsCollectionServiceTest extends MetricsTestBase {
       try (CloseableIterator<RawMessage> iterator = messagingService.prepareFetch(topicId).fetch()) {
         while (iterator.hasNext()) {
           RawMessage message = iterator.next();
-          MetricValues metricsRecord = (MetricValues) recordReader.read(
-            new BinaryDecoder(new ByteArrayInputStream(message.getPayload())), schema);
+          ByteArrayInputStream payload = new ByteArrayInputStream(message.getPayload());
+          Assert.assertEquals(MetricValuesPayload.VERSION, payload.read());
+          MetricValues metricsRecord = (MetricValues) recordReader.read(new BinaryDecoder(payload), schema);
           StringBuilder flattenContext = new StringBuilder();
           // for verifying expected results, sorting tags
           Map<String, String> tags = Maps.newTreeMap();
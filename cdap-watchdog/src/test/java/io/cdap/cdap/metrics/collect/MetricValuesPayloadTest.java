@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.collect;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.common.io.BinaryDecoder;
+import io.cdap.cdap.common.io.BinaryEncoder;
+import io.cdap.cdap.internal.io.ReflectionDatumReader;
+import io.cdap.cdap.internal.io.ReflectionDatumWriter;
+import io.cdap.cdap.internal.io.ReflectionSchemaGenerator;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Unit tests for {@link MetricValuesPayload}.
+ */
+public class MetricValuesPayloadTest {
+
+  private static final TypeToken<MetricValues> METRIC_VALUES_TYPE = TypeToken.of(MetricValues.class);
+
+  private static Schema schema;
+  private static Schema unversionedSchema;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    schema = new ReflectionSchemaGenerator().generate(METRIC_VALUES_TYPE.getType());
+    unversionedSchema = MetricValuesPayload.getUnversionedSchema(schema);
+  }
+
+  @Test
+  public void testUnversionedSchema() {
+    // The schema of MetricValue before the histogram sketch was added
+    Schema metricSchema = unversionedSchema.getField("metrics").getSchema().getNonNullable()
+      .getComponentSchema().getNonNullable();
+    List<String> fields = metricSchema.getFields().stream().map(Schema.Field::getName).collect(Collectors.toList());
+    Assert.assertEquals(Arrays.asList("bucketCounts", "bucketMask", "name", "sum", "type", "value"), fields);
+    Assert.assertEquals(schema.getField("tags").getSchema(), unversionedSchema.getField("tags").getSchema());
+    Assert.assertEquals(schema.getField("timestamp").getSchema(), unversionedSchema.getField("timestamp").getSchema());
+  }
+
+  @Test
+  public void testUnversionedPayload() throws Exception {
+    // Encode the payload the same way as older versions did
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new ReflectionDatumWriter<MetricValues>(unversionedSchema).encode(createMetricValues(), new BinaryEncoder(os));
+    byte[] payload = os.toByteArray();
+    Assert.assertFalse(MetricValuesPayload.isVersioned(payload));
+
+    // The distribution is decoded without the histogram sketch
+    MetricValues decoded = new ReflectionDatumReader<>(schema, METRIC_VALUES_TYPE)
+      .read(new BinaryDecoder(new ByteArrayInputStream(payload)), unversionedSchema);
+    Iterator<MetricValue> metrics = assertMetricValues(decoded);
+    MetricValue distribution = metrics.next();
+    Assert.assertArrayEquals(new long[] {1, 2}, distribution.getBucketCounts());
+    Assert.assertEquals(0b101L, distribution.getBucketMask());
+    Assert.assertEquals(5.0d, distribution.getSum(), 0.0d);
+    Assert.assertEquals(0, distribution.getSketchBuckets().length);
+    Assert.assertEquals(0, distribution.getSketchCounts().length);
+  }
+
+  @Test
+  public void testVersionedPayload() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(MetricValuesPayload.VERSION);
+    new ReflectionDatumWriter<MetricValues>(schema).encode(createMetricValues(), new BinaryEncoder(os));
+    byte[] payload = os.toByteArray();
+    Assert.assertTrue(MetricValuesPayload.isVersioned(payload));
+
+    ByteArrayInputStream is = new ByteArrayInputStream(payload);
+    Assert.assertEquals(1, is.skip(1));
+    MetricValues decoded = new ReflectionDatumReader<>(schema, METRIC_VALUES_TYPE)
+      .read(new BinaryDecoder(is), schema);
+    Iterator<MetricValue> metrics = assertMetricValues(decoded);
+    MetricValue distribution = metrics.next();
+    Assert.assertArrayEquals(new long[] {1, 2}, distribution.getBucketCounts());
+    Assert.assertArrayEquals(new int[] {3, 70}, distribution.getSketchBuckets());
+    Assert.assertArrayEquals(new long[] {1, 2}, distribution.getSketchCounts());
+  }
+
+  private MetricValues createMetricValues() {
+    return new MetricValues(ImmutableMap.of("ns", "default"), 1234L, Arrays.asList(
+      new MetricValue("counter", MetricType.COUNTER, 10L),
+      new MetricValue("distribution", new long[] {1, 2}, 0b101L, 5.0d, new int[] {3, 70}, new long[] {1, 2})));
+  }
+
+  /**
+   * Asserts the tags, timestamp and the counter of the decoded {@link MetricValues}, and returns an iterator
+   * positioned at the distribution.
+   */
+  private Iterator<MetricValue> assertMetricValues(MetricValues decoded) {
+    Assert.assertEquals(ImmutableMap.of("ns", "default"), decoded.getTags());
+    Assert.assertEquals(1234L, decoded.getTimestamp());
+    Assert.assertEquals(2, decoded.getMetrics().size());
+    Iterator<MetricValue> metrics = decoded.getMetrics().iterator();
+    MetricValue counter = metrics.next();
+    Assert.assertEquals("counter", counter.getName());
+    Assert.assertEquals(10L, counter.getValue());
+    return metrics;
+  }
+}
@@ -107,6 +107,11 @@ public class MetricsProcessorServiceTest extends MetricsProcessorServiceTestBase
     for (int i = 20; i < 30; i++) {
       publishMessagingMetrics(i, startTime, METRICS_CONTEXT, expected, SYSTEM_METRIC_PREFIX, MetricType.GAUGE);
     }
+    // Publish metrics in the payload format of older versions, which should still be processed
+    for (int i = 30; i < 35; i++) {
+      publishMessagingMetrics(i, startTime, METRICS_CONTEXT, expected, SYSTEM_METRIC_PREFIX, MetricType.GAUGE,
+                              false);
+    }
 
     final List<String> missingMetricNames = new ArrayList<>();
     // Wait until all expected metrics can be queried from the metric store. If not all expected metrics
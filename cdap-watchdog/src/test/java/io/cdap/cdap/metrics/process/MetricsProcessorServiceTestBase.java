@@ -20,7 +20,6 @@ import com.google.common.collect.ImmutableMap;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
 import com.google.inject.util.Modules;
-import io.cdap.cdap.api.messaging.TopicNotFoundException;
 import io.cdap.cdap.api.metrics.MetricStore;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
@@ -37,8 +36,10 @@ import io.cdap.cdap.data.runtime.DataSetsModules;
 import io.cdap.cdap.data2.metadata.writer.MetadataServiceClient;
 import io.cdap.cdap.data2.metadata.writer.NoOpMetadataServiceClient;
 import io.cdap.cdap.explore.guice.ExploreClientModule;
+import io.cdap.cdap.internal.io.ReflectionDatumWriter;
 import io.cdap.cdap.messaging.client.StoreRequestBuilder;
 import io.cdap.cdap.metrics.MetricsTestBase;
+import io.cdap.cdap.metrics.collect.MetricValuesPayload;
 import io.cdap.cdap.metrics.guice.MetricsStoreModule;
 import io.cdap.cdap.proto.id.NamespaceId;
 import io.cdap.cdap.security.auth.context.AuthenticationContextModules;
@@ -52,7 +53,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -84,10 +84,28 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
   void publishMessagingMetrics(int metricIndex, long startTimeSecs, Map<String, String> metricsContext,
                                Map<String, Long> expected, String expectedMetricPrefix,
                                MetricType metricType) {
+    publishMessagingMetrics(metricIndex, startTimeSecs, metricsContext, expected, expectedMetricPrefix,
+                            metricType, true);
+  }
+
+  /**
+   * Publishes a metric to messaging service. If {@code versioned} is {@code false}, the metric is published
+   * in the payload format of older versions, which has no {@link MetricValuesPayload#VERSION} header.
+   */
+  void publishMessagingMetrics(int metricIndex, long startTimeSecs, Map<String, String> metricsContext,
+                               Map<String, Long> expected, String expectedMetricPrefix,
+                               MetricType metricType, boolean versioned) {
 
     try {
-      getMetricValuesAddToExpected(metricIndex, startTimeSecs,
-                                   metricsContext, expected, expectedMetricPrefix, metricType);
+      MetricValues metric = getMetricValuesAddToExpected(metricIndex, startTimeSecs, metricsContext,
+                                                         expected, expectedMetricPrefix, metricType);
+      if (versioned) {
+        encoderOutputStream.write(MetricValuesPayload.VERSION);
+        recordWriter.encode(metric, encoder);
+      } else {
+        new ReflectionDatumWriter<MetricValues>(MetricValuesPayload.getUnversionedSchema(schema))
+          .encode(metric, encoder);
+      }
       int numOfTopics = cConf.getInt(Constants.Metrics.MESSAGING_TOPIC_NUM);
       messagingService.publish(
         StoreRequestBuilder.of(NamespaceId.SYSTEM.topic(TOPIC_PREFIX + (metricIndex % numOfTopics)))
@@ -108,8 +126,7 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
    */
   private MetricValues getMetricValuesAddToExpected(int i, long startTimeSecs, Map<String, String> metricsContext,
                                                     Map<String, Long> expected, String expectedMetricPrefix,
-                                                    MetricType metricType)
-    throws TopicNotFoundException, IOException {
+                                                    MetricType metricType) {
     MetricValues metric = null;
     switch (metricType) {
       case GAUGE:
@@ -136,8 +153,6 @@ abstract class MetricsProcessorServiceTestBase extends MetricsTestBase {
                 new MetricValues(metricsContext, i, Collections.singleton(distributionMetricValue));
         break;
     }
-
-    recordWriter.encode(metric, encoder);
     return metric;
   }
 
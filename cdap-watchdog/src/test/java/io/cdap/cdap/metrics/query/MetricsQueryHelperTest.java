@@ -16,10 +16,32 @@
 
 package io.cdap.cdap.metrics.query;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.HistogramSketch;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricDeleteQuery;
+import io.cdap.cdap.api.metrics.MetricSearchQuery;
+import io.cdap.cdap.api.metrics.MetricStore;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.MetricsProcessorStatus;
+import io.cdap.cdap.api.metrics.TagValue;
 import io.cdap.cdap.common.conf.CConfiguration;
+import io.cdap.cdap.proto.MetricQueryResult;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class MetricsQueryHelperTest {
 
   @Test
@@ -96,4 +118,170 @@ public class MetricsQueryHelperTest {
     Assert.assertEquals(1, helper.getResolution(null, 0L, null).intValue());
     Assert.assertEquals(1, helper.getResolution(null, null, 10000000L).intValue());
   }
+
+  @Test
+  public void testQuantileQuery() throws Exception {
+    // histogram of the values 1 to 1000 for two instances
+    Map<String, Long> bucketCounts = new HashMap<>();
+    for (long value = 1; value <= 1000; value++) {
+      String bucketMetricName = HistogramSketch.getBucketMetricName("user.latency", HistogramSketch.getBucket(value));
+      bucketCounts.merge(bucketMetricName, 1L, Long::sum);
+    }
+    List<MetricTimeSeries> series = new ArrayList<>();
+    for (String instance : ImmutableList.of("0", "1")) {
+      for (Map.Entry<String, Long> entry : bucketCounts.entrySet()) {
+        series.add(new MetricTimeSeries(entry.getKey(), ImmutableMap.of("ins", instance),
+                                        Collections.singletonList(new TimeValue(0, entry.getValue()))));
+      }
+    }
+    List<String> metricNames = new ArrayList<>(bucketCounts.keySet());
+    metricNames.add("user.count");
+
+    MetricsQueryHelper helper = new MetricsQueryHelper(new FixedMetricStore(metricNames, series),
+                                                       CConfiguration.create());
+
+    // the buckets are listed as the distribution metric
+    Assert.assertEquals(ImmutableList.of("user.latency", "user.count"),
+                        new ArrayList<>(helper.searchMetric(ImmutableList.of("namespace:ns1"))));
+
+    // quantiles are computed from the bucket counts merged across the instances
+    MetricQueryResult result = helper.executeTagQuery(ImmutableList.of("namespace:ns1"),
+                                                      ImmutableList.of("user.latency:p50", "user.latency:p99.9"),
+                                                      ImmutableList.of(), Collections.emptyMap());
+    Assert.assertEquals(2, result.getSeries().length);
+    for (MetricQueryResult.TimeSeries timeSeries : result.getSeries()) {
+      long expected = timeSeries.getMetricName().equals("user.latency:p50") ? 500 : 999;
+      Assert.assertEquals(1, timeSeries.getData().length);
+      long actual = timeSeries.getData()[0].getValue();
+      Assert.assertTrue("Expected " + expected + " but was " + actual,
+                        Math.abs(expected - actual) <= expected / HistogramSketch.SUB_BUCKETS);
+    }
+
+    // distributions without any bucket have no series
+    result = helper.executeTagQuery(ImmutableList.of("namespace:ns1"), ImmutableList.of("user.other:p99"),
+                                    ImmutableList.of(), Collections.emptyMap());
+    Assert.assertEquals(0, result.getSeries().length);
+  }
+
+  @Test
+  public void testBatchQueries() throws Exception {
+    List<MetricTimeSeries> series = new ArrayList<>();
+    List<String> metricNames = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      metricNames.add("user.metric" + i);
+      series.add(new MetricTimeSeries("user.metric" + i, Collections.emptyMap(),
+                                      Collections.singletonList(new TimeValue(0, i))));
+    }
+    MetricsQueryHelper helper = new MetricsQueryHelper(new FixedMetricStore(metricNames, series),
+                                                       CConfiguration.create());
+
+    // the queries of the batch are executed concurrently, and each result is returned under the query key
+    Map<String, MetricsQueryHelper.QueryRequestFormat> queries = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      queries.put("query" + i, new Gson().fromJson("{\"tags\": {\"namespace\": \"ns1\"}, " +
+                                                     "\"metrics\": [\"user.metric" + i + "\"]}",
+                                                   MetricsQueryHelper.QueryRequestFormat.class));
+    }
+    Map<String, MetricQueryResult> results = helper.executeBatchQueries(queries);
+    Assert.assertEquals(queries.keySet(), results.keySet());
+    for (int i = 0; i < 20; i++) {
+      MetricQueryResult.TimeSeries[] timeSeries = results.get("query" + i).getSeries();
+      Assert.assertEquals(1, timeSeries.length);
+      Assert.assertEquals("user.metric" + i, timeSeries[0].getMetricName());
+      Assert.assertEquals(i, timeSeries[0].getData()[0].getValue());
+    }
+
+    // an invalid query fails the batch with its own error
+    queries.put("invalid", new Gson().fromJson("{\"tags\": {\"namespace\": \"ns1\"}}",
+                                               MetricsQueryHelper.QueryRequestFormat.class));
+    try {
+      helper.executeBatchQueries(queries);
+      Assert.fail("Expected the batch to fail");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * A {@link MetricStore} that returns fixed metric names and time series. The time series are aggregated
+   * across all tags.
+   */
+  private static final class FixedMetricStore implements MetricStore {
+
+    private final Collection<String> metricNames;
+    private final Collection<MetricTimeSeries> series;
+
+    FixedMetricStore(Collection<String> metricNames, Collection<MetricTimeSeries> series) {
+      this.metricNames = metricNames;
+      this.series = series;
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      Map<String, Long> totals = new HashMap<>();
+      for (MetricTimeSeries timeSeries : series) {
+        if (query.getMetrics().containsKey(timeSeries.getMetricName())) {
+          for (TimeValue timeValue : timeSeries.getTimeValues()) {
+            totals.merge(timeSeries.getMetricName(), timeValue.getValue(), Long::sum);
+          }
+        }
+      }
+      List<MetricTimeSeries> result = new ArrayList<>();
+      for (Map.Entry<String, Long> entry : totals.entrySet()) {
+        result.add(new MetricTimeSeries(entry.getKey(), Collections.emptyMap(),
+                                        Collections.singletonList(new TimeValue(0, entry.getValue()))));
+      }
+      return result;
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) {
+      return metricNames;
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // no-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(Collection<? extends MetricValues> metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteTTLExpired() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAll() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, MetricsProcessorStatus> getMetricsProcessorStats() {
+      return Collections.emptyMap();
+    }
+  }
 }
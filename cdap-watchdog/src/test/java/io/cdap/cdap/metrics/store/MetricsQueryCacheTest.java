@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationFunction;
+import io.cdap.cdap.api.dataset.lib.cube.AggregationOption;
+import io.cdap.cdap.api.dataset.lib.cube.Interpolators;
+import io.cdap.cdap.api.dataset.lib.cube.TimeValue;
+import io.cdap.cdap.api.metrics.MetricDataQuery;
+import io.cdap.cdap.api.metrics.MetricTimeSeries;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for {@link MetricsQueryCache}.
+ */
+public class MetricsQueryCacheTest {
+
+  private static final int RESOLUTION = 60;
+
+  @Test
+  public void testIncrementalRefresh() {
+    AtomicLong now = new AtomicLong(100 * RESOLUTION);
+    MetricsQueryCache cache = new MetricsQueryCache(1000, 2 * RESOLUTION, now::get);
+    FakeStore store = new FakeStore();
+    for (int i = 0; i < 100; i++) {
+      store.write("a", i * RESOLUTION, i);
+      store.write("b", i * RESOLUTION, 2 * i);
+    }
+
+    // first query reads the whole time range, and caches the closed intervals
+    MetricDataQuery query = query(50 * RESOLUTION, now.get(), Integer.MAX_VALUE);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(50L * RESOLUTION), store.queriedStartTs);
+
+    // a later query with a moving time range only reads the intervals that were not closed
+    store.queriedStartTs.clear();
+    now.addAndGet(RESOLUTION);
+    store.write("a", 100 * RESOLUTION, 100);
+    query = query(51 * RESOLUTION, now.get(), Integer.MAX_VALUE);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(98L * RESOLUTION), store.queriedStartTs);
+
+    // the limit is applied to the merged result
+    store.queriedStartTs.clear();
+    query = query(51 * RESOLUTION, now.get(), 10);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(99L * RESOLUTION), store.queriedStartTs);
+
+    // a query that starts before the cached range reads the whole time range
+    store.queriedStartTs.clear();
+    query = query(10 * RESOLUTION, now.get(), Integer.MAX_VALUE);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(10L * RESOLUTION), store.queriedStartTs);
+
+    // values written late to a closed interval are visible once the entry is older than the closed lag
+    store.write("a", 20 * RESOLUTION, 1000);
+    now.addAndGet(3 * RESOLUTION);
+    store.queriedStartTs.clear();
+    query = query(10 * RESOLUTION, now.get(), Integer.MAX_VALUE);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(10L * RESOLUTION), store.queriedStartTs);
+
+    // writes to the open intervals keep the cached results
+    store.queriedStartTs.clear();
+    cache.written(now.get() - RESOLUTION);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(102L * RESOLUTION), store.queriedStartTs);
+
+    // writes to a closed interval drop the cached results
+    store.queriedStartTs.clear();
+    cache.written(20 * RESOLUTION);
+    assertResult(store.execute(query), cache.query(query, store::query));
+    Assert.assertEquals(ImmutableList.of(10L * RESOLUTION), store.queriedStartTs);
+  }
+
+  @Test
+  public void testNotCached() {
+    AtomicLong now = new AtomicLong(100 * RESOLUTION);
+    MetricsQueryCache cache = new MetricsQueryCache(1000, 0, now::get);
+    FakeStore store = new FakeStore();
+    for (int i = 0; i < 100; i++) {
+      store.write("a", i * RESOLUTION, i);
+    }
+
+    // queries with interpolation, aggregation option or totals resolution are always executed as is
+    List<MetricDataQuery> queries = ImmutableList.of(
+      new MetricDataQuery(0, now.get(), RESOLUTION, Integer.MAX_VALUE, metrics(), Collections.emptyMap(),
+                          Collections.emptyList(), new Interpolators.Step()),
+      new MetricDataQuery(0, now.get(), RESOLUTION, 10, metrics(), Collections.emptyMap(),
+                          Collections.emptyList(), AggregationOption.SUM, null),
+      new MetricDataQuery(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, metrics(), Collections.emptyMap(),
+                          Collections.emptyList(), null));
+    for (MetricDataQuery query : queries) {
+      for (int i = 0; i < 2; i++) {
+        store.queriedStartTs.clear();
+        cache.query(query, store::query);
+        Assert.assertEquals(ImmutableList.of(query.getStartTs()), store.queriedStartTs);
+      }
+    }
+
+    // nothing is cached if the cache cannot hold the result
+    cache = new MetricsQueryCache(10, 0, now::get);
+    MetricDataQuery query = query(0, now.get(), Integer.MAX_VALUE);
+    for (int i = 0; i < 2; i++) {
+      store.queriedStartTs.clear();
+      assertResult(store.execute(query), cache.query(query, store::query));
+      Assert.assertEquals(ImmutableList.of(0L), store.queriedStartTs);
+    }
+  }
+
+  private static void assertResult(Collection<MetricTimeSeries> expected, Collection<MetricTimeSeries> actual) {
+    // the order of the time series is not defined
+    Assert.assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    Assert.assertEquals(expected.size(), actual.size());
+  }
+
+  private static Map<String, AggregationFunction> metrics() {
+    return ImmutableMap.of("a", AggregationFunction.SUM, "b", AggregationFunction.SUM);
+  }
+
+  private static MetricDataQuery query(long startTs, long endTs, int limit) {
+    return new MetricDataQuery(startTs, endTs, RESOLUTION, limit, metrics(), ImmutableMap.of("namespace", "ns"),
+                               Collections.emptyList(), null);
+  }
+
+  /**
+   * Executes queries over in-memory time series, and records the start time of the queries it executes.
+   */
+  private static final class FakeStore {
+    private final Map<String, TreeMap<Long, Long>> data = new TreeMap<>();
+    private final List<Long> queriedStartTs = new ArrayList<>();
+
+    void write(String metricName, long ts, long value) {
+      data.computeIfAbsent(metricName, k -> new TreeMap<>()).put(ts, value);
+    }
+
+    Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      queriedStartTs.add(query.getStartTs());
+      return execute(query);
+    }
+
+    /**
+     * Returns the expected result of the query, without recording it.
+     */
+    Collection<MetricTimeSeries> execute(MetricDataQuery query) {
+      List<MetricTimeSeries> result = new ArrayList<>();
+      for (Map.Entry<String, TreeMap<Long, Long>> entry : data.entrySet()) {
+        List<TimeValue> timeValues = new ArrayList<>();
+        long startTs = query.getResolution() == Integer.MAX_VALUE ? 0 : query.getStartTs();
+        long endTs = query.getResolution() == Integer.MAX_VALUE ? Long.MAX_VALUE : query.getEndTs();
+        for (Map.Entry<Long, Long> value : entry.getValue().subMap(startTs, true, endTs, true).entrySet()) {
+          if (timeValues.size() < query.getLimit()) {
+            timeValues.add(new TimeValue(value.getKey(), value.getValue()));
+          }
+        }
+        if (!timeValues.isEmpty()) {
+          result.add(new MetricTimeSeries(entry.getKey(), Collections.emptyMap(), timeValues));
+        }
+      }
+      return result;
+    }
+  }
+}